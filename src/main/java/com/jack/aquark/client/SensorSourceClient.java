@@ -0,0 +1,102 @@
+package com.jack.aquark.client;
+
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.exception.DataFetchException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Fetches sensor sources over the shared pooled HTTP client and remembers each URL's {@code ETag}
+ * and {@code Last-Modified} validators, so unchanged sources come back as {@code 304 Not Modified}
+ * without a body.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SensorSourceClient {
+
+  private final RestTemplate sourceRestTemplate;
+  private final IngestionProperties ingestionProperties;
+
+  private final Map<String, Validators> validatorsByUrl = new ConcurrentHashMap<>();
+
+  /**
+   * Issues a (conditional) GET and hands the body stream to {@code reader}. The reader is not
+   * called when the source answers {@code 304}.
+   */
+  public <T> SourceResponse<T> get(String url, BodyReader<T> reader) {
+    boolean conditional = ingestionProperties.getHttp().isConditionalGet();
+    Validators known = conditional ? validatorsByUrl.get(url) : null;
+
+    return sourceRestTemplate.execute(
+        url,
+        HttpMethod.GET,
+        request -> {
+          if (known != null) {
+            if (known.etag() != null) {
+              request.getHeaders().setIfNoneMatch(known.etag());
+            }
+            if (known.lastModified() != null) {
+              request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, known.lastModified());
+            }
+          }
+        },
+        response -> {
+          if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+            return SourceResponse.notModified(url);
+          }
+          if (!response.getStatusCode().is2xxSuccessful()) {
+            log.error(
+                "Failed to fetch data from {}, HTTP status: {}", url, response.getStatusCode());
+            throw new DataFetchException("Failed fetching data from " + url);
+          }
+
+          HttpHeaders headers = response.getHeaders();
+          T body = reader.read(response.getBody());
+          return new SourceResponse<>(
+              url,
+              false,
+              body,
+              new Validators(headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED)));
+        });
+  }
+
+  /**
+   * Records the validators of a response once its content has been stored, so the next fetch of the
+   * same URL can be answered with {@code 304}. Deliberately not done in {@link #get} so that a
+   * payload that failed to persist is downloaded again.
+   */
+  public void markIngested(SourceResponse<?> response) {
+    Validators validators = response.validators();
+    if (response.notModified() || validators == null || validators.isEmpty()) {
+      return;
+    }
+    validatorsByUrl.put(response.url(), validators);
+  }
+
+  @FunctionalInterface
+  public interface BodyReader<T> {
+    T read(InputStream body) throws IOException;
+  }
+
+  public record Validators(String etag, String lastModified) {
+    boolean isEmpty() {
+      return etag == null && lastModified == null;
+    }
+  }
+
+  public record SourceResponse<T>(String url, boolean notModified, T body, Validators validators) {
+    public static <T> SourceResponse<T> notModified(String url) {
+      return new SourceResponse<>(url, true, null, null);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.jack.aquark.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "aggregation")
+@Data
+public class AggregationProperties {
+  private Engine engine = Engine.JAVA;
+
+  // Stations aggregated at the same time, each on its own connection. Capped at the Hikari pool
+  // size minus the connection held by the job itself.
+  private int parallelism = 1;
+
+  private Feed feed = Feed.STAGING;
+
+  private Live live = new Live();
+
+  public enum Engine {
+    // Rows are loaded and rolled up in the JVM
+    JAVA,
+    // One INSERT ... SELECT ... GROUP BY ... ON CONFLICT statement per tier, run by PostgreSQL
+    SQL
+  }
+
+  public enum Feed {
+    // New readings are also written to temp_sensor_data, which each run drains
+    STAGING,
+    // Readings are written once; each run reads sensor_data above a persisted id watermark
+    WATERMARK
+  }
+
+  @Data
+  public static class Live {
+    // Fold new readings into in-memory windows of their hour as they are stored.
+    private boolean enabled = false;
+
+    // A window closes this long after its hour ends, so late readings still land in it.
+    private Duration grace = Duration.ofMinutes(2);
+
+    // How often closed windows are written out.
+    private Duration flushInterval = Duration.ofSeconds(30);
+  }
+}
@@ -0,0 +1,17 @@
+package com.jack.aquark.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "bulk-import")
+@Data
+public class BulkImportProperties {
+  // Local directory holding NDJSON (optionally gzipped) backfill files; imports are refused when
+  // unset.
+  private String directory;
+
+  // Scans the directory on this schedule; "-" disables the scheduled mode.
+  private String cron = "-";
+}
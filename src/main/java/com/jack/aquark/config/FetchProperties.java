@@ -0,0 +1,27 @@
+package com.jack.aquark.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "scheduling.fetch")
+@Data
+public class FetchProperties {
+  private Mode mode = Mode.SERIAL;
+
+  // Upper bound on sources fetched at the same time in CONCURRENT mode.
+  private int maxParallelism = 16;
+
+  // How long a single source may take before it is cancelled and reported as timed out. The job
+  // still waits for a cancelled fetch to exit, so it can run longer than this.
+  private Duration timeout = Duration.ofMinutes(5);
+
+  public enum Mode {
+    SERIAL,
+    CONCURRENT,
+    // Staged fetch -> parse -> map -> persist, tuned under ingestion.pipeline
+    PIPELINE
+  }
+}
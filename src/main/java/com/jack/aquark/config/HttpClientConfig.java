@@ -0,0 +1,45 @@
+package com.jack.aquark.config;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+@Configuration
+public class HttpClientConfig {
+
+  @Bean(destroyMethod = "close")
+  public CloseableHttpClient sourceHttpClient(IngestionProperties ingestionProperties) {
+    IngestionProperties.Http http = ingestionProperties.getHttp();
+
+    ConnectionConfig connectionConfig =
+        ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.of(http.getConnectTimeout()))
+            .setSocketTimeout(Timeout.of(http.getReadTimeout()))
+            .build();
+
+    // Connections are kept alive and reused across fetches; gzip/deflate is negotiated and
+    // decoded transparently by the client.
+    return HttpClients.custom()
+        .setConnectionManager(
+            PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(http.getMaxConnections())
+                .setMaxConnPerRoute(http.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(connectionConfig)
+                .build())
+        .evictIdleConnections(TimeValue.of(1, TimeUnit.MINUTES))
+        .build();
+  }
+
+  @Bean
+  public RestTemplate sourceRestTemplate(CloseableHttpClient sourceHttpClient) {
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(sourceHttpClient));
+  }
+}
@@ -0,0 +1,94 @@
+package com.jack.aquark.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "ingestion")
+@Data
+public class IngestionProperties {
+  private Batch batch = new Batch();
+  private Streaming streaming = new Streaming();
+  private Http http = new Http();
+  private Watermark watermark = new Watermark();
+  private DuplicateFilter duplicateFilter = new DuplicateFilter();
+  private Push push = new Push();
+  private Kafka kafka = new Kafka();
+  private Pipeline pipeline = new Pipeline();
+
+  @Data
+  public static class Batch {
+    // When disabled, raw items are checked and saved one by one (legacy path).
+    private boolean enabled = true;
+    private int size = 500;
+  }
+
+  @Data
+  public static class Streaming {
+    // Walk the response body item by item instead of binding the whole payload at once.
+    private boolean enabled = false;
+  }
+
+  @Data
+  public static class Http {
+    private int maxConnections = 50;
+    private int maxConnectionsPerRoute = 10;
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration readTimeout = Duration.ofSeconds(60);
+
+    // Send If-None-Match / If-Modified-Since and skip sources that answer 304.
+    private boolean conditionalGet = true;
+  }
+
+  @Data
+  public static class Watermark {
+    // Skip items at or below the highest obsTime already committed for their source and station.
+    private boolean enabled = true;
+  }
+
+  @Data
+  public static class DuplicateFilter {
+    // Per-station Bloom filter in front of the item-by-item duplicate query; only used (and loaded
+    // at startup) while batch.enabled is false.
+    private boolean enabled = false;
+    private long expectedKeysPerStation = 200_000;
+    private double falsePositiveRate = 0.01;
+  }
+
+  @Data
+  public static class Push {
+    // Items accepted by POST /api/sensor/ingest but not yet persisted; beyond this callers get 429.
+    private int capacity = 20_000;
+    private int maxBatchSize = 500;
+
+    // How long the writer waits for more items before persisting a partial micro-batch.
+    private Duration lingerTime = Duration.ofMillis(200);
+    private Duration retryAfter = Duration.ofSeconds(5);
+  }
+
+  @Data
+  public static class Kafka {
+    // Consume raw readings from a topic; every node in the group takes a share of the partitions.
+    private boolean enabled = false;
+    private String topic = "raw-sensor-readings";
+    private String groupId = "aquark-ingestion";
+    private int concurrency = 1;
+    private int maxPollRecords = 500;
+
+    // Delay between redeliveries of a poll batch whose transaction failed.
+    private Duration retryBackoff = Duration.ofSeconds(5);
+  }
+
+  @Data
+  public static class Pipeline {
+    // Workers per stage of scheduling.fetch.mode=PIPELINE; raise only the stage that backs up.
+    private int fetchParallelism = 4;
+    private int mapParallelism = 2;
+    private int persistParallelism = 2;
+
+    // Elements (sources or chunks) each stage may hold before it blocks the one feeding it.
+    private int queueCapacity = 16;
+  }
+}
@@ -0,0 +1,59 @@
+package com.jack.aquark.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+@Configuration
+@ConditionalOnProperty(prefix = "ingestion.kafka", name = "enabled", havingValue = "true")
+public class KafkaConsumerConfig {
+
+  @Value("${spring.kafka.bootstrap-servers}")
+  private String bootstrapServers;
+
+  @Bean
+  public ConsumerFactory<String, String> rawReadingsConsumerFactory(
+      IngestionProperties ingestionProperties) {
+    IngestionProperties.Kafka kafka = ingestionProperties.getKafka();
+    Map<String, Object> props = new HashMap<>();
+    props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    props.put(ConsumerConfig.GROUP_ID_CONFIG, kafka.getGroupId());
+    props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+    // Values are parsed in the listener so one malformed record does not block the partition.
+    props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+    props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, kafka.getMaxPollRecords());
+    props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+    return new DefaultKafkaConsumerFactory<>(props);
+  }
+
+  @Bean
+  public ConcurrentKafkaListenerContainerFactory<String, String> rawReadingsListenerFactory(
+      ConsumerFactory<String, String> rawReadingsConsumerFactory,
+      IngestionProperties ingestionProperties) {
+    IngestionProperties.Kafka kafka = ingestionProperties.getKafka();
+    ConcurrentKafkaListenerContainerFactory<String, String> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    factory.setConsumerFactory(rawReadingsConsumerFactory);
+    factory.setBatchListener(true);
+    factory.setConcurrency(kafka.getConcurrency());
+    // Offsets are committed by the listener, only after the database transaction has committed.
+    factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+    // A failed batch is redelivered until the database accepts it, never skipped.
+    factory.setCommonErrorHandler(
+        new DefaultErrorHandler(
+            new FixedBackOff(kafka.getRetryBackoff().toMillis(), FixedBackOff.UNLIMITED_ATTEMPTS)));
+    return factory;
+  }
+}
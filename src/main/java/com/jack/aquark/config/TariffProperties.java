@@ -0,0 +1,14 @@
+package com.jack.aquark.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "tariff")
+@Data
+public class TariffProperties {
+  // How often the calendar is recompiled from tariff_peak_window and tariff_holiday.
+  private Duration refreshInterval = Duration.ofMinutes(1);
+}
@@ -3,8 +3,12 @@ package com.jack.aquark.constant;
 public class MessagesConstants {
   public static final String STATUS_200 = "200";
   public static final String STATUS_201 = "201";
+  public static final String STATUS_202 = "202";
+  public static final String STATUS_400 = "400";
   public static final String STATUS_404 = "404";
   public static final String STATUS_409 = "409";
+  public static final String STATUS_413 = "413";
+  public static final String STATUS_429 = "429";
   public static final String STATUS_500 = "500";
 
   private MessagesConstants() {
@@ -2,7 +2,9 @@ package com.jack.aquark.controller;
 
 import com.jack.aquark.response.ApiResponseDto;
 import com.jack.aquark.response.ErrorResponseDto;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
@@ -16,6 +18,20 @@ public abstract class BaseController {
     return ResponseEntity.status(HttpStatus.CREATED).body(ApiResponseDto.success(data));
   }
 
+  protected <T> ResponseEntity<ApiResponseDto<T>> respondAccepted(T data) {
+    return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponseDto.success(data));
+  }
+
+  protected <T> ResponseEntity<ApiResponseDto<T>> respondTooManyRequests(
+      String path, Duration retryAfter, String errorMessage) {
+
+    ErrorResponseDto errorResponse =
+        new ErrorResponseDto(path, HttpStatus.TOO_MANY_REQUESTS, errorMessage, LocalDateTime.now());
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())))
+        .body(ApiResponseDto.error(errorResponse));
+  }
+
   protected <T> ResponseEntity<ApiResponseDto<T>> respondError(
       String path, HttpStatus status, String errorMessage) {
 
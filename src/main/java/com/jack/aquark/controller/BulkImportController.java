@@ -0,0 +1,74 @@
+package com.jack.aquark.controller;
+
+import com.jack.aquark.constant.MessagesConstants;
+import com.jack.aquark.dto.BulkImportResult;
+import com.jack.aquark.response.ApiResponseDto;
+import com.jack.aquark.response.ErrorResponseDto;
+import com.jack.aquark.service.BulkImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+@Tag(
+    name = "Bulk Import API",
+    description = "Admin APIs for backfilling raw sensor data from local NDJSON files.")
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@Validated
+public class BulkImportController extends BaseController {
+
+  private static final String IMPORT_PATH = "/api/admin/bulk-import";
+
+  private final BulkImportService bulkImportService;
+
+  @Operation(
+      summary = "Import a Backfill File",
+      description =
+          "Streams an NDJSON (optionally gzipped) file of raw sensor items from the configured "
+              + "import directory into sensor_data with PostgreSQL COPY. Existing readings are "
+              + "left untouched.",
+      responses = {
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_200,
+            description = "File imported successfully",
+            content = @Content(schema = @Schema(implementation = BulkImportResult.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_400,
+            description = "Import directory not configured or file outside of it",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_404,
+            description = "File not found in the import directory",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class)))
+      })
+  @PostMapping("/bulk-import")
+  public ResponseEntity<ApiResponseDto<BulkImportResult>> importFile(
+      @Parameter(
+              example = "sensor-2024-06.ndjson.gz",
+              description = "File name relative to the import directory")
+          @RequestParam
+          String file) {
+
+    Path path;
+    try {
+      path = bulkImportService.resolveImportFile(file);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      return respondError(IMPORT_PATH, HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    if (!Files.isRegularFile(path)) {
+      return respondError(IMPORT_PATH, HttpStatus.NOT_FOUND, "File not found: " + file);
+    }
+    return respondOK(bulkImportService.importFile(path));
+  }
+}
@@ -1,12 +1,17 @@
 package com.jack.aquark.controller;
 
 import com.jack.aquark.constant.MessagesConstants;
+import com.jack.aquark.dto.PercentileResult;
+import com.jack.aquark.dto.RawDataWrapperDto;
 import com.jack.aquark.entity.DailyAggregation;
 import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.MonthlyAggregation;
 import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.entity.WeeklyAggregation;
 import com.jack.aquark.response.ApiResponseDto;
 import com.jack.aquark.response.ErrorResponseDto;
 import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.IngestionBufferService;
 import com.jack.aquark.service.SensorDataService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,10 +19,12 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import java.time.LocalDateTime;
 import java.util.List;
 import lombok.AllArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -33,6 +40,57 @@ public class SensorDataController extends BaseController {
 
   private final SensorDataService sensorDataService;
   private final AggregationService aggregationService;
+  private final IngestionBufferService ingestionBufferService;
+
+  @Operation(
+      summary = "Push Sensor Data",
+      description =
+          "Accept a batch of raw readings in the upstream {\"raw\": [...]} format. The batch is "
+              + "validated and queued, then persisted asynchronously in micro-batches. A batch "
+              + "larger than the buffer capacity is rejected with 413. When the buffer is full "
+              + "the whole batch is rejected with 429 and a Retry-After header. Accepted items "
+              + "are retried until stored, so a database outage fills the buffer and turns into "
+              + "429s; only items still failing at shutdown are dropped (ingestion.push.dropped).",
+      responses = {
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_202,
+            description = "Batch accepted for ingestion; data is the number of items queued"),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_400,
+            description = "Batch failed validation",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_413,
+            description = "Batch is larger than the ingestion buffer capacity, split it",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_429,
+            description = "Ingestion buffer is full, retry after the given delay",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class)))
+      })
+  @PostMapping("/ingest")
+  public ResponseEntity<ApiResponseDto<Integer>> ingest(
+      @Valid @RequestBody RawDataWrapperDto batch) {
+
+    // Would never fit, so a 429 would have the caller retry forever
+    if (batch.getRaw().size() > ingestionBufferService.capacity()) {
+      return respondError(
+          "/api/sensor/ingest",
+          HttpStatus.PAYLOAD_TOO_LARGE,
+          "Batch of "
+              + batch.getRaw().size()
+              + " items exceeds the ingestion buffer capacity of "
+              + ingestionBufferService.capacity()
+              + ", split it.");
+    }
+    if (!ingestionBufferService.offer(batch.getRaw())) {
+      return respondTooManyRequests(
+          "/api/sensor/ingest",
+          ingestionBufferService.retryAfter(),
+          "Ingestion buffer is full, retry later.");
+    }
+    return respondAccepted(batch.getRaw().size());
+  }
 
   @Operation(
       summary = "Search Sensor Data by Hour",
@@ -134,12 +192,132 @@ public class SensorDataController extends BaseController {
     return respondOK(stats);
   }
 
+  @Operation(
+      summary = "Get Weekly Statistics",
+      description =
+          "Retrieve aggregated weekly sensor data statistics for every week that overlaps "
+              + "the specified date range. Each row is keyed by the first day of its week.",
+      responses = {
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_200,
+            description = "Weekly statistics retrieved successfully",
+            content = @Content(schema = @Schema(implementation = WeeklyAggregation.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_500,
+            description = "Internal Server Error",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class)))
+      })
+  @GetMapping("/statistics/weekly")
+  public ResponseEntity<ApiResponseDto<List<WeeklyAggregation>>> getWeeklyStats(
+      @Parameter(
+              example = "2025-03-01 00:00:00",
+              description = "Start date/time in the format yyyy-MM-dd HH:mm:ss")
+          @RequestParam
+          @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+          LocalDateTime start,
+      @Parameter(
+              example = "2025-05-31 23:59:59",
+              description = "End date/time in the format yyyy-MM-dd HH:mm:ss")
+          @RequestParam
+          @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+          LocalDateTime end) {
+
+    List<WeeklyAggregation> stats = sensorDataService.getWeeklyAverage(start, end);
+    return respondOK(stats);
+  }
+
+  @Operation(
+      summary = "Get Monthly Statistics",
+      description =
+          "Retrieve aggregated monthly sensor data statistics for every month that overlaps "
+              + "the specified date range. Each row is keyed by the first day of its month.",
+      responses = {
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_200,
+            description = "Monthly statistics retrieved successfully",
+            content = @Content(schema = @Schema(implementation = MonthlyAggregation.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_500,
+            description = "Internal Server Error",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class)))
+      })
+  @GetMapping("/statistics/monthly")
+  public ResponseEntity<ApiResponseDto<List<MonthlyAggregation>>> getMonthlyStats(
+      @Parameter(
+              example = "2025-01-01 00:00:00",
+              description = "Start date/time in the format yyyy-MM-dd HH:mm:ss")
+          @RequestParam
+          @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+          LocalDateTime start,
+      @Parameter(
+              example = "2025-12-31 23:59:59",
+              description = "End date/time in the format yyyy-MM-dd HH:mm:ss")
+          @RequestParam
+          @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+          LocalDateTime end) {
+
+    List<MonthlyAggregation> stats = sensorDataService.getMonthlyAverage(start, end);
+    return respondOK(stats);
+  }
+
+  @Operation(
+      summary = "Get Percentiles",
+      description =
+          "Estimate percentiles of rh, echo or speed for one station over the hourly buckets "
+              + "starting in [start, end), across every csq and time category. The answer is "
+              + "merged from the quantile sketches stored with the aggregates, so it is within 1% "
+              + "of the exact value and never reads raw readings. Readings of hours that have not "
+              + "been aggregated yet are not included.",
+      responses = {
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_200,
+            description = "Percentiles estimated successfully",
+            content = @Content(schema = @Schema(implementation = PercentileResult.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_400,
+            description = "Unknown field or quantile outside [0, 1]",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class))),
+        @ApiResponse(
+            responseCode = MessagesConstants.STATUS_500,
+            description = "Internal Server Error",
+            content = @Content(schema = @Schema(implementation = ErrorResponseDto.class)))
+      })
+  @GetMapping("/statistics/percentiles")
+  public ResponseEntity<ApiResponseDto<PercentileResult>> getPercentiles(
+      @Parameter(example = "240708", description = "Station id") @RequestParam String stationId,
+      @Parameter(example = "echo", description = "One of rh, echo or speed") @RequestParam
+          String field,
+      @Parameter(
+              example = "2025-03-01 00:00:00",
+              description = "Start date/time (inclusive) in the format yyyy-MM-dd HH:mm:ss")
+          @RequestParam
+          @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+          LocalDateTime start,
+      @Parameter(
+              example = "2025-04-01 00:00:00",
+              description = "End date/time (exclusive) in the format yyyy-MM-dd HH:mm:ss")
+          @RequestParam
+          @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+          LocalDateTime end,
+      @Parameter(example = "0.5,0.95,0.99", description = "Quantiles between 0 and 1")
+          @RequestParam(defaultValue = "0.5,0.95,0.99")
+          List<Double> quantiles) {
+
+    try {
+      return respondOK(sensorDataService.getPercentiles(stationId, field, start, end, quantiles));
+    } catch (IllegalArgumentException e) {
+      return respondError(
+          "/api/sensor/statistics/percentiles", HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
   @Operation(
       summary = "Get Peak-Time Data",
       description =
           "Retrieve sensor data for the specified period that falls within peak hours "
-              + "(defined as 07:30 to 17:30 on weekdays, all day on Thursdays and Fridays, "
-              + "and off on weekends). Date-time format: yyyy-MM-dd HH:mm:ss.",
+              + "(by default 07:30 to 17:30 Monday to Wednesday and all day on Thursdays and "
+              + "Fridays, as configured in the tariff calendar; holidays are off-peak). "
+              + "Date-time format: yyyy-MM-dd HH:mm:ss.",
       responses = {
         @ApiResponse(
             responseCode = MessagesConstants.STATUS_200,
@@ -0,0 +1,237 @@
+package com.jack.aquark.dto;
+
+import com.jack.aquark.entity.BaseAggregation;
+import com.jack.aquark.entity.BaseSensorData;
+import com.jack.aquark.util.FixedPoint;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Accessors for one measurement on raw readings and on aggregation rows of any tier. Each
+ * aggregation row keeps the mergeable state of every measurement (count, sum, minimum, maximum and
+ * sum of squares) plus its rounded average.
+ */
+public record AggregateFieldMapping(
+    String column,
+    Function<BaseSensorData, BigDecimal> rawGetter,
+    ToLongFunction<BaseAggregation> countGetter,
+    ObjLongConsumer<BaseAggregation> countSetter,
+    Function<BaseAggregation, BigDecimal> sumGetter,
+    BiConsumer<BaseAggregation, BigDecimal> sumSetter,
+    Function<BaseAggregation, BigDecimal> avgGetter,
+    BiConsumer<BaseAggregation, BigDecimal> avgSetter,
+    Function<BaseAggregation, BigDecimal> minGetter,
+    BiConsumer<BaseAggregation, BigDecimal> minSetter,
+    Function<BaseAggregation, BigDecimal> maxGetter,
+    BiConsumer<BaseAggregation, BigDecimal> maxSetter,
+    Function<BaseAggregation, BigDecimal> sumSqGetter,
+    BiConsumer<BaseAggregation, BigDecimal> sumSqSetter) {
+
+  /** The twelve measurements, in column order. */
+  public static final List<AggregateFieldMapping> FIELDS =
+      List.of(
+          new AggregateFieldMapping(
+              "v1",
+              BaseSensorData::getV1,
+              BaseAggregation::getV1Count,
+              BaseAggregation::setV1Count,
+              BaseAggregation::getV1SumValue,
+              BaseAggregation::setV1SumValue,
+              BaseAggregation::getV1AvgValue,
+              BaseAggregation::setV1AvgValue,
+              BaseAggregation::getV1MinValue,
+              BaseAggregation::setV1MinValue,
+              BaseAggregation::getV1MaxValue,
+              BaseAggregation::setV1MaxValue,
+              BaseAggregation::getV1SumSqValue,
+              BaseAggregation::setV1SumSqValue),
+          new AggregateFieldMapping(
+              "v2",
+              BaseSensorData::getV2,
+              BaseAggregation::getV2Count,
+              BaseAggregation::setV2Count,
+              BaseAggregation::getV2SumValue,
+              BaseAggregation::setV2SumValue,
+              BaseAggregation::getV2AvgValue,
+              BaseAggregation::setV2AvgValue,
+              BaseAggregation::getV2MinValue,
+              BaseAggregation::setV2MinValue,
+              BaseAggregation::getV2MaxValue,
+              BaseAggregation::setV2MaxValue,
+              BaseAggregation::getV2SumSqValue,
+              BaseAggregation::setV2SumSqValue),
+          new AggregateFieldMapping(
+              "v3",
+              BaseSensorData::getV3,
+              BaseAggregation::getV3Count,
+              BaseAggregation::setV3Count,
+              BaseAggregation::getV3SumValue,
+              BaseAggregation::setV3SumValue,
+              BaseAggregation::getV3AvgValue,
+              BaseAggregation::setV3AvgValue,
+              BaseAggregation::getV3MinValue,
+              BaseAggregation::setV3MinValue,
+              BaseAggregation::getV3MaxValue,
+              BaseAggregation::setV3MaxValue,
+              BaseAggregation::getV3SumSqValue,
+              BaseAggregation::setV3SumSqValue),
+          new AggregateFieldMapping(
+              "v4",
+              BaseSensorData::getV4,
+              BaseAggregation::getV4Count,
+              BaseAggregation::setV4Count,
+              BaseAggregation::getV4SumValue,
+              BaseAggregation::setV4SumValue,
+              BaseAggregation::getV4AvgValue,
+              BaseAggregation::setV4AvgValue,
+              BaseAggregation::getV4MinValue,
+              BaseAggregation::setV4MinValue,
+              BaseAggregation::getV4MaxValue,
+              BaseAggregation::setV4MaxValue,
+              BaseAggregation::getV4SumSqValue,
+              BaseAggregation::setV4SumSqValue),
+          new AggregateFieldMapping(
+              "v5",
+              BaseSensorData::getV5,
+              BaseAggregation::getV5Count,
+              BaseAggregation::setV5Count,
+              BaseAggregation::getV5SumValue,
+              BaseAggregation::setV5SumValue,
+              BaseAggregation::getV5AvgValue,
+              BaseAggregation::setV5AvgValue,
+              BaseAggregation::getV5MinValue,
+              BaseAggregation::setV5MinValue,
+              BaseAggregation::getV5MaxValue,
+              BaseAggregation::setV5MaxValue,
+              BaseAggregation::getV5SumSqValue,
+              BaseAggregation::setV5SumSqValue),
+          new AggregateFieldMapping(
+              "v6",
+              BaseSensorData::getV6,
+              BaseAggregation::getV6Count,
+              BaseAggregation::setV6Count,
+              BaseAggregation::getV6SumValue,
+              BaseAggregation::setV6SumValue,
+              BaseAggregation::getV6AvgValue,
+              BaseAggregation::setV6AvgValue,
+              BaseAggregation::getV6MinValue,
+              BaseAggregation::setV6MinValue,
+              BaseAggregation::getV6MaxValue,
+              BaseAggregation::setV6MaxValue,
+              BaseAggregation::getV6SumSqValue,
+              BaseAggregation::setV6SumSqValue),
+          new AggregateFieldMapping(
+              "v7",
+              BaseSensorData::getV7,
+              BaseAggregation::getV7Count,
+              BaseAggregation::setV7Count,
+              BaseAggregation::getV7SumValue,
+              BaseAggregation::setV7SumValue,
+              BaseAggregation::getV7AvgValue,
+              BaseAggregation::setV7AvgValue,
+              BaseAggregation::getV7MinValue,
+              BaseAggregation::setV7MinValue,
+              BaseAggregation::getV7MaxValue,
+              BaseAggregation::setV7MaxValue,
+              BaseAggregation::getV7SumSqValue,
+              BaseAggregation::setV7SumSqValue),
+          new AggregateFieldMapping(
+              "rh",
+              BaseSensorData::getRh,
+              BaseAggregation::getRhCount,
+              BaseAggregation::setRhCount,
+              BaseAggregation::getRhSumValue,
+              BaseAggregation::setRhSumValue,
+              BaseAggregation::getRhAvgValue,
+              BaseAggregation::setRhAvgValue,
+              BaseAggregation::getRhMinValue,
+              BaseAggregation::setRhMinValue,
+              BaseAggregation::getRhMaxValue,
+              BaseAggregation::setRhMaxValue,
+              BaseAggregation::getRhSumSqValue,
+              BaseAggregation::setRhSumSqValue),
+          new AggregateFieldMapping(
+              "tx",
+              BaseSensorData::getTx,
+              BaseAggregation::getTxCount,
+              BaseAggregation::setTxCount,
+              BaseAggregation::getTxSumValue,
+              BaseAggregation::setTxSumValue,
+              BaseAggregation::getTxAvgValue,
+              BaseAggregation::setTxAvgValue,
+              BaseAggregation::getTxMinValue,
+              BaseAggregation::setTxMinValue,
+              BaseAggregation::getTxMaxValue,
+              BaseAggregation::setTxMaxValue,
+              BaseAggregation::getTxSumSqValue,
+              BaseAggregation::setTxSumSqValue),
+          new AggregateFieldMapping(
+              "echo",
+              BaseSensorData::getEcho,
+              BaseAggregation::getEchoCount,
+              BaseAggregation::setEchoCount,
+              BaseAggregation::getEchoSumValue,
+              BaseAggregation::setEchoSumValue,
+              BaseAggregation::getEchoAvgValue,
+              BaseAggregation::setEchoAvgValue,
+              BaseAggregation::getEchoMinValue,
+              BaseAggregation::setEchoMinValue,
+              BaseAggregation::getEchoMaxValue,
+              BaseAggregation::setEchoMaxValue,
+              BaseAggregation::getEchoSumSqValue,
+              BaseAggregation::setEchoSumSqValue),
+          new AggregateFieldMapping(
+              "rain_d",
+              BaseSensorData::getRainD,
+              BaseAggregation::getRainDCount,
+              BaseAggregation::setRainDCount,
+              BaseAggregation::getRainDSumValue,
+              BaseAggregation::setRainDSumValue,
+              BaseAggregation::getRainDAvgValue,
+              BaseAggregation::setRainDAvgValue,
+              BaseAggregation::getRainDMinValue,
+              BaseAggregation::setRainDMinValue,
+              BaseAggregation::getRainDMaxValue,
+              BaseAggregation::setRainDMaxValue,
+              BaseAggregation::getRainDSumSqValue,
+              BaseAggregation::setRainDSumSqValue),
+          new AggregateFieldMapping(
+              "speed",
+              BaseSensorData::getSpeed,
+              BaseAggregation::getSpeedCount,
+              BaseAggregation::setSpeedCount,
+              BaseAggregation::getSpeedSumValue,
+              BaseAggregation::setSpeedSumValue,
+              BaseAggregation::getSpeedAvgValue,
+              BaseAggregation::setSpeedAvgValue,
+              BaseAggregation::getSpeedMinValue,
+              BaseAggregation::setSpeedMinValue,
+              BaseAggregation::getSpeedMaxValue,
+              BaseAggregation::setSpeedMaxValue,
+              BaseAggregation::getSpeedSumSqValue,
+              BaseAggregation::setSpeedSumSqValue));
+
+  /** Adds this measurement's state in {@code row} to {@code accumulator}. */
+  public void mergeInto(FixedPoint.Accumulator accumulator, BaseAggregation row) {
+    accumulator.merge(
+        countGetter.applyAsLong(row),
+        sumGetter.apply(row),
+        minGetter.apply(row),
+        maxGetter.apply(row),
+        sumSqGetter.apply(row));
+  }
+
+  /** Stores the state of {@code accumulator} and its average rounded to {@code avgScale}. */
+  public void write(BaseAggregation row, FixedPoint.Accumulator accumulator, int avgScale) {
+    countSetter.accept(row, accumulator.count());
+    sumSetter.accept(row, accumulator.sum());
+    avgSetter.accept(row, accumulator.average(avgScale));
+    minSetter.accept(row, accumulator.min());
+    maxSetter.accept(row, accumulator.max());
+    sumSqSetter.accept(row, accumulator.sumOfSquares());
+  }
+}
@@ -0,0 +1,5 @@
+package com.jack.aquark.dto;
+
+/** Outcome of importing one backfill file. */
+public record BulkImportResult(
+    String file, long parsedCount, long skippedCount, long insertedCount, long durationMillis) {}
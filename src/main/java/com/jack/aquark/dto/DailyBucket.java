@@ -0,0 +1,9 @@
+package com.jack.aquark.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Key of one {@code daily_aggregation} row, or of a weekly or monthly row when {@code obsDate} is
+ * the first day of the period.
+ */
+public record DailyBucket(String stationId, LocalDate obsDate, String csq, String timeCategory) {}
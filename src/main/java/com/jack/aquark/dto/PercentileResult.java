@@ -0,0 +1,17 @@
+package com.jack.aquark.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Estimated percentiles of one field of a station over a time range, keyed like {@code "p95"}.
+ * Values are {@code null} when the range holds no readings of the field.
+ */
+public record PercentileResult(
+    String stationId,
+    String field,
+    LocalDateTime start,
+    LocalDateTime end,
+    long count,
+    Map<String, BigDecimal> percentiles) {}
@@ -3,19 +3,27 @@ package com.jack.aquark.dto;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import java.math.BigDecimal;
 import lombok.Data;
 
 @Data
 @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
 public class RawDataItemDto {
-  private String stationId;
+  @NotBlank private String stationId;
+
+  @NotNull
+  @Pattern(regexp = "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}")
   private String obsTime;
 
+  @NotBlank
   @JsonProperty("CSQ")
   private String csq;
 
-  private Sensor sensor;
+  @NotNull private Sensor sensor;
+
   private BigDecimal rainD;
 
   @Data
@@ -1,9 +1,13 @@
 package com.jack.aquark.dto;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import java.util.List;
 import lombok.Data;
 
 @Data
 public class RawDataWrapperDto {
-  private List<RawDataItemDto> raw;
+  // Constraints apply to pushed batches only; polled payloads are not validated. The batch size is
+  // bounded by ingestion.push.capacity in the controller.
+  @NotEmpty private List<@Valid RawDataItemDto> raw;
 }
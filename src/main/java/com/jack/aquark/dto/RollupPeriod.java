@@ -0,0 +1,42 @@
+package com.jack.aquark.dto;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/** Aggregation tiers rolled up from daily rows. Weeks are ISO weeks starting on Monday. */
+public enum RollupPeriod {
+  WEEK {
+    @Override
+    public LocalDate start(LocalDate date) {
+      return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    @Override
+    public LocalDate next(LocalDate start) {
+      return start.plusWeeks(1);
+    }
+  },
+  MONTH {
+    @Override
+    public LocalDate start(LocalDate date) {
+      return date.withDayOfMonth(1);
+    }
+
+    @Override
+    public LocalDate next(LocalDate start) {
+      return start.plusMonths(1);
+    }
+  };
+
+  /** First day of the period containing {@code date}. */
+  public abstract LocalDate start(LocalDate date);
+
+  /** First day of the period after the one starting on {@code start}. */
+  public abstract LocalDate next(LocalDate start);
+
+  /** Key of the period row that the given daily row rolls up into. */
+  public DailyBucket bucketOf(DailyBucket day) {
+    return new DailyBucket(day.stationId(), start(day.obsDate()), day.csq(), day.timeCategory());
+  }
+}
@@ -0,0 +1,47 @@
+package com.jack.aquark.dto;
+
+import com.jack.aquark.entity.BaseAggregation;
+import com.jack.aquark.entity.BaseSensorData;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Accessors for a measurement whose aggregation rows also keep a serialized {@link
+ * com.jack.aquark.util.QuantileSketch}, stored in the {@code <field>_sketch} column of every tier.
+ */
+public record SketchFieldMapping(
+    String field,
+    Function<BaseSensorData, BigDecimal> rawGetter,
+    Function<BaseAggregation, byte[]> sketchGetter,
+    BiConsumer<BaseAggregation, byte[]> sketchSetter) {
+
+  /** The sketched measurements, in column order. */
+  public static final List<SketchFieldMapping> SKETCHED =
+      List.of(
+          new SketchFieldMapping(
+              "rh",
+              BaseSensorData::getRh,
+              BaseAggregation::getRhSketch,
+              BaseAggregation::setRhSketch),
+          new SketchFieldMapping(
+              "echo",
+              BaseSensorData::getEcho,
+              BaseAggregation::getEchoSketch,
+              BaseAggregation::setEchoSketch),
+          new SketchFieldMapping(
+              "speed",
+              BaseSensorData::getSpeed,
+              BaseAggregation::getSpeedSketch,
+              BaseAggregation::setSpeedSketch));
+
+  public static Optional<SketchFieldMapping> of(String field) {
+    return SKETCHED.stream().filter(mapping -> mapping.field().equals(field)).findFirst();
+  }
+
+  public String column() {
+    return field + "_sketch";
+  }
+}
@@ -0,0 +1,23 @@
+package com.jack.aquark.dto;
+
+public record SourceFetchResult(
+    String url, Status status, int storedCount, long durationMillis, String error) {
+
+  public enum Status {
+    SUCCEEDED,
+    FAILED,
+    TIMED_OUT
+  }
+
+  public static SourceFetchResult succeeded(String url, int storedCount, long durationMillis) {
+    return new SourceFetchResult(url, Status.SUCCEEDED, storedCount, durationMillis, null);
+  }
+
+  public static SourceFetchResult failed(String url, long durationMillis, Throwable error) {
+    return new SourceFetchResult(url, Status.FAILED, 0, durationMillis, String.valueOf(error));
+  }
+
+  public static SourceFetchResult timedOut(String url, long durationMillis) {
+    return new SourceFetchResult(url, Status.TIMED_OUT, 0, durationMillis, null);
+  }
+}
@@ -0,0 +1,73 @@
+package com.jack.aquark.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Grouping key for one (station, csq, hour). The date and hour are packed into a single {@code
+ * long} and the hash code is computed once, so lookups in hash-based groupings cost one comparison
+ * of primitives before any string is looked at.
+ */
+public final class StationHour {
+
+  private final String stationId;
+  private final String csq;
+  // Hours since 1970-01-01T00:00
+  private final long epochHour;
+  private final int hash;
+
+  private StationHour(String stationId, String csq, long epochHour) {
+    this.stationId = stationId;
+    this.csq = csq;
+    this.epochHour = epochHour;
+    this.hash = 31 * (31 * Long.hashCode(epochHour) + stationId.hashCode()) + csq.hashCode();
+  }
+
+  /** The hour {@code obsTime} falls in. */
+  public static StationHour of(String stationId, String csq, LocalDateTime obsTime) {
+    return new StationHour(
+        stationId, csq, obsTime.toLocalDate().toEpochDay() * 24 + obsTime.getHour());
+  }
+
+  public String stationId() {
+    return stationId;
+  }
+
+  public String csq() {
+    return csq;
+  }
+
+  public LocalDate obsDate() {
+    return LocalDate.ofEpochDay(Math.floorDiv(epochHour, 24));
+  }
+
+  public int obsHour() {
+    return (int) Math.floorMod(epochHour, 24);
+  }
+
+  public LocalDateTime start() {
+    return obsDate().atTime(obsHour(), 0);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    return o instanceof StationHour other
+        && hash == other.hash
+        && epochHour == other.epochHour
+        && stationId.equals(other.stationId)
+        && csq.equals(other.csq);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return stationId + "/" + csq + "@" + start();
+  }
+}
@@ -0,0 +1,21 @@
+package com.jack.aquark.dto;
+
+import java.time.LocalDate;
+
+/**
+ * One PEAK interval of a weekday, {@code [startMinute, endMinute)} minutes after midnight on a
+ * 30-minute grid, in force from {@code effectiveFrom} through {@code effectiveTo}. A {@code null}
+ * bound leaves that side of the date range open.
+ */
+public record TariffPeakWindow(
+    int isoDayOfWeek,
+    int startMinute,
+    int endMinute,
+    LocalDate effectiveFrom,
+    LocalDate effectiveTo) {
+
+  public boolean isEffectiveOn(LocalDate date) {
+    return (effectiveFrom == null || !date.isBefore(effectiveFrom))
+        && (effectiveTo == null || !date.isAfter(effectiveTo));
+  }
+}
@@ -1,5 +1,8 @@
 package com.jack.aquark.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jack.aquark.util.FixedPoint;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -42,72 +45,294 @@ public abstract class BaseAggregation {
   @Column(name = "v1_avg_value")
   private BigDecimal v1AvgValue;
 
+  @Column(name = "v1_count", nullable = false)
+  private long v1Count;
+
+  @Column(name = "v1_min_value")
+  private BigDecimal v1MinValue;
+
+  @Column(name = "v1_max_value")
+  private BigDecimal v1MaxValue;
+
+  @Column(name = "v1_sum_sq_value")
+  private BigDecimal v1SumSqValue;
+
   @Column(name = "v2_sum_value")
   private BigDecimal v2SumValue;
 
   @Column(name = "v2_avg_value")
   private BigDecimal v2AvgValue;
 
+  @Column(name = "v2_count", nullable = false)
+  private long v2Count;
+
+  @Column(name = "v2_min_value")
+  private BigDecimal v2MinValue;
+
+  @Column(name = "v2_max_value")
+  private BigDecimal v2MaxValue;
+
+  @Column(name = "v2_sum_sq_value")
+  private BigDecimal v2SumSqValue;
+
   @Column(name = "v3_sum_value")
   private BigDecimal v3SumValue;
 
   @Column(name = "v3_avg_value")
   private BigDecimal v3AvgValue;
 
+  @Column(name = "v3_count", nullable = false)
+  private long v3Count;
+
+  @Column(name = "v3_min_value")
+  private BigDecimal v3MinValue;
+
+  @Column(name = "v3_max_value")
+  private BigDecimal v3MaxValue;
+
+  @Column(name = "v3_sum_sq_value")
+  private BigDecimal v3SumSqValue;
+
   @Column(name = "v4_sum_value")
   private BigDecimal v4SumValue;
 
   @Column(name = "v4_avg_value")
   private BigDecimal v4AvgValue;
 
+  @Column(name = "v4_count", nullable = false)
+  private long v4Count;
+
+  @Column(name = "v4_min_value")
+  private BigDecimal v4MinValue;
+
+  @Column(name = "v4_max_value")
+  private BigDecimal v4MaxValue;
+
+  @Column(name = "v4_sum_sq_value")
+  private BigDecimal v4SumSqValue;
+
   @Column(name = "v5_sum_value")
   private BigDecimal v5SumValue;
 
   @Column(name = "v5_avg_value")
   private BigDecimal v5AvgValue;
 
+  @Column(name = "v5_count", nullable = false)
+  private long v5Count;
+
+  @Column(name = "v5_min_value")
+  private BigDecimal v5MinValue;
+
+  @Column(name = "v5_max_value")
+  private BigDecimal v5MaxValue;
+
+  @Column(name = "v5_sum_sq_value")
+  private BigDecimal v5SumSqValue;
+
   @Column(name = "v6_sum_value")
   private BigDecimal v6SumValue;
 
   @Column(name = "v6_avg_value")
   private BigDecimal v6AvgValue;
 
+  @Column(name = "v6_count", nullable = false)
+  private long v6Count;
+
+  @Column(name = "v6_min_value")
+  private BigDecimal v6MinValue;
+
+  @Column(name = "v6_max_value")
+  private BigDecimal v6MaxValue;
+
+  @Column(name = "v6_sum_sq_value")
+  private BigDecimal v6SumSqValue;
+
   @Column(name = "v7_sum_value")
   private BigDecimal v7SumValue;
 
   @Column(name = "v7_avg_value")
   private BigDecimal v7AvgValue;
 
+  @Column(name = "v7_count", nullable = false)
+  private long v7Count;
+
+  @Column(name = "v7_min_value")
+  private BigDecimal v7MinValue;
+
+  @Column(name = "v7_max_value")
+  private BigDecimal v7MaxValue;
+
+  @Column(name = "v7_sum_sq_value")
+  private BigDecimal v7SumSqValue;
+
   @Column(name = "rh_sum_value")
   private BigDecimal rhSumValue;
 
   @Column(name = "rh_avg_value")
   private BigDecimal rhAvgValue;
 
+  @Column(name = "rh_count", nullable = false)
+  private long rhCount;
+
+  @Column(name = "rh_min_value")
+  private BigDecimal rhMinValue;
+
+  @Column(name = "rh_max_value")
+  private BigDecimal rhMaxValue;
+
+  @Column(name = "rh_sum_sq_value")
+  private BigDecimal rhSumSqValue;
+
   @Column(name = "tx_sum_value")
   private BigDecimal txSumValue;
 
   @Column(name = "tx_avg_value")
   private BigDecimal txAvgValue;
 
+  @Column(name = "tx_count", nullable = false)
+  private long txCount;
+
+  @Column(name = "tx_min_value")
+  private BigDecimal txMinValue;
+
+  @Column(name = "tx_max_value")
+  private BigDecimal txMaxValue;
+
+  @Column(name = "tx_sum_sq_value")
+  private BigDecimal txSumSqValue;
+
   @Column(name = "echo_sum_value")
   private BigDecimal echoSumValue;
 
   @Column(name = "echo_avg_value")
   private BigDecimal echoAvgValue;
 
+  @Column(name = "echo_count", nullable = false)
+  private long echoCount;
+
+  @Column(name = "echo_min_value")
+  private BigDecimal echoMinValue;
+
+  @Column(name = "echo_max_value")
+  private BigDecimal echoMaxValue;
+
+  @Column(name = "echo_sum_sq_value")
+  private BigDecimal echoSumSqValue;
+
   @Column(name = "rain_d_sum_value")
   private BigDecimal rainDSumValue;
 
   @Column(name = "rain_d_avg_value")
   private BigDecimal rainDAvgValue;
 
+  @Column(name = "rain_d_count", nullable = false)
+  private long rainDCount;
+
+  @Column(name = "rain_d_min_value")
+  private BigDecimal rainDMinValue;
+
+  @Column(name = "rain_d_max_value")
+  private BigDecimal rainDMaxValue;
+
+  @Column(name = "rain_d_sum_sq_value")
+  private BigDecimal rainDSumSqValue;
+
   @Column(name = "speed_sum_value")
   private BigDecimal speedSumValue;
 
   @Column(name = "speed_avg_value")
   private BigDecimal speedAvgValue;
 
+  @Column(name = "speed_count", nullable = false)
+  private long speedCount;
+
+  @Column(name = "speed_min_value")
+  private BigDecimal speedMinValue;
+
+  @Column(name = "speed_max_value")
+  private BigDecimal speedMaxValue;
+
+  @Column(name = "speed_sum_sq_value")
+  private BigDecimal speedSumSqValue;
+
+  // Serialized QuantileSketch of each sketched field, read through the percentile API
+
+  @JsonIgnore
+  @Column(name = "rh_sketch")
+  private byte[] rhSketch;
+
+  @JsonIgnore
+  @Column(name = "echo_sketch")
+  private byte[] echoSketch;
+
+  @JsonIgnore
+  @Column(name = "speed_sketch")
+  private byte[] speedSketch;
+
+  // Sample standard deviations derived from the stored count, sum and sum of squares
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getV1Stddev() {
+    return FixedPoint.standardDeviation(v1Count, v1SumValue, v1SumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getV2Stddev() {
+    return FixedPoint.standardDeviation(v2Count, v2SumValue, v2SumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getV3Stddev() {
+    return FixedPoint.standardDeviation(v3Count, v3SumValue, v3SumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getV4Stddev() {
+    return FixedPoint.standardDeviation(v4Count, v4SumValue, v4SumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getV5Stddev() {
+    return FixedPoint.standardDeviation(v5Count, v5SumValue, v5SumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getV6Stddev() {
+    return FixedPoint.standardDeviation(v6Count, v6SumValue, v6SumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getV7Stddev() {
+    return FixedPoint.standardDeviation(v7Count, v7SumValue, v7SumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getRhStddev() {
+    return FixedPoint.standardDeviation(rhCount, rhSumValue, rhSumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getTxStddev() {
+    return FixedPoint.standardDeviation(txCount, txSumValue, txSumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getEchoStddev() {
+    return FixedPoint.standardDeviation(echoCount, echoSumValue, echoSumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getRainDStddev() {
+    return FixedPoint.standardDeviation(
+        rainDCount, rainDSumValue, rainDSumSqValue, FixedPoint.SCALE);
+  }
+
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  public BigDecimal getSpeedStddev() {
+    return FixedPoint.standardDeviation(
+        speedCount, speedSumValue, speedSumSqValue, FixedPoint.SCALE);
+  }
+
   @PrePersist
   protected void prePersist() {
     if (this.timeCategory == null) {
@@ -0,0 +1,22 @@
+package com.jack.aquark.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.SuperBuilder;
+
+/** Rollup of one ISO week; {@code obsDate} is its Monday. */
+@Entity
+@Table(
+    name = "weekly_aggregation",
+    uniqueConstraints = {
+      @UniqueConstraint(columnNames = {"station_id", "obs_date", "csq", "time_category"})
+    })
+@Getter
+@Setter
+@SuperBuilder(toBuilder = true)
+@NoArgsConstructor
+public class WeeklyAggregation extends BaseAggregation {}
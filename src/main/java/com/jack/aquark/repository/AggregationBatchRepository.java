@@ -0,0 +1,193 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.dto.AggregateFieldMapping;
+import com.jack.aquark.dto.DailyBucket;
+import com.jack.aquark.dto.SketchFieldMapping;
+import com.jack.aquark.dto.StationHour;
+import com.jack.aquark.entity.BaseAggregation;
+import com.jack.aquark.entity.DailyAggregation;
+import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.MonthlyAggregation;
+import com.jack.aquark.entity.WeeklyAggregation;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Batched writer for aggregation rows. Rows are upserted with one JDBC batch of {@code INSERT ...
+ * ON CONFLICT DO UPDATE} per chunk on each table's unique key, so callers neither read the existing
+ * row first nor copy fields onto a managed entity. Rows whose group lost all of its source rows are
+ * deleted the same way.
+ */
+@Repository
+@AllArgsConstructor
+@Slf4j
+public class AggregationBatchRepository {
+
+  public static final int BATCH_SIZE = 1_000;
+
+  private static final String HOURLY_SQL =
+      upsertSql("hourly_aggregation", "station_id, obs_date, obs_hour, csq, time_category");
+
+  private static final String DATE_KEY = "station_id, obs_date, csq, time_category";
+
+  private static final String DAILY_SQL = upsertSql("daily_aggregation", DATE_KEY);
+
+  private static final String WEEKLY_SQL = upsertSql("weekly_aggregation", DATE_KEY);
+
+  private static final String MONTHLY_SQL = upsertSql("monthly_aggregation", DATE_KEY);
+
+  private static final String DELETE_HOURLY_SQL =
+      "DELETE FROM hourly_aggregation WHERE station_id = ? AND obs_date = ? AND obs_hour = ? AND"
+          + " csq = ? AND time_category = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /** Inserts or overwrites hourly rows, keyed by station, date, hour, csq and category. */
+  public void upsertHourly(List<HourlyAggregation> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    jdbcTemplate.batchUpdate(
+        HOURLY_SQL,
+        rows,
+        BATCH_SIZE,
+        (ps, row) -> {
+          ps.setString(1, row.getStationId());
+          ps.setObject(2, row.getObsDate());
+          ps.setInt(3, row.getObsHour());
+          ps.setString(4, row.getCsq());
+          ps.setString(5, row.getTimeCategory());
+          bindValues(ps, 6, row);
+        });
+    log.debug("Upserted {} hourly aggregation rows", rows.size());
+  }
+
+  /** Deletes the {@code timeCategory} rows of the given hours. */
+  public void deleteHourly(List<StationHour> hours, String timeCategory) {
+    if (hours.isEmpty()) {
+      return;
+    }
+    jdbcTemplate.batchUpdate(
+        DELETE_HOURLY_SQL,
+        hours,
+        BATCH_SIZE,
+        (ps, hour) -> {
+          ps.setString(1, hour.stationId());
+          ps.setObject(2, hour.obsDate());
+          ps.setInt(3, hour.obsHour());
+          ps.setString(4, hour.csq());
+          ps.setString(5, timeCategory);
+        });
+    log.debug("Deleted {} hourly aggregation rows of category {}", hours.size(), timeCategory);
+  }
+
+  /** Inserts or overwrites daily rows, keyed by station, date, csq and category. */
+  public void upsertDaily(List<DailyAggregation> rows) {
+    upsertByDate(DAILY_SQL, rows);
+    log.debug("Upserted {} daily aggregation rows", rows.size());
+  }
+
+  /** Inserts or overwrites weekly rows, keyed by station, week start, csq and category. */
+  public void upsertWeekly(List<WeeklyAggregation> rows) {
+    upsertByDate(WEEKLY_SQL, rows);
+    log.debug("Upserted {} weekly aggregation rows", rows.size());
+  }
+
+  /** Inserts or overwrites monthly rows, keyed by station, month start, csq and category. */
+  public void upsertMonthly(List<MonthlyAggregation> rows) {
+    upsertByDate(MONTHLY_SQL, rows);
+    log.debug("Upserted {} monthly aggregation rows", rows.size());
+  }
+
+  /** Deletes the daily rows of the given groups. */
+  public void deleteDaily(List<DailyBucket> days) {
+    deleteByDate("daily_aggregation", days);
+  }
+
+  /** Deletes the weekly rows of the given groups, each keyed by the first day of its week. */
+  public void deleteWeekly(List<DailyBucket> weeks) {
+    deleteByDate("weekly_aggregation", weeks);
+  }
+
+  /** Deletes the monthly rows of the given groups, each keyed by the first day of its month. */
+  public void deleteMonthly(List<DailyBucket> months) {
+    deleteByDate("monthly_aggregation", months);
+  }
+
+  private void deleteByDate(String table, List<DailyBucket> buckets) {
+    if (buckets.isEmpty()) {
+      return;
+    }
+    jdbcTemplate.batchUpdate(
+        "DELETE FROM "
+            + table
+            + " WHERE station_id = ? AND obs_date = ? AND csq = ? AND time_category = ?",
+        buckets,
+        BATCH_SIZE,
+        (ps, bucket) -> {
+          ps.setString(1, bucket.stationId());
+          ps.setObject(2, bucket.obsDate());
+          ps.setString(3, bucket.csq());
+          ps.setString(4, bucket.timeCategory());
+        });
+    log.debug("Deleted {} {} rows", buckets.size(), table);
+  }
+
+  private void upsertByDate(String sql, List<? extends BaseAggregation> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    jdbcTemplate.batchUpdate(
+        sql,
+        rows,
+        BATCH_SIZE,
+        (ps, row) -> {
+          ps.setString(1, row.getStationId());
+          ps.setObject(2, row.getObsDate());
+          ps.setString(3, row.getCsq());
+          ps.setString(4, row.getTimeCategory());
+          bindValues(ps, 5, row);
+        });
+  }
+
+  private static String upsertSql(String table, String keyColumns) {
+    int columns =
+        keyColumns.split(",").length
+            + AggregationSqlRepository.MEASUREMENTS.size()
+                * AggregationSqlRepository.STATE_COLUMNS.size()
+            + AggregationSqlRepository.SKETCH_COLUMNS.size();
+    return "INSERT INTO "
+        + table
+        + " ("
+        + keyColumns
+        + ", "
+        + AggregationSqlRepository.targetColumns()
+        + ") VALUES ("
+        + "?, ".repeat(columns - 1)
+        + "?) ON CONFLICT ("
+        + keyColumns
+        + ") DO UPDATE SET "
+        + AggregationSqlRepository.updates();
+  }
+
+  // Same order as AggregationSqlRepository.targetColumns()
+  private static void bindValues(PreparedStatement ps, int i, BaseAggregation row)
+      throws SQLException {
+    for (AggregateFieldMapping field : AggregateFieldMapping.FIELDS) {
+      ps.setLong(i++, field.countGetter().applyAsLong(row));
+      ps.setBigDecimal(i++, field.sumGetter().apply(row));
+      ps.setBigDecimal(i++, field.avgGetter().apply(row));
+      ps.setBigDecimal(i++, field.minGetter().apply(row));
+      ps.setBigDecimal(i++, field.maxGetter().apply(row));
+      ps.setBigDecimal(i++, field.sumSqGetter().apply(row));
+    }
+    for (SketchFieldMapping field : SketchFieldMapping.SKETCHED) {
+      ps.setBytes(i++, field.sketchGetter().apply(row));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.jack.aquark.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Watermark over {@code sensor_data} ids for {@code aggregation.feed: WATERMARK}. Ids are handed
+ * out when a row is inserted but become visible when its transaction commits, so the highest
+ * visible id alone could skip a row that commits later with a lower one. Every transaction that
+ * writes {@code sensor_data} therefore holds a shared advisory lock until it ends, and the feed
+ * reads the highest id while holding the same lock exclusively: at that moment no writer is in
+ * flight, every id up to it is final, and ingestion resumes as soon as the read is done.
+ */
+@Repository
+@AllArgsConstructor
+@Slf4j
+public class AggregationFeedRepository {
+
+  // Any key that is the same on every node
+  static final long SNAPSHOT_LOCK = 0x5345_4e53_4f52L;
+
+  private static final String FEED = "sensor_data";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /** Called by writers of {@code sensor_data} before their first insert in a transaction. */
+  public void holdWriterLock() {
+    jdbcTemplate.query(
+        "SELECT pg_advisory_xact_lock_shared(?)", (RowCallbackHandler) rs -> {}, SNAPSHOT_LOCK);
+  }
+
+  /**
+   * The highest id below which no {@code sensor_data} row can still appear. Waits for the writers
+   * in flight and blocks new ones only while the id is read.
+   */
+  public long committedHighId() {
+    return jdbcTemplate.execute(
+        (ConnectionCallback<Long>)
+            con -> {
+              // Session level, so it is released right away rather than with the caller's
+              // transaction
+              execute(con, "SELECT pg_advisory_lock(?)");
+              try (PreparedStatement ps =
+                      con.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM sensor_data");
+                  ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+              } finally {
+                execute(con, "SELECT pg_advisory_unlock(?)");
+              }
+            });
+  }
+
+  /**
+   * The id the last run stopped at. The row stays locked until the caller's transaction ends, so
+   * runs on different nodes take turns.
+   */
+  public long lockLastAggregatedId() {
+    return jdbcTemplate.queryForObject(
+        "SELECT last_id FROM aggregation_watermark WHERE feed = ? FOR UPDATE", Long.class, FEED);
+  }
+
+  public void advance(long lastId) {
+    jdbcTemplate.update(
+        "UPDATE aggregation_watermark SET last_id = ?, updated_at = now() WHERE feed = ?",
+        lastId,
+        FEED);
+    log.debug("Aggregation watermark advanced to id {}", lastId);
+  }
+
+  private static void execute(Connection con, String sql) throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement(sql)) {
+      ps.setLong(1, SNAPSHOT_LOCK);
+      ps.execute();
+    }
+  }
+}
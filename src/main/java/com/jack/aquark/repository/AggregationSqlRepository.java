@@ -0,0 +1,310 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.dto.AggregateFieldMapping;
+import com.jack.aquark.dto.DailyBucket;
+import com.jack.aquark.dto.RollupPeriod;
+import com.jack.aquark.dto.SketchFieldMapping;
+import com.jack.aquark.util.TariffCalendar;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Hourly, daily, weekly and monthly rollups computed inside PostgreSQL. Each tier is a single
+ * {@code INSERT ... SELECT ... GROUP BY ... ON CONFLICT DO UPDATE}, so raw readings never leave the
+ * database. Results follow the Java engine: nulls are skipped, empty groups yield a zero sum and
+ * average and no minimum or maximum, and averages are rounded half-up to two places. Quantile
+ * sketches are built and merged by the {@code sketch_build} and {@code sketch_merge} functions. A
+ * recomputed group without source rows left, such as a category an hour no longer has readings in
+ * after a calendar change, has its row deleted in the same statement.
+ */
+@Repository
+@AllArgsConstructor
+@Slf4j
+public class AggregationSqlRepository {
+
+  static final List<String> MEASUREMENTS =
+      AggregateFieldMapping.FIELDS.stream().map(AggregateFieldMapping::column).toList();
+
+  // Per measurement, in the order of targetColumns()
+  static final List<String> STATE_COLUMNS =
+      List.of("count", "sum_value", "avg_value", "min_value", "max_value", "sum_sq_value");
+
+  // After the state columns in targetColumns()
+  static final List<String> SKETCH_COLUMNS =
+      SketchFieldMapping.SKETCHED.stream().map(SketchFieldMapping::column).toList();
+
+  // Same masks as TariffCalendar.isPeak, bound by bindCalendar
+  private static final String TIME_CATEGORY =
+      "tariff_category(s.obs_time, c.first_day, c.day_masks, c.head_masks, c.tail_masks)";
+
+  private static final String HOURLY_COLUMNS =
+      "station_id, obs_date, obs_hour, csq, time_category, " + targetColumns();
+
+  // Recomputes the hours of the readings in %s whose id is in the first parameter, classified by
+  // the calendar in the following four. Rows of categories an hour no longer has readings in, as
+  // after a calendar change, are deleted, and the days of both categories are returned.
+  private static final String HOURLY_SQL =
+      "WITH t AS (SELECT DISTINCT station_id, csq, date_trunc('hour', obs_time) AS hour_start"
+          + "       FROM %s WHERE id = ANY (?)),"
+          + " c AS (SELECT ?::date AS first_day, ?::bigint[] AS day_masks,"
+          + "   ?::bigint[] AS head_masks, ?::bigint[] AS tail_masks),"
+          + " a ("
+          + HOURLY_COLUMNS
+          + ") AS (SELECT s.station_id, s.obs_time::date, EXTRACT(HOUR FROM s.obs_time)::int,"
+          + " s.csq, "
+          + TIME_CATEGORY
+          + ", "
+          + aggregates(
+              "COUNT(s.%1$s)",
+              "COALESCE(SUM(s.%1$s), 0)",
+              "COALESCE(ROUND(AVG(s.%1$s), 2), 0)",
+              "MIN(s.%1$s)",
+              "MAX(s.%1$s)",
+              "COALESCE(SUM(s.%1$s * s.%1$s), 0)")
+          + ", "
+          + sketches("sketch_build(array_agg(s.%1$s))")
+          + "   FROM sensor_data s JOIN t"
+          + "   ON s.station_id = t.station_id AND s.csq = t.csq"
+          + "   AND s.obs_time >= t.hour_start AND s.obs_time < t.hour_start + INTERVAL '1 hour'"
+          + "   CROSS JOIN c"
+          + "   GROUP BY 1, 2, 3, 4, 5),"
+          + " stale AS (DELETE FROM hourly_aggregation h USING t"
+          + "   WHERE h.station_id = t.station_id AND h.csq = t.csq"
+          + "   AND h.obs_date = t.hour_start::date"
+          + "   AND h.obs_hour = EXTRACT(HOUR FROM t.hour_start)::int"
+          + "   AND NOT EXISTS (SELECT 1 FROM a WHERE a.station_id = h.station_id"
+          + "     AND a.obs_date = h.obs_date AND a.obs_hour = h.obs_hour AND a.csq = h.csq"
+          + "     AND a.time_category = h.time_category)),"
+          + " upserted AS (INSERT INTO hourly_aggregation ("
+          + HOURLY_COLUMNS
+          + ") SELECT * FROM a"
+          + "   ON CONFLICT (station_id, obs_date, obs_hour, csq, time_category) DO UPDATE SET "
+          + updates()
+          + ")"
+          + " SELECT DISTINCT t.station_id, t.hour_start::date AS obs_date, t.csq, k.time_category"
+          + " FROM t CROSS JOIN (VALUES ('"
+          + TariffCalendar.PEAK
+          + "'), ('"
+          + TariffCalendar.OFFPEAK
+          + "')) AS k(time_category)";
+
+  private static final String STAGED_HOURLY_SQL = HOURLY_SQL.formatted("temp_sensor_data");
+
+  private static final String FEED_HOURLY_SQL = HOURLY_SQL.formatted("sensor_data");
+
+  // Merges the state of finer rows "f"; the average is the mean of all of the underlying readings
+  private static final String MERGED_STATE =
+      aggregates(
+              "SUM(f.%1$s_count)",
+              "COALESCE(SUM(f.%1$s_sum_value), 0)",
+              "COALESCE(ROUND(SUM(f.%1$s_sum_value) / NULLIF(SUM(f.%1$s_count), 0), 2), 0)",
+              "MIN(f.%1$s_min_value)",
+              "MAX(f.%1$s_max_value)",
+              "COALESCE(SUM(f.%1$s_sum_sq_value), 0)")
+          + ", "
+          + sketches("sketch_merge(array_agg(f.%1$s_sketch))");
+
+  // Joins the finer rows "f" of the group "d"
+  private static final String DAILY_GROUP =
+      "f.station_id = d.station_id AND f.obs_date = d.obs_date"
+          + " AND f.csq = d.csq AND f.time_category = d.time_category";
+
+  // Days left without hourly rows lose their daily row
+  private static final String DAILY_SQL =
+      "WITH d AS (SELECT * FROM unnest(?::text[], ?::date[], ?::text[], ?::text[])"
+          + "   AS d(station_id, obs_date, csq, time_category)),"
+          + " stale AS (DELETE FROM daily_aggregation x USING d"
+          + "   WHERE x.station_id = d.station_id AND x.obs_date = d.obs_date"
+          + "   AND x.csq = d.csq AND x.time_category = d.time_category"
+          + "   AND NOT EXISTS (SELECT 1 FROM hourly_aggregation f WHERE "
+          + DAILY_GROUP
+          + "))"
+          + " INSERT INTO daily_aggregation (station_id, obs_date, csq, time_category, "
+          + targetColumns()
+          + ") SELECT f.station_id, f.obs_date, f.csq, f.time_category, "
+          + MERGED_STATE
+          + " FROM hourly_aggregation f JOIN d ON "
+          + DAILY_GROUP
+          + " GROUP BY 1, 2, 3, 4"
+          + " ON CONFLICT (station_id, obs_date, csq, time_category) DO UPDATE SET "
+          + updates();
+
+  private static final Map<RollupPeriod, String> PERIOD_SQL = new EnumMap<>(RollupPeriod.class);
+
+  static {
+    PERIOD_SQL.put(RollupPeriod.WEEK, periodSql("weekly_aggregation", "week"));
+    PERIOD_SQL.put(RollupPeriod.MONTH, periodSql("monthly_aggregation", "month"));
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * Recomputes every hourly bucket that contains one of the given staged readings from all of its
+   * rows in {@code sensor_data}, splitting each into the time categories of {@code calendar} and
+   * deleting its rows of categories that no longer have readings.
+   *
+   * @return the daily groups of every category of the recomputed hours
+   */
+  public Set<DailyBucket> aggregateHours(Collection<Long> stagedIds, TariffCalendar calendar) {
+    return aggregateHours(STAGED_HOURLY_SQL, stagedIds, calendar);
+  }
+
+  /** Same as {@link #aggregateHours} for readings identified by their {@code sensor_data} id. */
+  public Set<DailyBucket> aggregateHoursOfReadings(
+      Collection<Long> readingIds, TariffCalendar calendar) {
+    return aggregateHours(FEED_HOURLY_SQL, readingIds, calendar);
+  }
+
+  private Set<DailyBucket> aggregateHours(
+      String sql, Collection<Long> ids, TariffCalendar calendar) {
+    if (ids.isEmpty()) {
+      return Set.of();
+    }
+    Set<DailyBucket> dirtyDays = new LinkedHashSet<>();
+    jdbcTemplate.query(
+        con -> {
+          PreparedStatement ps = con.prepareStatement(sql);
+          ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+          ps.setObject(2, calendar.firstDay());
+          ps.setArray(3, bigintArray(con, calendar.dayMasks()));
+          ps.setArray(4, bigintArray(con, calendar.headWeekMasks()));
+          ps.setArray(5, bigintArray(con, calendar.tailWeekMasks()));
+          return ps;
+        },
+        rs -> {
+          dirtyDays.add(
+              new DailyBucket(
+                  rs.getString("station_id"),
+                  rs.getObject("obs_date", LocalDate.class),
+                  rs.getString("csq"),
+                  rs.getString("time_category")));
+        });
+    log.debug("SQL hourly aggregation touched {} daily groups", dirtyDays.size());
+    return dirtyDays;
+  }
+
+  /** Recomputes the given daily groups from their hourly rows, deleting those left without any. */
+  public int aggregateDays(Collection<DailyBucket> days) {
+    if (days.isEmpty()) {
+      return 0;
+    }
+    return jdbcTemplate.update(
+        con -> {
+          PreparedStatement ps = con.prepareStatement(DAILY_SQL);
+          ps.setArray(1, textArray(con, days, DailyBucket::stationId));
+          ps.setArray(2, textArray(con, days, day -> day.obsDate().toString()));
+          ps.setArray(3, textArray(con, days, DailyBucket::csq));
+          ps.setArray(4, textArray(con, days, DailyBucket::timeCategory));
+          return ps;
+        });
+  }
+
+  /**
+   * Recomputes the weekly or monthly rows containing the given days from all of the daily rows of
+   * those periods, deleting those left without any.
+   */
+  public int aggregatePeriods(RollupPeriod period, Collection<DailyBucket> days) {
+    if (days.isEmpty()) {
+      return 0;
+    }
+    return jdbcTemplate.update(
+        con -> {
+          PreparedStatement ps = con.prepareStatement(PERIOD_SQL.get(period));
+          ps.setArray(1, textArray(con, days, DailyBucket::stationId));
+          ps.setArray(2, textArray(con, days, day -> day.obsDate().toString()));
+          ps.setArray(3, textArray(con, days, DailyBucket::csq));
+          ps.setArray(4, textArray(con, days, DailyBucket::timeCategory));
+          return ps;
+        });
+  }
+
+  private static Array textArray(
+      Connection con, Collection<DailyBucket> days, Function<DailyBucket, String> field)
+      throws SQLException {
+    return con.createArrayOf("text", days.stream().map(field).toArray());
+  }
+
+  private static Array bigintArray(Connection con, long[] values) throws SQLException {
+    return con.createArrayOf("bigint", Arrays.stream(values).boxed().toArray());
+  }
+
+  // date_trunc('week') starts weeks on Monday, as RollupPeriod.WEEK does. Periods left without
+  // daily rows lose their row.
+  private static String periodSql(String table, String unit) {
+    String periodGroup =
+        "f.station_id = p.station_id AND f.csq = p.csq AND f.time_category = p.time_category"
+            + " AND f.obs_date >= p.period_start"
+            + " AND f.obs_date < (p.period_start + INTERVAL '1 "
+            + unit
+            + "')::date";
+    return "WITH p AS (SELECT DISTINCT station_id, date_trunc('"
+        + unit
+        + "', obs_date)::date AS period_start, csq, time_category"
+        + "       FROM unnest(?::text[], ?::date[], ?::text[], ?::text[])"
+        + "         AS d(station_id, obs_date, csq, time_category)),"
+        + " stale AS (DELETE FROM "
+        + table
+        + " x USING p"
+        + "   WHERE x.station_id = p.station_id AND x.obs_date = p.period_start"
+        + "   AND x.csq = p.csq AND x.time_category = p.time_category"
+        + "   AND NOT EXISTS (SELECT 1 FROM daily_aggregation f WHERE "
+        + periodGroup
+        + "))"
+        + " INSERT INTO "
+        + table
+        + " (station_id, obs_date, csq, time_category, "
+        + targetColumns()
+        + ") SELECT p.station_id, p.period_start, p.csq, p.time_category, "
+        + MERGED_STATE
+        + " FROM p JOIN daily_aggregation f ON "
+        + periodGroup
+        + " GROUP BY 1, 2, 3, 4"
+        + " ON CONFLICT (station_id, obs_date, csq, time_category) DO UPDATE SET "
+        + updates();
+  }
+
+  static String targetColumns() {
+    return Stream.concat(stateColumns(), SKETCH_COLUMNS.stream()).collect(Collectors.joining(", "));
+  }
+
+  private static Stream<String> stateColumns() {
+    return MEASUREMENTS.stream().flatMap(m -> STATE_COLUMNS.stream().map(c -> m + "_" + c));
+  }
+
+  // One expression per state column, each a format string taking the measurement name
+  private static String aggregates(String... expressions) {
+    return MEASUREMENTS.stream()
+        .flatMap(m -> Arrays.stream(expressions).map(e -> e.formatted(m)))
+        .collect(Collectors.joining(", "));
+  }
+
+  // One format string taking the sketched field's name
+  private static String sketches(String expression) {
+    return SketchFieldMapping.SKETCHED.stream()
+        .map(field -> expression.formatted(field.field()))
+        .collect(Collectors.joining(", "));
+  }
+
+  static String updates() {
+    return Stream.concat(stateColumns(), SKETCH_COLUMNS.stream())
+        .map(column -> column + " = EXCLUDED." + column)
+        .collect(Collectors.joining(", "));
+  }
+}
@@ -11,4 +11,7 @@ public interface DailyAggregationRepository extends JpaRepository<DailyAggregati
 
   Optional<DailyAggregation> findByStationIdAndObsDateAndCsqAndTimeCategory(
       String stationId, LocalDate obsDate, String csq, String timeCategory);
+
+  List<DailyAggregation> findByStationIdAndCsqAndTimeCategoryAndObsDateBetween(
+      String stationId, String csq, String timeCategory, LocalDate start, LocalDate end);
 }
@@ -9,6 +9,9 @@ import org.springframework.data.jpa.repository.JpaRepository;
 public interface HourlyAggregationRepository extends JpaRepository<HourlyAggregation, Long> {
   List<HourlyAggregation> findByObsDateBetween(LocalDate start, LocalDate end);
 
+  List<HourlyAggregation> findByStationIdAndObsDateAndCsqAndTimeCategory(
+      String stationId, LocalDate obsDate, String csq, String timeCategory);
+
   Optional<HourlyAggregation> findByStationIdAndObsDateAndObsHourAndCsqAndTimeCategory(
       String stationId, LocalDate obsDate, int obsHour, String csq, String timeCategory);
 }
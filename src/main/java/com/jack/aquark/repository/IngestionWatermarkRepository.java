@@ -0,0 +1,46 @@
+package com.jack.aquark.repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/** Per-source, per-station high-water mark of committed observation times. */
+@Repository
+@AllArgsConstructor
+public class IngestionWatermarkRepository {
+
+  private static final String UPSERT_SQL =
+      "INSERT INTO ingestion_watermark (source, station_id, max_obs_time) VALUES (?, ?, ?) "
+          + "ON CONFLICT (source, station_id) DO UPDATE "
+          + "SET max_obs_time = GREATEST(ingestion_watermark.max_obs_time, EXCLUDED.max_obs_time)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public Map<String, LocalDateTime> findBySource(String source) {
+    Map<String, LocalDateTime> watermarks = new HashMap<>();
+    jdbcTemplate.query(
+        "SELECT station_id, max_obs_time FROM ingestion_watermark WHERE source = ?",
+        rs -> {
+          watermarks.put(
+              rs.getString("station_id"), rs.getObject("max_obs_time", LocalDateTime.class));
+        },
+        source);
+    return watermarks;
+  }
+
+  /** Moves each station's watermark forward; never moves it back. */
+  public void advance(String source, Map<String, LocalDateTime> maxObsTimeByStation) {
+    if (maxObsTimeByStation.isEmpty()) {
+      return;
+    }
+    List<Object[]> rows = new ArrayList<>(maxObsTimeByStation.size());
+    maxObsTimeByStation.forEach(
+        (stationId, obsTime) -> rows.add(new Object[] {source, stationId, obsTime}));
+    jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+  }
+}
@@ -0,0 +1,10 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.entity.MonthlyAggregation;
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MonthlyAggregationRepository extends JpaRepository<MonthlyAggregation, Long> {
+  List<MonthlyAggregation> findByObsDateBetween(LocalDate start, LocalDate end);
+}
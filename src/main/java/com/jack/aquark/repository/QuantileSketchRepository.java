@@ -0,0 +1,105 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.dto.SketchFieldMapping;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads quantile sketches of a time range merged inside PostgreSQL. The range is covered with daily
+ * rows for its whole days and hourly rows for the partial days at either end, so the work depends
+ * on the number of days rather than on the number of readings.
+ */
+@Repository
+@AllArgsConstructor
+public class QuantileSketchRepository {
+
+  // %1$s is the sketch column; hourly pieces are (date, first hour, end hour exclusive)
+  private static final String MERGED_SKETCH_SQL =
+      "SELECT sketch_merge(array_agg(x.sketch)) FROM ("
+          + " SELECT h.%1$s AS sketch FROM hourly_aggregation h"
+          + " JOIN unnest(?::date[], ?::int[], ?::int[]) AS p(obs_date, from_hour, to_hour)"
+          + " ON h.obs_date = p.obs_date AND h.obs_hour >= p.from_hour AND h.obs_hour < p.to_hour"
+          + " WHERE h.station_id = ?"
+          + " UNION ALL"
+          + " SELECT d.%1$s FROM daily_aggregation d"
+          + " WHERE d.station_id = ? AND d.obs_date >= ? AND d.obs_date < ?) x";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * Merges the sketches of {@code field} over the station's hourly buckets that start at or after
+   * {@code from} and before {@code to}, across every csq and time category.
+   *
+   * @return the serialized sketch, or {@code null} if the range holds no values
+   */
+  public byte[] mergedSketch(
+      String stationId, SketchFieldMapping field, LocalDateTime from, LocalDateTime to) {
+    LocalDateTime start = from.truncatedTo(ChronoUnit.HOURS);
+    if (start.isBefore(from)) {
+      start = start.plusHours(1);
+    }
+    LocalDateTime end = to.truncatedTo(ChronoUnit.HOURS);
+    if (end.isBefore(to)) {
+      end = end.plusHours(1);
+    }
+    if (!start.isBefore(end)) {
+      return null;
+    }
+
+    LocalDate firstDay =
+        start.toLocalTime().equals(LocalTime.MIDNIGHT)
+            ? start.toLocalDate()
+            : start.toLocalDate().plusDays(1);
+    LocalDate endDay = end.toLocalDate();
+    List<HourPiece> pieces = new ArrayList<>();
+    if (firstDay.isBefore(endDay)) {
+      addPieces(pieces, start, firstDay.atStartOfDay());
+      addPieces(pieces, endDay.atStartOfDay(), end);
+    } else {
+      // No whole day in the range
+      addPieces(pieces, start, end);
+      firstDay = endDay;
+    }
+
+    LocalDate daysFrom = firstDay;
+    return jdbcTemplate.query(
+        con -> {
+          PreparedStatement ps = con.prepareStatement(MERGED_SKETCH_SQL.formatted(field.column()));
+          ps.setArray(
+              1,
+              con.createArrayOf("text", pieces.stream().map(p -> p.date().toString()).toArray()));
+          ps.setArray(
+              2, con.createArrayOf("integer", pieces.stream().map(HourPiece::fromHour).toArray()));
+          ps.setArray(
+              3, con.createArrayOf("integer", pieces.stream().map(HourPiece::toHour).toArray()));
+          ps.setString(4, stationId);
+          ps.setString(5, stationId);
+          ps.setObject(6, daysFrom);
+          ps.setObject(7, endDay);
+          return ps;
+        },
+        rs -> rs.next() ? rs.getBytes(1) : null);
+  }
+
+  // Splits [from, to) into one piece per calendar day
+  private static void addPieces(List<HourPiece> pieces, LocalDateTime from, LocalDateTime to) {
+    LocalDateTime cursor = from;
+    while (cursor.isBefore(to)) {
+      LocalDateTime nextDay = cursor.toLocalDate().plusDays(1).atStartOfDay();
+      LocalDateTime pieceEnd = nextDay.isBefore(to) ? nextDay : to;
+      int toHour = pieceEnd.equals(nextDay) ? 24 : pieceEnd.getHour();
+      pieces.add(new HourPiece(cursor.toLocalDate(), cursor.getHour(), toHour));
+      cursor = pieceEnd;
+    }
+  }
+
+  private record HourPiece(LocalDate date, int fromHour, int toHour) {}
+}
@@ -0,0 +1,182 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.entity.SensorData;
+import jakarta.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Set-based writer for raw readings. Each chunk is written to {@code sensor_data} with a single
+ * multi-row insert that ignores conflicts, and only the rows PostgreSQL actually inserted are
+ * copied on to {@code temp_sensor_data} for aggregation, unless aggregation follows the {@link
+ * AggregationFeedRepository watermark} instead.
+ */
+@Repository
+@AllArgsConstructor
+@Slf4j
+public class SensorDataBatchRepository {
+
+  private static final String COLUMNS =
+      "station_id, obs_time, csq, time_category, "
+          + "v1, v2, v3, v4, v5, v6, v7, rh, tx, echo, rain_d, speed";
+  private static final int COLUMN_COUNT = 16;
+
+  // PostgreSQL accepts at most 65535 bind parameters per statement.
+  private static final int MAX_ROWS_PER_STATEMENT = 65535 / COLUMN_COUNT;
+
+  private static final int KEY_SCAN_FETCH_SIZE = 10_000;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final AggregationFeedRepository aggregationFeedRepository;
+  private final AggregationProperties aggregationProperties;
+
+  /**
+   * Inserts the given readings, skipping those whose (station_id, obs_time, csq) already exists,
+   * and stages the newly inserted ones in one transaction.
+   *
+   * @return the readings that were really new
+   */
+  @Transactional
+  public List<SensorData> insertNewReadings(List<SensorData> readings) {
+    boolean staging = aggregationProperties.getFeed() == AggregationProperties.Feed.STAGING;
+    if (!staging) {
+      aggregationFeedRepository.holdWriterLock();
+    }
+    List<SensorData> inserted = new ArrayList<>(readings.size());
+    for (int from = 0; from < readings.size(); from += MAX_ROWS_PER_STATEMENT) {
+      List<SensorData> slice =
+          readings.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, readings.size()));
+      inserted.addAll(insertSlice(slice, staging));
+    }
+
+    log.debug("Inserted {} of {} readings into sensor_data", inserted.size(), readings.size());
+    return inserted;
+  }
+
+  private List<SensorData> insertSlice(List<SensorData> slice, boolean staging) {
+    String sql =
+        insertSql("sensor_data", slice.size())
+            + " ON CONFLICT (station_id, obs_time, csq) DO NOTHING"
+            + " RETURNING station_id, obs_time, csq";
+
+    Set<ReadingKey> newKeys = new HashSet<>();
+    jdbcTemplate.query(
+        sql,
+        ps -> bindRows(ps, slice),
+        rs -> {
+          newKeys.add(
+              new ReadingKey(
+                  rs.getString("station_id"),
+                  rs.getObject("obs_time", LocalDateTime.class),
+                  rs.getString("csq")));
+        });
+
+    if (newKeys.isEmpty()) {
+      return List.of();
+    }
+
+    List<SensorData> fresh = new ArrayList<>(newKeys.size());
+    for (SensorData reading : slice) {
+      // remove() so that a key repeated within the slice is only staged once
+      if (newKeys.remove(ReadingKey.of(reading))) {
+        fresh.add(reading);
+      }
+    }
+
+    if (staging) {
+      jdbcTemplate.update(
+          insertSql("temp_sensor_data", fresh.size())
+              + " ON CONFLICT (station_id, obs_time, csq) DO NOTHING",
+          ps -> bindRows(ps, fresh));
+    }
+    return fresh;
+  }
+
+  /**
+   * Streams the key of every row in {@code sensor_data} to {@code consumer} through a server-side
+   * cursor, so the table is never held in memory.
+   *
+   * @return the number of keys read
+   */
+  @Transactional
+  public long forEachReadingKey(ReadingKeyConsumer consumer) {
+    long[] count = {0};
+    jdbcTemplate.query(
+        con -> {
+          PreparedStatement ps =
+              con.prepareStatement("SELECT station_id, obs_time, csq FROM sensor_data");
+          ps.setFetchSize(KEY_SCAN_FETCH_SIZE);
+          return ps;
+        },
+        rs -> {
+          consumer.accept(
+              rs.getString("station_id"),
+              rs.getObject("obs_time", LocalDateTime.class),
+              rs.getString("csq"));
+          count[0]++;
+        });
+    return count[0];
+  }
+
+  private static String insertSql(String table, int rows) {
+    String placeholders = "(" + "?, ".repeat(COLUMN_COUNT - 1) + "?)";
+    StringBuilder sql =
+        new StringBuilder(64 + rows * (placeholders.length() + 2))
+            .append("INSERT INTO ")
+            .append(table)
+            .append(" (")
+            .append(COLUMNS)
+            .append(") VALUES ");
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        sql.append(", ");
+      }
+      sql.append(placeholders);
+    }
+    return sql.toString();
+  }
+
+  private static void bindRows(PreparedStatement ps, List<SensorData> rows) throws SQLException {
+    int i = 1;
+    for (SensorData row : rows) {
+      ps.setString(i++, row.getStationId());
+      ps.setObject(i++, row.getObsTime());
+      ps.setString(i++, row.getCsq());
+      // Same default the entity applies in @PrePersist
+      ps.setString(i++, row.getTimeCategory() != null ? row.getTimeCategory() : "OFFPEAK");
+      ps.setBigDecimal(i++, row.getV1());
+      ps.setBigDecimal(i++, row.getV2());
+      ps.setBigDecimal(i++, row.getV3());
+      ps.setBigDecimal(i++, row.getV4());
+      ps.setBigDecimal(i++, row.getV5());
+      ps.setBigDecimal(i++, row.getV6());
+      ps.setBigDecimal(i++, row.getV7());
+      ps.setBigDecimal(i++, row.getRh());
+      ps.setBigDecimal(i++, row.getTx());
+      ps.setBigDecimal(i++, row.getEcho());
+      ps.setBigDecimal(i++, row.getRainD());
+      ps.setBigDecimal(i++, row.getSpeed());
+    }
+  }
+
+  @FunctionalInterface
+  public interface ReadingKeyConsumer {
+    void accept(String stationId, LocalDateTime obsTime, String csq);
+  }
+
+  private record ReadingKey(String stationId, LocalDateTime obsTime, String csq) {
+    static ReadingKey of(SensorData data) {
+      return new ReadingKey(data.getStationId(), data.getObsTime(), data.getCsq());
+    }
+  }
+}
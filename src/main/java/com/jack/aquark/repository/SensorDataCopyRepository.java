@@ -0,0 +1,204 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.repository.SensorDataBatchRepository.ReadingKeyConsumer;
+import jakarta.transaction.Transactional;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import javax.sql.DataSource;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Bulk loader for raw readings. Rows are streamed with {@code COPY} into a transaction-scoped
+ * staging table and then merged into {@code sensor_data} and {@code temp_sensor_data} with one
+ * de-duplicating statement, so the target tables only ever see set-based inserts. When aggregation
+ * follows the {@link AggregationFeedRepository watermark}, nothing is staged.
+ */
+@Repository
+@AllArgsConstructor
+@Slf4j
+public class SensorDataCopyRepository {
+
+  private static final String COLUMNS =
+      "station_id, obs_time, csq, time_category, "
+          + "v1, v2, v3, v4, v5, v6, v7, rh, tx, echo, rain_d, speed";
+
+  private static final String CREATE_STAGING_SQL =
+      "CREATE TEMP TABLE sensor_data_staging (station_id VARCHAR(50), obs_time TIMESTAMP, csq"
+          + " VARCHAR(20), time_category VARCHAR(20), v1 NUMERIC(19, 4), v2 NUMERIC(19, 4), v3"
+          + " NUMERIC(19, 4), v4 NUMERIC(19, 4), v5 NUMERIC(19, 4), v6 NUMERIC(19, 4), v7"
+          + " NUMERIC(19, 4), rh NUMERIC(19, 4), tx NUMERIC(19, 4), echo NUMERIC(19, 4), rain_d"
+          + " NUMERIC(19, 4), speed NUMERIC(19, 4)) ON COMMIT DROP";
+
+  private static final String COPY_SQL =
+      "COPY sensor_data_staging (" + COLUMNS + ") FROM STDIN WITH (FORMAT csv)";
+
+  // Keep one row per key from the file and insert the ones sensor_data does not have yet
+  private static final String INSERT_SQL =
+      "INSERT INTO sensor_data ("
+          + COLUMNS
+          + ")"
+          + " SELECT DISTINCT ON (station_id, obs_time, csq) "
+          + COLUMNS
+          + " FROM sensor_data_staging ORDER BY station_id, obs_time, csq"
+          + " ON CONFLICT (station_id, obs_time, csq) DO NOTHING";
+
+  // ...and stage exactly those for aggregation
+  private static final String MERGE_SQL =
+      "WITH inserted AS ("
+          + INSERT_SQL
+          + " RETURNING "
+          + COLUMNS
+          + ")"
+          + " INSERT INTO temp_sensor_data ("
+          + COLUMNS
+          + ") SELECT "
+          + COLUMNS
+          + " FROM inserted"
+          + " ON CONFLICT (station_id, obs_time, csq) DO NOTHING"
+          + " RETURNING station_id, obs_time, csq";
+
+  private static final String UNSTAGED_MERGE_SQL =
+      INSERT_SQL + " RETURNING station_id, obs_time, csq";
+
+  private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final DataSource dataSource;
+  private final AggregationFeedRepository aggregationFeedRepository;
+  private final AggregationProperties aggregationProperties;
+
+  /**
+   * Copies {@code readings} into staging and merges them in a single transaction. Each newly
+   * inserted key is reported to {@code insertedKeys}.
+   */
+  @Transactional
+  public ImportCounts importReadings(
+      Iterator<SensorData> readings, ReadingKeyConsumer insertedKeys) {
+    jdbcTemplate.execute(CREATE_STAGING_SQL);
+    long staged = copyToStaging(readings);
+
+    // Taken only now, so a long COPY does not hold up the aggregation feed
+    boolean staging = aggregationProperties.getFeed() == AggregationProperties.Feed.STAGING;
+    if (!staging) {
+      aggregationFeedRepository.holdWriterLock();
+    }
+    long[] inserted = {0};
+    jdbcTemplate.query(
+        staging ? MERGE_SQL : UNSTAGED_MERGE_SQL,
+        rs -> {
+          insertedKeys.accept(
+              rs.getString("station_id"),
+              rs.getObject("obs_time", LocalDateTime.class),
+              rs.getString("csq"));
+          inserted[0]++;
+        });
+
+    log.debug("Merged {} of {} staged readings into sensor_data", inserted[0], staged);
+    return new ImportCounts(staged, inserted[0]);
+  }
+
+  private long copyToStaging(Iterator<SensorData> readings) {
+    // The transaction's connection, so the temp table and the merge see the copied rows
+    Connection connection = DataSourceUtils.getConnection(dataSource);
+    CopyIn copyIn = null;
+    try {
+      copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+      StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 512);
+      while (readings.hasNext()) {
+        appendCsvRow(buffer, readings.next());
+        if (buffer.length() >= COPY_BUFFER_SIZE) {
+          flush(copyIn, buffer);
+        }
+      }
+      flush(copyIn, buffer);
+      return copyIn.endCopy();
+    } catch (SQLException | RuntimeException e) {
+      cancelQuietly(copyIn);
+      throw e instanceof RuntimeException re
+          ? re
+          : new IllegalStateException("COPY into sensor_data_staging failed", e);
+    } finally {
+      DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+  }
+
+  private static void flush(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+    copyIn.writeToCopy(bytes, 0, bytes.length);
+    buffer.setLength(0);
+  }
+
+  private static void cancelQuietly(CopyIn copyIn) {
+    if (copyIn != null && copyIn.isActive()) {
+      try {
+        copyIn.cancelCopy();
+      } catch (SQLException e) {
+        log.warn("Failed to cancel COPY", e);
+      }
+    }
+  }
+
+  static void appendCsvRow(StringBuilder out, SensorData row) {
+    appendText(out, row.getStationId());
+    out.append(',').append(row.getObsTime());
+    out.append(',');
+    appendText(out, row.getCsq());
+    out.append(',');
+    // Same default the entity applies in @PrePersist
+    appendText(out, row.getTimeCategory() != null ? row.getTimeCategory() : "OFFPEAK");
+    appendNumber(out, row.getV1());
+    appendNumber(out, row.getV2());
+    appendNumber(out, row.getV3());
+    appendNumber(out, row.getV4());
+    appendNumber(out, row.getV5());
+    appendNumber(out, row.getV6());
+    appendNumber(out, row.getV7());
+    appendNumber(out, row.getRh());
+    appendNumber(out, row.getTx());
+    appendNumber(out, row.getEcho());
+    appendNumber(out, row.getRainD());
+    appendNumber(out, row.getSpeed());
+    out.append('\n');
+  }
+
+  // Quoted so that an empty string is not read back as NULL
+  private static void appendText(StringBuilder out, String value) {
+    if (value == null) {
+      return;
+    }
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        out.append('"');
+      }
+      out.append(c);
+    }
+    out.append('"');
+  }
+
+  // An unquoted empty field is NULL in CSV COPY
+  private static void appendNumber(StringBuilder out, BigDecimal value) {
+    out.append(',');
+    if (value != null) {
+      out.append(value.toPlainString());
+    }
+  }
+
+  public record ImportCounts(long staged, long inserted) {}
+}
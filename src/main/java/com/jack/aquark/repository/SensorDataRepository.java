@@ -1,6 +1,7 @@
 package com.jack.aquark.repository;
 
 import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.repository.TempSensorDataRepository.StagedReading;
 import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -11,5 +12,15 @@ public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
   List<SensorData> findAllByObsTimeBetweenOrderByObsTimeAsc(
       LocalDateTime obsTimeAfter, LocalDateTime obsTimeBefore);
 
+  List<SensorData> findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+      String stationId, String csq, LocalDateTime from, LocalDateTime to);
+
   boolean existsByStationIdAndObsTimeAndCsq(String stationId, LocalDateTime obsTime, String csq);
+
+  /** Keys of the readings with {@code afterId < id <= upToId}, for the aggregation feed. */
+  List<StagedReading> findKeysByIdGreaterThanAndIdLessThanEqual(Long afterId, Long upToId);
+
+  /** Keys of the readings of one station and csq in {@code [start, end)}. */
+  List<StagedReading> findKeysByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+      String stationId, String csq, LocalDateTime start, LocalDateTime end);
 }
@@ -0,0 +1,35 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.dto.TariffPeakWindow;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/** Reads the tariff calendar's rules from {@code tariff_peak_window} and {@code tariff_holiday}. */
+@Repository
+@AllArgsConstructor
+public class TariffRuleRepository {
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public List<TariffPeakWindow> findPeakWindows() {
+    return jdbcTemplate.query(
+        "SELECT iso_day_of_week, start_minute, end_minute, effective_from, effective_to"
+            + " FROM tariff_peak_window",
+        (rs, i) ->
+            new TariffPeakWindow(
+                rs.getInt("iso_day_of_week"),
+                rs.getInt("start_minute"),
+                rs.getInt("end_minute"),
+                rs.getObject("effective_from", LocalDate.class),
+                rs.getObject("effective_to", LocalDate.class)));
+  }
+
+  public List<LocalDate> findHolidays() {
+    return jdbcTemplate.query(
+        "SELECT holiday_date FROM tariff_holiday",
+        (rs, i) -> rs.getObject("holiday_date", LocalDate.class));
+  }
+}
@@ -1,8 +1,28 @@
 package com.jack.aquark.repository;
 
 import com.jack.aquark.entity.TempSensorData;
+import java.time.LocalDateTime;
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface TempSensorDataRepository extends JpaRepository<TempSensorData, Long> {}
+public interface TempSensorDataRepository extends JpaRepository<TempSensorData, Long> {
+
+  /** Keys of every staged reading, without loading the measurement columns. */
+  List<StagedReading> findStagedBy();
+
+  /** Keys of the staged readings of one station and csq in {@code [start, end)}. */
+  List<StagedReading> findStagedByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+      String stationId, String csq, LocalDateTime start, LocalDateTime end);
+
+  interface StagedReading {
+    Long getId();
+
+    String getStationId();
+
+    LocalDateTime getObsTime();
+
+    String getCsq();
+  }
+}
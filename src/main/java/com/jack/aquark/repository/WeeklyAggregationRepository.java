@@ -0,0 +1,10 @@
+package com.jack.aquark.repository;
+
+import com.jack.aquark.entity.WeeklyAggregation;
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface WeeklyAggregationRepository extends JpaRepository<WeeklyAggregation, Long> {
+  List<WeeklyAggregation> findByObsDateBetween(LocalDate start, LocalDate end);
+}
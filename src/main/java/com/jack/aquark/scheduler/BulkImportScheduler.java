@@ -0,0 +1,26 @@
+package com.jack.aquark.scheduler;
+
+import com.jack.aquark.dto.BulkImportResult;
+import com.jack.aquark.service.BulkImportService;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+@Slf4j
+public class BulkImportScheduler {
+  private final BulkImportService bulkImportService;
+
+  @Scheduled(cron = "${bulk-import.cron:-}")
+  public void importPendingFiles() {
+    log.info("=== Starting Bulk Import Job ===");
+
+    List<BulkImportResult> results = bulkImportService.importPendingFiles();
+    long inserted = results.stream().mapToLong(BulkImportResult::insertedCount).sum();
+
+    log.info("=== Bulk Import Job Finished: {} files, {} new rows ===", results.size(), inserted);
+  }
+}
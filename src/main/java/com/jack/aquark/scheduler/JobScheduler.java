@@ -1,8 +1,21 @@
 package com.jack.aquark.scheduler;
 
 import com.jack.aquark.config.ApiUrlProperties;
+import com.jack.aquark.config.FetchProperties;
+import com.jack.aquark.dto.SourceFetchResult;
 import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.IngestionPipelineService;
 import com.jack.aquark.service.SensorDataService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -15,6 +28,8 @@ public class JobScheduler {
   private final ApiUrlProperties apiUrlProperties;
   private final SensorDataService sensorDataService;
   private final AggregationService aggregationService;
+  private final FetchProperties fetchProperties;
+  private final IngestionPipelineService ingestionPipelineService;
 
   @Scheduled(cron = "${scheduling.cron}")
   public void fetchAndAggregate() {
@@ -26,13 +41,144 @@ public class JobScheduler {
     log.info("=== Scheduled Job Finished ===");
   }
 
-  private void fetchNewDataFromApiUrls() {
-    apiUrlProperties
-        .getUrls()
-        .forEach(
-            apiUrl -> {
-              log.info("Fetching and saving sensor data from API URL {}...", apiUrl);
-              sensorDataService.fetchAndSaveSensorData(apiUrl);
-            });
+  List<SourceFetchResult> fetchNewDataFromApiUrls() {
+    if (fetchProperties.getMode() == FetchProperties.Mode.CONCURRENT) {
+      List<SourceFetchResult> results = fetchConcurrently(apiUrlProperties.getUrls());
+      logReport(results);
+      evictCachesIfIncomplete(results);
+      return results;
+    }
+    if (fetchProperties.getMode() == FetchProperties.Mode.PIPELINE) {
+      List<SourceFetchResult> results = ingestionPipelineService.ingest(apiUrlProperties.getUrls());
+      logReport(results);
+      evictCachesIfIncomplete(results);
+      return results;
+    }
+
+    List<SourceFetchResult> results = new ArrayList<>();
+    try {
+      apiUrlProperties
+          .getUrls()
+          .forEach(
+              apiUrl -> {
+                log.info("Fetching and saving sensor data from API URL {}...", apiUrl);
+                long start = System.nanoTime();
+                int stored = sensorDataService.fetchAndSaveSensorData(apiUrl);
+                results.add(SourceFetchResult.succeeded(apiUrl, stored, elapsedMillis(start)));
+              });
+    } catch (RuntimeException e) {
+      sensorDataService.evictCaches();
+      throw e;
+    }
+    return results;
+  }
+
+  /**
+   * A source that failed or timed out may have committed some chunks before it stopped, and the
+   * eviction on its successful return never ran, so the caches are dropped for it here.
+   */
+  private void evictCachesIfIncomplete(List<SourceFetchResult> results) {
+    if (results.stream().anyMatch(r -> r.status() != SourceFetchResult.Status.SUCCEEDED)) {
+      sensorDataService.evictCaches();
+    }
+  }
+
+  /**
+   * Fetches every source on its own virtual thread, at most {@code maxParallelism} at a time.
+   * Reports each source once it has finished, failed or been cancelled after {@code timeout}, but
+   * returns only once every fetch thread has exited, so nothing is staged after aggregation starts.
+   * The timeout therefore does not bound the job: a cancelled fetch blocked in a write that ignores
+   * the interrupt keeps the job waiting until that write returns.
+   */
+  private List<SourceFetchResult> fetchConcurrently(List<String> urls) {
+    int parallelism = Math.max(1, fetchProperties.getMaxParallelism());
+    Semaphore permits = new Semaphore(parallelism);
+    List<Future<SourceFetchResult>> futures = new ArrayList<>(urls.size());
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (String url : urls) {
+        futures.add(executor.submit(() -> fetchWithTimeout(permits, url)));
+      }
+
+      List<SourceFetchResult> results = new ArrayList<>(urls.size());
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException e) {
+          results.add(SourceFetchResult.failed(urls.get(i), 0, e.getCause()));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for source fetches", e);
+        }
+      }
+      awaitFetchThreads(permits, parallelism);
+      return results;
+    }
+  }
+
+  private SourceFetchResult fetchWithTimeout(Semaphore permits, String url)
+      throws InterruptedException {
+    permits.acquire();
+    long start = System.nanoTime();
+    // Run the fetch on its own thread so a hung source can be abandoned at the deadline. The thread
+    // holds the permit until it exits: a cancelled fetch may still be finishing a write.
+    FutureTask<Integer> fetch =
+        new FutureTask<>(() -> sensorDataService.fetchAndSaveSensorData(url));
+    log.info("Fetching and saving sensor data from API URL {}...", url);
+    try {
+      Thread.ofVirtual()
+          .name("fetch-" + url)
+          .start(
+              () -> {
+                try {
+                  fetch.run();
+                } finally {
+                  permits.release();
+                }
+              });
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+    try {
+      int stored = fetch.get(fetchProperties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+      return SourceFetchResult.succeeded(url, stored, elapsedMillis(start));
+    } catch (TimeoutException e) {
+      fetch.cancel(true);
+      return SourceFetchResult.timedOut(url, elapsedMillis(start));
+    } catch (ExecutionException e) {
+      log.error("Fetching sensor data from {} failed", url, e.getCause());
+      return SourceFetchResult.failed(url, elapsedMillis(start), e.getCause());
+    }
+  }
+
+  // Every permit is back once every fetch thread, including cancelled ones, has exited
+  private static void awaitFetchThreads(Semaphore permits, int parallelism) {
+    try {
+      permits.acquire(parallelism);
+      permits.release(parallelism);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for source fetches", e);
+    }
+  }
+
+  private void logReport(List<SourceFetchResult> results) {
+    long failed =
+        results.stream().filter(r -> r.status() != SourceFetchResult.Status.SUCCEEDED).count();
+    for (SourceFetchResult result : results) {
+      log.info(
+          "Source {}: {} in {} ms, {} new rows{}",
+          result.url(),
+          result.status(),
+          result.durationMillis(),
+          result.storedCount(),
+          result.error() == null ? "" : " (" + result.error() + ")");
+    }
+    log.info("Fetched {} sources, {} did not succeed", results.size(), failed);
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
   }
 }
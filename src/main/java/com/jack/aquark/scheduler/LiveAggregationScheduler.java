@@ -0,0 +1,29 @@
+package com.jack.aquark.scheduler;
+
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.service.LiveAggregationService;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+@Slf4j
+public class LiveAggregationScheduler {
+  private final LiveAggregationService liveAggregationService;
+  private final AggregationProperties aggregationProperties;
+
+  @Scheduled(fixedDelayString = "#{@aggregationProperties.live.flushInterval.toMillis()}")
+  public void flushClosedWindows() {
+    if (!aggregationProperties.getLive().isEnabled()) {
+      return;
+    }
+    try {
+      liveAggregationService.flushClosedWindows(LocalDateTime.now());
+    } catch (RuntimeException e) {
+      log.warn("Flushing live aggregation windows failed, retrying on the next run", e);
+    }
+  }
+}
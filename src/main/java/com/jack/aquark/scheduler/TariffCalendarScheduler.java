@@ -0,0 +1,23 @@
+package com.jack.aquark.scheduler;
+
+import com.jack.aquark.service.TariffCalendarService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+@Slf4j
+public class TariffCalendarScheduler {
+  private final TariffCalendarService tariffCalendarService;
+
+  @Scheduled(fixedDelayString = "#{@tariffProperties.refreshInterval.toMillis()}")
+  public void refreshCalendar() {
+    try {
+      tariffCalendarService.refresh();
+    } catch (RuntimeException e) {
+      log.warn("Refreshing the tariff calendar failed, keeping the previous one", e);
+    }
+  }
+}
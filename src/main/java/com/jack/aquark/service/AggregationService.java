@@ -1,18 +1,37 @@
 package com.jack.aquark.service;
 
+import com.jack.aquark.dto.DailyBucket;
+import com.jack.aquark.dto.StationHour;
 import com.jack.aquark.entity.HourlyAggregation;
 import com.jack.aquark.entity.SensorData;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface AggregationService {
   void saveOrUpdateHourlyAggregation(HourlyAggregation aggregation);
 
-  void aggregateHourlyData();
+  /**
+   * Recomputes the hourly buckets touched by the staged readings.
+   *
+   * @return the daily groups whose hourly rows changed
+   */
+  Set<DailyBucket> aggregateHourlyData();
 
-  void aggregateDailyData();
+  /** Recomputes the given daily groups from their hourly rows. */
+  void aggregateDailyData(Collection<DailyBucket> dirtyDays);
+
+  /** Recomputes the weekly and monthly rows of the periods containing the given days. */
+  void aggregatePeriodData(Collection<DailyBucket> dirtyDays);
 
   void processTempDataForAggregations();
 
+  /**
+   * Runs the readings of the given hours, and only those, through every tier. Staged readings are
+   * cleared, so the next full run has nothing left to do for these hours.
+   */
+  void processStagedHours(Collection<StationHour> hours);
+
   List<SensorData> getSensorDataByTimeRange(LocalDateTime start, LocalDateTime end);
 }
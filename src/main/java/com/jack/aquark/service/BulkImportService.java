@@ -0,0 +1,20 @@
+package com.jack.aquark.service;
+
+import com.jack.aquark.dto.BulkImportResult;
+import java.nio.file.Path;
+import java.util.List;
+
+public interface BulkImportService {
+  /**
+   * Resolves {@code fileName} inside the configured import directory.
+   *
+   * @throws IllegalArgumentException if the name escapes the directory
+   */
+  Path resolveImportFile(String fileName);
+
+  /** Imports one NDJSON or gzipped NDJSON file of {@code RawDataItemDto} lines. */
+  BulkImportResult importFile(Path file);
+
+  /** Imports every pending file in the import directory and renames each one once handled. */
+  List<BulkImportResult> importPendingFiles();
+}
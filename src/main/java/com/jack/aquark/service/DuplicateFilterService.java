@@ -0,0 +1,15 @@
+package com.jack.aquark.service;
+
+import java.time.LocalDateTime;
+
+public interface DuplicateFilterService {
+  /**
+   * @return {@code false} only if the reading is certainly not in {@code sensor_data}; {@code true}
+   *     means it may be and has to be checked against the database
+   */
+  boolean mightContain(String stationId, LocalDateTime obsTime, String csq);
+
+  void put(String stationId, LocalDateTime obsTime, String csq);
+
+  void rebuild();
+}
@@ -0,0 +1,20 @@
+package com.jack.aquark.service;
+
+import com.jack.aquark.dto.RawDataItemDto;
+import java.time.Duration;
+import java.util.List;
+
+public interface IngestionBufferService {
+  /**
+   * Queues a pushed batch for asynchronous persistence. The batch is accepted whole or not at all.
+   *
+   * @return {@code false} when the buffer has no room for the batch or has been stopped
+   */
+  boolean offer(List<RawDataItemDto> items);
+
+  /** Largest batch {@link #offer} can ever accept; larger batches have to be split. */
+  int capacity();
+
+  /** How long a rejected caller should wait before retrying. */
+  Duration retryAfter();
+}
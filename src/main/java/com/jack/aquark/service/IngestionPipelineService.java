@@ -0,0 +1,12 @@
+package com.jack.aquark.service;
+
+import com.jack.aquark.dto.SourceFetchResult;
+import java.util.List;
+
+public interface IngestionPipelineService {
+  /**
+   * Pushes every source through the fetch, parse, map and persist stages and waits until each one
+   * has been stored, has failed or has run past the fetch timeout.
+   */
+  List<SourceFetchResult> ingest(List<String> urls);
+}
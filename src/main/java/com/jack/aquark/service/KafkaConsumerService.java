@@ -0,0 +1,13 @@
+package com.jack.aquark.service;
+
+import java.util.List;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.support.Acknowledgment;
+
+public interface KafkaConsumerService {
+  /**
+   * Persists one poll batch of raw readings and commits its offsets once the database transaction
+   * has committed.
+   */
+  void consumeRawReadings(List<ConsumerRecord<String, String>> records, Acknowledgment ack);
+}
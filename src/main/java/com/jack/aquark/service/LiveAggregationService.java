@@ -0,0 +1,27 @@
+package com.jack.aquark.service;
+
+import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.SensorData;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface LiveAggregationService {
+  /**
+   * Folds readings that were really new into the windows of their hours. Inside a transaction they
+   * are folded once it commits; readings of hours already closed are left to the batch job.
+   */
+  void record(Collection<SensorData> readings);
+
+  /** Hourly rows of the windows in {@code [startDate, endDate]} that have not been flushed yet. */
+  List<HourlyAggregation> openWindows(LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Aggregates the hours whose windows closed before {@code now} through every tier and drops the
+   * windows.
+   *
+   * @return the number of windows flushed
+   */
+  int flushClosedWindows(LocalDateTime now);
+}
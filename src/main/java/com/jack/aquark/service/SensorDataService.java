@@ -1,18 +1,52 @@
 package com.jack.aquark.service;
 
+import com.jack.aquark.dto.PercentileResult;
+import com.jack.aquark.dto.RawDataItemDto;
 import com.jack.aquark.entity.DailyAggregation;
 import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.MonthlyAggregation;
 import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.entity.WeeklyAggregation;
 import java.time.LocalDateTime;
 import java.util.List;
 
 public interface SensorDataService {
-  void fetchAndSaveSensorData(String apiUrl);
+  /**
+   * @return the number of readings from this source that were new
+   */
+  int fetchAndSaveSensorData(String apiUrl);
+
+  int saveRawItems(List<RawDataItemDto> items);
+
+  /**
+   * Drops the cached readings and hourly averages, for a fetch that committed some of its rows and
+   * then failed or was cancelled, so its own eviction never ran.
+   */
+  void evictCaches();
 
   List<HourlyAggregation> getHourlyAverage(LocalDateTime start, LocalDateTime end);
 
   List<DailyAggregation> getDailyAverage(LocalDateTime start, LocalDateTime end);
 
+  /** Weekly rows of every week that overlaps the range. */
+  List<WeeklyAggregation> getWeeklyAverage(LocalDateTime start, LocalDateTime end);
+
+  /** Monthly rows of every month that overlaps the range. */
+  List<MonthlyAggregation> getMonthlyAverage(LocalDateTime start, LocalDateTime end);
+
+  /**
+   * Estimated {@code quantiles} of a sketched field (rh, echo or speed) over the station's hourly
+   * buckets starting in [start, end), merged from stored sketches without reading raw rows.
+   *
+   * @throws IllegalArgumentException if the field has no sketch or a quantile is outside [0, 1]
+   */
+  PercentileResult getPercentiles(
+      String stationId,
+      String field,
+      LocalDateTime start,
+      LocalDateTime end,
+      List<Double> quantiles);
+
   List<SensorData> getPeakTimeData(LocalDateTime start, LocalDateTime end);
 
   List<SensorData> getOffPeakTimeData(LocalDateTime start, LocalDateTime end);
@@ -0,0 +1,13 @@
+package com.jack.aquark.service;
+
+import com.jack.aquark.util.TariffCalendar;
+
+/** Holds the tariff calendar compiled from the rules in the database. */
+public interface TariffCalendarService {
+
+  /** The calendar compiled by the last refresh, compiling it first if there was none. */
+  TariffCalendar current();
+
+  /** Recompiles the calendar from the stored rules and makes it current. */
+  TariffCalendar refresh();
+}
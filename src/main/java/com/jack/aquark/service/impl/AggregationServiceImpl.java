@@ -1,375 +1,507 @@
 package com.jack.aquark.service.impl;
 
-import com.jack.aquark.dto.DailySensorMapping;
-import com.jack.aquark.dto.HourlySensorMapping;
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.dto.AggregateFieldMapping;
+import com.jack.aquark.dto.DailyBucket;
+import com.jack.aquark.dto.RollupPeriod;
+import com.jack.aquark.dto.SketchFieldMapping;
+import com.jack.aquark.dto.StationHour;
+import com.jack.aquark.entity.BaseAggregation;
 import com.jack.aquark.entity.DailyAggregation;
 import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.MonthlyAggregation;
 import com.jack.aquark.entity.SensorData;
-import com.jack.aquark.entity.TempSensorData;
+import com.jack.aquark.entity.WeeklyAggregation;
+import com.jack.aquark.repository.AggregationBatchRepository;
+import com.jack.aquark.repository.AggregationFeedRepository;
+import com.jack.aquark.repository.AggregationSqlRepository;
 import com.jack.aquark.repository.DailyAggregationRepository;
 import com.jack.aquark.repository.HourlyAggregationRepository;
 import com.jack.aquark.repository.SensorDataRepository;
 import com.jack.aquark.repository.TempSensorDataRepository;
+import com.jack.aquark.repository.TempSensorDataRepository.StagedReading;
 import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.FixedPoint;
+import com.jack.aquark.util.QuantileSketch;
+import com.jack.aquark.util.TariffCalendar;
+import com.zaxxer.hikari.HikariDataSource;
 import jakarta.transaction.Transactional;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.DayOfWeek;
-import java.time.LocalDate;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 @AllArgsConstructor
 @Slf4j
 public class AggregationServiceImpl implements AggregationService {
-  // Mappings for hourly aggregation
-  private static final List<HourlySensorMapping> HOURLY_FIELDS =
-      List.of(
-          new HourlySensorMapping(
-              TempSensorData::getV1,
-              HourlyAggregation::setV1SumValue,
-              HourlyAggregation::setV1AvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getV2,
-              HourlyAggregation::setV2SumValue,
-              HourlyAggregation::setV2AvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getV3,
-              HourlyAggregation::setV3SumValue,
-              HourlyAggregation::setV3AvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getV4,
-              HourlyAggregation::setV4SumValue,
-              HourlyAggregation::setV4AvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getV5,
-              HourlyAggregation::setV5SumValue,
-              HourlyAggregation::setV5AvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getV6,
-              HourlyAggregation::setV6SumValue,
-              HourlyAggregation::setV6AvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getV7,
-              HourlyAggregation::setV7SumValue,
-              HourlyAggregation::setV7AvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getRh,
-              HourlyAggregation::setRhSumValue,
-              HourlyAggregation::setRhAvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getTx,
-              HourlyAggregation::setTxSumValue,
-              HourlyAggregation::setTxAvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getEcho,
-              HourlyAggregation::setEchoSumValue,
-              HourlyAggregation::setEchoAvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getRainD,
-              HourlyAggregation::setRainDSumValue,
-              HourlyAggregation::setRainDAvgValue),
-          new HourlySensorMapping(
-              TempSensorData::getSpeed,
-              HourlyAggregation::setSpeedSumValue,
-              HourlyAggregation::setSpeedAvgValue));
-
-  // Mappings for daily aggregation
-  private static final List<DailySensorMapping> DAILY_FIELDS =
-      List.of(
-          new DailySensorMapping(
-              HourlyAggregation::getV1SumValue,
-              HourlyAggregation::getV1AvgValue,
-              DailyAggregation::setV1SumValue,
-              DailyAggregation::setV1AvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getV2SumValue,
-              HourlyAggregation::getV2AvgValue,
-              DailyAggregation::setV2SumValue,
-              DailyAggregation::setV2AvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getV3SumValue,
-              HourlyAggregation::getV3AvgValue,
-              DailyAggregation::setV3SumValue,
-              DailyAggregation::setV3AvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getV4SumValue,
-              HourlyAggregation::getV4AvgValue,
-              DailyAggregation::setV4SumValue,
-              DailyAggregation::setV4AvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getV5SumValue,
-              HourlyAggregation::getV5AvgValue,
-              DailyAggregation::setV5SumValue,
-              DailyAggregation::setV5AvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getV6SumValue,
-              HourlyAggregation::getV6AvgValue,
-              DailyAggregation::setV6SumValue,
-              DailyAggregation::setV6AvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getV7SumValue,
-              HourlyAggregation::getV7AvgValue,
-              DailyAggregation::setV7SumValue,
-              DailyAggregation::setV7AvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getRhSumValue,
-              HourlyAggregation::getRhAvgValue,
-              DailyAggregation::setRhSumValue,
-              DailyAggregation::setRhAvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getTxSumValue,
-              HourlyAggregation::getTxAvgValue,
-              DailyAggregation::setTxSumValue,
-              DailyAggregation::setTxAvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getEchoSumValue,
-              HourlyAggregation::getEchoAvgValue,
-              DailyAggregation::setEchoSumValue,
-              DailyAggregation::setEchoAvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getRainDSumValue,
-              HourlyAggregation::getRainDAvgValue,
-              DailyAggregation::setRainDSumValue,
-              DailyAggregation::setRainDAvgValue),
-          new DailySensorMapping(
-              HourlyAggregation::getSpeedSumValue,
-              HourlyAggregation::getSpeedAvgValue,
-              DailyAggregation::setSpeedSumValue,
-              DailyAggregation::setSpeedAvgValue));
+  private static final int AVG_SCALE = 2;
+  private static final String[] TIME_CATEGORIES = {TariffCalendar.PEAK, TariffCalendar.OFFPEAK};
+  private static final int PEAK_INDEX = 0;
+  private static final int OFFPEAK_INDEX = 1;
+  private static final int DELETE_BATCH_SIZE = 10_000;
+
+  private static final List<AggregateFieldMapping> FIELDS = AggregateFieldMapping.FIELDS;
+  private static final List<SketchFieldMapping> SKETCHED = SketchFieldMapping.SKETCHED;
 
   private final HourlyAggregationRepository hourlyAggregationRepository;
   private final DailyAggregationRepository dailyAggregationRepository;
   private final TempSensorDataRepository tempSensorDataRepository;
   private final SensorDataRepository sensorDataRepository;
+  private final AggregationProperties aggregationProperties;
+  private final AggregationSqlRepository aggregationSqlRepository;
+  private final AggregationBatchRepository aggregationBatchRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final DataSource dataSource;
+  private final AggregationFeedRepository aggregationFeedRepository;
+  private final TariffCalendarService tariffCalendarService;
 
   @Override
   @Transactional
-  public void aggregateHourlyData() {
-    List<TempSensorData> tempData = tempSensorDataRepository.findAll();
+  public Set<DailyBucket> aggregateHourlyData() {
+    return aggregateStagedHours(tempSensorDataRepository.findStagedBy(), true);
+  }
 
-    if (tempData.isEmpty()) {
+  /**
+   * Recomputes the hourly buckets touched by the staged readings. Staging only holds readings that
+   * arrived since the last run, but a bucket may already have older rows in {@code sensor_data}, so
+   * each touched (station, csq, hour) is recomputed from all of its raw readings. The ids are
+   * {@code temp_sensor_data} ids when {@code inStaging}, otherwise {@code sensor_data} ids.
+   */
+  private Set<DailyBucket> aggregateStagedHours(List<StagedReading> staged, boolean inStaging) {
+    if (staged.isEmpty()) {
       log.info("No temporary sensor data available for hourly aggregation.");
-      return;
+      return Set.of();
     }
 
-    // For each record, ensure its time category is set
-    tempData.forEach(
-        tsd -> {
-          String category = determineTimeCategory(tsd.getObsTime());
-          tsd.setTimeCategory(category);
-        });
-
-    // Group by (stationId | date | hour | csq | timeCategory)
-    Map<String, List<TempSensorData>> grouped =
-        tempData.stream()
-            .collect(
-                Collectors.groupingBy(
-                    tsd ->
-                        tsd.getStationId()
-                            + "|"
-                            + tsd.getObsTime().toLocalDate()
-                            + "|"
-                            + tsd.getObsTime().getHour()
-                            + "|"
-                            + tsd.getCsq()
-                            + "|"
-                            + tsd.getTimeCategory()));
-
-    for (var entry : grouped.entrySet()) {
-      String key = entry.getKey();
-      List<TempSensorData> groupRecords = entry.getValue();
-
-      // Parse the key parts
-      String[] parts = key.split("\\|");
-      String stationId = parts[0];
-      LocalDate obsDate = LocalDate.parse(parts[1]);
-      int obsHour = Integer.parseInt(parts[2]);
-      String csq = parts[3];
-      String timeCategory = parts[4];
+    Map<String, List<StagedReading>> byStation = new LinkedHashMap<>();
+    for (StagedReading reading : staged) {
+      byStation.computeIfAbsent(reading.getStationId(), k -> new ArrayList<>()).add(reading);
+    }
 
-      // Build an HourlyAggregation object
-      HourlyAggregation agg = new HourlyAggregation();
-      agg.setStationId(stationId);
-      agg.setObsDate(obsDate);
-      agg.setObsHour(obsHour);
-      agg.setCsq(csq);
-      agg.setTimeCategory(timeCategory);
+    Set<DailyBucket> dirtyDays = new LinkedHashSet<>();
+    runPartitioned(byStation.values(), partition -> aggregateHourlyPartition(partition, inStaging))
+        .forEach(dirtyDays::addAll);
 
-      // Process each sensor mapping for sum and average
-      for (HourlySensorMapping map : HOURLY_FIELDS) {
-        BigDecimal sum =
-            groupRecords.stream()
-                .map(map.rawGetter())
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    log.info(
+        "Hourly aggregation complete. {} day-sets touched by {} staged readings of {} stations.",
+        dirtyDays.size(),
+        staged.size(),
+        byStation.size());
+    return dirtyDays;
+  }
 
-        BigDecimal avg = BigDecimal.ZERO;
-        long count = groupRecords.stream().map(map.rawGetter()).filter(Objects::nonNull).count();
+  // Readings of one station
+  private Set<DailyBucket> aggregateHourlyPartition(List<StagedReading> staged, boolean inStaging) {
+    TariffCalendar calendar = tariffCalendarService.current();
+    if (aggregationProperties.getEngine() == AggregationProperties.Engine.SQL) {
+      List<Long> ids = staged.stream().map(StagedReading::getId).toList();
+      return inStaging
+          ? aggregationSqlRepository.aggregateHours(ids, calendar)
+          : aggregationSqlRepository.aggregateHoursOfReadings(ids, calendar);
+    }
 
-        if (count > 0) {
-          avg = sum.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
-        }
+    Set<StationHour> touched = new LinkedHashSet<>();
+    for (StagedReading reading : staged) {
+      touched.add(StationHour.of(reading.getStationId(), reading.getCsq(), reading.getObsTime()));
+    }
 
-        map.sumSetter().accept(agg, sum);
-        map.avgSetter().accept(agg, avg);
+    // A calendar change may move an hour to the other category, whose old row must go. Either way
+    // the days of both categories are recomputed.
+    Set<DailyBucket> dirtyDays = new LinkedHashSet<>();
+    List<HourlyAggregation> rows = new ArrayList<>();
+    Map<String, List<StationHour>> staleByCategory = new LinkedHashMap<>();
+    for (StationHour hour : touched) {
+      int first = rows.size();
+      aggregateHour(hour, calendar, rows);
+      List<HourlyAggregation> written = rows.subList(first, rows.size());
+      for (String timeCategory : TIME_CATEGORIES) {
+        dirtyDays.add(new DailyBucket(hour.stationId(), hour.obsDate(), hour.csq(), timeCategory));
+        if (written.stream().noneMatch(row -> timeCategory.equals(row.getTimeCategory()))) {
+          staleByCategory.computeIfAbsent(timeCategory, k -> new ArrayList<>()).add(hour);
+        }
+      }
+      if (rows.size() >= AggregationBatchRepository.BATCH_SIZE) {
+        writeHourly(rows, staleByCategory);
       }
+    }
+    writeHourly(rows, staleByCategory);
+    return dirtyDays;
+  }
+
+  private void writeHourly(
+      List<HourlyAggregation> rows, Map<String, List<StationHour>> staleByCategory) {
+    staleByCategory.forEach(
+        (timeCategory, hours) -> aggregationBatchRepository.deleteHourly(hours, timeCategory));
+    aggregationBatchRepository.upsertHourly(rows);
+    staleByCategory.clear();
+    rows.clear();
+  }
 
-      // Upsert into DB
-      saveOrUpdateHourlyAggregation(agg);
+  private void aggregateHour(
+      StationHour hour, TariffCalendar calendar, List<HourlyAggregation> rows) {
+    LocalDateTime start = hour.start();
+    List<SensorData> readings =
+        sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            hour.stationId(), hour.csq(), start, start.plusHours(1));
+
+    // One pass over the readings, one group state per time category. Hours that the calendar
+    // switches within are split between PEAK and OFFPEAK, indexed by position in TIME_CATEGORIES.
+    GroupState[] byCategory = newCategoryStates();
+    for (SensorData sd : readings) {
+      fold(byCategory, sd, calendar);
     }
+    writeHourRows(hour, byCategory, rows);
+  }
 
-    log.info("Hourly aggregation complete. {} grouped sets processed.", grouped.size());
+  /** One slot per time category, filled by {@link #fold} when the category gets a reading. */
+  static GroupState[] newCategoryStates() {
+    return new GroupState[TIME_CATEGORIES.length];
   }
 
-  public void saveOrUpdateHourlyAggregation(HourlyAggregation aggregation) {
-    Optional<HourlyAggregation> optExisting =
-        hourlyAggregationRepository.findByStationIdAndObsDateAndObsHourAndCsqAndTimeCategory(
-            aggregation.getStationId(),
-            aggregation.getObsDate(),
-            aggregation.getObsHour(),
-            aggregation.getCsq(),
-            aggregation.getTimeCategory());
-
-    if (optExisting.isPresent()) {
-      HourlyAggregation existing = optExisting.get();
-      // Copy sensor fields
-      existing.setV1SumValue(aggregation.getV1SumValue());
-      existing.setV1AvgValue(aggregation.getV1AvgValue());
-      existing.setV2SumValue(aggregation.getV2SumValue());
-      existing.setV2AvgValue(aggregation.getV2AvgValue());
-      existing.setV3SumValue(aggregation.getV3SumValue());
-      existing.setV3AvgValue(aggregation.getV3AvgValue());
-      existing.setV4SumValue(aggregation.getV4SumValue());
-      existing.setV4AvgValue(aggregation.getV4AvgValue());
-      existing.setV5SumValue(aggregation.getV5SumValue());
-      existing.setV5AvgValue(aggregation.getV5AvgValue());
-      existing.setV6SumValue(aggregation.getV6SumValue());
-      existing.setV6AvgValue(aggregation.getV6AvgValue());
-      existing.setV7SumValue(aggregation.getV7SumValue());
-      existing.setV7AvgValue(aggregation.getV7AvgValue());
-      existing.setRhSumValue(aggregation.getRhSumValue());
-      existing.setRhAvgValue(aggregation.getRhAvgValue());
-      existing.setTxSumValue(aggregation.getTxSumValue());
-      existing.setTxAvgValue(aggregation.getTxAvgValue());
-      existing.setEchoSumValue(aggregation.getEchoSumValue());
-      existing.setEchoAvgValue(aggregation.getEchoAvgValue());
-      existing.setRainDSumValue(aggregation.getRainDSumValue());
-      existing.setRainDAvgValue(aggregation.getRainDAvgValue());
-      existing.setSpeedSumValue(aggregation.getSpeedSumValue());
-      existing.setSpeedAvgValue(aggregation.getSpeedAvgValue());
-      hourlyAggregationRepository.save(existing);
-      log.debug(
-          "Updated existing HourlyAggregation row for station={}, date={}, hour={}, csq={}, category={}",
-          existing.getStationId(),
-          existing.getObsDate(),
-          existing.getObsHour(),
-          existing.getCsq(),
-          existing.getTimeCategory());
-    } else {
-      hourlyAggregationRepository.save(aggregation);
-      log.debug(
-          "Inserted new HourlyAggregation for station={}, date={}, hour={}, csq={}, category={}",
-          aggregation.getStationId(),
-          aggregation.getObsDate(),
-          aggregation.getObsHour(),
-          aggregation.getCsq(),
-          aggregation.getTimeCategory());
+  /** Adds one reading to the state of its time category, creating it on first use. */
+  static void fold(GroupState[] byCategory, SensorData sd, TariffCalendar calendar) {
+    int category = calendar.isPeak(sd.getObsTime()) ? PEAK_INDEX : OFFPEAK_INDEX;
+    if (byCategory[category] == null) {
+      byCategory[category] = new GroupState();
     }
+    byCategory[category].add(sd);
+  }
+
+  /** Appends one row per time category of {@code hour} that received readings. */
+  static void writeHourRows(
+      StationHour hour, GroupState[] byCategory, List<HourlyAggregation> rows) {
+    for (int category = 0; category < byCategory.length; category++) {
+      GroupState state = byCategory[category];
+      if (state == null) {
+        continue;
+      }
+      String timeCategory = TIME_CATEGORIES[category];
+
+      // Build an HourlyAggregation object
+      HourlyAggregation agg = new HourlyAggregation();
+      agg.setStationId(hour.stationId());
+      agg.setObsDate(hour.obsDate());
+      agg.setObsHour(hour.obsHour());
+      agg.setCsq(hour.csq());
+      agg.setTimeCategory(timeCategory);
+
+      // Set the mergeable state and average of each sensor field
+      state.write(agg);
+
+      rows.add(agg);
+    }
+  }
+
+  @Override
+  public void saveOrUpdateHourlyAggregation(HourlyAggregation aggregation) {
+    aggregationBatchRepository.upsertHourly(List.of(aggregation));
+    log.debug(
+        "Upserted HourlyAggregation for station={}, date={}, hour={}, csq={}, category={}",
+        aggregation.getStationId(),
+        aggregation.getObsDate(),
+        aggregation.getObsHour(),
+        aggregation.getCsq(),
+        aggregation.getTimeCategory());
   }
 
   @Override
   @Transactional
-  public void aggregateDailyData() {
-    List<HourlyAggregation> allHourly = hourlyAggregationRepository.findAll();
+  public void aggregateDailyData(Collection<DailyBucket> dirtyDays) {
+    if (dirtyDays.isEmpty()) {
+      log.info("No hourly aggregation changes, skipping daily aggregation.");
+      return;
+    }
 
-    if (allHourly.isEmpty()) {
-      log.warn("No hourly aggregation records found, skipping daily aggregation.");
+    Map<String, List<DailyBucket>> byStation = groupByStation(dirtyDays);
+    int rows =
+        runPartitioned(byStation.values(), this::aggregateDailyPartition).stream()
+            .mapToInt(Integer::intValue)
+            .sum();
+    log.info(
+        "Daily aggregation complete. Upserted {} day-sets of {} stations.", rows, byStation.size());
+  }
+
+  // Days of one station
+  private int aggregateDailyPartition(List<DailyBucket> dirtyDays) {
+    if (aggregationProperties.getEngine() == AggregationProperties.Engine.SQL) {
+      return aggregationSqlRepository.aggregateDays(dirtyDays);
+    }
+
+    int rows = 0;
+    List<DailyAggregation> pending = new ArrayList<>();
+    List<DailyBucket> emptied = new ArrayList<>();
+    GroupState state = new GroupState();
+    for (DailyBucket day : dirtyDays) {
+      // At most 24 rows, read through the hourly unique index
+      List<HourlyAggregation> hours =
+          hourlyAggregationRepository.findByStationIdAndObsDateAndCsqAndTimeCategory(
+              day.stationId(), day.obsDate(), day.csq(), day.timeCategory());
+      if (hours.isEmpty()) {
+        emptied.add(day);
+        continue;
+      }
+
+      // The daily average is the mean of all the day's readings, weighted by the hourly counts
+      DailyAggregation dailyAgg = new DailyAggregation();
+      setKey(dailyAgg, day);
+      rollUp(hours, state, dailyAgg);
+
+      pending.add(dailyAgg);
+      rows++;
+      if (pending.size() >= AggregationBatchRepository.BATCH_SIZE) {
+        aggregationBatchRepository.upsertDaily(pending);
+        pending.clear();
+      }
+    }
+    aggregationBatchRepository.upsertDaily(pending);
+    aggregationBatchRepository.deleteDaily(emptied);
+    return rows;
+  }
+
+  @Override
+  @Transactional
+  public void aggregatePeriodData(Collection<DailyBucket> dirtyDays) {
+    if (dirtyDays.isEmpty()) {
+      log.info("No daily aggregation changes, skipping weekly and monthly aggregation.");
       return;
     }
 
-    // Group by (stationId | obsDate | csq | timeCategory)
-    Map<String, List<HourlyAggregation>> grouped =
-        allHourly.stream()
-            .collect(
-                Collectors.groupingBy(
-                    ha ->
-                        ha.getStationId()
-                            + "|"
-                            + ha.getObsDate()
-                            + "|"
-                            + ha.getCsq()
-                            + "|"
-                            + ha.getTimeCategory()));
-
-    for (var entry : grouped.entrySet()) {
-      String[] parts = entry.getKey().split("\\|");
-      String stationId = parts[0];
-      LocalDate obsDate = LocalDate.parse(parts[1]);
-      String csq = parts[2];
-      String timeCategory = parts[3];
-
-      DailyAggregation dailyAgg =
-          dailyAggregationRepository
-              .findByStationIdAndObsDateAndCsqAndTimeCategory(stationId, obsDate, csq, timeCategory)
-              .orElseGet(
-                  () -> {
-                    DailyAggregation d = new DailyAggregation();
-                    d.setStationId(stationId);
-                    d.setObsDate(obsDate);
-                    d.setCsq(csq);
-                    d.setTimeCategory(timeCategory);
-                    return d;
-                  });
-
-      for (DailySensorMapping map : DAILY_FIELDS) {
-        BigDecimal sumVal =
-            entry.getValue().stream()
-                .map(map.hourSumGetter())
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        List<BigDecimal> avgVals =
-            entry.getValue().stream().map(map.hourAvgGetter()).filter(Objects::nonNull).toList();
-
-        BigDecimal avgVal = BigDecimal.ZERO;
-        if (!avgVals.isEmpty()) {
-          BigDecimal sumOfAvg = avgVals.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
-          avgVal = sumOfAvg.divide(BigDecimal.valueOf(avgVals.size()), 2, RoundingMode.HALF_UP);
-        }
+    Map<String, List<DailyBucket>> byStation = groupByStation(dirtyDays);
+    int rows =
+        runPartitioned(byStation.values(), this::aggregatePeriodPartition).stream()
+            .mapToInt(Integer::intValue)
+            .sum();
+    log.info(
+        "Weekly and monthly aggregation complete. Upserted {} rows for {} stations.",
+        rows,
+        byStation.size());
+  }
+
+  // Weeks and months of one station
+  private int aggregatePeriodPartition(List<DailyBucket> dirtyDays) {
+    if (aggregationProperties.getEngine() == AggregationProperties.Engine.SQL) {
+      return aggregationSqlRepository.aggregatePeriods(RollupPeriod.WEEK, dirtyDays)
+          + aggregationSqlRepository.aggregatePeriods(RollupPeriod.MONTH, dirtyDays);
+    }
+    return aggregatePeriods(
+            RollupPeriod.WEEK,
+            dirtyDays,
+            WeeklyAggregation::new,
+            aggregationBatchRepository::upsertWeekly,
+            aggregationBatchRepository::deleteWeekly)
+        + aggregatePeriods(
+            RollupPeriod.MONTH,
+            dirtyDays,
+            MonthlyAggregation::new,
+            aggregationBatchRepository::upsertMonthly,
+            aggregationBatchRepository::deleteMonthly);
+  }
+
+  private <T extends BaseAggregation> int aggregatePeriods(
+      RollupPeriod period,
+      List<DailyBucket> dirtyDays,
+      Supplier<T> factory,
+      Consumer<List<T>> writer,
+      Consumer<List<DailyBucket>> remover) {
+    Set<DailyBucket> periods = new LinkedHashSet<>();
+    for (DailyBucket day : dirtyDays) {
+      periods.add(period.bucketOf(day));
+    }
+
+    int rows = 0;
+    List<T> pending = new ArrayList<>();
+    List<DailyBucket> emptied = new ArrayList<>();
+    GroupState state = new GroupState();
+    for (DailyBucket bucket : periods) {
+      // At most 31 rows, read through the daily unique index
+      List<DailyAggregation> days =
+          dailyAggregationRepository.findByStationIdAndCsqAndTimeCategoryAndObsDateBetween(
+              bucket.stationId(),
+              bucket.csq(),
+              bucket.timeCategory(),
+              bucket.obsDate(),
+              period.next(bucket.obsDate()).minusDays(1));
+      if (days.isEmpty()) {
+        emptied.add(bucket);
+        continue;
+      }
 
-        map.daySumSetter().accept(dailyAgg, sumVal);
-        map.dayAvgSetter().accept(dailyAgg, avgVal);
+      T periodAgg = factory.get();
+      setKey(periodAgg, bucket);
+      rollUp(days, state, periodAgg);
+
+      pending.add(periodAgg);
+      rows++;
+      if (pending.size() >= AggregationBatchRepository.BATCH_SIZE) {
+        writer.accept(pending);
+        pending.clear();
+      }
+    }
+    writer.accept(pending);
+    remover.accept(emptied);
+    return rows;
+  }
+
+  private static void setKey(BaseAggregation aggregation, DailyBucket bucket) {
+    aggregation.setStationId(bucket.stationId());
+    aggregation.setObsDate(bucket.obsDate());
+    aggregation.setCsq(bucket.csq());
+    aggregation.setTimeCategory(bucket.timeCategory());
+  }
+
+  // One pass over the finer rows, merging their partial state into target
+  private static void rollUp(
+      List<? extends BaseAggregation> finer, GroupState state, BaseAggregation target) {
+    state.reset();
+    for (BaseAggregation row : finer) {
+      state.merge(row);
+    }
+    state.write(target);
+  }
+
+  private static Map<String, List<DailyBucket>> groupByStation(Collection<DailyBucket> buckets) {
+    Map<String, List<DailyBucket>> byStation = new LinkedHashMap<>();
+    for (DailyBucket bucket : buckets) {
+      byStation.computeIfAbsent(bucket.stationId(), k -> new ArrayList<>()).add(bucket);
+    }
+    return byStation;
+  }
+
+  /**
+   * Applies {@code task} to every partition. With a parallelism above one, partitions run
+   * concurrently on virtual threads, each in its own transaction and therefore on its own pooled
+   * connection; otherwise they run one after another in the caller's transaction.
+   */
+  private <P, R> List<R> runPartitioned(Collection<P> partitions, Function<P, R> task) {
+    int parallelism = Math.min(partitions.size(), effectiveParallelism());
+    if (parallelism <= 1) {
+      return partitions.stream().map(task).toList();
+    }
+
+    try (ExecutorService executor =
+        Executors.newFixedThreadPool(
+            parallelism, Thread.ofVirtual().name("aggregation-", 0).factory())) {
+      List<Future<R>> futures = new ArrayList<>(partitions.size());
+      for (P partition : partitions) {
+        futures.add(
+            executor.submit(() -> transactionTemplate.execute(status -> task.apply(partition))));
       }
 
-      dailyAggregationRepository.save(dailyAgg);
-      log.debug(
-          "Upserted DailyAggregation for station={}, date={}, csq={}, category={}",
-          stationId,
-          obsDate,
-          csq,
-          timeCategory);
+      List<R> results = new ArrayList<>(futures.size());
+      try {
+        for (Future<R> future : futures) {
+          results.add(future.get());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        futures.forEach(future -> future.cancel(true));
+        throw new IllegalStateException("Interrupted while waiting for aggregation partitions", e);
+      } catch (ExecutionException e) {
+        // Partitions that already committed are simply recomputed by the next run
+        futures.forEach(future -> future.cancel(true));
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw new IllegalStateException("Aggregation partition failed", e.getCause());
+      }
+      return results;
     }
-    log.info("Daily aggregation complete. Processed {} grouped day-sets.", grouped.size());
+  }
+
+  // One connection stays with the caller, which holds the outer transaction
+  private int effectiveParallelism() {
+    int parallelism = aggregationProperties.getParallelism();
+    try {
+      if (parallelism > 1 && dataSource.isWrapperFor(HikariDataSource.class)) {
+        int poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        parallelism = Math.min(parallelism, poolSize - 1);
+      }
+    } catch (SQLException e) {
+      log.warn("Could not read the connection pool size, aggregating sequentially", e);
+      return 1;
+    }
+    return Math.max(1, parallelism);
   }
 
   @Override
   @Transactional
   public void processTempDataForAggregations() {
+    // With the watermark feed this only finds readings staged before the switch
+    processStaged(tempSensorDataRepository.findStagedBy(), true);
+    if (aggregationProperties.getFeed() == AggregationProperties.Feed.WATERMARK) {
+      processFeed();
+    }
+  }
+
+  /**
+   * Aggregates the readings committed since the last run, read from {@code sensor_data} between the
+   * persisted watermark and the committed high id, and moves the watermark in the same transaction.
+   * Readings inserted meanwhile get higher ids and wait for the next run.
+   */
+  private void processFeed() {
+    long lastId = aggregationFeedRepository.lockLastAggregatedId();
+    long highId = aggregationFeedRepository.committedHighId();
+    if (highId <= lastId) {
+      log.info("No sensor data above aggregation watermark {}.", lastId);
+      return;
+    }
+    processStaged(
+        sensorDataRepository.findKeysByIdGreaterThanAndIdLessThanEqual(lastId, highId), false);
+    aggregationFeedRepository.advance(highId);
+  }
+
+  @Override
+  @Transactional
+  public void processStagedHours(Collection<StationHour> hours) {
+    boolean inStaging = aggregationProperties.getFeed() == AggregationProperties.Feed.STAGING;
+    List<StagedReading> staged = new ArrayList<>();
+    for (StationHour hour : hours) {
+      LocalDateTime start = hour.start();
+      // Without staging, every reading of the hour; the feed recomputes it again later
+      staged.addAll(
+          inStaging
+              ? tempSensorDataRepository
+                  .findStagedByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+                      hour.stationId(), hour.csq(), start, start.plusHours(1))
+              : sensorDataRepository
+                  .findKeysByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+                      hour.stationId(), hour.csq(), start, start.plusHours(1)));
+    }
+    processStaged(staged, inStaging);
+  }
+
+  private void processStaged(List<StagedReading> staged, boolean inStaging) {
     // 1) Hourly
-    aggregateHourlyData();
-    // 2) Daily
-    aggregateDailyData();
-    // 3) Optionally clear the raw data
-    tempSensorDataRepository.deleteAll();
-    log.info("Temporary sensor data cleared after daily aggregation.");
+    Set<DailyBucket> dirtyDays = aggregateStagedHours(staged, inStaging);
+    // 2) Daily, only for the days whose hourly rows changed
+    aggregateDailyData(dirtyDays);
+    // 3) Weekly and monthly, only for the periods containing those days
+    aggregatePeriodData(dirtyDays);
+    if (!inStaging) {
+      return;
+    }
+    // 4) Clear exactly the staged rows that were aggregated; rows staged meanwhile wait for the
+    // next run
+    List<Long> ids = staged.stream().map(StagedReading::getId).toList();
+    for (int from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+      tempSensorDataRepository.deleteAllByIdInBatch(
+          ids.subList(from, Math.min(from + DELETE_BATCH_SIZE, ids.size())));
+    }
+    log.info("{} temporary sensor data rows cleared after aggregation.", ids.size());
   }
 
   @Override
@@ -380,28 +512,56 @@ public class AggregationServiceImpl implements AggregationService {
   }
 
   /**
-   * Determine the time category ("PEAK" or "OFFPEAK") based on the observation time.
-   *
-   * <p>Criteria: - Monday to Wednesday: PEAK if between 07:30 (inclusive) and 17:30 (exclusive),
-   * OFFPEAK otherwise. - Thursday and Friday: All day is considered PEAK. - Saturday and Sunday:
-   * All day is considered OFFPEAK.
+   * Mergeable state of one aggregation group: an accumulator per field and a quantile sketch per
+   * sketched field. Not thread-safe; {@link #reset} it to reuse it for the next group.
    */
-  private String determineTimeCategory(LocalDateTime obsTime) {
-    DayOfWeek day = obsTime.getDayOfWeek();
-    LocalTime time = obsTime.toLocalTime();
-    LocalTime peakStart = LocalTime.of(7, 30);
-    LocalTime peakEnd = LocalTime.of(17, 30);
-
-    if (day == DayOfWeek.THURSDAY || day == DayOfWeek.FRIDAY) {
-      return "PEAK";
-    } else if (day == DayOfWeek.MONDAY || day == DayOfWeek.TUESDAY || day == DayOfWeek.WEDNESDAY) {
-      if (!time.isBefore(peakStart) && time.isBefore(peakEnd)) {
-        return "PEAK";
-      } else {
-        return "OFFPEAK";
+  static final class GroupState {
+    private final FixedPoint.Accumulator[] accumulators = new FixedPoint.Accumulator[FIELDS.size()];
+    private final QuantileSketch[] sketches = new QuantileSketch[SKETCHED.size()];
+
+    GroupState() {
+      for (int i = 0; i < accumulators.length; i++) {
+        accumulators[i] = new FixedPoint.Accumulator();
+      }
+      for (int i = 0; i < sketches.length; i++) {
+        sketches[i] = new QuantileSketch();
+      }
+    }
+
+    void add(SensorData sd) {
+      for (int i = 0; i < accumulators.length; i++) {
+        accumulators[i].add(FIELDS.get(i).rawGetter().apply(sd));
+      }
+      for (int i = 0; i < sketches.length; i++) {
+        sketches[i].add(SKETCHED.get(i).rawGetter().apply(sd));
+      }
+    }
+
+    void merge(BaseAggregation row) {
+      for (int i = 0; i < accumulators.length; i++) {
+        FIELDS.get(i).mergeInto(accumulators[i], row);
+      }
+      for (int i = 0; i < sketches.length; i++) {
+        sketches[i].merge(SKETCHED.get(i).sketchGetter().apply(row));
+      }
+    }
+
+    void write(BaseAggregation row) {
+      for (int i = 0; i < accumulators.length; i++) {
+        FIELDS.get(i).write(row, accumulators[i], AVG_SCALE);
+      }
+      for (int i = 0; i < sketches.length; i++) {
+        SKETCHED.get(i).sketchSetter().accept(row, sketches[i].toBytes());
+      }
+    }
+
+    void reset() {
+      for (FixedPoint.Accumulator accumulator : accumulators) {
+        accumulator.reset();
+      }
+      for (QuantileSketch sketch : sketches) {
+        sketch.clear();
       }
-    } else { // SATURDAY or SUNDAY
-      return "OFFPEAK";
     }
   }
 }
@@ -0,0 +1,231 @@
+package com.jack.aquark.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.jack.aquark.config.BulkImportProperties;
+import com.jack.aquark.dto.BulkImportResult;
+import com.jack.aquark.dto.RawDataItemDto;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.exception.DataParseException;
+import com.jack.aquark.repository.SensorDataCopyRepository;
+import com.jack.aquark.repository.SensorDataCopyRepository.ImportCounts;
+import com.jack.aquark.service.BulkImportService;
+import com.jack.aquark.service.DuplicateFilterService;
+import com.jack.aquark.util.SensorDataMapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+
+@Service
+@AllArgsConstructor
+@Slf4j
+public class BulkImportServiceImpl implements BulkImportService {
+
+  private static final List<String> IMPORTABLE_SUFFIXES =
+      List.of(".ndjson", ".ndjson.gz", ".jsonl", ".jsonl.gz");
+  static final String IMPORTED_SUFFIX = ".imported";
+  static final String FAILED_SUFFIX = ".failed";
+
+  private static final int READ_BUFFER_SIZE = 1 << 16;
+
+  private final BulkImportProperties bulkImportProperties;
+  private final SensorDataCopyRepository sensorDataCopyRepository;
+  private final DuplicateFilterService duplicateFilterService;
+  private final ObjectMapper objectMapper;
+
+  @Override
+  public Path resolveImportFile(String fileName) {
+    Path directory = importDirectory();
+    Path file = directory.resolve(fileName).normalize();
+    if (!file.startsWith(directory) || file.equals(directory)) {
+      throw new IllegalArgumentException("File must be inside the import directory: " + fileName);
+    }
+    return file;
+  }
+
+  @Override
+  @CacheEvict(
+      value = {"sensorData", "hourlyAggregation"},
+      allEntries = true,
+      condition = "#result.insertedCount() > 0")
+  public BulkImportResult importFile(Path file) {
+    long start = System.nanoTime();
+    try (BufferedReader lines =
+        new BufferedReader(
+            new InputStreamReader(open(file), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+      ReadingIterator readings =
+          new ReadingIterator(lines, objectMapper.readerFor(RawDataItemDto.class));
+      ImportCounts counts =
+          sensorDataCopyRepository.importReadings(readings, duplicateFilterService::put);
+
+      BulkImportResult result =
+          new BulkImportResult(
+              file.getFileName().toString(),
+              counts.staged(),
+              readings.skipped,
+              counts.inserted(),
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      log.info(
+          "Imported {}: {} rows read, {} skipped, {} new in {} ms",
+          result.file(),
+          result.parsedCount(),
+          result.skippedCount(),
+          result.insertedCount(),
+          result.durationMillis());
+      return result;
+    } catch (IOException | UncheckedIOException e) {
+      throw new DataParseException("Failed to read " + file, e);
+    }
+  }
+
+  @Override
+  @CacheEvict(
+      value = {"sensorData", "hourlyAggregation"},
+      allEntries = true,
+      condition = "!#result.isEmpty()")
+  public List<BulkImportResult> importPendingFiles() {
+    String directory = bulkImportProperties.getDirectory();
+    if (directory == null || directory.isBlank()) {
+      log.warn("bulk-import.directory is not set, nothing to import");
+      return List.of();
+    }
+
+    List<Path> pending;
+    try (Stream<Path> files = Files.list(importDirectory())) {
+      pending = files.filter(BulkImportServiceImpl::isImportable).sorted().toList();
+    } catch (IOException e) {
+      log.error("Failed to list import directory {}", directory, e);
+      return List.of();
+    }
+
+    List<BulkImportResult> results = new ArrayList<>(pending.size());
+    for (Path file : pending) {
+      try {
+        results.add(importFile(file));
+        markHandled(file, IMPORTED_SUFFIX);
+      } catch (Exception e) {
+        log.error("Bulk import of {} failed", file, e);
+        // Renamed so a broken file is not retried on every run
+        markHandled(file, FAILED_SUFFIX);
+      }
+    }
+    return results;
+  }
+
+  private Path importDirectory() {
+    String directory = bulkImportProperties.getDirectory();
+    if (directory == null || directory.isBlank()) {
+      throw new IllegalStateException("bulk-import.directory is not configured");
+    }
+    return Path.of(directory).toAbsolutePath().normalize();
+  }
+
+  private static boolean isImportable(Path file) {
+    String name = file.getFileName().toString();
+    return Files.isRegularFile(file) && IMPORTABLE_SUFFIXES.stream().anyMatch(name::endsWith);
+  }
+
+  private static void markHandled(Path file, String suffix) {
+    try {
+      Files.move(file, file.resolveSibling(file.getFileName() + suffix));
+    } catch (IOException e) {
+      log.error("Failed to rename {} after import", file, e);
+    }
+  }
+
+  // Detects gzip by its magic number rather than trusting the file name
+  private static InputStream open(Path file) throws IOException {
+    InputStream in = new BufferedInputStream(Files.newInputStream(file), READ_BUFFER_SIZE);
+    in.mark(2);
+    int first = in.read();
+    int second = in.read();
+    in.reset();
+    if (first == 0x1f && second == 0x8b) {
+      return new GZIPInputStream(in, READ_BUFFER_SIZE);
+    }
+    return in;
+  }
+
+  /**
+   * One {@link SensorData} per valid line; blank, malformed and sensor-less lines are skipped, as
+   * are lines missing a key column, which COPY would write as NULL and so fail the whole file.
+   */
+  private static class ReadingIterator implements Iterator<SensorData> {
+    private final BufferedReader lines;
+    private final ObjectReader itemReader;
+    private SensorData next;
+    private long skipped;
+
+    ReadingIterator(BufferedReader lines, ObjectReader itemReader) {
+      this.lines = lines;
+      this.itemReader = itemReader;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        String line;
+        while (next == null && (line = lines.readLine()) != null) {
+          if (!line.isBlank()) {
+            next = parse(line);
+          }
+        }
+        return next != null;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public SensorData next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      SensorData reading = next;
+      next = null;
+      return reading;
+    }
+
+    private SensorData parse(String line) {
+      try {
+        RawDataItemDto item = itemReader.readValue(line);
+        if (isBlank(item.getStationId()) || isBlank(item.getCsq()) || item.getObsTime() == null) {
+          skipped++;
+          log.debug("Skipping line without station_id, CSQ or obs_time: {}", line);
+          return null;
+        }
+        SensorData data =
+            SensorDataMapper.toSensorData(item, SensorDataMapper.parseObsTime(item.getObsTime()));
+        if (data == null) {
+          skipped++;
+        }
+        return data;
+      } catch (Exception e) {
+        skipped++;
+        log.debug("Skipping unparsable line: {}", line, e);
+        return null;
+      }
+    }
+
+    private static boolean isBlank(String value) {
+      return value == null || value.isBlank();
+    }
+  }
+}
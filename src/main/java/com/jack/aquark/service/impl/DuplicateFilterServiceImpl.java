@@ -0,0 +1,102 @@
+package com.jack.aquark.service.impl;
+
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.repository.SensorDataBatchRepository;
+import com.jack.aquark.service.DuplicateFilterService;
+import com.jack.aquark.util.BloomFilter;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps one Bloom filter per station over the (obs_time, csq) keys in {@code sensor_data}. Only the
+ * item-by-item path ({@code ingestion.batch.enabled=false}) consults it, so the filter is neither
+ * loaded nor updated otherwise. Until the startup rebuild has finished, or when the filter is
+ * inactive, every key is reported as possibly present so callers fall back to the database.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DuplicateFilterServiceImpl implements DuplicateFilterService {
+
+  private final IngestionProperties ingestionProperties;
+  private final SensorDataBatchRepository sensorDataBatchRepository;
+
+  private final Map<String, BloomFilter> filtersByStation = new ConcurrentHashMap<>();
+  private volatile boolean ready;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildOnStartup() {
+    if (active()) {
+      Thread.ofVirtual().name("duplicate-filter-rebuild").start(this::rebuild);
+    }
+  }
+
+  @Override
+  public boolean mightContain(String stationId, LocalDateTime obsTime, String csq) {
+    if (!ready || !active()) {
+      return true;
+    }
+    BloomFilter filter = filtersByStation.get(stationId);
+    return filter != null && filter.mightContain(keyHash(obsTime, csq));
+  }
+
+  @Override
+  public void put(String stationId, LocalDateTime obsTime, String csq) {
+    if (active()) {
+      filterFor(stationId).put(keyHash(obsTime, csq));
+    }
+  }
+
+  /**
+   * Loads every key from {@code sensor_data}. Keys put concurrently land in the same filters, so
+   * nothing inserted while the scan runs is lost; rows are never deleted, so filters only grow.
+   */
+  @Override
+  public void rebuild() {
+    long start = System.currentTimeMillis();
+    try {
+      long loaded =
+          sensorDataBatchRepository.forEachReadingKey(
+              (stationId, obsTime, csq) -> filterFor(stationId).put(keyHash(obsTime, csq)));
+      ready = true;
+      log.info(
+          "Duplicate filter loaded {} keys for {} stations in {} ms",
+          loaded,
+          filtersByStation.size(),
+          System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      log.error("Failed to build duplicate filter, duplicate checks stay on the database", e);
+    }
+  }
+
+  private BloomFilter filterFor(String stationId) {
+    return filtersByStation.computeIfAbsent(
+        stationId,
+        id -> {
+          IngestionProperties.DuplicateFilter config = ingestionProperties.getDuplicateFilter();
+          return new BloomFilter(config.getExpectedKeysPerStation(), config.getFalsePositiveRate());
+        });
+  }
+
+  private boolean active() {
+    return ingestionProperties.getDuplicateFilter().isEnabled()
+        && !ingestionProperties.getBatch().isEnabled();
+  }
+
+  // FNV-1a over the date, the time of day and the csq chars; no String or byte[] per probe
+  private static long keyHash(LocalDateTime obsTime, String csq) {
+    long h = 0xcbf29ce484222325L;
+    h = (h ^ obsTime.toLocalDate().toEpochDay()) * 0x100000001b3L;
+    h = (h ^ obsTime.toLocalTime().toNanoOfDay()) * 0x100000001b3L;
+    for (int i = 0; i < csq.length(); i++) {
+      h = (h ^ csq.charAt(i)) * 0x100000001b3L;
+    }
+    return BloomFilter.fmix64(h);
+  }
+}
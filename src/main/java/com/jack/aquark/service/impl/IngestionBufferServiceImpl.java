@@ -0,0 +1,226 @@
+package com.jack.aquark.service.impl;
+
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.dto.RawDataItemDto;
+import com.jack.aquark.service.IngestionBufferService;
+import com.jack.aquark.service.SensorDataService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Bounded hand-off between the ingest endpoint and the database. Capacity is counted in items and a
+ * permit is only returned once its item has been persisted, so the bound also covers the
+ * micro-batch currently being written. A single writer thread drains the queue and retries a failed
+ * micro-batch until it is stored, so while the database is down the buffer fills up and callers get
+ * 429 instead of losing accepted items.
+ */
+@Service
+@Slf4j
+public class IngestionBufferServiceImpl implements IngestionBufferService {
+
+  // Attempts per micro-batch while stopping, when there is nobody left to retry for
+  private static final int MAX_ATTEMPTS = 3;
+  private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+  private final SensorDataService sensorDataService;
+  private final IngestionProperties.Push config;
+
+  private final BlockingQueue<RawDataItemDto> queue = new LinkedBlockingQueue<>();
+  private final Semaphore capacity;
+  // offer() holds the read lock and stop() the write lock while closing, so no batch is queued
+  // after the final flush
+  private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+  private boolean closed;
+  private volatile boolean running;
+  // Cuts the writer's backoff short when stopping
+  private final CountDownLatch stopping = new CountDownLatch(1);
+  private Thread writer;
+  private final Counter dropped;
+
+  public IngestionBufferServiceImpl(
+      SensorDataService sensorDataService,
+      IngestionProperties ingestionProperties,
+      MeterRegistry meterRegistry) {
+    this.sensorDataService = sensorDataService;
+    this.config = ingestionProperties.getPush();
+    this.capacity = new Semaphore(capacity());
+    this.dropped =
+        Counter.builder("ingestion.push.dropped")
+            .description("Accepted items that could not be persisted before shutdown")
+            .register(meterRegistry);
+  }
+
+  @Override
+  public boolean offer(List<RawDataItemDto> items) {
+    if (items.isEmpty()) {
+      return true;
+    }
+    closeLock.readLock().lock();
+    try {
+      if (closed || !capacity.tryAcquire(items.size())) {
+        return false;
+      }
+      queue.addAll(items);
+      return true;
+    } finally {
+      closeLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int capacity() {
+    return Math.max(1, config.getCapacity());
+  }
+
+  @Override
+  public Duration retryAfter() {
+    return config.getRetryAfter();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public synchronized void start() {
+    if (writer == null) {
+      running = true;
+      writer = Thread.ofVirtual().name("ingestion-buffer-writer").start(this::drainLoop);
+    }
+  }
+
+  /** Stops accepting batches and writes out whatever is still buffered. */
+  @PreDestroy
+  public synchronized void stop() throws InterruptedException {
+    closeLock.writeLock().lock();
+    try {
+      closed = true;
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+    running = false;
+    stopping.countDown();
+    if (writer != null) {
+      writer.join();
+      writer = null;
+    }
+    flushRemaining();
+  }
+
+  private void drainLoop() {
+    while (running) {
+      try {
+        List<RawDataItemDto> batch = nextBatch();
+        if (!batch.isEmpty()) {
+          persistWhileRunning(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Waits up to the linger time for the first item, then for the batch to fill, so a trickle of
+   * pushes is still written promptly and a burst is written in full batches.
+   */
+  List<RawDataItemDto> nextBatch() throws InterruptedException {
+    int maxBatchSize = Math.max(1, config.getMaxBatchSize());
+    long lingerNanos = config.getLingerTime().toNanos();
+    List<RawDataItemDto> batch = new ArrayList<>(maxBatchSize);
+
+    RawDataItemDto first = queue.poll(lingerNanos, TimeUnit.NANOSECONDS);
+    if (first == null) {
+      return batch;
+    }
+    batch.add(first);
+
+    long deadline = System.nanoTime() + lingerNanos;
+    while (batch.size() < maxBatchSize) {
+      queue.drainTo(batch, maxBatchSize - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= maxBatchSize || remaining <= 0) {
+        break;
+      }
+      RawDataItemDto next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+    }
+    return batch;
+  }
+
+  /**
+   * Retries with exponential backoff, holding the batch's permits, until it is stored or the buffer
+   * stops; an unfinished batch goes back to the queue for {@link #flushRemaining}.
+   */
+  private void persistWhileRunning(List<RawDataItemDto> batch) throws InterruptedException {
+    Duration backoff = config.getRetryAfter();
+    while (!tryPersist(batch)) {
+      if (stopping.await(backoff.toNanos(), TimeUnit.NANOSECONDS)) {
+        queue.addAll(batch);
+        return;
+      }
+      backoff = min(backoff.multipliedBy(2), MAX_BACKOFF);
+    }
+    capacity.release(batch.size());
+  }
+
+  /**
+   * Writes out the queue at shutdown, dropping a micro-batch that still fails after a few tries.
+   */
+  void flushRemaining() {
+    List<RawDataItemDto> batch = new ArrayList<>();
+    while (queue.drainTo(batch, Math.max(1, config.getMaxBatchSize())) > 0) {
+      try {
+        persistOrDrop(batch);
+      } finally {
+        capacity.release(batch.size());
+      }
+      batch.clear();
+    }
+  }
+
+  private void persistOrDrop(List<RawDataItemDto> batch) {
+    for (int attempt = 1; !tryPersist(batch); attempt++) {
+      if (attempt >= MAX_ATTEMPTS) {
+        log.error("Dropping {} pushed items after {} attempts", batch.size(), attempt);
+        dropped.increment(batch.size());
+        return;
+      }
+      try {
+        Thread.sleep(config.getRetryAfter());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private boolean tryPersist(List<RawDataItemDto> batch) {
+    try {
+      int stored = sensorDataService.saveRawItems(batch);
+      log.debug("Persisted pushed micro-batch: {} of {} items new", stored, batch.size());
+      return true;
+    } catch (Exception e) {
+      log.warn("Persisting {} pushed items failed", batch.size(), e);
+      return false;
+    }
+  }
+
+  private static Duration min(Duration a, Duration b) {
+    return a.compareTo(b) <= 0 ? a : b;
+  }
+}
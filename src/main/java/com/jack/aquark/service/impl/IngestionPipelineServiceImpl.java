@@ -0,0 +1,335 @@
+package com.jack.aquark.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.client.SensorSourceClient;
+import com.jack.aquark.client.SensorSourceClient.SourceResponse;
+import com.jack.aquark.config.FetchProperties;
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.dto.RawDataItemDto;
+import com.jack.aquark.dto.SourceFetchResult;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.repository.IngestionWatermarkRepository;
+import com.jack.aquark.repository.SensorDataBatchRepository;
+import com.jack.aquark.service.DuplicateFilterService;
+import com.jack.aquark.service.IngestionPipelineService;
+import com.jack.aquark.service.LiveAggregationService;
+import com.jack.aquark.util.PipelineStage;
+import com.jack.aquark.util.RawDataStreamReader;
+import com.jack.aquark.util.SensorDataMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+
+/**
+ * Ingestion as three stages joined by bounded queues: fetch (stream the body into {@code
+ * ingestion.batch.size} item chunks as it downloads), map (item to entity, watermark filter) and
+ * persist (multi-row insert). Every stage has its own worker count, so only the bottleneck needs
+ * scaling, and exposes queue depth, throughput and latency under {@code ingestion.pipeline.*}.
+ * Bodies are never buffered whole: a full map queue stalls the read of the body feeding it.
+ */
+@Service
+@Slf4j
+public class IngestionPipelineServiceImpl implements IngestionPipelineService {
+
+  private static final String METRIC_PREFIX = "ingestion.pipeline";
+
+  private final SensorSourceClient sensorSourceClient;
+  private final ObjectMapper objectMapper;
+  private final SensorDataBatchRepository sensorDataBatchRepository;
+  private final IngestionWatermarkRepository ingestionWatermarkRepository;
+  private final DuplicateFilterService duplicateFilterService;
+  private final IngestionProperties ingestionProperties;
+  private final FetchProperties fetchProperties;
+  private final LiveAggregationService liveAggregationService;
+
+  private final PipelineStage<SourceRun> fetchStage;
+  private final PipelineStage<ItemChunk> mapStage;
+  private final PipelineStage<ReadingChunk> persistStage;
+
+  public IngestionPipelineServiceImpl(
+      SensorSourceClient sensorSourceClient,
+      ObjectMapper objectMapper,
+      SensorDataBatchRepository sensorDataBatchRepository,
+      IngestionWatermarkRepository ingestionWatermarkRepository,
+      DuplicateFilterService duplicateFilterService,
+      IngestionProperties ingestionProperties,
+      FetchProperties fetchProperties,
+      LiveAggregationService liveAggregationService,
+      MeterRegistry meterRegistry) {
+    this.sensorSourceClient = sensorSourceClient;
+    this.objectMapper = objectMapper;
+    this.sensorDataBatchRepository = sensorDataBatchRepository;
+    this.ingestionWatermarkRepository = ingestionWatermarkRepository;
+    this.duplicateFilterService = duplicateFilterService;
+    this.ingestionProperties = ingestionProperties;
+    this.fetchProperties = fetchProperties;
+    this.liveAggregationService = liveAggregationService;
+
+    IngestionProperties.Pipeline config = ingestionProperties.getPipeline();
+    int capacity = config.getQueueCapacity();
+    this.fetchStage =
+        new PipelineStage<>(
+            METRIC_PREFIX,
+            "fetch",
+            config.getFetchParallelism(),
+            capacity,
+            meterRegistry,
+            run -> 1,
+            this::fetch,
+            (run, e) -> run.fail(e));
+    this.mapStage =
+        new PipelineStage<>(
+            METRIC_PREFIX,
+            "map",
+            config.getMapParallelism(),
+            capacity,
+            meterRegistry,
+            chunk -> chunk.items().size(),
+            this::map,
+            (chunk, e) -> chunk.run().fail(e));
+    this.persistStage =
+        new PipelineStage<>(
+            METRIC_PREFIX,
+            "persist",
+            config.getPersistParallelism(),
+            capacity,
+            meterRegistry,
+            chunk -> chunk.readings().size(),
+            this::persist,
+            (chunk, e) -> chunk.run().fail(e));
+  }
+
+  @Override
+  @CacheEvict(
+      value = {"sensorData", "hourlyAggregation"},
+      allEntries = true,
+      condition = "#result.?[storedCount() > 0].size() > 0")
+  public List<SourceFetchResult> ingest(List<String> urls) {
+    startStages();
+
+    List<SourceRun> runs = new ArrayList<>(urls.size());
+    for (String url : urls) {
+      SourceRun run = new SourceRun(url);
+      runs.add(run);
+      fetchStage.put(run);
+    }
+
+    CompletableFuture<Void> all =
+        CompletableFuture.allOf(
+            runs.stream().map(run -> run.result).toArray(CompletableFuture[]::new));
+    try {
+      all.get(fetchProperties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      runs.forEach(SourceRun::timeOut);
+    } catch (ExecutionException e) {
+      // Each run completes its own future normally; nothing to unwrap
+      throw new IllegalStateException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the ingestion pipeline", e);
+    }
+    return runs.stream().map(run -> run.result.join()).toList();
+  }
+
+  private synchronized void startStages() {
+    persistStage.start();
+    mapStage.start();
+    fetchStage.start();
+  }
+
+  @PreDestroy
+  public void stopStages() throws InterruptedException {
+    fetchStage.stop();
+    mapStage.stop();
+    persistStage.stop();
+  }
+
+  private void fetch(SourceRun run) {
+    log.info("Fetching and saving sensor data from API URL {}...", run.url);
+    SourceResponse<Integer> response = sensorSourceClient.get(run.url, body -> parse(run, body));
+    run.response = response;
+    if (response.notModified()) {
+      log.info("Source {} not modified since last fetch, skipping", run.url);
+    } else if (response.body() == 0) {
+      log.warn("No raw sensor data found in the response from URL: {}", run.url);
+    }
+    run.parsed();
+  }
+
+  // Called only for a 200 response; holds at most one chunk of the body at a time
+  private int parse(SourceRun run, InputStream body) throws IOException {
+    run.watermarks =
+        run.source == null ? Map.of() : ingestionWatermarkRepository.findBySource(run.source);
+    int batchSize = Math.max(1, ingestionProperties.getBatch().getSize());
+    List<RawDataItemDto> chunk = new ArrayList<>(batchSize);
+
+    int read =
+        new RawDataStreamReader(objectMapper)
+            .read(
+                body,
+                item -> {
+                  chunk.add(item);
+                  if (chunk.size() >= batchSize) {
+                    emit(run, List.copyOf(chunk));
+                    chunk.clear();
+                  }
+                });
+    if (!chunk.isEmpty()) {
+      emit(run, List.copyOf(chunk));
+    }
+    return read;
+  }
+
+  private void emit(SourceRun run, List<RawDataItemDto> items) {
+    if (run.isDone()) {
+      return;
+    }
+    run.pendingChunks.incrementAndGet();
+    mapStage.put(new ItemChunk(run, items));
+  }
+
+  private void map(ItemChunk chunk) {
+    SourceRun run = chunk.run();
+    if (run.isDone()) {
+      return;
+    }
+    List<SensorData> readings = new ArrayList<>(chunk.items().size());
+    for (RawDataItemDto item : chunk.items()) {
+      SensorData data;
+      try {
+        data =
+            SensorDataMapper.toSensorData(item, SensorDataMapper.parseObsTime(item.getObsTime()));
+      } catch (Exception e) {
+        log.error("Error processing raw item: {}", item, e);
+        continue;
+      }
+      if (data == null) {
+        continue;
+      }
+      LocalDateTime watermark = run.watermarks.get(data.getStationId());
+      if (watermark == null || data.getObsTime().isAfter(watermark)) {
+        readings.add(data);
+      }
+    }
+
+    if (readings.isEmpty()) {
+      run.chunkDone(0);
+    } else {
+      persistStage.put(new ReadingChunk(run, readings));
+    }
+  }
+
+  private void persist(ReadingChunk chunk) {
+    SourceRun run = chunk.run();
+    if (run.isDone()) {
+      return;
+    }
+    // Chunks of one source commit in any order on several workers, so the watermark only moves
+    // once all of them have committed (see SourceRun.completeIfDrained)
+    List<SensorData> inserted = sensorDataBatchRepository.insertNewReadings(chunk.readings());
+    if (run.source != null) {
+      chunk
+          .readings()
+          .forEach(
+              r ->
+                  run.maxObsTimeByStation.merge(
+                      r.getStationId(), r.getObsTime(), (a, b) -> a.isAfter(b) ? a : b));
+    }
+    chunk
+        .readings()
+        .forEach(r -> duplicateFilterService.put(r.getStationId(), r.getObsTime(), r.getCsq()));
+    liveAggregationService.record(inserted);
+    run.chunkDone(inserted.size());
+  }
+
+  private record ItemChunk(SourceRun run, List<RawDataItemDto> items) {}
+
+  private record ReadingChunk(SourceRun run, List<SensorData> readings) {}
+
+  /**
+   * Tracks one source through the stages. It completes once parsing has finished and every chunk it
+   * emitted has been persisted or dropped, or as soon as any stage fails for it.
+   */
+  private final class SourceRun {
+    final String url;
+    final String source;
+    final long startNanos = System.nanoTime();
+    final CompletableFuture<SourceFetchResult> result = new CompletableFuture<>();
+    final AtomicInteger pendingChunks = new AtomicInteger();
+    final AtomicInteger stored = new AtomicInteger();
+    final AtomicBoolean parsed = new AtomicBoolean();
+    final AtomicBoolean done = new AtomicBoolean();
+    volatile SourceResponse<Integer> response;
+    volatile Map<String, LocalDateTime> watermarks = Map.of();
+    final Map<String, LocalDateTime> maxObsTimeByStation = new ConcurrentHashMap<>();
+
+    SourceRun(String url) {
+      this.url = url;
+      this.source = ingestionProperties.getWatermark().isEnabled() ? url : null;
+    }
+
+    boolean isDone() {
+      return done.get();
+    }
+
+    void parsed() {
+      parsed.set(true);
+      completeIfDrained();
+    }
+
+    void chunkDone(int storedCount) {
+      stored.addAndGet(storedCount);
+      pendingChunks.decrementAndGet();
+      completeIfDrained();
+    }
+
+    void fail(Exception e) {
+      if (done.compareAndSet(false, true)) {
+        log.error("Fetching sensor data from {} failed", url, e);
+        result.complete(SourceFetchResult.failed(url, elapsedMillis(), e));
+      }
+    }
+
+    void timeOut() {
+      if (done.compareAndSet(false, true)) {
+        result.complete(SourceFetchResult.timedOut(url, elapsedMillis()));
+      }
+    }
+
+    private void completeIfDrained() {
+      if (parsed.get() && pendingChunks.get() == 0 && done.compareAndSet(false, true)) {
+        try {
+          // Every chunk has committed; a failed or timed-out run never gets here, so its
+          // readings are fetched again instead of being hidden below the watermark
+          if (source != null) {
+            ingestionWatermarkRepository.advance(source, maxObsTimeByStation);
+          }
+          sensorSourceClient.markIngested(response);
+          result.complete(SourceFetchResult.succeeded(url, stored.get(), elapsedMillis()));
+        } catch (RuntimeException e) {
+          log.error("Fetching sensor data from {} failed", url, e);
+          result.complete(SourceFetchResult.failed(url, elapsedMillis(), e));
+        }
+      }
+    }
+
+    private long elapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.jack.aquark.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.dto.RawDataItemDto;
+import com.jack.aquark.dto.RawDataWrapperDto;
+import com.jack.aquark.service.KafkaConsumerService;
+import com.jack.aquark.service.SensorDataService;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Consumes raw readings published as JSON, either one {@code RawDataItemDto} per record or a {@code
+ * {"raw": [...]}} wrapper. Each poll batch goes through {@link SensorDataService#saveRawItems}
+ * inside one transaction, so a redelivered batch is deduplicated by the same conflict handling as
+ * polled data.
+ */
+@Service
+@ConditionalOnProperty(prefix = "ingestion.kafka", name = "enabled", havingValue = "true")
+@AllArgsConstructor
+@Slf4j
+public class KafkaConsumerServiceImpl implements KafkaConsumerService {
+
+  private final SensorDataService sensorDataService;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+
+  @Override
+  @KafkaListener(
+      topics = "${ingestion.kafka.topic}",
+      containerFactory = "rawReadingsListenerFactory")
+  public void consumeRawReadings(List<ConsumerRecord<String, String>> records, Acknowledgment ack) {
+    List<RawDataItemDto> items = new ArrayList<>(records.size());
+    for (ConsumerRecord<String, String> record : records) {
+      parse(record, items);
+    }
+
+    if (!items.isEmpty()) {
+      Integer stored = transactionTemplate.execute(status -> sensorDataService.saveRawItems(items));
+      log.debug(
+          "Consumed {} records ({} items), {} new readings", records.size(), items.size(), stored);
+    }
+    // Reached only after commit; a failure above leaves the offsets for redelivery
+    ack.acknowledge();
+  }
+
+  private void parse(ConsumerRecord<String, String> record, List<RawDataItemDto> items) {
+    if (record.value() == null) {
+      return;
+    }
+    try {
+      JsonNode node = objectMapper.readTree(record.value());
+      if (node.has("raw")) {
+        RawDataWrapperDto wrapper = objectMapper.treeToValue(node, RawDataWrapperDto.class);
+        if (wrapper.getRaw() != null) {
+          items.addAll(wrapper.getRaw());
+        }
+      } else {
+        items.add(objectMapper.treeToValue(node, RawDataItemDto.class));
+      }
+    } catch (Exception e) {
+      // A malformed record can never succeed, so it is skipped rather than retried
+      log.error(
+          "Skipping unparsable record {}-{}@{}",
+          record.topic(),
+          record.partition(),
+          record.offset(),
+          e);
+    }
+  }
+}
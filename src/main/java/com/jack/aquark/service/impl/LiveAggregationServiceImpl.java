@@ -0,0 +1,124 @@
+package com.jack.aquark.service.impl;
+
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.dto.StationHour;
+import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.LiveAggregationService;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.TariffCalendar;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory hourly windows, one per (station, csq, hour), holding the same mergeable state as an
+ * {@code hourly_aggregation} row. Readings are folded in as they are stored, so the current hour
+ * can be served before any job has run. A window closes {@code aggregation.live.grace} after its
+ * hour ends; flushing then aggregates that hour's staged readings through every tier. The flush
+ * recomputes the hour rather than adding the window to the stored row, because the batch job or
+ * another node may already have counted some of its readings.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LiveAggregationServiceImpl implements LiveAggregationService {
+
+  private final AggregationService aggregationService;
+  private final AggregationProperties aggregationProperties;
+  private final TariffCalendarService tariffCalendarService;
+
+  private final Map<StationHour, Window> windows = new ConcurrentHashMap<>();
+
+  @Override
+  @CacheEvict(
+      value = "hourlyAggregation",
+      allEntries = true,
+      condition = "@aggregationProperties.live.enabled && !#readings.isEmpty()")
+  public void record(Collection<SensorData> readings) {
+    if (!aggregationProperties.getLive().isEnabled() || readings.isEmpty()) {
+      return;
+    }
+    // A rolled back chunk is redelivered and would otherwise be counted twice
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      List<SensorData> pending = List.copyOf(readings);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              fold(pending, LocalDateTime.now());
+            }
+          });
+    } else {
+      fold(readings, LocalDateTime.now());
+    }
+  }
+
+  void fold(Collection<SensorData> readings, LocalDateTime now) {
+    TariffCalendar calendar = tariffCalendarService.current();
+    for (SensorData reading : readings) {
+      StationHour hour =
+          StationHour.of(reading.getStationId(), reading.getCsq(), reading.getObsTime());
+      if (!isClosed(hour, now)) {
+        windows.computeIfAbsent(hour, k -> new Window()).add(reading, calendar);
+      }
+    }
+  }
+
+  @Override
+  public List<HourlyAggregation> openWindows(LocalDate startDate, LocalDate endDate) {
+    List<HourlyAggregation> rows = new ArrayList<>();
+    windows.forEach(
+        (hour, window) -> {
+          LocalDate date = hour.obsDate();
+          if (!date.isBefore(startDate) && !date.isAfter(endDate)) {
+            window.writeRows(hour, rows);
+          }
+        });
+    return rows;
+  }
+
+  @Override
+  public int flushClosedWindows(LocalDateTime now) {
+    List<StationHour> closed = windows.keySet().stream().filter(h -> isClosed(h, now)).toList();
+    if (closed.isEmpty()) {
+      return 0;
+    }
+    // On failure the windows stay and the flush is retried; their readings also remain staged
+    aggregationService.processStagedHours(closed);
+    closed.forEach(windows::remove);
+    log.info("Flushed {} closed live aggregation windows.", closed.size());
+    return closed.size();
+  }
+
+  private boolean isClosed(StationHour hour, LocalDateTime now) {
+    LocalDateTime closesAt =
+        hour.start().plusHours(1).plus(aggregationProperties.getLive().getGrace());
+    return !now.isBefore(closesAt);
+  }
+
+  // Ingest threads fold into the same window concurrently, readers snapshot it
+  private static final class Window {
+    private final AggregationServiceImpl.GroupState[] byCategory =
+        AggregationServiceImpl.newCategoryStates();
+
+    synchronized void add(SensorData reading, TariffCalendar calendar) {
+      AggregationServiceImpl.fold(byCategory, reading, calendar);
+    }
+
+    synchronized void writeRows(StationHour hour, List<HourlyAggregation> rows) {
+      AggregationServiceImpl.writeHourRows(hour, byCategory, rows);
+    }
+  }
+}
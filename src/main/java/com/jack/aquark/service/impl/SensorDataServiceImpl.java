@@ -1,270 +1,503 @@
 package com.jack.aquark.service.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.client.SensorSourceClient;
+import com.jack.aquark.client.SensorSourceClient.SourceResponse;
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.dto.AggregateFieldMapping;
+import com.jack.aquark.dto.PercentileResult;
 import com.jack.aquark.dto.RawDataItemDto;
 import com.jack.aquark.dto.RawDataWrapperDto;
+import com.jack.aquark.dto.RollupPeriod;
+import com.jack.aquark.dto.SketchFieldMapping;
+import com.jack.aquark.dto.StationHour;
 import com.jack.aquark.entity.DailyAggregation;
 import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.MonthlyAggregation;
 import com.jack.aquark.entity.SensorData;
 import com.jack.aquark.entity.TempSensorData;
-import com.jack.aquark.exception.DataFetchException;
+import com.jack.aquark.entity.WeeklyAggregation;
 import com.jack.aquark.exception.DataParseException;
 import com.jack.aquark.repository.DailyAggregationRepository;
 import com.jack.aquark.repository.HourlyAggregationRepository;
+import com.jack.aquark.repository.IngestionWatermarkRepository;
+import com.jack.aquark.repository.MonthlyAggregationRepository;
+import com.jack.aquark.repository.QuantileSketchRepository;
+import com.jack.aquark.repository.SensorDataBatchRepository;
 import com.jack.aquark.repository.SensorDataRepository;
 import com.jack.aquark.repository.TempSensorDataRepository;
+import com.jack.aquark.repository.WeeklyAggregationRepository;
 import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.DuplicateFilterService;
+import com.jack.aquark.service.LiveAggregationService;
 import com.jack.aquark.service.SensorDataService;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.QuantileSketch;
+import com.jack.aquark.util.RawDataStreamReader;
+import com.jack.aquark.util.SensorDataMapper;
+import com.jack.aquark.util.TariffCalendar;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.http.ResponseEntity;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 @Service
 @AllArgsConstructor
 @Slf4j
 public class SensorDataServiceImpl implements SensorDataService {
 
-  private static final DateTimeFormatter FORMATTER =
-      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
   private final SensorDataRepository sensorDataRepository;
   private final TempSensorDataRepository tempSensorDataRepository;
   private final HourlyAggregationRepository hourlyAggregationRepository;
   private final DailyAggregationRepository dailyAggregationRepository;
   private final AggregationService aggregationService;
   private final ObjectMapper objectMapper;
+  private final SensorDataBatchRepository sensorDataBatchRepository;
+  private final IngestionProperties ingestionProperties;
+  private final SensorSourceClient sensorSourceClient;
+  private final IngestionWatermarkRepository ingestionWatermarkRepository;
+  private final DuplicateFilterService duplicateFilterService;
+  private final WeeklyAggregationRepository weeklyAggregationRepository;
+  private final MonthlyAggregationRepository monthlyAggregationRepository;
+  private final LiveAggregationService liveAggregationService;
+  private final AggregationProperties aggregationProperties;
+  private final QuantileSketchRepository quantileSketchRepository;
+  private final TariffCalendarService tariffCalendarService;
 
   @Override
   @CacheEvict(
       value = {"sensorData", "hourlyAggregation"},
-      allEntries = true)
-  public void fetchAndSaveSensorData(String apiUrl) {
-    RawDataWrapperDto wrapper = fetchRawDataFromUrl(apiUrl);
+      allEntries = true,
+      condition = "#result > 0")
+  public int fetchAndSaveSensorData(String apiUrl) {
+    if (ingestionProperties.getStreaming().isEnabled()) {
+      SourceResponse<Integer> response =
+          sensorSourceClient.get(
+              apiUrl,
+              body ->
+                  saveRawItemsFromStream(apiUrl, body, loadWatermarks(watermarkSource(apiUrl))));
+      if (response.notModified()) {
+        log.info("Source {} not modified since last fetch, skipping", apiUrl);
+        return 0;
+      }
+      sensorSourceClient.markIngested(response);
+      log.info(
+          "Completed streaming raw sensor data from {} ({} items new)", apiUrl, response.body());
+      return response.body();
+    }
+
+    SourceResponse<RawDataWrapperDto> response = fetchRawDataFromUrl(apiUrl);
+    if (response.notModified()) {
+      log.info("Source {} not modified since last fetch, skipping", apiUrl);
+      return 0;
+    }
+    RawDataWrapperDto wrapper = response.body();
 
     if (wrapper == null || wrapper.getRaw() == null || wrapper.getRaw().isEmpty()) {
       log.warn("No raw sensor data found in the response from URL: {}", apiUrl);
-      return;
+      return 0;
+    }
+
+    if (ingestionProperties.getBatch().isEnabled()) {
+      String source = watermarkSource(apiUrl);
+      Map<String, LocalDateTime> maxObsTimeByStation = new HashMap<>();
+      int stored =
+          saveRawItems(source, wrapper.getRaw(), loadWatermarks(source), maxObsTimeByStation);
+      advanceWatermarks(source, maxObsTimeByStation);
+      sensorSourceClient.markIngested(response);
+      log.info(
+          "Completed fetching & storing raw sensor data from {} ({} of {} items new)",
+          apiUrl,
+          stored,
+          wrapper.getRaw().size());
+      return stored;
     }
 
+    int stored = 0;
+    int failed = 0;
     for (RawDataItemDto item : wrapper.getRaw()) {
-      processRawItem(item);
+      switch (processRawItem(item)) {
+        case STORED -> stored++;
+        case FAILED -> failed++;
+        default -> {}
+      }
     }
 
+    // A 304 would hide the failed items from every later poll, so download the body again instead
+    if (failed > 0) {
+      log.warn(
+          "{} of {} items from {} could not be stored; the source will be fetched again",
+          failed,
+          wrapper.getRaw().size(),
+          apiUrl);
+      return stored;
+    }
+    sensorSourceClient.markIngested(response);
     log.info("Completed fetching & storing raw sensor data from {}", apiUrl);
+    return stored;
+  }
+
+  @Override
+  @CacheEvict(
+      value = {"sensorData", "hourlyAggregation"},
+      allEntries = true,
+      condition = "#result > 0")
+  public int saveRawItems(List<RawDataItemDto> items) {
+    return saveRawItems(null, items, Map.of(), new HashMap<>());
   }
 
-  private void processRawItem(RawDataItemDto item) {
+  @Override
+  @CacheEvict(
+      value = {"sensorData", "hourlyAggregation"},
+      allEntries = true)
+  public void evictCaches() {
+    log.info("Evicting cached sensor data after an incomplete fetch");
+  }
+
+  /**
+   * Batch-inserts {@code items}, dropping those at or below their station's watermark before any DB
+   * access. The latest obs_time of every committed chunk is merged into {@code
+   * maxObsTimeByStation}; the caller advances the watermark once all of the source's chunks have
+   * committed.
+   */
+  private int saveRawItems(
+      String source,
+      List<RawDataItemDto> items,
+      Map<String, LocalDateTime> watermarks,
+      Map<String, LocalDateTime> maxObsTimeByStation) {
+    int batchSize = Math.max(1, ingestionProperties.getBatch().getSize());
+    int stored = 0;
+    int belowWatermark = 0;
+
+    for (int from = 0; from < items.size(); from += batchSize) {
+      // A fetch cancelled at its deadline stops before its next write
+      if (Thread.currentThread().isInterrupted()) {
+        throw new CancellationException("Ingestion from " + source + " was cancelled");
+      }
+      List<RawDataItemDto> chunk = items.subList(from, Math.min(from + batchSize, items.size()));
+      List<SensorData> readings = new ArrayList<>(chunk.size());
+      for (RawDataItemDto item : chunk) {
+        SensorData data = toSensorData(item);
+        if (data == null) {
+          continue;
+        }
+        LocalDateTime watermark = watermarks.get(data.getStationId());
+        if (watermark != null && !data.getObsTime().isAfter(watermark)) {
+          belowWatermark++;
+          continue;
+        }
+        readings.add(data);
+      }
+
+      if (!readings.isEmpty()) {
+        List<SensorData> inserted = sensorDataBatchRepository.insertNewReadings(readings);
+        stored += inserted.size();
+        liveAggregationService.record(inserted);
+        // Every key of a committed chunk is now in sensor_data, inserted or not
+        for (SensorData r : readings) {
+          duplicateFilterService.put(r.getStationId(), r.getObsTime(), r.getCsq());
+          maxObsTimeByStation.merge(
+              r.getStationId(), r.getObsTime(), (a, b) -> a.isAfter(b) ? a : b);
+        }
+      }
+    }
+
+    if (belowWatermark > 0) {
+      log.debug("Skipped {} items from {} at or below the watermark", belowWatermark, source);
+    }
+    return stored;
+  }
+
+  // Null when watermarks are disabled, so nothing is filtered and nothing is advanced
+  private String watermarkSource(String url) {
+    return ingestionProperties.getWatermark().isEnabled() ? url : null;
+  }
+
+  private Map<String, LocalDateTime> loadWatermarks(String source) {
+    return source == null ? Map.of() : ingestionWatermarkRepository.findBySource(source);
+  }
+
+  // Only after the last chunk: the payload need not be sorted by obs_time, so advancing per chunk
+  // would hide the readings of a later chunk that fails or is cancelled below the watermark
+  private void advanceWatermarks(String source, Map<String, LocalDateTime> maxObsTimeByStation) {
+    if (source != null) {
+      ingestionWatermarkRepository.advance(source, maxObsTimeByStation);
+    }
+  }
+
+  private SensorData toSensorData(RawDataItemDto item) {
+    try {
+      LocalDateTime obsTime = SensorDataMapper.parseObsTime(item.getObsTime());
+      SensorData data = SensorDataMapper.toSensorData(item, obsTime);
+
+      if (data == null) {
+        log.warn("Sensor data was null for item: {}", item);
+      }
+      return data;
+    } catch (Exception e) {
+      log.error("Error processing raw item: {}", item, e);
+      return null;
+    }
+  }
+
+  // What the per-item path did with an item; INVALID items can never be stored, FAILED ones may be
+  // on a later attempt
+  private enum ItemOutcome {
+    STORED,
+    DUPLICATE,
+    INVALID,
+    FAILED
+  }
+
+  private ItemOutcome processRawItem(RawDataItemDto item) {
+    LocalDateTime obsTime;
+    SensorData data;
+    try {
+      obsTime = SensorDataMapper.parseObsTime(item.getObsTime());
+      // Parse main sensor data
+      data = SensorDataMapper.toSensorData(item, obsTime);
+    } catch (Exception e) {
+      log.error("Error parsing raw item: {}", item, e);
+      return ItemOutcome.INVALID;
+    }
+    if (data == null) {
+      log.warn("Sensor data was null for item: {}", item);
+      return ItemOutcome.INVALID;
+    }
+
     try {
-      LocalDateTime obsTime = LocalDateTime.parse(item.getObsTime(), FORMATTER);
       String stationId = item.getStationId();
       String csq = item.getCsq();
-      // Check duplicates
-      if (sensorDataRepository.existsByStationIdAndObsTimeAndCsq(stationId, obsTime, csq)) {
+      // Check duplicates; keys the in-memory filter has never seen skip the query
+      if (duplicateFilterService.mightContain(stationId, obsTime, csq)
+          && sensorDataRepository.existsByStationIdAndObsTimeAndCsq(stationId, obsTime, csq)) {
         log.info(
             "Duplicate data. Skipping stationId={}, obsTime={}, csq={}", stationId, obsTime, csq);
-        return;
+        return ItemOutcome.DUPLICATE;
       }
-      // Parse main sensor data
-      SensorData data = parseSensorData(item, obsTime);
 
-      if (data == null) {
-        log.warn("Sensor data was null for item: {}", item);
-        return;
+      if (aggregationProperties.getFeed() == AggregationProperties.Feed.WATERMARK) {
+        // A save() would neither stage nor hold the feed's writer lock, so go through the batch
+        // writer with a batch of one
+        boolean inserted = !sensorDataBatchRepository.insertNewReadings(List.of(data)).isEmpty();
+        duplicateFilterService.put(stationId, obsTime, csq);
+        return inserted ? ItemOutcome.STORED : ItemOutcome.DUPLICATE;
       }
 
-      sensorDataRepository.save(data);
+      try {
+        sensorDataRepository.save(data);
+      } catch (DataIntegrityViolationException e) {
+        // Any other constraint violation is a failure, not a duplicate
+        if (!sensorDataRepository.existsByStationIdAndObsTimeAndCsq(stationId, obsTime, csq)) {
+          throw e;
+        }
+        // Written by someone the filter does not know about (e.g. another instance)
+        log.info(
+            "Duplicate data. Skipping stationId={}, obsTime={}, csq={}", stationId, obsTime, csq);
+        duplicateFilterService.put(stationId, obsTime, csq);
+        return ItemOutcome.DUPLICATE;
+      }
+      duplicateFilterService.put(stationId, obsTime, csq);
       // Parse temporary sensor data for aggregation
-      TempSensorData tempData = parseTempSensorData(item, obsTime);
+      TempSensorData tempData = SensorDataMapper.toTempSensorData(item, obsTime);
 
       if (tempData == null) {
         log.warn("Temp sensor data was null for item: {}", item);
-        return;
+        return ItemOutcome.STORED;
       }
 
       tempSensorDataRepository.save(tempData);
+      return ItemOutcome.STORED;
     } catch (Exception e) {
       log.error("Error processing raw item: {}", item, e);
+      return ItemOutcome.FAILED;
     }
   }
 
-  RawDataWrapperDto fetchRawDataFromUrl(String url) {
-    RestTemplate restTemplate = new RestTemplate();
-    ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-
-    if (!response.getStatusCode().is2xxSuccessful()) {
-      log.error("Failed to fetch data from {}, HTTP status: {}", url, response.getStatusCode());
-      throw new DataFetchException("Failed fetching data from " + url);
-    }
+  // Flushes items to saveRawItems in ingestion.batch.size chunks while the body is being read
+  int saveRawItemsFromStream(String url, InputStream body, Map<String, LocalDateTime> watermarks) {
+    int batchSize = Math.max(1, ingestionProperties.getBatch().getSize());
+    List<RawDataItemDto> chunk = new ArrayList<>(batchSize);
+    String source = watermarkSource(url);
+    Map<String, LocalDateTime> maxObsTimeByStation = new HashMap<>();
+    AtomicInteger stored = new AtomicInteger();
 
     try {
-      return objectMapper.readValue(response.getBody(), RawDataWrapperDto.class);
-    } catch (Exception e) {
+      int read =
+          new RawDataStreamReader(objectMapper)
+              .read(
+                  body,
+                  item -> {
+                    chunk.add(item);
+                    if (chunk.size() >= batchSize) {
+                      stored.addAndGet(
+                          saveRawItems(source, chunk, watermarks, maxObsTimeByStation));
+                      chunk.clear();
+                    }
+                  });
+
+      if (!chunk.isEmpty()) {
+        stored.addAndGet(saveRawItems(source, chunk, watermarks, maxObsTimeByStation));
+      }
+      advanceWatermarks(source, maxObsTimeByStation);
+      if (read == 0) {
+        log.warn("No raw sensor data found in the response from URL: {}", url);
+      }
+    } catch (IOException e) {
       log.error("Error parsing JSON from {}", url, e);
       throw new DataParseException("Failed to parse JSON from " + url, e);
     }
+    return stored.get();
   }
 
-  // Helper: Extract common sensor values from RawDataItemDto.Sensor
-  private SensorValues extractSensorValues(RawDataItemDto.Sensor sensor) {
-    SensorValues values = new SensorValues();
-
-    if (sensor.getVolt() != null) {
-      values.v1 = sensor.getVolt().getV1();
-      values.v2 = sensor.getVolt().getV2();
-      values.v3 = sensor.getVolt().getV3();
-      values.v4 = sensor.getVolt().getV4();
-      values.v5 = sensor.getVolt().getV5();
-      values.v6 = sensor.getVolt().getV6();
-      values.v7 = sensor.getVolt().getV7();
-    }
+  SourceResponse<RawDataWrapperDto> fetchRawDataFromUrl(String url) {
+    return sensorSourceClient.get(
+        url,
+        body -> {
+          try {
+            return objectMapper.readValue(body, RawDataWrapperDto.class);
+          } catch (Exception e) {
+            log.error("Error parsing JSON from {}", url, e);
+            throw new DataParseException("Failed to parse JSON from " + url, e);
+          }
+        });
+  }
 
-    if (sensor.getStickTxRh() != null) {
-      values.rh = sensor.getStickTxRh().getRh();
-      values.tx = sensor.getStickTxRh().getTx();
+  // ----------------------------------------------------------------------------
+  // Reading from the aggregator tables
+  // ----------------------------------------------------------------------------
+  @Override
+  @Cacheable(
+      value = "hourlyAggregation",
+      key = "#start.toLocalDate().toString() + '-' + #end.toLocalDate().toString()")
+  public List<HourlyAggregation> getHourlyAverage(LocalDateTime start, LocalDateTime end) {
+    LocalDate startDate = start.toLocalDate();
+    LocalDate endDate = end.toLocalDate();
+    List<HourlyAggregation> stored =
+        hourlyAggregationRepository.findByObsDateBetween(startDate, endDate);
+    List<HourlyAggregation> live = liveAggregationService.openWindows(startDate, endDate);
+    if (live.isEmpty()) {
+      return stored;
     }
 
-    if (sensor.getUltrasonicLevel() != null) {
-      values.echo = sensor.getUltrasonicLevel().getEcho();
+    // A stored row of an open hour and its window may overlap, so they cannot be added up. Keep
+    // whichever covers more readings: the window unless this node missed part of the hour.
+    Map<HourKey, HourlyAggregation> byKey = new LinkedHashMap<>();
+    for (HourlyAggregation row : stored) {
+      byKey.put(HourKey.of(row), row);
     }
-
-    if (sensor.getWaterSpeedAquark() != null) {
-      values.speed = sensor.getWaterSpeedAquark().getSpeed();
+    for (HourlyAggregation row : live) {
+      byKey.merge(HourKey.of(row), row, (a, b) -> readingCount(b) >= readingCount(a) ? b : a);
     }
-
-    return values;
+    return new ArrayList<>(byKey.values());
   }
 
-  // Parse main SensorData from raw item
-  private SensorData parseSensorData(RawDataItemDto item, LocalDateTime obsTime) {
-    RawDataItemDto.Sensor sensor = item.getSensor();
+  // A stored or live row's identity: its hour and csq plus the time category
+  private record HourKey(StationHour hour, String timeCategory) {
 
-    if (sensor == null) {
-      return null;
+    static HourKey of(HourlyAggregation row) {
+      return new HourKey(
+          StationHour.of(
+              row.getStationId(), row.getCsq(), row.getObsDate().atTime(row.getObsHour(), 0)),
+          row.getTimeCategory());
     }
-
-    SensorValues values = extractSensorValues(sensor);
-    return SensorData.builder()
-        .stationId(item.getStationId())
-        .obsTime(obsTime)
-        .csq(item.getCsq())
-        .rainD(item.getRainD())
-        .v1(values.v1)
-        .v2(values.v2)
-        .v3(values.v3)
-        .v4(values.v4)
-        .v5(values.v5)
-        .v6(values.v6)
-        .v7(values.v7)
-        .rh(values.rh)
-        .tx(values.tx)
-        .echo(values.echo)
-        .speed(values.speed)
-        .build();
   }
 
-  // Parse TempSensorData (for aggregator usage) from raw item
-  private TempSensorData parseTempSensorData(RawDataItemDto item, LocalDateTime obsTime) {
-    RawDataItemDto.Sensor sensor = item.getSensor();
-
-    if (sensor == null) {
-      return null;
+  private static long readingCount(HourlyAggregation row) {
+    long count = 0;
+    for (AggregateFieldMapping field : AggregateFieldMapping.FIELDS) {
+      count = Math.max(count, field.countGetter().applyAsLong(row));
     }
-
-    SensorValues values = extractSensorValues(sensor);
-    return TempSensorData.builder()
-        .stationId(item.getStationId())
-        .obsTime(obsTime)
-        .csq(item.getCsq())
-        .rainD(item.getRainD())
-        .v1(values.v1)
-        .v2(values.v2)
-        .v3(values.v3)
-        .v4(values.v4)
-        .v5(values.v5)
-        .v6(values.v6)
-        .v7(values.v7)
-        .rh(values.rh)
-        .tx(values.tx)
-        .echo(values.echo)
-        .speed(values.speed)
-        .build();
+    return count;
   }
 
-  // Helper class to hold sensor values
-  private static class SensorValues {
-    BigDecimal v1;
-    BigDecimal v2;
-    BigDecimal v3;
-    BigDecimal v4;
-    BigDecimal v5;
-    BigDecimal v6;
-    BigDecimal v7;
-    BigDecimal rh;
-    BigDecimal tx;
-    BigDecimal echo;
-    BigDecimal speed;
+  @Override
+  public List<DailyAggregation> getDailyAverage(LocalDateTime start, LocalDateTime end) {
+    LocalDate startDate = start.toLocalDate();
+    LocalDate endDate = end.toLocalDate();
+    return dailyAggregationRepository.findByObsDateBetween(startDate, endDate);
   }
 
-  // ----------------------------------------------------------------------------
-  // Reading from the aggregator tables
-  // ----------------------------------------------------------------------------
+  // Periods are keyed by their first day, so the range starts at the period containing start
   @Override
-  @Cacheable(
-      value = "hourlyAggregation",
-      key = "#start.toLocalDate().toString() + '-' + #end.toLocalDate().toString()")
-  public List<HourlyAggregation> getHourlyAverage(LocalDateTime start, LocalDateTime end) {
-    LocalDate startDate = start.toLocalDate();
+  public List<WeeklyAggregation> getWeeklyAverage(LocalDateTime start, LocalDateTime end) {
+    LocalDate startDate = RollupPeriod.WEEK.start(start.toLocalDate());
     LocalDate endDate = end.toLocalDate();
-    return hourlyAggregationRepository.findByObsDateBetween(startDate, endDate);
+    return weeklyAggregationRepository.findByObsDateBetween(startDate, endDate);
   }
 
   @Override
-  public List<DailyAggregation> getDailyAverage(LocalDateTime start, LocalDateTime end) {
-    LocalDate startDate = start.toLocalDate();
+  public List<MonthlyAggregation> getMonthlyAverage(LocalDateTime start, LocalDateTime end) {
+    LocalDate startDate = RollupPeriod.MONTH.start(start.toLocalDate());
     LocalDate endDate = end.toLocalDate();
-    return dailyAggregationRepository.findByObsDateBetween(startDate, endDate);
+    return monthlyAggregationRepository.findByObsDateBetween(startDate, endDate);
+  }
+
+  @Override
+  public PercentileResult getPercentiles(
+      String stationId,
+      String field,
+      LocalDateTime start,
+      LocalDateTime end,
+      List<Double> quantiles) {
+    SketchFieldMapping mapping =
+        SketchFieldMapping.of(field)
+            .orElseThrow(() -> new IllegalArgumentException("No percentiles for field: " + field));
+    for (double q : quantiles) {
+      if (!(q >= 0 && q <= 1)) {
+        throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+      }
+    }
+
+    QuantileSketch sketch =
+        QuantileSketch.fromBytes(
+            quantileSketchRepository.mergedSketch(stationId, mapping, start, end));
+    Map<String, BigDecimal> percentiles = new LinkedHashMap<>();
+    for (double q : quantiles) {
+      percentiles.put(percentileKey(q), sketch.quantile(q));
+    }
+    return new PercentileResult(stationId, field, start, end, sketch.count(), percentiles);
+  }
+
+  // 0.5 -> "p50", 0.999 -> "p99.9"
+  private static String percentileKey(double q) {
+    return "p" + BigDecimal.valueOf(q).movePointRight(2).stripTrailingZeros().toPlainString();
   }
 
   @Override
   public List<SensorData> getPeakTimeData(LocalDateTime start, LocalDateTime end) {
     List<SensorData> allData = aggregationService.getSensorDataByTimeRange(start, end);
+    TariffCalendar calendar = tariffCalendarService.current();
     return allData.stream()
         .filter(Objects::nonNull)
-        .filter(data -> isPeakTime(data.getObsTime()))
+        .filter(data -> calendar.isPeak(data.getObsTime()))
         .collect(Collectors.toList());
   }
 
   @Override
   public List<SensorData> getOffPeakTimeData(LocalDateTime start, LocalDateTime end) {
     List<SensorData> allData = aggregationService.getSensorDataByTimeRange(start, end);
+    TariffCalendar calendar = tariffCalendarService.current();
     return allData.stream()
         .filter(Objects::nonNull)
-        .filter(data -> !isPeakTime(data.getObsTime()))
+        .filter(data -> !calendar.isPeak(data.getObsTime()))
         .collect(Collectors.toList());
   }
-
-  private boolean isPeakTime(LocalDateTime dateTime) {
-    DayOfWeek day = dateTime.getDayOfWeek();
-    LocalTime time = dateTime.toLocalTime();
-    LocalTime startPeak = LocalTime.of(7, 30);
-    LocalTime endPeak = LocalTime.of(17, 30);
-    return switch (day) {
-      case MONDAY, TUESDAY, WEDNESDAY -> (!time.isBefore(startPeak) && time.isBefore(endPeak));
-      case THURSDAY, FRIDAY -> true;
-      case SATURDAY, SUNDAY -> false;
-    };
-  }
 }
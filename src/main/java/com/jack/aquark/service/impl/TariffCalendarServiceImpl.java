@@ -0,0 +1,35 @@
+package com.jack.aquark.service.impl;
+
+import com.jack.aquark.repository.TariffRuleRepository;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.TariffCalendar;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TariffCalendarServiceImpl implements TariffCalendarService {
+
+  private final TariffRuleRepository tariffRuleRepository;
+
+  // Replaced as a whole, so readers never see a half-compiled calendar
+  private volatile TariffCalendar calendar;
+
+  @Override
+  public TariffCalendar current() {
+    TariffCalendar current = calendar;
+    return current != null ? current : refresh();
+  }
+
+  @Override
+  public synchronized TariffCalendar refresh() {
+    TariffCalendar compiled =
+        TariffCalendar.compile(
+            tariffRuleRepository.findPeakWindows(), tariffRuleRepository.findHolidays());
+    calendar = compiled;
+    log.debug("Compiled tariff calendar {}", compiled);
+    return compiled;
+  }
+}
@@ -0,0 +1,245 @@
+package com.jack.aquark.util;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Sensor values as {@code long}s scaled by 10<sup>4</sup>, the scale of every {@code NUMERIC(19,
+ * 4)} measurement column. Entities and DTOs keep {@link BigDecimal}; values are converted once when
+ * they enter a hot loop, and sums and averages are computed on primitives. Rounding follows {@link
+ * BigDecimal#divide(BigDecimal, int, RoundingMode)} with {@link RoundingMode#HALF_UP}, so results
+ * are the same as the {@code BigDecimal} arithmetic they replace.
+ */
+public final class FixedPoint {
+
+  public static final int SCALE = 4;
+
+  private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L};
+
+  // Below this magnitude a scaled value converts exactly through double, see toScaled
+  private static final double EXACT_DOUBLE_LIMIT = 0x1p50;
+
+  private FixedPoint() {
+    throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+  }
+
+  /**
+   * Converts {@code value} to its scaled representation.
+   *
+   * @throws ArithmeticException if the value has non-zero digits beyond the fourth decimal place or
+   *     does not fit in a {@code long} at scale 4
+   */
+  public static long toScaled(BigDecimal value) {
+    // With at most four decimals, value * 10^4 is an integer. Below 2^50 the two correctly rounded
+    // double operations stay within 0.26 of it, so rounding recovers it exactly. Unlike
+    // movePointRight or unscaledValue, doubleValue allocates nothing for such values.
+    if (value.scale() <= SCALE) {
+      double scaled = value.doubleValue() * POWERS_OF_TEN[SCALE];
+      if (Math.abs(scaled) < EXACT_DOUBLE_LIMIT) {
+        return Math.round(scaled);
+      }
+    }
+    return value.movePointRight(SCALE).longValueExact();
+  }
+
+  public static BigDecimal toBigDecimal(long scaled) {
+    return BigDecimal.valueOf(scaled, SCALE);
+  }
+
+  /**
+   * Divides {@code scaledSum} by {@code count} and rounds half-up to {@code scale} (at most {@link
+   * #SCALE}) decimal places.
+   */
+  public static BigDecimal average(long scaledSum, long count, int scale) {
+    long divisor = Math.multiplyExact(count, POWERS_OF_TEN[SCALE - scale]);
+    return BigDecimal.valueOf(divideHalfUp(scaledSum, divisor), scale);
+  }
+
+  /** {@code dividend / divisor} rounded half away from zero; {@code divisor} must be positive. */
+  static long divideHalfUp(long dividend, long divisor) {
+    long quotient = dividend / divisor;
+    long remainder = Math.abs(dividend % divisor);
+    if (remainder >= divisor - remainder) {
+      quotient += dividend < 0 ? -1 : 1;
+    }
+    return quotient;
+  }
+
+  /**
+   * Sample standard deviation of a group from its count, sum and sum of squares, rounded half-up to
+   * {@code scale} places, or {@code null} with fewer than two values. The inputs are exact, so the
+   * textbook formula loses no precision.
+   */
+  public static BigDecimal standardDeviation(
+      long count, BigDecimal sum, BigDecimal sumOfSquares, int scale) {
+    if (count < 2 || sum == null || sumOfSquares == null) {
+      return null;
+    }
+    BigDecimal n = BigDecimal.valueOf(count);
+    BigDecimal numerator = n.multiply(sumOfSquares).subtract(sum.multiply(sum));
+    if (numerator.signum() <= 0) {
+      return BigDecimal.ZERO.setScale(scale);
+    }
+    BigDecimal variance =
+        numerator.divide(n.multiply(BigDecimal.valueOf(count - 1)), MathContext.DECIMAL128);
+    return variance.sqrt(MathContext.DECIMAL128).setScale(scale, RoundingMode.HALF_UP);
+  }
+
+  /**
+   * Mergeable state of a group of non-null values: count, sum, minimum, maximum and sum of squares.
+   * Falls back to {@link BigDecimal} arithmetic if a value, or a {@link #merge merged} group's
+   * state, cannot be represented at scale 4 (8 for the sum of squares) or a sum overflows a {@code
+   * long}. Not thread-safe; {@link #reset} it to reuse it for the next group.
+   */
+  public static final class Accumulator {
+
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    // Scaled by 10^8, the square of the value scale
+    private long sumOfSquares;
+
+    // Set once the long representation is abandoned
+    private BigDecimal overflow;
+    private BigDecimal overflowMin;
+    private BigDecimal overflowMax;
+    private BigDecimal overflowSquares;
+
+    public void add(BigDecimal value) {
+      if (value == null) {
+        return;
+      }
+      if (overflow == null) {
+        try {
+          long scaled = toScaled(value);
+          long newSum = Math.addExact(sum, scaled);
+          long newSquares = Math.addExact(sumOfSquares, Math.multiplyExact(scaled, scaled));
+          sum = newSum;
+          sumOfSquares = newSquares;
+          min = Math.min(min, scaled);
+          max = Math.max(max, scaled);
+          count++;
+          return;
+        } catch (ArithmeticException e) {
+          // Not representable at scale 4 or out of range; continue in BigDecimal
+        }
+        spill();
+      }
+      merge(1, value, value, value, value.multiply(value));
+    }
+
+    /**
+     * Adds the state of another group, as stored in an aggregation row. {@code min} and {@code max}
+     * may be {@code null} when {@code count} is zero.
+     */
+    public void merge(
+        long count, BigDecimal sum, BigDecimal min, BigDecimal max, BigDecimal sumOfSquares) {
+      if (count == 0) {
+        return;
+      }
+      if (overflow == null) {
+        try {
+          long newSum = Math.addExact(this.sum, toScaled(sum));
+          long newSquares =
+              Math.addExact(
+                  this.sumOfSquares, sumOfSquares.movePointRight(2 * SCALE).longValueExact());
+          long scaledMin = toScaled(min);
+          long scaledMax = toScaled(max);
+          this.count = Math.addExact(this.count, count);
+          this.sum = newSum;
+          this.sumOfSquares = newSquares;
+          this.min = Math.min(this.min, scaledMin);
+          this.max = Math.max(this.max, scaledMax);
+          return;
+        } catch (ArithmeticException e) {
+          // Not representable at scale 4 (8 for squares) or out of range; continue in BigDecimal
+        }
+        spill();
+      }
+      this.count += count;
+      overflow = overflow.add(sum);
+      overflowSquares = overflowSquares.add(sumOfSquares);
+      if (overflowMin == null || min.compareTo(overflowMin) < 0) {
+        overflowMin = min;
+      }
+      if (overflowMax == null || max.compareTo(overflowMax) > 0) {
+        overflowMax = max;
+      }
+    }
+
+    private void spill() {
+      overflow = toBigDecimal(sum);
+      overflowSquares = BigDecimal.valueOf(sumOfSquares, 2 * SCALE);
+      if (count > 0) {
+        overflowMin = toBigDecimal(min);
+        overflowMax = toBigDecimal(max);
+      }
+    }
+
+    public long count() {
+      return count;
+    }
+
+    /** Whether the state has moved to {@link BigDecimal} arithmetic. */
+    boolean spilled() {
+      return overflow != null;
+    }
+
+    /** The sum, or {@link BigDecimal#ZERO} when nothing was added. */
+    public BigDecimal sum() {
+      if (count == 0) {
+        return BigDecimal.ZERO;
+      }
+      return overflow != null ? overflow : toBigDecimal(sum);
+    }
+
+    /** The mean rounded half-up to {@code scale} places, or {@link BigDecimal#ZERO} when empty. */
+    public BigDecimal average(int scale) {
+      if (count == 0) {
+        return BigDecimal.ZERO;
+      }
+      if (overflow != null) {
+        return overflow.divide(BigDecimal.valueOf(count), scale, RoundingMode.HALF_UP);
+      }
+      return FixedPoint.average(sum, count, scale);
+    }
+
+    /** The smallest value added, or {@code null} when empty. */
+    public BigDecimal min() {
+      if (count == 0) {
+        return null;
+      }
+      return overflow != null ? overflowMin : toBigDecimal(min);
+    }
+
+    /** The largest value added, or {@code null} when empty. */
+    public BigDecimal max() {
+      if (count == 0) {
+        return null;
+      }
+      return overflow != null ? overflowMax : toBigDecimal(max);
+    }
+
+    /** The sum of the squared values, or {@link BigDecimal#ZERO} when empty. */
+    public BigDecimal sumOfSquares() {
+      if (count == 0) {
+        return BigDecimal.ZERO;
+      }
+      return overflow != null ? overflowSquares : BigDecimal.valueOf(sumOfSquares, 2 * SCALE);
+    }
+
+    public void reset() {
+      count = 0;
+      sum = 0;
+      min = Long.MAX_VALUE;
+      max = Long.MIN_VALUE;
+      sumOfSquares = 0;
+      overflow = null;
+      overflowMin = null;
+      overflowMax = null;
+      overflowSquares = null;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.jack.aquark.util;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parser for the fixed {@code yyyy-MM-dd HH:mm:ss} layout of upstream observation times. Digits are
+ * read straight from the text, so a well-formed value costs no more than the resulting {@link
+ * LocalDateTime}. Anything unusual (a different length, a non-digit, an out-of-range field, or the
+ * day-of-month and {@code 24:00:00} adjustments the formatter's SMART resolver makes) is handed to
+ * the pattern formatter. Results and exceptions therefore match {@code LocalDateTime.parse(text,
+ * FORMATTER)} exactly.
+ */
+public final class ObsTimeParser {
+
+  public static final DateTimeFormatter FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+  private static final int LENGTH = 19;
+
+  private ObsTimeParser() {
+    throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+  }
+
+  /**
+   * @throws java.time.format.DateTimeParseException if the text is not a valid observation time
+   * @throws NullPointerException if {@code text} is null
+   */
+  public static LocalDateTime parse(CharSequence text) {
+    if (text.length() != LENGTH
+        || text.charAt(4) != '-'
+        || text.charAt(7) != '-'
+        || text.charAt(10) != ' '
+        || text.charAt(13) != ':'
+        || text.charAt(16) != ':') {
+      return LocalDateTime.parse(text, FORMATTER);
+    }
+
+    int year = digits(text, 0, 4);
+    int month = digits(text, 5, 2);
+    int day = digits(text, 8, 2);
+    int hour = digits(text, 11, 2);
+    int minute = digits(text, 14, 2);
+    int second = digits(text, 17, 2);
+
+    // A negative field means a non-digit character
+    if (year < 1
+        || month < 1
+        || month > 12
+        || day < 1
+        || day > daysInMonth(year, month)
+        || hour < 0
+        || hour > 23
+        || minute < 0
+        || minute > 59
+        || second < 0
+        || second > 59) {
+      return LocalDateTime.parse(text, FORMATTER);
+    }
+    return LocalDateTime.of(year, month, day, hour, minute, second);
+  }
+
+  private static int digits(CharSequence text, int offset, int count) {
+    int value = 0;
+    for (int i = offset; i < offset + count; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    return switch (month) {
+      case 2 -> isLeapYear(year) ? 29 : 28;
+      case 4, 6, 9, 11 -> 30;
+      default -> 31;
+    };
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+}
@@ -0,0 +1,123 @@
+package com.jack.aquark.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One stage of a processing pipeline: a bounded input queue served by a fixed number of virtual
+ * worker threads. {@link #put} blocks while the queue is full, so a slow stage pushes back on the
+ * stages feeding it instead of letting work pile up in memory.
+ *
+ * <p>Publishes {@code <prefix>.queue.depth}, {@code <prefix>.stage.duration} (per handled element)
+ * and {@code <prefix>.stage.items}, all tagged with {@code stage=<name>}.
+ */
+@Slf4j
+public class PipelineStage<T> {
+
+  /** Handles one element; may block on downstream {@link #put} calls. */
+  @FunctionalInterface
+  public interface Handler<T> {
+    void handle(T element) throws Exception;
+  }
+
+  private final String name;
+  private final int parallelism;
+  private final BlockingQueue<T> queue;
+  private final Handler<T> handler;
+  private final BiConsumer<T, Exception> onFailure;
+  private final ToIntFunction<T> itemCount;
+  private final Timer duration;
+  private final Counter items;
+  private final List<Thread> workers = new ArrayList<>();
+
+  public PipelineStage(
+      String metricPrefix,
+      String name,
+      int parallelism,
+      int capacity,
+      MeterRegistry meterRegistry,
+      ToIntFunction<T> itemCount,
+      Handler<T> handler,
+      BiConsumer<T, Exception> onFailure) {
+    this.name = name;
+    this.parallelism = Math.max(1, parallelism);
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    this.handler = handler;
+    this.onFailure = onFailure;
+    this.itemCount = itemCount;
+
+    Gauge.builder(metricPrefix + ".queue.depth", queue, BlockingQueue::size)
+        .tag("stage", name)
+        .description("Elements waiting for this stage")
+        .register(meterRegistry);
+    this.duration =
+        Timer.builder(metricPrefix + ".stage.duration")
+            .tag("stage", name)
+            .description("Time spent handling one element")
+            .register(meterRegistry);
+    this.items =
+        Counter.builder(metricPrefix + ".stage.items")
+            .tag("stage", name)
+            .description("Items that went through this stage")
+            .register(meterRegistry);
+  }
+
+  public synchronized void start() {
+    if (!workers.isEmpty()) {
+      return;
+    }
+    for (int i = 0; i < parallelism; i++) {
+      workers.add(Thread.ofVirtual().name("pipeline-" + name + "-" + i).start(this::work));
+    }
+  }
+
+  public synchronized void stop() throws InterruptedException {
+    workers.forEach(Thread::interrupt);
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    workers.clear();
+  }
+
+  /** Enqueues {@code element}, waiting while the stage is full. */
+  public void put(T element) {
+    try {
+      queue.put(element);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while queueing for stage " + name, e);
+    }
+  }
+
+  private void work() {
+    while (!Thread.currentThread().isInterrupted()) {
+      T element;
+      try {
+        element = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      long start = System.nanoTime();
+      try {
+        handler.handle(element);
+        items.increment(itemCount.applyAsInt(element));
+      } catch (Exception e) {
+        log.error("Pipeline stage {} failed", name, e);
+        onFailure.accept(element, e);
+      } finally {
+        duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+}
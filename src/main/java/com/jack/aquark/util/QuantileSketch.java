@@ -0,0 +1,149 @@
+package com.jack.aquark.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with a relative error of at most {@link #RELATIVE_ACCURACY} (the
+ * log-bucketed layout of DDSketch). A value {@code v} is counted in bin {@code ceil(ln|v| /
+ * ln(gamma))} with {@code gamma = (1 + a) / (1 - a)}, shifted by {@link #BIN_OFFSET} and negated
+ * for negative values; zero has bin 0. Bins are therefore ordered like their values, and merging
+ * two sketches adds the counts of equal bins, so the merged sketch is the same as one built from
+ * all of the values.
+ *
+ * <p>The serialized form is a sequence of 12-byte big-endian records {@code (int bin, long count)}
+ * in ascending bin order, which the {@code sketch_*} functions of migration V6 read and write with
+ * the same binning. An empty sketch serializes to {@code null}. Not thread-safe.
+ */
+public final class QuantileSketch {
+
+  public static final double RELATIVE_ACCURACY = 0.01;
+
+  private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+
+  // 1 / ln(GAMMA), written out as in sketch_bin() so that both compute the same bins. The engine
+  // equivalence test compares them on the values next to every bin boundary.
+  private static final double INDEX_MULTIPLIER = 49.99833328888678;
+
+  // Keeps the bins of values below 1 (negative logarithms) away from zero's bin
+  static final int BIN_OFFSET = 1 << 16;
+
+  private static final int RECORD_BYTES = Integer.BYTES + Long.BYTES;
+
+  private int[] bins = new int[8];
+  private long[] counts = new long[8];
+  private int size;
+  private long count;
+
+  /** Returns a sketch holding the serialized state, which may be {@code null}. */
+  public static QuantileSketch fromBytes(byte[] bytes) {
+    QuantileSketch sketch = new QuantileSketch();
+    sketch.merge(bytes);
+    return sketch;
+  }
+
+  public void add(BigDecimal value) {
+    if (value != null) {
+      add(binOf(value), 1);
+    }
+  }
+
+  /** Adds the serialized state of another sketch; {@code null} is an empty sketch. */
+  public void merge(byte[] bytes) {
+    if (bytes == null) {
+      return;
+    }
+    if (bytes.length % RECORD_BYTES != 0) {
+      throw new IllegalArgumentException("Malformed quantile sketch of " + bytes.length + " bytes");
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      add(buffer.getInt(), buffer.getLong());
+    }
+  }
+
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Estimates the {@code q}-quantile, rounded half-up to {@link FixedPoint#SCALE} places, or {@code
+   * null} when empty. The estimate is within {@link #RELATIVE_ACCURACY} of the value of that rank.
+   *
+   * @throws IllegalArgumentException if {@code q} is outside [0, 1]
+   */
+  public BigDecimal quantile(double q) {
+    if (!(q >= 0 && q <= 1)) {
+      throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+    }
+    if (count == 0) {
+      return null;
+    }
+    double rank = q * (count - 1);
+    long seen = 0;
+    int i = 0;
+    while (i < size - 1) {
+      seen += counts[i];
+      if (seen > rank) {
+        break;
+      }
+      i++;
+    }
+    return BigDecimal.valueOf(valueOf(bins[i])).setScale(FixedPoint.SCALE, RoundingMode.HALF_UP);
+  }
+
+  /** The serialized state, or {@code null} when empty. */
+  public byte[] toBytes() {
+    if (size == 0) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size * RECORD_BYTES);
+    for (int i = 0; i < size; i++) {
+      buffer.putInt(bins[i]).putLong(counts[i]);
+    }
+    return buffer.array();
+  }
+
+  public void clear() {
+    size = 0;
+    count = 0;
+  }
+
+  static int binOf(BigDecimal value) {
+    int signum = value.signum();
+    if (signum == 0) {
+      return 0;
+    }
+    double magnitude = Math.abs(value.doubleValue());
+    return signum * ((int) Math.ceil(Math.log(magnitude) * INDEX_MULTIPLIER) + BIN_OFFSET);
+  }
+
+  // Within RELATIVE_ACCURACY of every value of the bin's range (gamma^(k-1), gamma^k]
+  static double valueOf(int bin) {
+    if (bin == 0) {
+      return 0;
+    }
+    int k = Math.abs(bin) - BIN_OFFSET;
+    return Math.signum(bin) * 2 * Math.pow(GAMMA, k) / (GAMMA + 1);
+  }
+
+  private void add(int bin, long binCount) {
+    int i = Arrays.binarySearch(bins, 0, size, bin);
+    if (i < 0) {
+      i = -i - 1;
+      if (size == bins.length) {
+        bins = Arrays.copyOf(bins, size * 2);
+        counts = Arrays.copyOf(counts, size * 2);
+      }
+      System.arraycopy(bins, i, bins, i + 1, size - i);
+      System.arraycopy(counts, i, counts, i + 1, size - i);
+      bins[i] = bin;
+      counts[i] = 0;
+      size++;
+    }
+    counts[i] += binCount;
+    count += binCount;
+  }
+}
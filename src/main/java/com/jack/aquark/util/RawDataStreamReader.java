@@ -0,0 +1,51 @@
+package com.jack.aquark.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.dto.RawDataItemDto;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Reads a {@code {"raw": [...]}} payload from a stream one item at a time, so only the item being
+ * handed to the consumer is held in memory rather than the whole {@code RawDataWrapperDto}.
+ */
+public class RawDataStreamReader {
+
+  private static final String RAW_FIELD = "raw";
+
+  private final ObjectMapper objectMapper;
+
+  public RawDataStreamReader(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * @return the number of items passed to {@code consumer}
+   */
+  public int read(InputStream in, Consumer<RawDataItemDto> consumer) throws IOException {
+    int count = 0;
+    try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a JSON object at the start of the payload");
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+
+        if (RAW_FIELD.equals(field) && value == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            consumer.accept(objectMapper.readValue(parser, RawDataItemDto.class));
+            count++;
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,120 @@
+package com.jack.aquark.util;
+
+import com.jack.aquark.dto.RawDataItemDto;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.entity.TempSensorData;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/** Maps upstream {@link RawDataItemDto} items onto the raw sensor entities. */
+public final class SensorDataMapper {
+
+  private SensorDataMapper() {
+    throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+  }
+
+  public static LocalDateTime parseObsTime(String obsTime) {
+    return ObsTimeParser.parse(obsTime);
+  }
+
+  // Helper: Extract common sensor values from RawDataItemDto.Sensor
+  private static SensorValues extractSensorValues(RawDataItemDto.Sensor sensor) {
+    SensorValues values = new SensorValues();
+
+    if (sensor.getVolt() != null) {
+      values.v1 = sensor.getVolt().getV1();
+      values.v2 = sensor.getVolt().getV2();
+      values.v3 = sensor.getVolt().getV3();
+      values.v4 = sensor.getVolt().getV4();
+      values.v5 = sensor.getVolt().getV5();
+      values.v6 = sensor.getVolt().getV6();
+      values.v7 = sensor.getVolt().getV7();
+    }
+
+    if (sensor.getStickTxRh() != null) {
+      values.rh = sensor.getStickTxRh().getRh();
+      values.tx = sensor.getStickTxRh().getTx();
+    }
+
+    if (sensor.getUltrasonicLevel() != null) {
+      values.echo = sensor.getUltrasonicLevel().getEcho();
+    }
+
+    if (sensor.getWaterSpeedAquark() != null) {
+      values.speed = sensor.getWaterSpeedAquark().getSpeed();
+    }
+
+    return values;
+  }
+
+  /** Returns {@code null} when the item carries no sensor block. */
+  public static SensorData toSensorData(RawDataItemDto item, LocalDateTime obsTime) {
+    RawDataItemDto.Sensor sensor = item.getSensor();
+
+    if (sensor == null) {
+      return null;
+    }
+
+    SensorValues values = extractSensorValues(sensor);
+    return SensorData.builder()
+        .stationId(item.getStationId())
+        .obsTime(obsTime)
+        .csq(item.getCsq())
+        .rainD(item.getRainD())
+        .v1(values.v1)
+        .v2(values.v2)
+        .v3(values.v3)
+        .v4(values.v4)
+        .v5(values.v5)
+        .v6(values.v6)
+        .v7(values.v7)
+        .rh(values.rh)
+        .tx(values.tx)
+        .echo(values.echo)
+        .speed(values.speed)
+        .build();
+  }
+
+  /** Same as {@link #toSensorData}, for the aggregation staging table. */
+  public static TempSensorData toTempSensorData(RawDataItemDto item, LocalDateTime obsTime) {
+    RawDataItemDto.Sensor sensor = item.getSensor();
+
+    if (sensor == null) {
+      return null;
+    }
+
+    SensorValues values = extractSensorValues(sensor);
+    return TempSensorData.builder()
+        .stationId(item.getStationId())
+        .obsTime(obsTime)
+        .csq(item.getCsq())
+        .rainD(item.getRainD())
+        .v1(values.v1)
+        .v2(values.v2)
+        .v3(values.v3)
+        .v4(values.v4)
+        .v5(values.v5)
+        .v6(values.v6)
+        .v7(values.v7)
+        .rh(values.rh)
+        .tx(values.tx)
+        .echo(values.echo)
+        .speed(values.speed)
+        .build();
+  }
+
+  // Helper class to hold sensor values
+  private static class SensorValues {
+    BigDecimal v1;
+    BigDecimal v2;
+    BigDecimal v3;
+    BigDecimal v4;
+    BigDecimal v5;
+    BigDecimal v6;
+    BigDecimal v7;
+    BigDecimal rh;
+    BigDecimal tx;
+    BigDecimal echo;
+    BigDecimal speed;
+  }
+}
@@ -0,0 +1,175 @@
+package com.jack.aquark.util;
+
+import com.jack.aquark.dto.TariffPeakWindow;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compiled PEAK/OFFPEAK calendar. Each day is a 48-bit mask of its 30-minute slots, bit {@code i}
+ * set when the slot starting {@code 30 * i} minutes after midnight is PEAK. Between the first and
+ * the last date at which a window's effective range or a holiday starts or ends, every day has its
+ * own mask; before and after that span the rules repeat weekly, so one mask per weekday covers each
+ * side. Classifying a timestamp is therefore an array read and a bit test. Immutable.
+ */
+public final class TariffCalendar {
+
+  public static final String PEAK = "PEAK";
+  public static final String OFFPEAK = "OFFPEAK";
+
+  public static final int SLOT_MINUTES = 30;
+
+  private final long firstDay;
+  // Masks of the days firstDay, firstDay + 1, ...
+  private final long[] dayMasks;
+  // Indexed by ISO weekday - 1, for days before firstDay and after the last day mask
+  private final long[] headWeek;
+  private final long[] tailWeek;
+
+  private TariffCalendar(long firstDay, long[] dayMasks, long[] headWeek, long[] tailWeek) {
+    this.firstDay = firstDay;
+    this.dayMasks = dayMasks;
+    this.headWeek = headWeek;
+    this.tailWeek = tailWeek;
+  }
+
+  /**
+   * Compiles the given windows and holidays.
+   *
+   * @throws IllegalArgumentException if a window is not on the 30-minute grid of one day
+   */
+  public static TariffCalendar compile(
+      Collection<TariffPeakWindow> windows, Collection<LocalDate> holidays) {
+    Set<LocalDate> holidaySet = new HashSet<>(holidays);
+    long first = Long.MAX_VALUE;
+    long end = Long.MIN_VALUE;
+    for (TariffPeakWindow window : windows) {
+      validate(window);
+      if (window.effectiveFrom() != null) {
+        first = Math.min(first, window.effectiveFrom().toEpochDay());
+        end = Math.max(end, window.effectiveFrom().toEpochDay());
+      }
+      if (window.effectiveTo() != null) {
+        first = Math.min(first, window.effectiveTo().toEpochDay() + 1);
+        end = Math.max(end, window.effectiveTo().toEpochDay() + 1);
+      }
+    }
+    for (LocalDate holiday : holidaySet) {
+      first = Math.min(first, holiday.toEpochDay());
+      end = Math.max(end, holiday.toEpochDay() + 1);
+    }
+    if (first > end) {
+      // Only open-ended windows: the same week everywhere
+      long[] week = weekMasks(windows, LocalDate.EPOCH);
+      return new TariffCalendar(0, new long[0], week, week);
+    }
+
+    long[] dayMasks = new long[Math.toIntExact(end - first)];
+    for (int i = 0; i < dayMasks.length; i++) {
+      LocalDate date = LocalDate.ofEpochDay(first + i);
+      if (!holidaySet.contains(date)) {
+        dayMasks[i] = dayMask(windows, date);
+      }
+    }
+    return new TariffCalendar(
+        first,
+        dayMasks,
+        weekMasks(windows, LocalDate.ofEpochDay(first - 1)),
+        weekMasks(windows, LocalDate.ofEpochDay(end)));
+  }
+
+  public boolean isPeak(LocalDateTime time) {
+    long day = time.toLocalDate().toEpochDay();
+    long offset = day - firstDay;
+    long mask;
+    if (offset < 0) {
+      mask = headWeek[time.getDayOfWeek().ordinal()];
+    } else if (offset < dayMasks.length) {
+      mask = dayMasks[(int) offset];
+    } else {
+      mask = tailWeek[time.getDayOfWeek().ordinal()];
+    }
+    int slot = time.getHour() * (60 / SLOT_MINUTES) + time.getMinute() / SLOT_MINUTES;
+    return (mask >>> slot & 1) != 0;
+  }
+
+  public String category(LocalDateTime time) {
+    return isPeak(time) ? PEAK : OFFPEAK;
+  }
+
+  /** The date of the first day mask; before it the head week applies. */
+  public LocalDate firstDay() {
+    return LocalDate.ofEpochDay(firstDay);
+  }
+
+  public long[] dayMasks() {
+    return dayMasks.clone();
+  }
+
+  /** Weekday masks, Monday first, of the days before {@link #firstDay}. */
+  public long[] headWeekMasks() {
+    return headWeek.clone();
+  }
+
+  /** Weekday masks, Monday first, of the days after the last day mask. */
+  public long[] tailWeekMasks() {
+    return tailWeek.clone();
+  }
+
+  private static void validate(TariffPeakWindow window) {
+    if (window.isoDayOfWeek() < 1
+        || window.isoDayOfWeek() > 7
+        || window.startMinute() < 0
+        || window.startMinute() >= window.endMinute()
+        || window.endMinute() > 24 * 60
+        || window.startMinute() % SLOT_MINUTES != 0
+        || window.endMinute() % SLOT_MINUTES != 0) {
+      throw new IllegalArgumentException("Invalid tariff window: " + window);
+    }
+  }
+
+  // The rules in force on date, per weekday
+  private static long[] weekMasks(Collection<TariffPeakWindow> windows, LocalDate date) {
+    long[] week = new long[7];
+    for (TariffPeakWindow window : windows) {
+      if (window.isEffectiveOn(date)) {
+        week[window.isoDayOfWeek() - 1] |= slots(window);
+      }
+    }
+    return week;
+  }
+
+  private static long dayMask(Collection<TariffPeakWindow> windows, LocalDate date) {
+    DayOfWeek day = date.getDayOfWeek();
+    long mask = 0;
+    for (TariffPeakWindow window : windows) {
+      if (window.isoDayOfWeek() == day.getValue() && window.isEffectiveOn(date)) {
+        mask |= slots(window);
+      }
+    }
+    return mask;
+  }
+
+  private static long slots(TariffPeakWindow window) {
+    int from = window.startMinute() / SLOT_MINUTES;
+    int to = window.endMinute() / SLOT_MINUTES;
+    return (1L << to) - (1L << from);
+  }
+
+  @Override
+  public String toString() {
+    return "TariffCalendar[firstDay="
+        + firstDay()
+        + ", days="
+        + dayMasks.length
+        + ", head="
+        + Arrays.toString(headWeek)
+        + ", tail="
+        + Arrays.toString(tailWeek)
+        + "]";
+  }
+}
@@ -0,0 +1,9 @@
+-- Highest obs_time committed per source URL and station, used to skip already-ingested items
+CREATE TABLE ingestion_watermark
+(
+    source       VARCHAR(512) NOT NULL,
+    station_id   VARCHAR(50)  NOT NULL,
+    max_obs_time TIMESTAMP    NOT NULL,
+
+    PRIMARY KEY (source, station_id)
+);
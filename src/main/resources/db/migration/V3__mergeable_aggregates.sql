@@ -0,0 +1,172 @@
+-- Mergeable per-field state for both aggregation tiers: with count, sum, min, max and sum of
+-- squares stored, any coarser tier or date range can be rolled up exactly from finer rows.
+ALTER TABLE hourly_aggregation
+    ADD COLUMN v1_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v1_min_value        NUMERIC(19, 4),
+    ADD COLUMN v1_max_value        NUMERIC(19, 4),
+    ADD COLUMN v1_sum_sq_value     NUMERIC,
+    ADD COLUMN v2_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v2_min_value        NUMERIC(19, 4),
+    ADD COLUMN v2_max_value        NUMERIC(19, 4),
+    ADD COLUMN v2_sum_sq_value     NUMERIC,
+    ADD COLUMN v3_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v3_min_value        NUMERIC(19, 4),
+    ADD COLUMN v3_max_value        NUMERIC(19, 4),
+    ADD COLUMN v3_sum_sq_value     NUMERIC,
+    ADD COLUMN v4_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v4_min_value        NUMERIC(19, 4),
+    ADD COLUMN v4_max_value        NUMERIC(19, 4),
+    ADD COLUMN v4_sum_sq_value     NUMERIC,
+    ADD COLUMN v5_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v5_min_value        NUMERIC(19, 4),
+    ADD COLUMN v5_max_value        NUMERIC(19, 4),
+    ADD COLUMN v5_sum_sq_value     NUMERIC,
+    ADD COLUMN v6_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v6_min_value        NUMERIC(19, 4),
+    ADD COLUMN v6_max_value        NUMERIC(19, 4),
+    ADD COLUMN v6_sum_sq_value     NUMERIC,
+    ADD COLUMN v7_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v7_min_value        NUMERIC(19, 4),
+    ADD COLUMN v7_max_value        NUMERIC(19, 4),
+    ADD COLUMN v7_sum_sq_value     NUMERIC,
+    ADD COLUMN rh_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN rh_min_value        NUMERIC(19, 4),
+    ADD COLUMN rh_max_value        NUMERIC(19, 4),
+    ADD COLUMN rh_sum_sq_value     NUMERIC,
+    ADD COLUMN tx_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN tx_min_value        NUMERIC(19, 4),
+    ADD COLUMN tx_max_value        NUMERIC(19, 4),
+    ADD COLUMN tx_sum_sq_value     NUMERIC,
+    ADD COLUMN echo_count          BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN echo_min_value      NUMERIC(19, 4),
+    ADD COLUMN echo_max_value      NUMERIC(19, 4),
+    ADD COLUMN echo_sum_sq_value   NUMERIC,
+    ADD COLUMN rain_d_count        BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN rain_d_min_value    NUMERIC(19, 4),
+    ADD COLUMN rain_d_max_value    NUMERIC(19, 4),
+    ADD COLUMN rain_d_sum_sq_value NUMERIC,
+    ADD COLUMN speed_count         BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN speed_min_value     NUMERIC(19, 4),
+    ADD COLUMN speed_max_value     NUMERIC(19, 4),
+    ADD COLUMN speed_sum_sq_value  NUMERIC;
+
+ALTER TABLE daily_aggregation
+    ADD COLUMN v1_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v1_min_value        NUMERIC(19, 4),
+    ADD COLUMN v1_max_value        NUMERIC(19, 4),
+    ADD COLUMN v1_sum_sq_value     NUMERIC,
+    ADD COLUMN v2_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v2_min_value        NUMERIC(19, 4),
+    ADD COLUMN v2_max_value        NUMERIC(19, 4),
+    ADD COLUMN v2_sum_sq_value     NUMERIC,
+    ADD COLUMN v3_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v3_min_value        NUMERIC(19, 4),
+    ADD COLUMN v3_max_value        NUMERIC(19, 4),
+    ADD COLUMN v3_sum_sq_value     NUMERIC,
+    ADD COLUMN v4_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v4_min_value        NUMERIC(19, 4),
+    ADD COLUMN v4_max_value        NUMERIC(19, 4),
+    ADD COLUMN v4_sum_sq_value     NUMERIC,
+    ADD COLUMN v5_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v5_min_value        NUMERIC(19, 4),
+    ADD COLUMN v5_max_value        NUMERIC(19, 4),
+    ADD COLUMN v5_sum_sq_value     NUMERIC,
+    ADD COLUMN v6_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v6_min_value        NUMERIC(19, 4),
+    ADD COLUMN v6_max_value        NUMERIC(19, 4),
+    ADD COLUMN v6_sum_sq_value     NUMERIC,
+    ADD COLUMN v7_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN v7_min_value        NUMERIC(19, 4),
+    ADD COLUMN v7_max_value        NUMERIC(19, 4),
+    ADD COLUMN v7_sum_sq_value     NUMERIC,
+    ADD COLUMN rh_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN rh_min_value        NUMERIC(19, 4),
+    ADD COLUMN rh_max_value        NUMERIC(19, 4),
+    ADD COLUMN rh_sum_sq_value     NUMERIC,
+    ADD COLUMN tx_count            BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN tx_min_value        NUMERIC(19, 4),
+    ADD COLUMN tx_max_value        NUMERIC(19, 4),
+    ADD COLUMN tx_sum_sq_value     NUMERIC,
+    ADD COLUMN echo_count          BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN echo_min_value      NUMERIC(19, 4),
+    ADD COLUMN echo_max_value      NUMERIC(19, 4),
+    ADD COLUMN echo_sum_sq_value   NUMERIC,
+    ADD COLUMN rain_d_count        BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN rain_d_min_value    NUMERIC(19, 4),
+    ADD COLUMN rain_d_max_value    NUMERIC(19, 4),
+    ADD COLUMN rain_d_sum_sq_value NUMERIC,
+    ADD COLUMN speed_count         BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN speed_min_value     NUMERIC(19, 4),
+    ADD COLUMN speed_max_value     NUMERIC(19, 4),
+    ADD COLUMN speed_sum_sq_value  NUMERIC;
+
+-- Backfill existing hourly rows from the raw readings of their hour and time category
+UPDATE hourly_aggregation h
+SET v1_count = s.v1_count, v1_min_value = s.v1_min_value, v1_max_value = s.v1_max_value, v1_sum_sq_value = s.v1_sum_sq_value,
+    v2_count = s.v2_count, v2_min_value = s.v2_min_value, v2_max_value = s.v2_max_value, v2_sum_sq_value = s.v2_sum_sq_value,
+    v3_count = s.v3_count, v3_min_value = s.v3_min_value, v3_max_value = s.v3_max_value, v3_sum_sq_value = s.v3_sum_sq_value,
+    v4_count = s.v4_count, v4_min_value = s.v4_min_value, v4_max_value = s.v4_max_value, v4_sum_sq_value = s.v4_sum_sq_value,
+    v5_count = s.v5_count, v5_min_value = s.v5_min_value, v5_max_value = s.v5_max_value, v5_sum_sq_value = s.v5_sum_sq_value,
+    v6_count = s.v6_count, v6_min_value = s.v6_min_value, v6_max_value = s.v6_max_value, v6_sum_sq_value = s.v6_sum_sq_value,
+    v7_count = s.v7_count, v7_min_value = s.v7_min_value, v7_max_value = s.v7_max_value, v7_sum_sq_value = s.v7_sum_sq_value,
+    rh_count = s.rh_count, rh_min_value = s.rh_min_value, rh_max_value = s.rh_max_value, rh_sum_sq_value = s.rh_sum_sq_value,
+    tx_count = s.tx_count, tx_min_value = s.tx_min_value, tx_max_value = s.tx_max_value, tx_sum_sq_value = s.tx_sum_sq_value,
+    echo_count = s.echo_count, echo_min_value = s.echo_min_value, echo_max_value = s.echo_max_value, echo_sum_sq_value = s.echo_sum_sq_value,
+    rain_d_count = s.rain_d_count, rain_d_min_value = s.rain_d_min_value, rain_d_max_value = s.rain_d_max_value, rain_d_sum_sq_value = s.rain_d_sum_sq_value,
+    speed_count = s.speed_count, speed_min_value = s.speed_min_value, speed_max_value = s.speed_max_value, speed_sum_sq_value = s.speed_sum_sq_value
+FROM (SELECT station_id,
+             obs_time::date                  AS obs_date,
+             EXTRACT(HOUR FROM obs_time)::int AS obs_hour,
+             csq,
+             CASE WHEN EXTRACT(ISODOW FROM obs_time) IN (4, 5) THEN 'PEAK'
+                  WHEN EXTRACT(ISODOW FROM obs_time) IN (1, 2, 3)
+                      AND obs_time::time >= TIME '07:30' AND obs_time::time < TIME '17:30' THEN 'PEAK'
+                  ELSE 'OFFPEAK' END       AS time_category,
+             COUNT(v1) AS v1_count, MIN(v1) AS v1_min_value, MAX(v1) AS v1_max_value, COALESCE(SUM(v1 * v1), 0) AS v1_sum_sq_value,
+             COUNT(v2) AS v2_count, MIN(v2) AS v2_min_value, MAX(v2) AS v2_max_value, COALESCE(SUM(v2 * v2), 0) AS v2_sum_sq_value,
+             COUNT(v3) AS v3_count, MIN(v3) AS v3_min_value, MAX(v3) AS v3_max_value, COALESCE(SUM(v3 * v3), 0) AS v3_sum_sq_value,
+             COUNT(v4) AS v4_count, MIN(v4) AS v4_min_value, MAX(v4) AS v4_max_value, COALESCE(SUM(v4 * v4), 0) AS v4_sum_sq_value,
+             COUNT(v5) AS v5_count, MIN(v5) AS v5_min_value, MAX(v5) AS v5_max_value, COALESCE(SUM(v5 * v5), 0) AS v5_sum_sq_value,
+             COUNT(v6) AS v6_count, MIN(v6) AS v6_min_value, MAX(v6) AS v6_max_value, COALESCE(SUM(v6 * v6), 0) AS v6_sum_sq_value,
+             COUNT(v7) AS v7_count, MIN(v7) AS v7_min_value, MAX(v7) AS v7_max_value, COALESCE(SUM(v7 * v7), 0) AS v7_sum_sq_value,
+             COUNT(rh) AS rh_count, MIN(rh) AS rh_min_value, MAX(rh) AS rh_max_value, COALESCE(SUM(rh * rh), 0) AS rh_sum_sq_value,
+             COUNT(tx) AS tx_count, MIN(tx) AS tx_min_value, MAX(tx) AS tx_max_value, COALESCE(SUM(tx * tx), 0) AS tx_sum_sq_value,
+             COUNT(echo) AS echo_count, MIN(echo) AS echo_min_value, MAX(echo) AS echo_max_value, COALESCE(SUM(echo * echo), 0) AS echo_sum_sq_value,
+             COUNT(rain_d) AS rain_d_count, MIN(rain_d) AS rain_d_min_value, MAX(rain_d) AS rain_d_max_value, COALESCE(SUM(rain_d * rain_d), 0) AS rain_d_sum_sq_value,
+             COUNT(speed) AS speed_count, MIN(speed) AS speed_min_value, MAX(speed) AS speed_max_value, COALESCE(SUM(speed * speed), 0) AS speed_sum_sq_value
+      FROM sensor_data
+      GROUP BY 1, 2, 3, 4, 5) s
+WHERE h.station_id = s.station_id AND h.obs_date = s.obs_date AND h.obs_hour = s.obs_hour
+  AND h.csq = s.csq AND h.time_category = s.time_category;
+
+-- Backfill daily rows from their hourly rows; the daily average becomes the mean of all readings
+UPDATE daily_aggregation d
+SET v1_count = x.v1_count, v1_avg_value = COALESCE(ROUND(x.v1_sum / NULLIF(x.v1_count, 0), 2), 0), v1_min_value = x.v1_min_value, v1_max_value = x.v1_max_value, v1_sum_sq_value = x.v1_sum_sq_value,
+    v2_count = x.v2_count, v2_avg_value = COALESCE(ROUND(x.v2_sum / NULLIF(x.v2_count, 0), 2), 0), v2_min_value = x.v2_min_value, v2_max_value = x.v2_max_value, v2_sum_sq_value = x.v2_sum_sq_value,
+    v3_count = x.v3_count, v3_avg_value = COALESCE(ROUND(x.v3_sum / NULLIF(x.v3_count, 0), 2), 0), v3_min_value = x.v3_min_value, v3_max_value = x.v3_max_value, v3_sum_sq_value = x.v3_sum_sq_value,
+    v4_count = x.v4_count, v4_avg_value = COALESCE(ROUND(x.v4_sum / NULLIF(x.v4_count, 0), 2), 0), v4_min_value = x.v4_min_value, v4_max_value = x.v4_max_value, v4_sum_sq_value = x.v4_sum_sq_value,
+    v5_count = x.v5_count, v5_avg_value = COALESCE(ROUND(x.v5_sum / NULLIF(x.v5_count, 0), 2), 0), v5_min_value = x.v5_min_value, v5_max_value = x.v5_max_value, v5_sum_sq_value = x.v5_sum_sq_value,
+    v6_count = x.v6_count, v6_avg_value = COALESCE(ROUND(x.v6_sum / NULLIF(x.v6_count, 0), 2), 0), v6_min_value = x.v6_min_value, v6_max_value = x.v6_max_value, v6_sum_sq_value = x.v6_sum_sq_value,
+    v7_count = x.v7_count, v7_avg_value = COALESCE(ROUND(x.v7_sum / NULLIF(x.v7_count, 0), 2), 0), v7_min_value = x.v7_min_value, v7_max_value = x.v7_max_value, v7_sum_sq_value = x.v7_sum_sq_value,
+    rh_count = x.rh_count, rh_avg_value = COALESCE(ROUND(x.rh_sum / NULLIF(x.rh_count, 0), 2), 0), rh_min_value = x.rh_min_value, rh_max_value = x.rh_max_value, rh_sum_sq_value = x.rh_sum_sq_value,
+    tx_count = x.tx_count, tx_avg_value = COALESCE(ROUND(x.tx_sum / NULLIF(x.tx_count, 0), 2), 0), tx_min_value = x.tx_min_value, tx_max_value = x.tx_max_value, tx_sum_sq_value = x.tx_sum_sq_value,
+    echo_count = x.echo_count, echo_avg_value = COALESCE(ROUND(x.echo_sum / NULLIF(x.echo_count, 0), 2), 0), echo_min_value = x.echo_min_value, echo_max_value = x.echo_max_value, echo_sum_sq_value = x.echo_sum_sq_value,
+    rain_d_count = x.rain_d_count, rain_d_avg_value = COALESCE(ROUND(x.rain_d_sum / NULLIF(x.rain_d_count, 0), 2), 0), rain_d_min_value = x.rain_d_min_value, rain_d_max_value = x.rain_d_max_value, rain_d_sum_sq_value = x.rain_d_sum_sq_value,
+    speed_count = x.speed_count, speed_avg_value = COALESCE(ROUND(x.speed_sum / NULLIF(x.speed_count, 0), 2), 0), speed_min_value = x.speed_min_value, speed_max_value = x.speed_max_value, speed_sum_sq_value = x.speed_sum_sq_value
+FROM (SELECT station_id, obs_date, csq, time_category,
+             SUM(v1_count) AS v1_count, SUM(v1_sum_value) AS v1_sum, MIN(v1_min_value) AS v1_min_value, MAX(v1_max_value) AS v1_max_value, SUM(v1_sum_sq_value) AS v1_sum_sq_value,
+             SUM(v2_count) AS v2_count, SUM(v2_sum_value) AS v2_sum, MIN(v2_min_value) AS v2_min_value, MAX(v2_max_value) AS v2_max_value, SUM(v2_sum_sq_value) AS v2_sum_sq_value,
+             SUM(v3_count) AS v3_count, SUM(v3_sum_value) AS v3_sum, MIN(v3_min_value) AS v3_min_value, MAX(v3_max_value) AS v3_max_value, SUM(v3_sum_sq_value) AS v3_sum_sq_value,
+             SUM(v4_count) AS v4_count, SUM(v4_sum_value) AS v4_sum, MIN(v4_min_value) AS v4_min_value, MAX(v4_max_value) AS v4_max_value, SUM(v4_sum_sq_value) AS v4_sum_sq_value,
+             SUM(v5_count) AS v5_count, SUM(v5_sum_value) AS v5_sum, MIN(v5_min_value) AS v5_min_value, MAX(v5_max_value) AS v5_max_value, SUM(v5_sum_sq_value) AS v5_sum_sq_value,
+             SUM(v6_count) AS v6_count, SUM(v6_sum_value) AS v6_sum, MIN(v6_min_value) AS v6_min_value, MAX(v6_max_value) AS v6_max_value, SUM(v6_sum_sq_value) AS v6_sum_sq_value,
+             SUM(v7_count) AS v7_count, SUM(v7_sum_value) AS v7_sum, MIN(v7_min_value) AS v7_min_value, MAX(v7_max_value) AS v7_max_value, SUM(v7_sum_sq_value) AS v7_sum_sq_value,
+             SUM(rh_count) AS rh_count, SUM(rh_sum_value) AS rh_sum, MIN(rh_min_value) AS rh_min_value, MAX(rh_max_value) AS rh_max_value, SUM(rh_sum_sq_value) AS rh_sum_sq_value,
+             SUM(tx_count) AS tx_count, SUM(tx_sum_value) AS tx_sum, MIN(tx_min_value) AS tx_min_value, MAX(tx_max_value) AS tx_max_value, SUM(tx_sum_sq_value) AS tx_sum_sq_value,
+             SUM(echo_count) AS echo_count, SUM(echo_sum_value) AS echo_sum, MIN(echo_min_value) AS echo_min_value, MAX(echo_max_value) AS echo_max_value, SUM(echo_sum_sq_value) AS echo_sum_sq_value,
+             SUM(rain_d_count) AS rain_d_count, SUM(rain_d_sum_value) AS rain_d_sum, MIN(rain_d_min_value) AS rain_d_min_value, MAX(rain_d_max_value) AS rain_d_max_value, SUM(rain_d_sum_sq_value) AS rain_d_sum_sq_value,
+             SUM(speed_count) AS speed_count, SUM(speed_sum_value) AS speed_sum, MIN(speed_min_value) AS speed_min_value, MAX(speed_max_value) AS speed_max_value, SUM(speed_sum_sq_value) AS speed_sum_sq_value
+      FROM hourly_aggregation
+      GROUP BY 1, 2, 3, 4) x
+WHERE d.station_id = x.station_id AND d.obs_date = x.obs_date AND d.csq = x.csq
+  AND d.time_category = x.time_category;
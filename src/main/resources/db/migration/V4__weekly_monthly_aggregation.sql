@@ -0,0 +1,19 @@
+-- Weekly and monthly rollups merged from daily_aggregation. obs_date holds the first day of the
+-- period: the ISO week's Monday or the first of the month.
+CREATE TABLE weekly_aggregation
+(
+    LIKE daily_aggregation INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING INDEXES
+);
+ALTER TABLE weekly_aggregation
+    ALTER COLUMN id DROP DEFAULT,
+    ALTER COLUMN id ADD GENERATED BY DEFAULT AS IDENTITY;
+CREATE INDEX idx_weekly_aggregation_obs_date ON weekly_aggregation (obs_date);
+
+CREATE TABLE monthly_aggregation
+(
+    LIKE daily_aggregation INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING INDEXES
+);
+ALTER TABLE monthly_aggregation
+    ALTER COLUMN id DROP DEFAULT,
+    ALTER COLUMN id ADD GENERATED BY DEFAULT AS IDENTITY;
+CREATE INDEX idx_monthly_aggregation_obs_date ON monthly_aggregation (obs_date);
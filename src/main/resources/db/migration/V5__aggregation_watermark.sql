@@ -0,0 +1,12 @@
+-- Highest sensor_data id already aggregated, used by aggregation.feed = WATERMARK instead of staging
+CREATE TABLE aggregation_watermark
+(
+    feed       VARCHAR(50) PRIMARY KEY,
+    last_id    BIGINT      NOT NULL,
+    updated_at TIMESTAMP   NOT NULL DEFAULT now()
+);
+
+-- Existing readings were staged and are aggregated through temp_sensor_data
+INSERT INTO aggregation_watermark (feed, last_id)
+SELECT 'sensor_data', COALESCE(MAX(id), 0)
+FROM sensor_data;
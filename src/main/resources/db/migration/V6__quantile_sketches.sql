@@ -0,0 +1,114 @@
+-- Mergeable quantile sketches of rh, echo and speed for every aggregation tier. A sketch is a
+-- sequence of 12-byte records (int4 bin, int8 count) in ascending bin order, NULL when empty; the
+-- layout and binning are those of com.jack.aquark.util.QuantileSketch (1% relative accuracy).
+ALTER TABLE hourly_aggregation
+    ADD COLUMN rh_sketch    BYTEA,
+    ADD COLUMN echo_sketch  BYTEA,
+    ADD COLUMN speed_sketch BYTEA;
+
+ALTER TABLE daily_aggregation
+    ADD COLUMN rh_sketch    BYTEA,
+    ADD COLUMN echo_sketch  BYTEA,
+    ADD COLUMN speed_sketch BYTEA;
+
+ALTER TABLE weekly_aggregation
+    ADD COLUMN rh_sketch    BYTEA,
+    ADD COLUMN echo_sketch  BYTEA,
+    ADD COLUMN speed_sketch BYTEA;
+
+ALTER TABLE monthly_aggregation
+    ADD COLUMN rh_sketch    BYTEA,
+    ADD COLUMN echo_sketch  BYTEA,
+    ADD COLUMN speed_sketch BYTEA;
+
+-- ceil(ln|v| / ln(gamma)) shifted by 65536 and negated for negative values; zero has bin 0
+CREATE FUNCTION sketch_bin(v NUMERIC) RETURNS INT
+    LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE AS
+$$
+SELECT CASE
+           WHEN v = 0 THEN 0
+           ELSE sign(v)::int * (ceil(ln(abs(v)::float8) * 49.99833328888678::float8)::int + 65536)
+           END
+$$;
+
+CREATE FUNCTION sketch_bins(sketch BYTEA) RETURNS TABLE (bin INT, count BIGINT)
+    LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE AS
+$$
+SELECT ('x' || encode(substring(sketch FROM i FOR 4), 'hex'))::bit(32)::int,
+       ('x' || encode(substring(sketch FROM i + 4 FOR 8), 'hex'))::bit(64)::bigint
+FROM generate_series(1, length(sketch), 12) AS i
+$$;
+
+-- Sketch of the non-null values
+CREATE FUNCTION sketch_build(vals NUMERIC[]) RETURNS BYTEA
+    LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE AS
+$$
+SELECT string_agg(int4send(b.bin) || int8send(b.count), ''::bytea ORDER BY b.bin)
+FROM (SELECT sketch_bin(u.v) AS bin, COUNT(*) AS count
+      FROM unnest(vals) AS u(v)
+      WHERE u.v IS NOT NULL
+      GROUP BY 1) b
+$$;
+
+-- Sketch of all of the values of the given sketches; NULL elements are empty sketches
+CREATE FUNCTION sketch_merge(sketches BYTEA[]) RETURNS BYTEA
+    LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE AS
+$$
+SELECT string_agg(int4send(b.bin) || int8send(b.count), ''::bytea ORDER BY b.bin)
+FROM (SELECT d.bin, SUM(d.count)::bigint AS count
+      FROM unnest(sketches) AS u(sketch),
+           sketch_bins(u.sketch) AS d
+      GROUP BY 1) b
+$$;
+
+-- Backfill every tier from the one below it, starting with hourly rows from the raw readings
+UPDATE hourly_aggregation h
+SET rh_sketch = s.rh_sketch, echo_sketch = s.echo_sketch, speed_sketch = s.speed_sketch
+FROM (SELECT station_id,
+             obs_time::date                  AS obs_date,
+             EXTRACT(HOUR FROM obs_time)::int AS obs_hour,
+             csq,
+             CASE WHEN EXTRACT(ISODOW FROM obs_time) IN (4, 5) THEN 'PEAK'
+                  WHEN EXTRACT(ISODOW FROM obs_time) IN (1, 2, 3)
+                      AND obs_time::time >= TIME '07:30' AND obs_time::time < TIME '17:30' THEN 'PEAK'
+                  ELSE 'OFFPEAK' END       AS time_category,
+             sketch_build(array_agg(rh))    AS rh_sketch,
+             sketch_build(array_agg(echo))  AS echo_sketch,
+             sketch_build(array_agg(speed)) AS speed_sketch
+      FROM sensor_data
+      GROUP BY 1, 2, 3, 4, 5) s
+WHERE h.station_id = s.station_id AND h.obs_date = s.obs_date AND h.obs_hour = s.obs_hour
+  AND h.csq = s.csq AND h.time_category = s.time_category;
+
+UPDATE daily_aggregation d
+SET rh_sketch = x.rh_sketch, echo_sketch = x.echo_sketch, speed_sketch = x.speed_sketch
+FROM (SELECT station_id, obs_date, csq, time_category,
+             sketch_merge(array_agg(rh_sketch))    AS rh_sketch,
+             sketch_merge(array_agg(echo_sketch))  AS echo_sketch,
+             sketch_merge(array_agg(speed_sketch)) AS speed_sketch
+      FROM hourly_aggregation
+      GROUP BY 1, 2, 3, 4) x
+WHERE d.station_id = x.station_id AND d.obs_date = x.obs_date AND d.csq = x.csq
+  AND d.time_category = x.time_category;
+
+UPDATE weekly_aggregation w
+SET rh_sketch = x.rh_sketch, echo_sketch = x.echo_sketch, speed_sketch = x.speed_sketch
+FROM (SELECT station_id, date_trunc('week', obs_date)::date AS week_start, csq, time_category,
+             sketch_merge(array_agg(rh_sketch))    AS rh_sketch,
+             sketch_merge(array_agg(echo_sketch))  AS echo_sketch,
+             sketch_merge(array_agg(speed_sketch)) AS speed_sketch
+      FROM daily_aggregation
+      GROUP BY 1, 2, 3, 4) x
+WHERE w.station_id = x.station_id AND w.obs_date = x.week_start AND w.csq = x.csq
+  AND w.time_category = x.time_category;
+
+UPDATE monthly_aggregation m
+SET rh_sketch = x.rh_sketch, echo_sketch = x.echo_sketch, speed_sketch = x.speed_sketch
+FROM (SELECT station_id, date_trunc('month', obs_date)::date AS month_start, csq, time_category,
+             sketch_merge(array_agg(rh_sketch))    AS rh_sketch,
+             sketch_merge(array_agg(echo_sketch))  AS echo_sketch,
+             sketch_merge(array_agg(speed_sketch)) AS speed_sketch
+      FROM daily_aggregation
+      GROUP BY 1, 2, 3, 4) x
+WHERE m.station_id = x.station_id AND m.obs_date = x.month_start AND m.csq = x.csq
+  AND m.time_category = x.time_category;
@@ -0,0 +1,52 @@
+-- Tariff calendar deciding the PEAK/OFFPEAK time category. Every window is PEAK on its ISO weekday
+-- (1 = Monday) from start_minute up to end_minute after midnight, on a 30-minute grid, between
+-- the inclusive effective dates (NULL = unbounded). Holidays are OFFPEAK all day. The application
+-- recompiles the calendar every tariff.refresh-interval, so changes need no redeploy; hours that
+-- were already aggregated keep their category until they are aggregated again, which also deletes
+-- their rows of categories they no longer have and recomputes the rollups of both categories.
+CREATE TABLE tariff_peak_window
+(
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    iso_day_of_week SMALLINT NOT NULL CHECK (iso_day_of_week BETWEEN 1 AND 7),
+    start_minute    SMALLINT NOT NULL,
+    end_minute      SMALLINT NOT NULL,
+    effective_from  DATE,
+    effective_to    DATE,
+    CHECK (start_minute % 30 = 0 AND end_minute % 30 = 0),
+    CHECK (start_minute >= 0 AND start_minute < end_minute AND end_minute <= 1440),
+    CHECK (effective_from IS NULL OR effective_to IS NULL OR effective_from <= effective_to)
+);
+
+CREATE TABLE tariff_holiday
+(
+    holiday_date DATE PRIMARY KEY,
+    description  VARCHAR(100)
+);
+
+-- The rules the application used to hard-code: Monday to Wednesday 07:30-17:30, Thursday and
+-- Friday all day
+INSERT INTO tariff_peak_window (iso_day_of_week, start_minute, end_minute)
+VALUES (1, 450, 1050),
+       (2, 450, 1050),
+       (3, 450, 1050),
+       (4, 0, 1440),
+       (5, 0, 1440);
+
+-- Category of ts under a calendar compiled by com.jack.aquark.util.TariffCalendar: bit
+-- (hour * 2 + minute / 30) of the day's mask, taken from day_masks from first_day on and from the
+-- head or tail week masks (Monday first) before and after them
+CREATE FUNCTION tariff_category(ts TIMESTAMP, first_day DATE, day_masks BIGINT[],
+                                head_masks BIGINT[], tail_masks BIGINT[]) RETURNS TEXT
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE AS
+$$
+SELECT CASE
+           WHEN (CASE
+                     WHEN ts::date < first_day THEN head_masks[EXTRACT(ISODOW FROM ts)::int]
+                     WHEN ts::date - first_day < cardinality(day_masks)
+                         THEN day_masks[ts::date - first_day + 1]
+                     ELSE tail_masks[EXTRACT(ISODOW FROM ts)::int]
+                     END >> (EXTRACT(HOUR FROM ts)::int * 2 + EXTRACT(MINUTE FROM ts)::int / 30)) & 1 = 1
+               THEN 'PEAK'
+           ELSE 'OFFPEAK'
+           END
+$$;
@@ -0,0 +1,99 @@
+package com.jack.aquark.benchmark;
+
+import com.jack.aquark.dto.StationHour;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Groups readings by (station, csq, hour) with the former {@code "|"}-joined string keys, which
+ * were split and parsed back per group, and with {@link StationHour}. Reported per grouped reading.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GroupingKeyBenchmark {
+
+  private static final int READINGS = 100_000;
+
+  private String[] stationIds;
+  private String[] csqs;
+  private LocalDateTime[] obsTimes;
+
+  @Setup
+  public void generate() {
+    Random random = new Random(42);
+    stationIds = new String[READINGS];
+    csqs = new String[READINGS];
+    obsTimes = new LocalDateTime[READINGS];
+    LocalDateTime start = LocalDateTime.of(2025, 3, 10, 0, 0);
+    for (int i = 0; i < READINGS; i++) {
+      stationIds[i] = "2406" + (10 + random.nextInt(50));
+      csqs[i] = String.valueOf(20 + random.nextInt(4));
+      obsTimes[i] = start.plusSeconds(random.nextInt(2 * 24 * 3600));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READINGS)
+  public void stringKeys(Blackhole blackhole) {
+    Map<String, long[]> groups = new HashMap<>();
+    for (int i = 0; i < READINGS; i++) {
+      String key =
+          stationIds[i]
+              + "|"
+              + obsTimes[i].toLocalDate()
+              + "|"
+              + obsTimes[i].getHour()
+              + "|"
+              + csqs[i];
+      groups.computeIfAbsent(key, k -> new long[1])[0]++;
+    }
+    for (var entry : groups.entrySet()) {
+      String[] parts = entry.getKey().split("\\|");
+      blackhole.consume(parts[0]);
+      blackhole.consume(LocalDate.parse(parts[1]));
+      blackhole.consume(Integer.parseInt(parts[2]));
+      blackhole.consume(parts[3]);
+      blackhole.consume(entry.getValue()[0]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READINGS)
+  public void stationHourKeys(Blackhole blackhole) {
+    Map<StationHour, long[]> groups = new HashMap<>();
+    for (int i = 0; i < READINGS; i++) {
+      StationHour key = StationHour.of(stationIds[i], csqs[i], obsTimes[i]);
+      groups.computeIfAbsent(key, k -> new long[1])[0]++;
+    }
+    for (var entry : groups.entrySet()) {
+      StationHour key = entry.getKey();
+      blackhole.consume(key.stationId());
+      blackhole.consume(key.obsDate());
+      blackhole.consume(key.obsHour());
+      blackhole.consume(key.csq());
+      blackhole.consume(entry.getValue()[0]);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(GroupingKeyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,53 @@
+package com.jack.aquark.benchmark;
+
+import com.jack.aquark.util.ObsTimeParser;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link ObsTimeParser} with the pattern formatter it replaces. Run from the IDE, or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jack.aquark.benchmark.ObsTimeParserBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObsTimeParserBenchmark {
+
+  private final String[] inputs = {
+    "2025-03-16 07:30:05", "2025-03-16 17:45:00", "2024-12-31 23:59:59", "2025-01-01 00:00:00"
+  };
+
+  private int next;
+
+  private String nextInput() {
+    next = (next + 1) & 3;
+    return inputs[next];
+  }
+
+  @Benchmark
+  public LocalDateTime formatter() {
+    return LocalDateTime.parse(nextInput(), ObsTimeParser.FORMATTER);
+  }
+
+  @Benchmark
+  public LocalDateTime obsTimeParser() {
+    return ObsTimeParser.parse(nextInput());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(ObsTimeParserBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,84 @@
+package com.jack.aquark.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
+
+import com.jack.aquark.client.SensorSourceClient.SourceResponse;
+import com.jack.aquark.config.IngestionProperties;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+class SensorSourceClientTest {
+
+  private static final String URL = "http://example.com/api/raw/Angle2024/240627";
+
+  private MockRestServiceServer server;
+  private SensorSourceClient client;
+
+  @BeforeEach
+  void setUp() {
+    RestTemplate restTemplate = new RestTemplate();
+    server = MockRestServiceServer.bindTo(restTemplate).build();
+    client = new SensorSourceClient(restTemplate, new IngestionProperties());
+  }
+
+  @Test
+  void testGet_sendsValidatorsOnceIngestedAndHonoursNotModified() {
+    HttpHeaders validators = new HttpHeaders();
+    validators.setETag("\"v1\"");
+    validators.set(HttpHeaders.LAST_MODIFIED, "Wed, 10 Jul 2024 00:00:00 GMT");
+
+    server
+        .expect(requestTo(URL))
+        .andExpect(method(HttpMethod.GET))
+        .andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+        .andRespond(withSuccess("{\"raw\":[]}", MediaType.APPLICATION_JSON).headers(validators));
+    server
+        .expect(requestTo(URL))
+        .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+        .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 10 Jul 2024 00:00:00 GMT"))
+        .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+    SourceResponse<String> first =
+        client.get(URL, body -> new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    assertFalse(first.notModified());
+    assertEquals("{\"raw\":[]}", first.body());
+    client.markIngested(first);
+
+    SourceResponse<String> second =
+        client.get(
+            URL,
+            body -> {
+              throw new AssertionError("Body must not be read for a 304");
+            });
+    assertTrue(second.notModified());
+    server.verify();
+  }
+
+  @Test
+  void testGet_doesNotSendValidatorsUntilMarkedIngested() {
+    HttpHeaders validators = new HttpHeaders();
+    validators.setETag("\"v1\"");
+
+    server
+        .expect(requestTo(URL))
+        .andRespond(withSuccess("{}", MediaType.APPLICATION_JSON).headers(validators));
+    server
+        .expect(requestTo(URL))
+        .andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+        .andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+
+    // First payload is read but (e.g. because persisting failed) never marked as ingested
+    client.get(URL, body -> body.readAllBytes().length);
+    client.get(URL, body -> body.readAllBytes().length);
+    server.verify();
+  }
+}
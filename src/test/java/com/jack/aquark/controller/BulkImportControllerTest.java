@@ -0,0 +1,64 @@
+package com.jack.aquark.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.jack.aquark.dto.BulkImportResult;
+import com.jack.aquark.service.BulkImportService;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+@WebMvcTest(controllers = BulkImportController.class)
+class BulkImportControllerTest {
+
+  @Autowired private MockMvc mockMvc;
+
+  @MockBean private BulkImportService bulkImportService;
+
+  @TempDir Path importDirectory;
+
+  @Test
+  void testImportFile_Success() throws Exception {
+    Path file = Files.writeString(importDirectory.resolve("backfill.ndjson"), "");
+    when(bulkImportService.resolveImportFile("backfill.ndjson")).thenReturn(file);
+    when(bulkImportService.importFile(file))
+        .thenReturn(new BulkImportResult("backfill.ndjson", 10, 1, 7, 42));
+
+    mockMvc
+        .perform(post("/api/admin/bulk-import").param("file", "backfill.ndjson"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.data.insertedCount").value(7));
+  }
+
+  @Test
+  void testImportFile_OutsideDirectory() throws Exception {
+    when(bulkImportService.resolveImportFile(anyString()))
+        .thenThrow(new IllegalArgumentException("File must be inside the import directory"));
+
+    mockMvc
+        .perform(post("/api/admin/bulk-import").param("file", "../secret.ndjson"))
+        .andExpect(status().isBadRequest());
+    verify(bulkImportService, never()).importFile(any());
+  }
+
+  @Test
+  void testImportFile_NotFound() throws Exception {
+    when(bulkImportService.resolveImportFile("missing.ndjson"))
+        .thenReturn(importDirectory.resolve("missing.ndjson"));
+
+    mockMvc
+        .perform(post("/api/admin/bulk-import").param("file", "missing.ndjson"))
+        .andExpect(status().isNotFound());
+  }
+}
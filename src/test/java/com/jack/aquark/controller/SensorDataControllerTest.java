@@ -1,16 +1,29 @@
 package com.jack.aquark.controller;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.jack.aquark.dto.PercentileResult;
 import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.MonthlyAggregation;
 import com.jack.aquark.entity.SensorData;
 import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.IngestionBufferService;
 import com.jack.aquark.service.SensorDataService;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -27,6 +40,18 @@ class SensorDataControllerTest {
 
   @MockBean private AggregationService aggregationService;
 
+  @MockBean private IngestionBufferService ingestionBufferService;
+
+  private static final String INGEST_BODY =
+      """
+      {"raw": [
+        {"station_id": "240708", "obs_time": "2025-03-16 10:00:00", "CSQ": "31",
+         "sensor": {"Volt": {"v1": 1.5}}},
+        {"station_id": "240708", "obs_time": "2025-03-16 10:10:00", "CSQ": "31",
+         "sensor": {"Water_speed_aquark": {"speed": 3}}}
+      ]}
+      """;
+
   @Test
   void testSearchSensorData_Success() throws Exception {
     // Prepare test data for the /search endpoint.
@@ -72,6 +97,69 @@ class SensorDataControllerTest {
         .andExpect(jsonPath("$.data[0].stationId").value("station1"));
   }
 
+  @Test
+  void testGetMonthlyStats_Success() throws Exception {
+    MonthlyAggregation agg = new MonthlyAggregation();
+    agg.setStationId("station1");
+    agg.setObsDate(LocalDate.of(2025, 3, 1));
+    agg.setV1Count(3);
+    agg.setV1SumValue(new BigDecimal("6"));
+    agg.setV1SumSqValue(new BigDecimal("14"));
+
+    when(sensorDataService.getMonthlyAverage(any(LocalDateTime.class), any(LocalDateTime.class)))
+        .thenReturn(List.of(agg));
+
+    mockMvc
+        .perform(
+            get("/api/sensor/statistics/monthly")
+                .param("start", "2025-01-01 00:00:00")
+                .param("end", "2025-12-31 23:59:59")
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.data[0].stationId").value("station1"))
+        .andExpect(jsonPath("$.data[0].obsDate").value("2025-03-01"))
+        .andExpect(jsonPath("$.data[0].v1Count").value(3))
+        .andExpect(jsonPath("$.data[0].v1Stddev").value(1.0));
+  }
+
+  @Test
+  void testGetPercentiles_DefaultQuantiles() throws Exception {
+    Map<String, BigDecimal> percentiles = new LinkedHashMap<>();
+    percentiles.put("p50", new BigDecimal("12.0100"));
+    percentiles.put("p95", new BigDecimal("30.1500"));
+    percentiles.put("p99", new BigDecimal("33.0000"));
+    LocalDateTime start = LocalDateTime.of(2025, 3, 1, 0, 0);
+    LocalDateTime end = LocalDateTime.of(2025, 4, 1, 0, 0);
+    when(sensorDataService.getPercentiles("240708", "echo", start, end, List.of(0.5, 0.95, 0.99)))
+        .thenReturn(new PercentileResult("240708", "echo", start, end, 42, percentiles));
+
+    mockMvc
+        .perform(
+            get("/api/sensor/statistics/percentiles")
+                .param("stationId", "240708")
+                .param("field", "echo")
+                .param("start", "2025-03-01 00:00:00")
+                .param("end", "2025-04-01 00:00:00"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.data.count").value(42))
+        .andExpect(jsonPath("$.data.percentiles.p95").value(30.15));
+  }
+
+  @Test
+  void testGetPercentiles_UnknownField() throws Exception {
+    when(sensorDataService.getPercentiles(any(), any(), any(), any(), anyList()))
+        .thenThrow(new IllegalArgumentException("No percentiles for field: v1"));
+
+    mockMvc
+        .perform(
+            get("/api/sensor/statistics/percentiles")
+                .param("stationId", "240708")
+                .param("field", "v1")
+                .param("start", "2025-03-01 00:00:00")
+                .param("end", "2025-04-01 00:00:00"))
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   void testGetPeakData_Success() throws Exception {
     SensorData sensorData = new SensorData();
@@ -115,4 +203,54 @@ class SensorDataControllerTest {
         // Assert that the off-peak data is under "data".
         .andExpect(jsonPath("$.data[0].stationId").value("station2"));
   }
+
+  @Test
+  void testIngest_Accepted() throws Exception {
+    when(ingestionBufferService.capacity()).thenReturn(2);
+    when(ingestionBufferService.offer(anyList())).thenReturn(true);
+
+    mockMvc
+        .perform(
+            post("/api/sensor/ingest").contentType(MediaType.APPLICATION_JSON).content(INGEST_BODY))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.data").value(2));
+  }
+
+  @Test
+  void testIngest_BufferFull() throws Exception {
+    when(ingestionBufferService.capacity()).thenReturn(20_000);
+    when(ingestionBufferService.offer(anyList())).thenReturn(false);
+    when(ingestionBufferService.retryAfter()).thenReturn(Duration.ofSeconds(5));
+
+    mockMvc
+        .perform(
+            post("/api/sensor/ingest").contentType(MediaType.APPLICATION_JSON).content(INGEST_BODY))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "5"));
+  }
+
+  @Test
+  void testIngest_LargerThanCapacity() throws Exception {
+    when(ingestionBufferService.capacity()).thenReturn(1);
+
+    mockMvc
+        .perform(
+            post("/api/sensor/ingest").contentType(MediaType.APPLICATION_JSON).content(INGEST_BODY))
+        .andExpect(status().isPayloadTooLarge());
+    verify(ingestionBufferService, never()).offer(anyList());
+  }
+
+  @Test
+  void testIngest_InvalidItem() throws Exception {
+    String body =
+        """
+        {"raw": [{"station_id": "240708", "obs_time": "16/03/2025 10:00", "CSQ": "31",
+                  "sensor": {}}]}
+        """;
+
+    mockMvc
+        .perform(post("/api/sensor/ingest").contentType(MediaType.APPLICATION_JSON).content(body))
+        .andExpect(status().isBadRequest());
+    verify(ingestionBufferService, never()).offer(anyList());
+  }
 }
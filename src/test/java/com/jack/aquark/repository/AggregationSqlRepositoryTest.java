@@ -0,0 +1,200 @@
+package com.jack.aquark.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.jack.aquark.dto.DailyBucket;
+import com.jack.aquark.dto.RollupPeriod;
+import com.jack.aquark.dto.SketchFieldMapping;
+import com.jack.aquark.dto.TariffPeakWindow;
+import com.jack.aquark.util.TariffCalendar;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Checks the statements and their parameter binding without a database; only
+ * AggregationEngineEquivalenceTest, which needs Docker, runs them against PostgreSQL.
+ */
+class AggregationSqlRepositoryTest {
+
+  // Thursdays all day, except a holiday, so the calendar has day masks as well as week masks
+  private static final TariffCalendar CALENDAR =
+      TariffCalendar.compile(
+          List.of(new TariffPeakWindow(4, 0, 1440, null, null)),
+          List.of(LocalDate.of(2025, 3, 13)));
+
+  private static final DailyBucket DAY =
+      new DailyBucket("240708", LocalDate.of(2025, 3, 11), "31", "PEAK");
+
+  @Mock private JdbcTemplate jdbcTemplate;
+
+  @Mock private Connection connection;
+
+  @Mock private PreparedStatement statement;
+
+  @Captor private ArgumentCaptor<PreparedStatementCreator> creator;
+
+  // Type and elements of each array the connection created
+  private final Map<Array, String> arrays = new IdentityHashMap<>();
+
+  private AggregationSqlRepository repository;
+
+  private AutoCloseable closeable;
+
+  @BeforeEach
+  void init() throws SQLException {
+    closeable = MockitoAnnotations.openMocks(this);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(connection.createArrayOf(anyString(), any()))
+        .thenAnswer(
+            inv -> {
+              Array array = mock(Array.class);
+              arrays.put(array, inv.getArgument(0) + Arrays.toString(inv.<Object[]>getArgument(1)));
+              return array;
+            });
+    repository = new AggregationSqlRepository(jdbcTemplate);
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    closeable.close();
+  }
+
+  @Test
+  void testAggregateHours_BindsIdsThenCalendar() throws SQLException {
+    repository.aggregateHours(List.of(3L, 5L), CALENDAR);
+
+    verify(jdbcTemplate).query(creator.capture(), any(RowCallbackHandler.class));
+    String sql = prepare();
+    assertEquals(5, placeholders(sql));
+    assertTrue(sql.contains("FROM temp_sensor_data WHERE id = ANY (?)"), sql);
+    assertTrue(sql.indexOf("ANY (?)") < sql.indexOf("?::date AS first_day"), sql);
+    assertTrue(
+        sql.contains(
+            "tariff_category(s.obs_time, c.first_day, c.day_masks, c.head_masks, c.tail_masks)"),
+        sql);
+    for (SketchFieldMapping field : SketchFieldMapping.SKETCHED) {
+      assertTrue(sql.contains("sketch_build(array_agg(s." + field.field() + "))"), sql);
+    }
+    assertTrue(sql.contains("DELETE FROM hourly_aggregation"), sql);
+
+    assertEquals("bigint[3, 5]", boundArray(1));
+    verify(statement).setObject(2, CALENDAR.firstDay());
+    assertEquals("bigint" + Arrays.toString(CALENDAR.dayMasks()), boundArray(3));
+    assertEquals("bigint" + Arrays.toString(CALENDAR.headWeekMasks()), boundArray(4));
+    assertEquals("bigint" + Arrays.toString(CALENDAR.tailWeekMasks()), boundArray(5));
+    assertNotEquals(0, CALENDAR.dayMasks().length);
+  }
+
+  @Test
+  void testAggregateHours_ReturnsTheRowsAsDailyBuckets() throws SQLException {
+    ResultSet rs = mock(ResultSet.class);
+    when(rs.getString("station_id")).thenReturn(DAY.stationId());
+    when(rs.getObject("obs_date", LocalDate.class)).thenReturn(DAY.obsDate());
+    when(rs.getString("csq")).thenReturn(DAY.csq());
+    when(rs.getString("time_category")).thenReturn(DAY.timeCategory());
+    doAnswer(
+            inv -> {
+              inv.<RowCallbackHandler>getArgument(1).processRow(rs);
+              return null;
+            })
+        .when(jdbcTemplate)
+        .query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+    assertEquals(Set.of(DAY), repository.aggregateHours(List.of(3L), CALENDAR));
+  }
+
+  @Test
+  void testAggregateHoursOfReadings_ReadsSensorDataIds() throws SQLException {
+    repository.aggregateHoursOfReadings(List.of(7L), CALENDAR);
+
+    verify(jdbcTemplate).query(creator.capture(), any(RowCallbackHandler.class));
+    String sql = prepare();
+    assertEquals(5, placeholders(sql));
+    assertTrue(sql.contains("FROM sensor_data WHERE id = ANY (?)"), sql);
+    assertFalse(sql.contains("temp_sensor_data"), sql);
+    assertEquals("bigint[7]", boundArray(1));
+  }
+
+  @Test
+  void testAggregateDays_BindsTheBucketColumns() throws SQLException {
+    repository.aggregateDays(List.of(DAY));
+
+    verify(jdbcTemplate).update(creator.capture());
+    String sql = prepare();
+    assertEquals(4, placeholders(sql));
+    assertTrue(sql.contains("INSERT INTO daily_aggregation"), sql);
+    assertTrue(sql.contains("FROM hourly_aggregation f JOIN d"), sql);
+    for (SketchFieldMapping field : SketchFieldMapping.SKETCHED) {
+      assertTrue(sql.contains("sketch_merge(array_agg(f." + field.column() + "))"), sql);
+    }
+    assertBucketBinding();
+  }
+
+  @Test
+  void testAggregatePeriods_TruncatesToThePeriod() throws SQLException {
+    for (RollupPeriod period : List.of(RollupPeriod.WEEK, RollupPeriod.MONTH)) {
+      String unit = period == RollupPeriod.WEEK ? "week" : "month";
+      clearInvocations(jdbcTemplate, connection, statement);
+
+      repository.aggregatePeriods(period, List.of(DAY));
+
+      verify(jdbcTemplate).update(creator.capture());
+      String sql = prepare();
+      assertEquals(4, placeholders(sql));
+      assertTrue(sql.contains("INSERT INTO " + unit + "ly_aggregation"), sql);
+      assertTrue(sql.contains("date_trunc('" + unit + "', obs_date)"), sql);
+      assertTrue(sql.contains("INTERVAL '1 " + unit + "'"), sql);
+      assertBucketBinding();
+    }
+  }
+
+  @Test
+  void testEmptyInputRunsNothing() {
+    assertEquals(Set.of(), repository.aggregateHours(List.of(), CALENDAR));
+    assertEquals(Set.of(), repository.aggregateHoursOfReadings(List.of(), CALENDAR));
+    assertEquals(0, repository.aggregateDays(List.of()));
+    assertEquals(0, repository.aggregatePeriods(RollupPeriod.WEEK, List.of()));
+    verifyNoInteractions(jdbcTemplate);
+  }
+
+  // Runs the captured creator and returns the statement it prepared
+  private String prepare() throws SQLException {
+    assertSame(statement, creator.getValue().createPreparedStatement(connection));
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+    verify(connection).prepareStatement(sql.capture());
+    return sql.getValue();
+  }
+
+  private String boundArray(int index) throws SQLException {
+    ArgumentCaptor<Array> array = ArgumentCaptor.forClass(Array.class);
+    verify(statement).setArray(eq(index), array.capture());
+    return arrays.get(array.getValue());
+  }
+
+  private void assertBucketBinding() throws SQLException {
+    assertEquals("text[240708]", boundArray(1));
+    assertEquals("text[2025-03-11]", boundArray(2));
+    assertEquals("text[31]", boundArray(3));
+    assertEquals("text[PEAK]", boundArray(4));
+  }
+
+  private static long placeholders(String sql) {
+    return sql.chars().filter(c -> c == '?').count();
+  }
+}
@@ -1,11 +1,23 @@
 package com.jack.aquark.scheduler;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 import com.jack.aquark.config.ApiUrlProperties;
+import com.jack.aquark.config.FetchProperties;
+import com.jack.aquark.dto.SourceFetchResult;
 import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.IngestionPipelineService;
 import com.jack.aquark.service.SensorDataService;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -13,6 +25,8 @@ class JobSchedulerTest {
 
   private SensorDataService sensorDataService;
   private AggregationService aggregationService;
+  private IngestionPipelineService ingestionPipelineService;
+  private FetchProperties fetchProperties;
   private JobScheduler jobScheduler;
 
   @BeforeEach
@@ -21,13 +35,21 @@ class JobSchedulerTest {
     ApiUrlProperties apiUrlProperties = mock(ApiUrlProperties.class);
     sensorDataService = mock(SensorDataService.class);
     aggregationService = mock(AggregationService.class);
+    ingestionPipelineService = mock(IngestionPipelineService.class);
+    fetchProperties = new FetchProperties();
 
     // Simulate a scenario where there are two API URLs
     when(apiUrlProperties.getUrls())
         .thenReturn(Arrays.asList("http://example.com/api1", "http://example.com/api2"));
 
     // Initialize the JobScheduler with the mocks
-    jobScheduler = new JobScheduler(apiUrlProperties, sensorDataService, aggregationService);
+    jobScheduler =
+        new JobScheduler(
+            apiUrlProperties,
+            sensorDataService,
+            aggregationService,
+            fetchProperties,
+            ingestionPipelineService);
   }
 
   @Test
@@ -43,4 +65,97 @@ class JobSchedulerTest {
     // Verify that the aggregation service is called once after fetching data
     verify(aggregationService, times(1)).processTempDataForAggregations();
   }
+
+  @Test
+  void testFetchAndAggregate_concurrentReportsEachSource() {
+    fetchProperties.setMode(FetchProperties.Mode.CONCURRENT);
+    fetchProperties.setMaxParallelism(2);
+    fetchProperties.setTimeout(Duration.ofMillis(200));
+
+    // api1 succeeds, api2 hangs past the timeout
+    when(sensorDataService.fetchAndSaveSensorData("http://example.com/api1")).thenReturn(3);
+    when(sensorDataService.fetchAndSaveSensorData("http://example.com/api2"))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(5_000);
+              return 0;
+            });
+
+    List<SourceFetchResult> results = jobScheduler.fetchNewDataFromApiUrls();
+
+    assertEquals(2, results.size());
+    assertEquals(SourceFetchResult.Status.SUCCEEDED, results.get(0).status());
+    assertEquals(3, results.get(0).storedCount());
+    assertEquals(SourceFetchResult.Status.TIMED_OUT, results.get(1).status());
+    // api2 may have committed chunks before it was cancelled
+    verify(sensorDataService, times(1)).evictCaches();
+  }
+
+  @Test
+  void testFetchAndAggregate_concurrentSuccessLeavesEvictionToTheFetches() {
+    fetchProperties.setMode(FetchProperties.Mode.CONCURRENT);
+    when(sensorDataService.fetchAndSaveSensorData(anyString())).thenReturn(1);
+
+    jobScheduler.fetchNewDataFromApiUrls();
+
+    verify(sensorDataService, never()).evictCaches();
+  }
+
+  @Test
+  void testFetchAndAggregate_serialFailureEvictsCaches() {
+    when(sensorDataService.fetchAndSaveSensorData("http://example.com/api2"))
+        .thenThrow(new IllegalStateException("boom"));
+
+    assertThrows(IllegalStateException.class, jobScheduler::fetchNewDataFromApiUrls);
+
+    verify(sensorDataService, times(1)).evictCaches();
+  }
+
+  @Test
+  void testFetchAndAggregate_concurrentWaitsForCancelledFetchesToExit() {
+    fetchProperties.setMode(FetchProperties.Mode.CONCURRENT);
+    fetchProperties.setMaxParallelism(1);
+    fetchProperties.setTimeout(Duration.ofMillis(100));
+
+    // api1 ignores the interrupt, like a blocked JDBC write, and only exits after 500 ms
+    AtomicBoolean api1Exited = new AtomicBoolean();
+    AtomicBoolean overlapped = new AtomicBoolean();
+    when(sensorDataService.fetchAndSaveSensorData("http://example.com/api1"))
+        .thenAnswer(
+            invocation -> {
+              long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+              while (System.nanoTime() < deadline) {
+                LockSupport.parkNanos(deadline - System.nanoTime());
+              }
+              api1Exited.set(true);
+              return 0;
+            });
+    when(sensorDataService.fetchAndSaveSensorData("http://example.com/api2"))
+        .thenAnswer(
+            invocation -> {
+              overlapped.set(!api1Exited.get());
+              return 1;
+            });
+
+    List<SourceFetchResult> results = jobScheduler.fetchNewDataFromApiUrls();
+
+    assertEquals(SourceFetchResult.Status.TIMED_OUT, results.get(0).status());
+    assertTrue(api1Exited.get());
+    // With one permit api2 only starts once the abandoned api1 thread has exited
+    assertFalse(overlapped.get());
+  }
+
+  @Test
+  void testFetchAndAggregate_concurrentFailureDoesNotBlockAggregation() {
+    fetchProperties.setMode(FetchProperties.Mode.CONCURRENT);
+
+    when(sensorDataService.fetchAndSaveSensorData("http://example.com/api1"))
+        .thenThrow(new IllegalStateException("boom"));
+
+    jobScheduler.fetchAndAggregate();
+
+    verify(sensorDataService, times(1)).fetchAndSaveSensorData("http://example.com/api1");
+    verify(sensorDataService, times(1)).fetchAndSaveSensorData("http://example.com/api2");
+    verify(aggregationService, times(1)).processTempDataForAggregations();
+  }
 }
@@ -0,0 +1,514 @@
+package com.jack.aquark.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.dto.AggregateFieldMapping;
+import com.jack.aquark.dto.DailyBucket;
+import com.jack.aquark.dto.RollupPeriod;
+import com.jack.aquark.dto.SketchFieldMapping;
+import com.jack.aquark.dto.TariffPeakWindow;
+import com.jack.aquark.entity.BaseAggregation;
+import com.jack.aquark.entity.DailyAggregation;
+import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.repository.AggregationBatchRepository;
+import com.jack.aquark.repository.AggregationSqlRepository;
+import com.jack.aquark.repository.DailyAggregationRepository;
+import com.jack.aquark.repository.HourlyAggregationRepository;
+import com.jack.aquark.repository.QuantileSketchRepository;
+import com.jack.aquark.repository.SensorDataRepository;
+import com.jack.aquark.repository.TempSensorDataRepository;
+import com.jack.aquark.repository.TempSensorDataRepository.StagedReading;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.QuantileSketch;
+import com.jack.aquark.util.TariffCalendar;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Runs the Java and the SQL aggregation engines over the same random readings and checks that they
+ * write the same hourly, daily, weekly and monthly rows. Needs Docker; skipped otherwise.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class AggregationEngineEquivalenceTest {
+
+  @Container
+  private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15");
+
+  private static final List<String> MEASUREMENTS =
+      List.of("v1", "v2", "v3", "v4", "v5", "v6", "v7", "rh", "tx", "echo", "rain_d", "speed");
+
+  private static final List<String> STATE_COLUMNS =
+      List.of("count", "sum_value", "avg_value", "min_value", "max_value", "sum_sq_value");
+
+  // A holiday on Wednesday and a one-off Saturday window between weeks of the standard rules
+  private static final TariffCalendar CALENDAR =
+      TariffCalendar.compile(
+          List.of(
+              new TariffPeakWindow(1, 450, 1050, null, null),
+              new TariffPeakWindow(2, 450, 1050, null, null),
+              new TariffPeakWindow(3, 450, 1050, null, null),
+              new TariffPeakWindow(4, 0, 1440, null, null),
+              new TariffPeakWindow(5, 0, 1440, null, null),
+              new TariffPeakWindow(
+                  6, 540, 750, LocalDate.of(2025, 3, 15), LocalDate.of(2025, 3, 15))),
+          List.of(LocalDate.of(2025, 3, 12)));
+
+  // PEAK around the clock, so every OFFPEAK hour of CALENDAR changes category
+  private static final TariffCalendar ALL_PEAK =
+      TariffCalendar.compile(
+          IntStream.rangeClosed(1, 7)
+              .mapToObj(day -> new TariffPeakWindow(day, 0, 1440, null, null))
+              .toList(),
+          List.of());
+
+  private static JdbcTemplate jdbcTemplate;
+
+  @BeforeAll
+  static void migrate() {
+    Flyway.configure()
+        .dataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())
+        .load()
+        .migrate();
+    jdbcTemplate =
+        new JdbcTemplate(
+            new SingleConnectionDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword(), true));
+  }
+
+  @BeforeEach
+  void clean() {
+    jdbcTemplate.execute(
+        "TRUNCATE sensor_data, temp_sensor_data, hourly_aggregation, daily_aggregation,"
+            + " weekly_aggregation, monthly_aggregation");
+  }
+
+  @Test
+  void testEnginesProduceTheSameRows() {
+    insertRandomReadings(new Random(42), 3_000);
+
+    runJavaEngine(CALENDAR);
+    Map<String, List<Object>> javaHourly = readRows("hourly_aggregation", true);
+    Map<String, List<Object>> javaDaily = readRows("daily_aggregation", false);
+    Map<String, List<Object>> javaWeekly = readRows("weekly_aggregation", false);
+    Map<String, List<Object>> javaMonthly = readRows("monthly_aggregation", false);
+    jdbcTemplate.execute(
+        "TRUNCATE hourly_aggregation, daily_aggregation, weekly_aggregation, monthly_aggregation");
+
+    AggregationSqlRepository sqlRepository = new AggregationSqlRepository(jdbcTemplate);
+    List<Long> stagedIds = jdbcTemplate.queryForList("SELECT id FROM temp_sensor_data", Long.class);
+    Set<DailyBucket> dirtyDays = sqlRepository.aggregateHours(stagedIds, CALENDAR);
+    runSqlPeriods(sqlRepository, dirtyDays);
+    assertSameRows(javaHourly, javaDaily, javaWeekly, javaMonthly);
+
+    // Running again goes through ON CONFLICT DO UPDATE and must not change anything
+    runSqlPeriods(sqlRepository, sqlRepository.aggregateHours(stagedIds, CALENDAR));
+    assertSameRows(javaHourly, javaDaily, javaWeekly, javaMonthly);
+
+    // And so must the Java engine's batched upserts over the rows the SQL engine wrote
+    runJavaEngine(CALENDAR);
+    assertSameRows(javaHourly, javaDaily, javaWeekly, javaMonthly);
+  }
+
+  @Test
+  void testCalendarChangeLeavesNoRowsInTheOldCategory() {
+    insertRandomReadings(new Random(3), 1_000);
+    AggregationSqlRepository sqlRepository = new AggregationSqlRepository(jdbcTemplate);
+    List<Long> stagedIds = jdbcTemplate.queryForList("SELECT id FROM temp_sensor_data", Long.class);
+    runSqlPeriods(sqlRepository, sqlRepository.aggregateHours(stagedIds, ALL_PEAK));
+    Map<String, List<Object>> hourly = readRows("hourly_aggregation", true);
+    Map<String, List<Object>> daily = readRows("daily_aggregation", false);
+    Map<String, List<Object>> weekly = readRows("weekly_aggregation", false);
+    Map<String, List<Object>> monthly = readRows("monthly_aggregation", false);
+
+    // Aggregated under the old calendar, then recomputed under the new one, by each engine
+    for (boolean sqlEngine : new boolean[] {true, false}) {
+      jdbcTemplate.execute(
+          "TRUNCATE hourly_aggregation, daily_aggregation, weekly_aggregation,"
+              + " monthly_aggregation");
+      for (TariffCalendar calendar : List.of(CALENDAR, ALL_PEAK)) {
+        if (sqlEngine) {
+          runSqlPeriods(sqlRepository, sqlRepository.aggregateHours(stagedIds, calendar));
+        } else {
+          runJavaEngine(calendar);
+        }
+      }
+      assertSameRows(hourly, daily, weekly, monthly);
+    }
+  }
+
+  @Test
+  void testFeedAggregatesTheSameHoursAsStaging() {
+    insertRandomReadings(new Random(7), 1_000);
+    AggregationSqlRepository sqlRepository = new AggregationSqlRepository(jdbcTemplate);
+    sqlRepository.aggregateHours(
+        jdbcTemplate.queryForList("SELECT id FROM temp_sensor_data", Long.class), CALENDAR);
+    Map<String, List<Object>> staged = readRows("hourly_aggregation", true);
+    jdbcTemplate.execute("TRUNCATE hourly_aggregation");
+
+    // The same readings, identified by their sensor_data ids as the watermark feed reads them
+    sqlRepository.aggregateHoursOfReadings(
+        jdbcTemplate.queryForList(
+            "SELECT s.id FROM sensor_data s JOIN temp_sensor_data t"
+                + " USING (station_id, obs_time, csq)",
+            Long.class),
+        CALENDAR);
+
+    assertSameRows(staged, readRows("hourly_aggregation", true));
+  }
+
+  @Test
+  void testMergedSketchesMatchSketchesOfTheRawReadings() {
+    insertRandomReadings(new Random(11), 2_000);
+    AggregationSqlRepository sqlRepository = new AggregationSqlRepository(jdbcTemplate);
+    runSqlPeriods(
+        sqlRepository,
+        sqlRepository.aggregateHours(
+            jdbcTemplate.queryForList("SELECT id FROM temp_sensor_data", Long.class), CALENDAR));
+
+    // Only the staged hours were aggregated, so compare against the readings of those hours
+    jdbcTemplate.execute(
+        "DELETE FROM sensor_data s WHERE NOT EXISTS (SELECT 1 FROM hourly_aggregation h"
+            + " WHERE h.station_id = s.station_id AND h.csq = s.csq"
+            + " AND h.obs_date = s.obs_time::date AND h.obs_hour = EXTRACT(HOUR FROM s.obs_time))");
+    QuantileSketchRepository sketchRepository = new QuantileSketchRepository(jdbcTemplate);
+    LocalDateTime[][] ranges = {
+      // The whole week, through daily rows only
+      {LocalDateTime.of(2025, 3, 10, 0, 0), LocalDateTime.of(2025, 3, 17, 0, 0)},
+      // Partial days at both ends around whole days
+      {LocalDateTime.of(2025, 3, 11, 9, 30), LocalDateTime.of(2025, 3, 13, 15, 0)},
+      // Within a single day, and across midnight without a whole day
+      {LocalDateTime.of(2025, 3, 12, 7, 0), LocalDateTime.of(2025, 3, 12, 18, 0)},
+      {LocalDateTime.of(2025, 3, 14, 20, 0), LocalDateTime.of(2025, 3, 15, 4, 0)}
+    };
+    for (SketchFieldMapping field : SketchFieldMapping.SKETCHED) {
+      for (LocalDateTime[] range : ranges) {
+        // Hour buckets starting in the range; 09:30 starts with the 10:00 bucket
+        LocalDateTime from = range[0].plusMinutes(59).withMinute(0);
+        QuantileSketch expected = new QuantileSketch();
+        jdbcTemplate.query(
+            "SELECT "
+                + field.field()
+                + " FROM sensor_data WHERE station_id = '240708'"
+                + " AND obs_time >= ? AND obs_time < ?",
+            rs -> {
+              expected.add(rs.getBigDecimal(1));
+            },
+            from,
+            range[1]);
+
+        byte[] merged = sketchRepository.mergedSketch("240708", field, range[0], range[1]);
+        assertTrue(expected.count() > 0);
+        assertEquals(
+            HexFormat.of().formatHex(expected.toBytes()),
+            HexFormat.of().formatHex(merged),
+            field.field() + " " + range[0] + " - " + range[1]);
+      }
+    }
+  }
+
+  @Test
+  void testSqlBinsMatchJavaBinsAtBinBoundaries() {
+    // The NUMERIC(19, 4) values nearest to every bin boundary gamma^k from 0.0001 to 10^8, where a
+    // last-bit difference between Math.log and ln(float8) would put a value in the next bin
+    double lnGamma =
+        Math.log((1 + QuantileSketch.RELATIVE_ACCURACY) / (1 - QuantileSketch.RELATIVE_ACCURACY));
+    BigDecimal step = new BigDecimal("0.0001");
+    List<BigDecimal> values = new ArrayList<>();
+    for (int k = (int) Math.floor(Math.log(1e-4) / lnGamma);
+        k <= (int) Math.ceil(Math.log(1e8) / lnGamma);
+        k++) {
+      BigDecimal boundary =
+          BigDecimal.valueOf(Math.exp(k * lnGamma)).setScale(4, RoundingMode.HALF_UP);
+      for (int offset = -2; offset <= 2; offset++) {
+        BigDecimal value = boundary.add(step.multiply(BigDecimal.valueOf(offset)));
+        if (value.signum() > 0) {
+          values.add(value);
+          values.add(value.negate());
+        }
+      }
+    }
+
+    List<String> mismatches = new ArrayList<>();
+    jdbcTemplate.query(
+        con -> {
+          PreparedStatement ps =
+              con.prepareStatement(
+                  "SELECT u.v, sketch_build(ARRAY[u.v]) FROM unnest(?::numeric[]) AS u(v)");
+          ps.setArray(1, con.createArrayOf("numeric", values.toArray()));
+          return ps;
+        },
+        rs -> {
+          BigDecimal value = rs.getBigDecimal(1);
+          QuantileSketch sketch = new QuantileSketch();
+          sketch.add(value);
+          if (!Arrays.equals(sketch.toBytes(), rs.getBytes(2))) {
+            mismatches.add(value.toPlainString());
+          }
+        });
+    assertTrue(values.size() > 10_000);
+    assertEquals(List.of(), mismatches);
+  }
+
+  private static void runSqlPeriods(
+      AggregationSqlRepository sqlRepository, Set<DailyBucket> dirtyDays) {
+    sqlRepository.aggregateDays(dirtyDays);
+    sqlRepository.aggregatePeriods(RollupPeriod.WEEK, dirtyDays);
+    sqlRepository.aggregatePeriods(RollupPeriod.MONTH, dirtyDays);
+  }
+
+  private static void assertSameRows(
+      Map<String, List<Object>> hourly,
+      Map<String, List<Object>> daily,
+      Map<String, List<Object>> weekly,
+      Map<String, List<Object>> monthly) {
+    assertSameRows(hourly, readRows("hourly_aggregation", true));
+    assertSameRows(daily, readRows("daily_aggregation", false));
+    assertSameRows(weekly, readRows("weekly_aggregation", false));
+    assertSameRows(monthly, readRows("monthly_aggregation", false));
+  }
+
+  private void runJavaEngine(TariffCalendar calendar) {
+    TempSensorDataRepository tempRepository = mock(TempSensorDataRepository.class);
+    SensorDataRepository sensorDataRepository = mock(SensorDataRepository.class);
+    HourlyAggregationRepository hourlyRepository = mock(HourlyAggregationRepository.class);
+    DailyAggregationRepository dailyRepository = mock(DailyAggregationRepository.class);
+    TariffCalendarService tariffCalendarService = mock(TariffCalendarService.class);
+    when(tariffCalendarService.current()).thenReturn(calendar);
+
+    List<StagedReading> staged =
+        jdbcTemplate.query(
+            "SELECT id, station_id, obs_time, csq FROM temp_sensor_data",
+            (rs, i) ->
+                staged(
+                    rs.getLong("id"),
+                    rs.getString("station_id"),
+                    rs.getObject("obs_time", LocalDateTime.class),
+                    rs.getString("csq")));
+    when(tempRepository.findStagedBy()).thenReturn(staged);
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            anyString(), anyString(), any(), any()))
+        .thenAnswer(
+            inv ->
+                jdbcTemplate.query(
+                    "SELECT * FROM sensor_data"
+                        + " WHERE station_id = ? AND csq = ? AND obs_time >= ? AND obs_time < ?",
+                    (rs, i) -> {
+                      SensorData data = new SensorData();
+                      data.setStationId(rs.getString("station_id"));
+                      data.setObsTime(rs.getObject("obs_time", LocalDateTime.class));
+                      data.setCsq(rs.getString("csq"));
+                      data.setV1(rs.getBigDecimal("v1"));
+                      data.setV2(rs.getBigDecimal("v2"));
+                      data.setV3(rs.getBigDecimal("v3"));
+                      data.setV4(rs.getBigDecimal("v4"));
+                      data.setV5(rs.getBigDecimal("v5"));
+                      data.setV6(rs.getBigDecimal("v6"));
+                      data.setV7(rs.getBigDecimal("v7"));
+                      data.setRh(rs.getBigDecimal("rh"));
+                      data.setTx(rs.getBigDecimal("tx"));
+                      data.setEcho(rs.getBigDecimal("echo"));
+                      data.setRainD(rs.getBigDecimal("rain_d"));
+                      data.setSpeed(rs.getBigDecimal("speed"));
+                      return data;
+                    },
+                    inv.getArgument(0),
+                    inv.getArgument(1),
+                    inv.getArgument(2),
+                    inv.getArgument(3)));
+
+    when(hourlyRepository.findByStationIdAndObsDateAndCsqAndTimeCategory(
+            anyString(), any(), anyString(), anyString()))
+        .thenAnswer(
+            inv ->
+                jdbcTemplate.query(
+                    "SELECT * FROM hourly_aggregation WHERE station_id = ? AND obs_date = ?"
+                        + " AND csq = ? AND time_category = ?",
+                    (rs, i) -> readState(rs, new HourlyAggregation()),
+                    inv.getArgument(0),
+                    inv.getArgument(1),
+                    inv.getArgument(2),
+                    inv.getArgument(3)));
+
+    when(dailyRepository.findByStationIdAndCsqAndTimeCategoryAndObsDateBetween(
+            anyString(), anyString(), anyString(), any(), any()))
+        .thenAnswer(
+            inv ->
+                jdbcTemplate.query(
+                    "SELECT * FROM daily_aggregation WHERE station_id = ? AND csq = ?"
+                        + " AND time_category = ? AND obs_date BETWEEN ? AND ?",
+                    (rs, i) -> {
+                      DailyAggregation daily = readState(rs, new DailyAggregation());
+                      daily.setObsDate(rs.getObject("obs_date", LocalDate.class));
+                      return daily;
+                    },
+                    inv.getArgument(0),
+                    inv.getArgument(1),
+                    inv.getArgument(2),
+                    inv.getArgument(3),
+                    inv.getArgument(4)));
+
+    AggregationServiceImpl service =
+        new AggregationServiceImpl(
+            hourlyRepository,
+            dailyRepository,
+            tempRepository,
+            sensorDataRepository,
+            new AggregationProperties(),
+            null,
+            new AggregationBatchRepository(jdbcTemplate),
+            null,
+            null,
+            null,
+            tariffCalendarService);
+    Set<DailyBucket> dirtyDays = service.aggregateHourlyData();
+    service.aggregateDailyData(dirtyDays);
+    service.aggregatePeriodData(dirtyDays);
+  }
+
+  private static <T extends BaseAggregation> T readState(ResultSet rs, T row) throws SQLException {
+    for (AggregateFieldMapping field : AggregateFieldMapping.FIELDS) {
+      String m = field.column();
+      field.countSetter().accept(row, rs.getLong(m + "_count"));
+      field.sumSetter().accept(row, rs.getBigDecimal(m + "_sum_value"));
+      field.avgSetter().accept(row, rs.getBigDecimal(m + "_avg_value"));
+      field.minSetter().accept(row, rs.getBigDecimal(m + "_min_value"));
+      field.maxSetter().accept(row, rs.getBigDecimal(m + "_max_value"));
+      field.sumSqSetter().accept(row, rs.getBigDecimal(m + "_sum_sq_value"));
+    }
+    for (SketchFieldMapping field : SketchFieldMapping.SKETCHED) {
+      field.sketchSetter().accept(row, rs.getBytes(field.column()));
+    }
+    return row;
+  }
+
+  private void insertRandomReadings(Random random, int count) {
+    String[] stations = {"240627", "240708", "240710"};
+    String[] csqs = {"31", "24"};
+    // Monday 2025-03-10 through Sunday 2025-03-16, so every time category rule is exercised
+    LocalDateTime start = LocalDateTime.of(2025, 3, 10, 0, 0);
+    String sql =
+        "INSERT INTO %s (station_id, obs_time, csq, time_category, "
+            + String.join(", ", MEASUREMENTS)
+            + ") VALUES (?, ?, ?, 'OFFPEAK', "
+            + "?, ".repeat(MEASUREMENTS.size() - 1)
+            + "?) ON CONFLICT DO NOTHING";
+    List<Object[]> readings = new ArrayList<>();
+    List<Object[]> stagedReadings = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Object[] args = new Object[3 + MEASUREMENTS.size()];
+      args[0] = stations[random.nextInt(stations.length)];
+      args[1] = start.plusSeconds(random.nextInt(7 * 24 * 3600));
+      args[2] = csqs[random.nextInt(csqs.length)];
+      for (int m = 0; m < MEASUREMENTS.size(); m++) {
+        args[3 + m] =
+            random.nextInt(10) == 0
+                ? null
+                : BigDecimal.valueOf(random.nextLong(-5_000_000, 5_000_000), random.nextInt(5));
+      }
+      readings.add(args);
+      // Roughly a third of the readings are new since the last run
+      if (random.nextInt(3) == 0) {
+        stagedReadings.add(args);
+      }
+    }
+    jdbcTemplate.batchUpdate(sql.formatted("sensor_data"), readings);
+    jdbcTemplate.batchUpdate(sql.formatted("temp_sensor_data"), stagedReadings);
+  }
+
+  private static Map<String, List<Object>> readRows(String table, boolean hourly) {
+    Map<String, List<Object>> rows = new HashMap<>();
+    jdbcTemplate.query(
+        "SELECT * FROM " + table,
+        rs -> {
+          List<Object> values = new ArrayList<>();
+          for (String m : MEASUREMENTS) {
+            for (String column : STATE_COLUMNS) {
+              values.add(rs.getBigDecimal(m + "_" + column));
+            }
+          }
+          for (SketchFieldMapping field : SketchFieldMapping.SKETCHED) {
+            byte[] sketch = rs.getBytes(field.column());
+            values.add(sketch == null ? null : HexFormat.of().formatHex(sketch));
+          }
+          String key =
+              String.join(
+                  "|",
+                  rs.getString("station_id"),
+                  rs.getObject("obs_date", LocalDate.class).toString(),
+                  hourly ? String.valueOf(rs.getInt("obs_hour")) : "-",
+                  rs.getString("csq"),
+                  rs.getString("time_category"));
+          rows.put(key, values);
+        });
+    return rows;
+  }
+
+  private static void assertSameRows(
+      Map<String, List<Object>> expected, Map<String, List<Object>> actual) {
+    assertFalse(expected.isEmpty());
+    assertEquals(expected.keySet(), actual.keySet());
+    expected.forEach(
+        (key, values) -> {
+          for (int i = 0; i < values.size(); i++) {
+            Object want = values.get(i);
+            Object got = actual.get(key).get(i);
+            String message = key + " column " + i + ": " + want + " vs " + got;
+            if (want instanceof BigDecimal w && got instanceof BigDecimal g) {
+              assertEquals(0, w.compareTo(g), message);
+            } else {
+              assertEquals(want, got, message);
+            }
+          }
+        });
+  }
+
+  private static StagedReading staged(
+      long id, String stationId, LocalDateTime obsTime, String csq) {
+    return new StagedReading() {
+      @Override
+      public Long getId() {
+        return id;
+      }
+
+      @Override
+      public String getStationId() {
+        return stationId;
+      }
+
+      @Override
+      public LocalDateTime getObsTime() {
+        return obsTime;
+      }
+
+      @Override
+      public String getCsq() {
+        return csq;
+      }
+    };
+  }
+}
@@ -1,27 +1,52 @@
 package com.jack.aquark.service.impl;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.dto.DailyBucket;
+import com.jack.aquark.dto.RollupPeriod;
+import com.jack.aquark.dto.StationHour;
 import com.jack.aquark.entity.DailyAggregation;
 import com.jack.aquark.entity.HourlyAggregation;
-import com.jack.aquark.entity.TempSensorData;
+import com.jack.aquark.entity.MonthlyAggregation;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.entity.WeeklyAggregation;
+import com.jack.aquark.repository.AggregationBatchRepository;
+import com.jack.aquark.repository.AggregationFeedRepository;
+import com.jack.aquark.repository.AggregationSqlRepository;
 import com.jack.aquark.repository.DailyAggregationRepository;
 import com.jack.aquark.repository.HourlyAggregationRepository;
+import com.jack.aquark.repository.SensorDataRepository;
 import com.jack.aquark.repository.TempSensorDataRepository;
+import com.jack.aquark.repository.TempSensorDataRepository.StagedReading;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.TariffCalendarFixtures;
+import com.zaxxer.hikari.HikariDataSource;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Optional;
+import java.util.List;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @ExtendWith(MockitoExtension.class)
 class AggregationServiceImplTest {
@@ -32,47 +57,201 @@ class AggregationServiceImplTest {
 
   @Mock private TempSensorDataRepository tempSensorDataRepository;
 
+  @Mock private SensorDataRepository sensorDataRepository;
+
+  @Spy private AggregationProperties aggregationProperties = new AggregationProperties();
+
+  @Mock private AggregationSqlRepository aggregationSqlRepository;
+
+  @Mock private AggregationBatchRepository aggregationBatchRepository;
+
+  @Mock private TransactionTemplate transactionTemplate;
+
+  @Mock private DataSource dataSource;
+
+  @Mock private AggregationFeedRepository aggregationFeedRepository;
+
+  @Mock(strictness = Mock.Strictness.LENIENT)
+  private TariffCalendarService tariffCalendarService;
+
   @InjectMocks private AggregationServiceImpl aggregationService;
 
+  @BeforeEach
+  void init() {
+    when(tariffCalendarService.current()).thenReturn(TariffCalendarFixtures.STANDARD);
+  }
+
   @Test
   void testAggregateHourlyData_NoData() {
-    when(tempSensorDataRepository.findAll()).thenReturn(Collections.emptyList());
+    when(tempSensorDataRepository.findStagedBy()).thenReturn(Collections.emptyList());
 
     aggregationService.aggregateHourlyData();
 
-    verify(tempSensorDataRepository).findAll();
-    // Should not call save as there is no data
-    verify(hourlyAggregationRepository, never()).save(any(HourlyAggregation.class));
+    verify(tempSensorDataRepository).findStagedBy();
+    // Nothing to write as there is no data
+    verifyNoInteractions(aggregationBatchRepository);
+    verifyNoInteractions(sensorDataRepository);
   }
 
   @Test
   void testAggregateHourlyData_WithData() {
-    // Create two TempSensorData records in the same group.
-    TempSensorData temp1 = new TempSensorData();
-    temp1.setStationId("240627");
-    temp1.setObsTime(LocalDateTime.of(2025, 3, 11, 10, 15));
-    temp1.setCsq("31");
-    temp1.setV1(new BigDecimal("10.0"));
-    // timeCategory is not set explicitly; it will be determined in aggregateHourlyData()
-
-    TempSensorData temp2 = new TempSensorData();
-    temp2.setStationId("240627");
-    temp2.setObsTime(LocalDateTime.of(2025, 3, 11, 10, 30));
-    temp2.setCsq("31");
-    temp2.setV1(new BigDecimal("20.0"));
-
-    when(tempSensorDataRepository.findAll()).thenReturn(Arrays.asList(temp1, temp2));
-    // When checking for an existing aggregation, return empty to force an insert.
-    // Note: using the new repository method with timeCategory parameter.
-    when(hourlyAggregationRepository.findByStationIdAndObsDateAndObsHourAndCsqAndTimeCategory(
-            anyString(), any(LocalDate.class), anyInt(), anyString(), anyString()))
-        .thenReturn(Optional.empty());
+    // Two staged readings in the same hour; the hour also holds an older reading
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 11, 10, 0);
+    when(tempSensorDataRepository.findStagedBy())
+        .thenReturn(
+            List.of(
+                staged(1L, "240627", hour.plusMinutes(15), "31"),
+                staged(2L, "240627", hour.plusMinutes(30), "31")));
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            "240627", "31", hour, hour.plusHours(1)))
+        .thenReturn(
+            List.of(
+                reading(hour.plusMinutes(5), "5.0"),
+                reading(hour.plusMinutes(15), "10.0"),
+                reading(hour.plusMinutes(30), "20.0")));
+    List<HourlyAggregation> upserted = recordHourlyUpserts();
 
     aggregationService.aggregateHourlyData();
 
-    verify(tempSensorDataRepository).findAll();
-    // Expect one aggregated row to be saved.
-    verify(hourlyAggregationRepository, times(1)).save(any(HourlyAggregation.class));
+    // Expect one aggregated row, recomputed over the whole hour, written without a lookup
+    assertEquals(1, upserted.size());
+    HourlyAggregation saved = upserted.get(0);
+    verifyNoInteractions(hourlyAggregationRepository);
+    assertEquals(10, saved.getObsHour());
+    assertEquals("PEAK", saved.getTimeCategory());
+    assertEquals(0, new BigDecimal("35.0").compareTo(saved.getV1SumValue()));
+    assertEquals(new BigDecimal("11.67"), saved.getV1AvgValue());
+    assertEquals(3, saved.getV1Count());
+    assertEquals(0, new BigDecimal("5.0").compareTo(saved.getV1MinValue()));
+    assertEquals(0, new BigDecimal("20.0").compareTo(saved.getV1MaxValue()));
+    assertEquals(0, new BigDecimal("525").compareTo(saved.getV1SumSqValue()));
+    assertEquals(0, saved.getV2Count());
+    assertNull(saved.getV2MinValue());
+  }
+
+  @Test
+  void testAggregateHourlyData_SplitsHourAcrossCategories() {
+    // Monday 07:00-08:00 is OFFPEAK before 07:30 and PEAK from 07:30
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 10, 7, 0);
+    when(tempSensorDataRepository.findStagedBy())
+        .thenReturn(List.of(staged(1L, "240627", hour.plusMinutes(45), "31")));
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            "240627", "31", hour, hour.plusHours(1)))
+        .thenReturn(
+            List.of(reading(hour.plusMinutes(10), "1.0"), reading(hour.plusMinutes(45), "2.0")));
+    List<HourlyAggregation> upserted = recordHourlyUpserts();
+
+    Set<DailyBucket> dirtyDays = aggregationService.aggregateHourlyData();
+
+    assertEquals(
+        List.of("PEAK", "OFFPEAK"),
+        upserted.stream().map(HourlyAggregation::getTimeCategory).toList());
+    assertEquals(
+        Set.of(
+            new DailyBucket("240627", hour.toLocalDate(), "31", "OFFPEAK"),
+            new DailyBucket("240627", hour.toLocalDate(), "31", "PEAK")),
+        dirtyDays);
+  }
+
+  @Test
+  void testAggregateHourlyData_DeletesCategoriesTheHourNoLongerHas() {
+    // Tuesday 10:00 is PEAK; a row of the hour in OFFPEAK would be left from an older calendar
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 11, 10, 0);
+    when(tempSensorDataRepository.findStagedBy())
+        .thenReturn(List.of(staged(1L, "240627", hour.plusMinutes(15), "31")));
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            "240627", "31", hour, hour.plusHours(1)))
+        .thenReturn(List.of(reading(hour.plusMinutes(15), "1.0")));
+
+    Set<DailyBucket> dirtyDays = aggregationService.aggregateHourlyData();
+
+    verify(aggregationBatchRepository)
+        .deleteHourly(List.of(StationHour.of("240627", "31", hour)), "OFFPEAK");
+    verify(aggregationBatchRepository, never()).deleteHourly(anyList(), eq("PEAK"));
+    // Both days are rolled up again, so the OFFPEAK day loses the moved hour
+    assertEquals(
+        Set.of(
+            new DailyBucket("240627", hour.toLocalDate(), "31", "OFFPEAK"),
+            new DailyBucket("240627", hour.toLocalDate(), "31", "PEAK")),
+        dirtyDays);
+  }
+
+  @Test
+  void testProcessTempData_DeletesOnlyAggregatedRows() {
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 11, 10, 0);
+    when(tempSensorDataRepository.findStagedBy())
+        .thenReturn(
+            List.of(
+                staged(7L, "240627", hour.plusMinutes(15), "31"),
+                staged(9L, "240627", hour.plusMinutes(30), "31")));
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            anyString(), anyString(), any(LocalDateTime.class), any(LocalDateTime.class)))
+        .thenReturn(List.of(reading(hour.plusMinutes(15), "1.0")));
+
+    aggregationService.processTempDataForAggregations();
+
+    // The daily step only reads the day the hourly step touched
+    verify(hourlyAggregationRepository)
+        .findByStationIdAndObsDateAndCsqAndTimeCategory("240627", hour.toLocalDate(), "31", "PEAK");
+    verify(hourlyAggregationRepository, never()).findAll();
+    verify(tempSensorDataRepository).deleteAllByIdInBatch(List.of(7L, 9L));
+    verify(tempSensorDataRepository, never()).deleteAll();
+  }
+
+  @Test
+  void testProcessStagedHours_ReadsAndClearsOnlyThoseHours() {
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 11, 10, 0);
+    when(tempSensorDataRepository
+            .findStagedByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+                "240627", "31", hour, hour.plusHours(1)))
+        .thenReturn(List.of(staged(4L, "240627", hour.plusMinutes(20), "31")));
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            "240627", "31", hour, hour.plusHours(1)))
+        .thenReturn(List.of(reading(hour.plusMinutes(20), "3.0")));
+    List<HourlyAggregation> upserted = recordHourlyUpserts();
+
+    aggregationService.processStagedHours(List.of(StationHour.of("240627", "31", hour)));
+
+    assertEquals(1, upserted.size());
+    verify(tempSensorDataRepository, never()).findStagedBy();
+    verify(tempSensorDataRepository).deleteAllByIdInBatch(List.of(4L));
+  }
+
+  @Test
+  void testProcessTempData_WatermarkFeedReadsAboveTheWatermark() {
+    aggregationProperties.setFeed(AggregationProperties.Feed.WATERMARK);
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 11, 10, 0);
+    when(aggregationFeedRepository.lockLastAggregatedId()).thenReturn(10L);
+    when(aggregationFeedRepository.committedHighId()).thenReturn(12L);
+    when(sensorDataRepository.findKeysByIdGreaterThanAndIdLessThanEqual(10L, 12L))
+        .thenReturn(
+            List.of(
+                staged(11L, "240627", hour.plusMinutes(15), "31"),
+                staged(12L, "240627", hour.plusMinutes(30), "31")));
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            "240627", "31", hour, hour.plusHours(1)))
+        .thenReturn(List.of(reading(hour.plusMinutes(15), "1.0")));
+    List<HourlyAggregation> upserted = recordHourlyUpserts();
+
+    aggregationService.processTempDataForAggregations();
+
+    assertEquals(1, upserted.size());
+    verify(aggregationFeedRepository).advance(12L);
+    // Nothing was staged, so nothing is deleted
+    verify(tempSensorDataRepository, never()).deleteAllByIdInBatch(anyList());
+  }
+
+  @Test
+  void testProcessTempData_WatermarkFeedWithoutNewReadings() {
+    aggregationProperties.setFeed(AggregationProperties.Feed.WATERMARK);
+    when(aggregationFeedRepository.lockLastAggregatedId()).thenReturn(12L);
+    when(aggregationFeedRepository.committedHighId()).thenReturn(12L);
+
+    aggregationService.processTempDataForAggregations();
+
+    verify(aggregationFeedRepository, never()).advance(anyLong());
+    verifyNoInteractions(sensorDataRepository);
+    verifyNoInteractions(aggregationBatchRepository);
   }
 
   @Test
@@ -83,27 +262,222 @@ class AggregationServiceImplTest {
     ha1.setObsDate(LocalDate.of(2025, 3, 11));
     ha1.setCsq("31");
     ha1.setTimeCategory("PEAK"); // Set time category
+    ha1.setV1Count(1);
     ha1.setV1SumValue(new BigDecimal("10.0"));
     ha1.setV1AvgValue(new BigDecimal("10.0"));
+    ha1.setV1MinValue(new BigDecimal("10.0"));
+    ha1.setV1MaxValue(new BigDecimal("10.0"));
+    ha1.setV1SumSqValue(new BigDecimal("100.0"));
 
     HourlyAggregation ha2 = new HourlyAggregation();
     ha2.setStationId("240708");
     ha2.setObsDate(LocalDate.of(2025, 3, 11));
     ha2.setCsq("31");
     ha2.setTimeCategory("PEAK"); // Set time category
+    // Readings 5, 7 and 8
+    ha2.setV1Count(3);
     ha2.setV1SumValue(new BigDecimal("20.0"));
-    ha2.setV1AvgValue(new BigDecimal("20.0"));
+    ha2.setV1AvgValue(new BigDecimal("6.67"));
+    ha2.setV1MinValue(new BigDecimal("5.0"));
+    ha2.setV1MaxValue(new BigDecimal("8.0"));
+    ha2.setV1SumSqValue(new BigDecimal("138.0"));
+
+    DailyBucket day = new DailyBucket("240708", LocalDate.of(2025, 3, 11), "31", "PEAK");
+    when(hourlyAggregationRepository.findByStationIdAndObsDateAndCsqAndTimeCategory(
+            "240708", LocalDate.of(2025, 3, 11), "31", "PEAK"))
+        .thenReturn(Arrays.asList(ha1, ha2));
+    List<DailyAggregation> upserted = new ArrayList<>();
+    doAnswer(inv -> upserted.addAll(inv.getArgument(0)))
+        .when(aggregationBatchRepository)
+        .upsertDaily(anyList());
+
+    aggregationService.aggregateDailyData(Set.of(day));
+
+    verify(hourlyAggregationRepository, never()).findAll();
+    // Expect one daily aggregation row upserted.
+    // Merged from the hourly state; the average is weighted by the hourly counts
+    assertEquals(1, upserted.size());
+    DailyAggregation daily = upserted.get(0);
+    assertEquals(4, daily.getV1Count());
+    assertEquals(0, new BigDecimal("30.0").compareTo(daily.getV1SumValue()));
+    assertEquals(new BigDecimal("7.50"), daily.getV1AvgValue());
+    assertEquals(0, new BigDecimal("5").compareTo(daily.getV1MinValue()));
+    assertEquals(0, new BigDecimal("10").compareTo(daily.getV1MaxValue()));
+    assertEquals(0, new BigDecimal("238").compareTo(daily.getV1SumSqValue()));
+    assertEquals(new BigDecimal("2.0817"), daily.getV1Stddev());
+  }
+
+  @Test
+  void testAggregateDailyData_DeletesDaysWithoutHourlyRows() {
+    DailyBucket day = new DailyBucket("240708", LocalDate.of(2025, 3, 11), "31", "OFFPEAK");
+
+    aggregationService.aggregateDailyData(Set.of(day));
+
+    verify(aggregationBatchRepository).upsertDaily(List.of());
+    verify(aggregationBatchRepository).deleteDaily(List.of(day));
+  }
+
+  @Test
+  void testAggregatePeriodData_DeletesPeriodsWithoutDailyRows() {
+    aggregationService.aggregatePeriodData(
+        Set.of(new DailyBucket("240708", LocalDate.of(2025, 3, 11), "31", "OFFPEAK")));
+
+    verify(aggregationBatchRepository)
+        .deleteWeekly(
+            List.of(new DailyBucket("240708", LocalDate.of(2025, 3, 10), "31", "OFFPEAK")));
+    verify(aggregationBatchRepository)
+        .deleteMonthly(
+            List.of(new DailyBucket("240708", LocalDate.of(2025, 3, 1), "31", "OFFPEAK")));
+  }
+
+  @Test
+  void testAggregatePeriodData_MergesDailyRowsOfTheWeekAndMonth() {
+    // Tuesday and Thursday of the ISO week starting Monday 2025-03-10
+    DailyAggregation tuesday = daily(LocalDate.of(2025, 3, 11), 2, "6.0", "2.0", "4.0", "20.0");
+    DailyAggregation thursday = daily(LocalDate.of(2025, 3, 13), 1, "9.0", "9.0", "9.0", "81.0");
+    when(dailyAggregationRepository.findByStationIdAndCsqAndTimeCategoryAndObsDateBetween(
+            "240708", "31", "PEAK", LocalDate.of(2025, 3, 10), LocalDate.of(2025, 3, 16)))
+        .thenReturn(List.of(tuesday, thursday));
+    when(dailyAggregationRepository.findByStationIdAndCsqAndTimeCategoryAndObsDateBetween(
+            "240708", "31", "PEAK", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 31)))
+        .thenReturn(List.of(tuesday, thursday));
+    List<WeeklyAggregation> weekly = new ArrayList<>();
+    doAnswer(inv -> weekly.addAll(inv.getArgument(0)))
+        .when(aggregationBatchRepository)
+        .upsertWeekly(anyList());
+    List<MonthlyAggregation> monthly = new ArrayList<>();
+    doAnswer(inv -> monthly.addAll(inv.getArgument(0)))
+        .when(aggregationBatchRepository)
+        .upsertMonthly(anyList());
+
+    // Both dirty days fall in the same week and month, so each is read and written once
+    aggregationService.aggregatePeriodData(
+        Set.of(
+            new DailyBucket("240708", LocalDate.of(2025, 3, 11), "31", "PEAK"),
+            new DailyBucket("240708", LocalDate.of(2025, 3, 13), "31", "PEAK")));
+
+    assertEquals(1, weekly.size());
+    assertEquals(LocalDate.of(2025, 3, 10), weekly.get(0).getObsDate());
+    assertEquals(1, monthly.size());
+    assertEquals(LocalDate.of(2025, 3, 1), monthly.get(0).getObsDate());
+    for (var period : List.of(weekly.get(0), monthly.get(0))) {
+      assertEquals("240708", period.getStationId());
+      assertEquals(3, period.getV1Count());
+      assertEquals(0, new BigDecimal("15").compareTo(period.getV1SumValue()));
+      assertEquals(new BigDecimal("5.00"), period.getV1AvgValue());
+      assertEquals(0, new BigDecimal("2").compareTo(period.getV1MinValue()));
+      assertEquals(0, new BigDecimal("9").compareTo(period.getV1MaxValue()));
+      assertEquals(0, new BigDecimal("101").compareTo(period.getV1SumSqValue()));
+      assertNull(period.getV2MinValue());
+    }
+  }
+
+  @Test
+  void testProcessTempData_SqlEngine() {
+    aggregationProperties.setEngine(AggregationProperties.Engine.SQL);
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 11, 10, 0);
+    when(tempSensorDataRepository.findStagedBy())
+        .thenReturn(List.of(staged(7L, "240627", hour.plusMinutes(15), "31")));
+    Set<DailyBucket> dirtyDays =
+        Set.of(new DailyBucket("240627", hour.toLocalDate(), "31", "PEAK"));
+    when(aggregationSqlRepository.aggregateHours(List.of(7L), TariffCalendarFixtures.STANDARD))
+        .thenReturn(dirtyDays);
+
+    aggregationService.processTempDataForAggregations();
+
+    verify(aggregationSqlRepository).aggregateDays(List.copyOf(dirtyDays));
+    verify(aggregationSqlRepository).aggregatePeriods(RollupPeriod.WEEK, List.copyOf(dirtyDays));
+    verify(aggregationSqlRepository).aggregatePeriods(RollupPeriod.MONTH, List.copyOf(dirtyDays));
+    verifyNoInteractions(sensorDataRepository);
+    verifyNoInteractions(aggregationBatchRepository);
+    verify(tempSensorDataRepository).deleteAllByIdInBatch(List.of(7L));
+  }
+
+  @Test
+  void testProcessTempData_ParallelStationPartitions() throws Exception {
+    aggregationProperties.setParallelism(4);
+    HikariDataSource hikari = new HikariDataSource();
+    hikari.setMaximumPoolSize(3);
+    when(dataSource.isWrapperFor(HikariDataSource.class)).thenReturn(true);
+    when(dataSource.unwrap(HikariDataSource.class)).thenReturn(hikari);
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+    LocalDateTime hour = LocalDateTime.of(2025, 3, 11, 10, 0);
+    when(tempSensorDataRepository.findStagedBy())
+        .thenReturn(
+            List.of(
+                staged(1L, "240627", hour.plusMinutes(15), "31"),
+                staged(2L, "240708", hour.plusMinutes(15), "31"),
+                staged(3L, "240710", hour.plusMinutes(15), "31")));
+    when(sensorDataRepository.findAllByStationIdAndCsqAndObsTimeGreaterThanEqualAndObsTimeLessThan(
+            anyString(), eq("31"), eq(hour), eq(hour.plusHours(1))))
+        .thenReturn(List.of(reading(hour.plusMinutes(15), "1.0")));
+    List<HourlyAggregation> upserted = recordHourlyUpserts();
+
+    aggregationService.processTempDataForAggregations();
+
+    // One transaction per station and tier; the coarser tiers find no rows to merge here
+    verify(transactionTemplate, times(9)).execute(any());
+    assertEquals(3, upserted.size());
+    verify(tempSensorDataRepository).deleteAllByIdInBatch(List.of(1L, 2L, 3L));
+  }
+
+  // The service reuses its buffer after each upsert, so copy the rows out
+  private List<HourlyAggregation> recordHourlyUpserts() {
+    List<HourlyAggregation> upserted = new ArrayList<>();
+    doAnswer(inv -> upserted.addAll(inv.getArgument(0)))
+        .when(aggregationBatchRepository)
+        .upsertHourly(anyList());
+    return upserted;
+  }
+
+  private static DailyAggregation daily(
+      LocalDate date, long count, String sum, String min, String max, String sumSq) {
+    DailyAggregation daily = new DailyAggregation();
+    daily.setStationId("240708");
+    daily.setObsDate(date);
+    daily.setCsq("31");
+    daily.setTimeCategory("PEAK");
+    daily.setV1Count(count);
+    daily.setV1SumValue(new BigDecimal(sum));
+    daily.setV1MinValue(new BigDecimal(min));
+    daily.setV1MaxValue(new BigDecimal(max));
+    daily.setV1SumSqValue(new BigDecimal(sumSq));
+    return daily;
+  }
+
+  private static SensorData reading(LocalDateTime obsTime, String v1) {
+    SensorData data = new SensorData();
+    data.setStationId("240627");
+    data.setObsTime(obsTime);
+    data.setCsq("31");
+    data.setV1(new BigDecimal(v1));
+    return data;
+  }
+
+  private static StagedReading staged(
+      long id, String stationId, LocalDateTime obsTime, String csq) {
+    return new StagedReading() {
+      @Override
+      public Long getId() {
+        return id;
+      }
 
-    when(hourlyAggregationRepository.findAll()).thenReturn(Arrays.asList(ha1, ha2));
-    // Use the new repository method with timeCategory parameter for daily aggregation.
-    when(dailyAggregationRepository.findByStationIdAndObsDateAndCsqAndTimeCategory(
-            anyString(), any(LocalDate.class), anyString(), anyString()))
-        .thenReturn(Optional.empty());
+      @Override
+      public String getStationId() {
+        return stationId;
+      }
 
-    aggregationService.aggregateDailyData();
+      @Override
+      public LocalDateTime getObsTime() {
+        return obsTime;
+      }
 
-    verify(hourlyAggregationRepository).findAll();
-    // Expect at least one daily aggregation row saved.
-    verify(dailyAggregationRepository, atLeastOnce()).save(any(DailyAggregation.class));
+      @Override
+      public String getCsq() {
+        return csq;
+      }
+    };
   }
 }
@@ -0,0 +1,148 @@
+package com.jack.aquark.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.config.BulkImportProperties;
+import com.jack.aquark.dto.BulkImportResult;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.repository.SensorDataCopyRepository;
+import com.jack.aquark.repository.SensorDataCopyRepository.ImportCounts;
+import com.jack.aquark.service.DuplicateFilterService;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+
+class BulkImportServiceImplTest {
+
+  private static final String PAYLOAD =
+      """
+{"station_id":"240708","obs_time":"2025-03-16 10:00:00","CSQ":"31","sensor":{"Volt":{"v1":1.5}}}
+{"station_id":"240708","obs_time":"2025-03-16 10:10:00","CSQ":"31","sensor":{"Volt":{"v1":2.5}}}
+
+not json
+{"station_id":"240708","obs_time":"yesterday","CSQ":"31","sensor":{}}
+{"station_id":"240708","obs_time":"2025-03-16 10:20:00","CSQ":"31"}
+{"station_id":"240709","obs_time":"2025-03-16 10:00:00","CSQ":"31","sensor":{"Water_speed_aquark":{"speed":3}}}
+""";
+
+  @TempDir Path importDirectory;
+
+  @Mock private SensorDataCopyRepository sensorDataCopyRepository;
+
+  @Mock private DuplicateFilterService duplicateFilterService;
+
+  private BulkImportServiceImpl bulkImportService;
+
+  private final List<SensorData> copied = new ArrayList<>();
+
+  private AutoCloseable closeable;
+
+  @BeforeEach
+  void init() {
+    closeable = MockitoAnnotations.openMocks(this);
+    BulkImportProperties properties = new BulkImportProperties();
+    properties.setDirectory(importDirectory.toString());
+    bulkImportService =
+        new BulkImportServiceImpl(
+            properties, sensorDataCopyRepository, duplicateFilterService, new ObjectMapper());
+
+    // Drain the iterator the way COPY would and pretend every row is new
+    when(sensorDataCopyRepository.importReadings(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Iterator<SensorData> readings = invocation.getArgument(0);
+              readings.forEachRemaining(copied::add);
+              return new ImportCounts(copied.size(), copied.size());
+            });
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    closeable.close();
+  }
+
+  @Test
+  void testImportFile_skipsInvalidLines() throws Exception {
+    Path file = importDirectory.resolve("backfill.ndjson");
+    Files.writeString(file, PAYLOAD);
+
+    BulkImportResult result = bulkImportService.importFile(file);
+
+    assertEquals(3, result.parsedCount());
+    assertEquals(3, result.skippedCount());
+    assertEquals(3, result.insertedCount());
+    assertEquals(List.of("240708", "240708", "240709"), stationIds());
+  }
+
+  @Test
+  void testImportFile_skipsLinesMissingAKeyColumn() throws Exception {
+    Path file = importDirectory.resolve("backfill.ndjson");
+    Files.writeString(
+        file,
+        """
+{"station_id":"240708","obs_time":"2025-03-16 10:00:00","CSQ":"31","sensor":{"Volt":{"v1":1.5}}}
+{"obs_time":"2025-03-16 10:10:00","CSQ":"31","sensor":{"Volt":{"v1":2.5}}}
+{"station_id":"240708","obs_time":"2025-03-16 10:20:00","CSQ":" ","sensor":{"Volt":{"v1":3.5}}}
+{"station_id":"240708","obs_time":null,"CSQ":"31","sensor":{"Volt":{"v1":4.5}}}
+{"station_id":"240709","obs_time":"2025-03-16 10:00:00","CSQ":"31","sensor":{"Volt":{"v1":5.5}}}
+""");
+
+    BulkImportResult result = bulkImportService.importFile(file);
+
+    // Never handed to COPY, where a NULL key would roll back the good rows as well
+    assertEquals(2, result.parsedCount());
+    assertEquals(3, result.skippedCount());
+    assertEquals(List.of("240708", "240709"), stationIds());
+    assertTrue(copied.stream().allMatch(row -> row.getCsq() != null && row.getObsTime() != null));
+  }
+
+  @Test
+  void testImportFile_readsGzip() throws Exception {
+    Path file = importDirectory.resolve("backfill.ndjson.gz");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+      out.write(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+    }
+
+    BulkImportResult result = bulkImportService.importFile(file);
+
+    assertEquals(3, result.insertedCount());
+    assertEquals(List.of("240708", "240708", "240709"), stationIds());
+  }
+
+  @Test
+  void testImportPendingFiles_renamesHandledFiles() throws Exception {
+    Files.writeString(importDirectory.resolve("a.ndjson"), PAYLOAD);
+    Files.writeString(importDirectory.resolve("notes.txt"), "ignored");
+
+    List<BulkImportResult> results = bulkImportService.importPendingFiles();
+
+    assertEquals(1, results.size());
+    assertTrue(Files.exists(importDirectory.resolve("a.ndjson.imported")));
+    assertFalse(Files.exists(importDirectory.resolve("a.ndjson")));
+    assertTrue(Files.exists(importDirectory.resolve("notes.txt")));
+  }
+
+  @Test
+  void testResolveImportFile_rejectsPathsOutsideDirectory() {
+    assertThrows(
+        IllegalArgumentException.class, () -> bulkImportService.resolveImportFile("../etc/passwd"));
+    assertEquals(
+        importDirectory.resolve("x.ndjson").toAbsolutePath().normalize(),
+        bulkImportService.resolveImportFile("x.ndjson"));
+  }
+
+  private List<String> stationIds() {
+    return copied.stream().map(SensorData::getStationId).toList();
+  }
+}
@@ -0,0 +1,109 @@
+package com.jack.aquark.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.repository.SensorDataBatchRepository;
+import com.jack.aquark.repository.SensorDataBatchRepository.ReadingKeyConsumer;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+class DuplicateFilterServiceImplTest {
+
+  private static final LocalDateTime OBS_TIME = LocalDateTime.of(2025, 3, 16, 10, 0);
+
+  @Mock private SensorDataBatchRepository sensorDataBatchRepository;
+
+  private IngestionProperties ingestionProperties;
+
+  private DuplicateFilterServiceImpl duplicateFilterService;
+
+  private AutoCloseable closeable;
+
+  @BeforeEach
+  void init() {
+    closeable = MockitoAnnotations.openMocks(this);
+    ingestionProperties = new IngestionProperties();
+    ingestionProperties.getBatch().setEnabled(false);
+    ingestionProperties.getDuplicateFilter().setEnabled(true);
+    ingestionProperties.getDuplicateFilter().setExpectedKeysPerStation(1_000);
+    duplicateFilterService =
+        new DuplicateFilterServiceImpl(ingestionProperties, sensorDataBatchRepository);
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    closeable.close();
+  }
+
+  @Test
+  void testMightContain_beforeRebuildFallsBackToDatabase() {
+    assertTrue(duplicateFilterService.mightContain("240708", OBS_TIME, "31"));
+  }
+
+  @Test
+  void testRebuild_loadsExistingKeysPerStation() {
+    when(sensorDataBatchRepository.forEachReadingKey(any()))
+        .thenAnswer(
+            invocation -> {
+              ReadingKeyConsumer consumer = invocation.getArgument(0);
+              consumer.accept("240708", OBS_TIME, "31");
+              return 1L;
+            });
+
+    duplicateFilterService.rebuild();
+
+    assertTrue(duplicateFilterService.mightContain("240708", OBS_TIME, "31"));
+    // Same key under another station lives in another filter
+    assertFalse(duplicateFilterService.mightContain("240709", OBS_TIME, "31"));
+
+    duplicateFilterService.put("240709", OBS_TIME, "31");
+    assertTrue(duplicateFilterService.mightContain("240709", OBS_TIME, "31"));
+  }
+
+  @Test
+  void testRebuildOnStartup_inactiveWhileBatchPathIsOn() {
+    ingestionProperties.getBatch().setEnabled(true);
+
+    duplicateFilterService.rebuildOnStartup();
+    duplicateFilterService.put("240708", OBS_TIME, "31");
+
+    verifyNoInteractions(sensorDataBatchRepository);
+    assertTrue(duplicateFilterService.mightContain("240708", OBS_TIME.plusMinutes(1), "31"));
+  }
+
+  @Test
+  void testRebuild_failureKeepsDatabaseFallback() {
+    when(sensorDataBatchRepository.forEachReadingKey(any()))
+        .thenThrow(new IllegalStateException("db down"));
+
+    duplicateFilterService.rebuild();
+
+    assertTrue(duplicateFilterService.mightContain("240708", OBS_TIME, "31"));
+  }
+
+  @Test
+  void testMightContain_falsePositiveRateStaysNearConfigured() {
+    when(sensorDataBatchRepository.forEachReadingKey(any())).thenReturn(0L);
+    duplicateFilterService.rebuild();
+
+    for (int i = 0; i < 1_000; i++) {
+      duplicateFilterService.put("240708", OBS_TIME.plusMinutes(i), "31");
+    }
+    for (int i = 0; i < 1_000; i++) {
+      assertTrue(duplicateFilterService.mightContain("240708", OBS_TIME.plusMinutes(i), "31"));
+    }
+
+    int falsePositives = 0;
+    for (int i = 1_000; i < 11_000; i++) {
+      if (duplicateFilterService.mightContain("240708", OBS_TIME.plusMinutes(i), "31")) {
+        falsePositives++;
+      }
+    }
+    // Configured at 1%; allow generous slack for a fixed sample
+    assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+  }
+}
@@ -0,0 +1,195 @@
+package com.jack.aquark.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.dto.RawDataItemDto;
+import com.jack.aquark.service.SensorDataService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+class IngestionBufferServiceImplTest {
+
+  @Mock private SensorDataService sensorDataService;
+
+  private IngestionProperties ingestionProperties;
+
+  private MeterRegistry meterRegistry;
+
+  private IngestionBufferServiceImpl ingestionBufferService;
+
+  private AutoCloseable closeable;
+
+  @BeforeEach
+  void init() {
+    closeable = MockitoAnnotations.openMocks(this);
+    ingestionProperties = new IngestionProperties();
+    ingestionProperties.getPush().setCapacity(5);
+    ingestionProperties.getPush().setMaxBatchSize(3);
+    ingestionProperties.getPush().setLingerTime(Duration.ofMillis(10));
+    ingestionProperties.getPush().setRetryAfter(Duration.ofMillis(1));
+    meterRegistry = new SimpleMeterRegistry();
+    ingestionBufferService =
+        new IngestionBufferServiceImpl(sensorDataService, ingestionProperties, meterRegistry);
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    closeable.close();
+  }
+
+  @Test
+  void testOffer_rejectsWholeBatchWhenFull() {
+    assertTrue(ingestionBufferService.offer(items(4)));
+    // Only one slot left, so a batch of two is refused without being partially queued
+    assertFalse(ingestionBufferService.offer(items(2)));
+    assertTrue(ingestionBufferService.offer(items(1)));
+  }
+
+  @Test
+  void testOffer_rejectedOnceStopped() throws Exception {
+    List<Integer> batchSizes = new ArrayList<>();
+    when(sensorDataService.saveRawItems(anyList()))
+        .thenAnswer(
+            invocation -> {
+              List<RawDataItemDto> batch = invocation.getArgument(0);
+              batchSizes.add(batch.size());
+              return batch.size();
+            });
+    ingestionBufferService.offer(items(2));
+
+    ingestionBufferService.stop();
+
+    // Accepted items were flushed; later ones would never be written, so they are refused
+    assertEquals(List.of(2), batchSizes);
+    assertFalse(ingestionBufferService.offer(items(1)));
+    verify(sensorDataService, times(1)).saveRawItems(anyList());
+  }
+
+  @Test
+  void testNextBatch_boundedByMaxBatchSize() throws Exception {
+    ingestionBufferService.offer(items(5));
+
+    assertEquals(3, ingestionBufferService.nextBatch().size());
+    assertEquals(2, ingestionBufferService.nextBatch().size());
+    assertTrue(ingestionBufferService.nextBatch().isEmpty());
+  }
+
+  @Test
+  void testFlushRemaining_persistsAndFreesCapacity() {
+    List<Integer> batchSizes = new ArrayList<>();
+    when(sensorDataService.saveRawItems(anyList()))
+        .thenAnswer(
+            invocation -> {
+              List<RawDataItemDto> batch = invocation.getArgument(0);
+              batchSizes.add(batch.size());
+              return batch.size();
+            });
+    ingestionBufferService.offer(items(5));
+
+    ingestionBufferService.flushRemaining();
+
+    assertEquals(List.of(3, 2), batchSizes);
+    assertTrue(ingestionBufferService.offer(items(5)));
+  }
+
+  @Test
+  void testFlushRemaining_retriesThenFreesCapacity() {
+    when(sensorDataService.saveRawItems(anyList()))
+        .thenThrow(new IllegalStateException("db down"))
+        .thenReturn(2);
+    ingestionBufferService.offer(items(2));
+
+    ingestionBufferService.flushRemaining();
+
+    verify(sensorDataService, times(2)).saveRawItems(anyList());
+    assertTrue(ingestionBufferService.offer(items(5)));
+  }
+
+  @Test
+  void testWriter_retriesPastFailuresAndPushesBackMeanwhile() throws Exception {
+    AtomicBoolean databaseUp = new AtomicBoolean();
+    AtomicInteger stored = new AtomicInteger();
+    when(sensorDataService.saveRawItems(anyList()))
+        .thenAnswer(
+            invocation -> {
+              if (!databaseUp.get()) {
+                throw new IllegalStateException("db down");
+              }
+              return stored.addAndGet(invocation.<List<?>>getArgument(0).size());
+            });
+    assertTrue(ingestionBufferService.offer(items(3)));
+    ingestionBufferService.start();
+
+    // Well past the attempts a shutdown flush would make, the batch still holds its permits, so
+    // the buffer pushes back instead of losing items
+    verify(sensorDataService, timeout(5_000).atLeast(5)).saveRawItems(anyList());
+    assertFalse(ingestionBufferService.offer(items(3)));
+
+    // Room again once the batch is finally stored
+    databaseUp.set(true);
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(5),
+        () -> {
+          while (!ingestionBufferService.offer(items(3))) {
+            Thread.sleep(1);
+          }
+        });
+    ingestionBufferService.stop();
+    assertEquals(6, stored.get());
+    assertEquals(0, dropped());
+  }
+
+  @Test
+  void testStop_cutsBackoffShortAndFlushesTheFailedBatch() throws Exception {
+    ingestionProperties.getPush().setRetryAfter(Duration.ofMinutes(1));
+    when(sensorDataService.saveRawItems(anyList()))
+        .thenThrow(new IllegalStateException("db down"))
+        .thenReturn(2);
+    ingestionBufferService.offer(items(2));
+    ingestionBufferService.start();
+    verify(sensorDataService, timeout(5_000)).saveRawItems(anyList());
+
+    assertTimeoutPreemptively(Duration.ofSeconds(5), ingestionBufferService::stop);
+
+    verify(sensorDataService, times(2)).saveRawItems(anyList());
+    assertEquals(0, dropped());
+  }
+
+  @Test
+  void testFlushRemaining_dropsAndCountsBatchThatKeepsFailing() {
+    when(sensorDataService.saveRawItems(anyList())).thenThrow(new IllegalStateException("db down"));
+    ingestionBufferService.offer(items(2));
+
+    ingestionBufferService.flushRemaining();
+
+    verify(sensorDataService, times(3)).saveRawItems(anyList());
+    assertEquals(2, dropped());
+    assertTrue(ingestionBufferService.offer(items(5)));
+  }
+
+  private double dropped() {
+    return meterRegistry.get("ingestion.push.dropped").counter().count();
+  }
+
+  private static List<RawDataItemDto> items(int count) {
+    List<RawDataItemDto> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      RawDataItemDto item = new RawDataItemDto();
+      item.setStationId("240708");
+      item.setObsTime(String.format("2025-03-16 10:%02d:00", i));
+      item.setCsq("31");
+      items.add(item);
+    }
+    return items;
+  }
+}
@@ -0,0 +1,244 @@
+package com.jack.aquark.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.client.SensorSourceClient;
+import com.jack.aquark.client.SensorSourceClient.BodyReader;
+import com.jack.aquark.client.SensorSourceClient.SourceResponse;
+import com.jack.aquark.config.FetchProperties;
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.dto.SourceFetchResult;
+import com.jack.aquark.repository.IngestionWatermarkRepository;
+import com.jack.aquark.repository.SensorDataBatchRepository;
+import com.jack.aquark.service.DuplicateFilterService;
+import com.jack.aquark.service.LiveAggregationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+class IngestionPipelineServiceImplTest {
+
+  private static final String PAYLOAD =
+      "{\"raw\":["
+          + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:00:00\",\"CSQ\":\"31\","
+          + "\"sensor\":{\"Volt\":{\"v1\":1.5}}},"
+          + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:10:00\",\"CSQ\":\"31\","
+          + "\"sensor\":{\"Volt\":{\"v1\":2.5}}},"
+          + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:20:00\",\"CSQ\":\"31\","
+          + "\"sensor\":{\"Volt\":{\"v1\":3.5}}}"
+          + "]}";
+
+  @Mock private SensorSourceClient sensorSourceClient;
+
+  @Mock private SensorDataBatchRepository sensorDataBatchRepository;
+
+  @Mock private IngestionWatermarkRepository ingestionWatermarkRepository;
+
+  @Mock private DuplicateFilterService duplicateFilterService;
+
+  @Mock private LiveAggregationService liveAggregationService;
+
+  private MeterRegistry meterRegistry;
+
+  private IngestionPipelineServiceImpl pipeline;
+
+  private AutoCloseable closeable;
+
+  @BeforeEach
+  void init() {
+    closeable = MockitoAnnotations.openMocks(this);
+    meterRegistry = new SimpleMeterRegistry();
+    IngestionProperties ingestionProperties = new IngestionProperties();
+    ingestionProperties.getBatch().setSize(2);
+    FetchProperties fetchProperties = new FetchProperties();
+    fetchProperties.setTimeout(Duration.ofSeconds(5));
+
+    pipeline =
+        new IngestionPipelineServiceImpl(
+            sensorSourceClient,
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            ingestionProperties,
+            fetchProperties,
+            liveAggregationService,
+            meterRegistry);
+
+    when(ingestionWatermarkRepository.findBySource(anyString())).thenReturn(Map.of());
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    pipeline.stopStages();
+    closeable.close();
+  }
+
+  @Test
+  void testIngest_persistsEverySourceInChunks() throws Exception {
+    stubBody("http://example.com/api1");
+    stubBody("http://example.com/api2");
+
+    List<SourceFetchResult> results =
+        pipeline.ingest(List.of("http://example.com/api1", "http://example.com/api2"));
+
+    assertEquals(2, results.size());
+    for (SourceFetchResult result : results) {
+      assertEquals(SourceFetchResult.Status.SUCCEEDED, result.status());
+      assertEquals(3, result.storedCount());
+    }
+    // Three items per source with a chunk size of two
+    verify(sensorDataBatchRepository, times(4)).insertNewReadings(anyList());
+    verify(sensorSourceClient, times(2)).markIngested(any());
+    // Every inserted chunk is folded into the live windows
+    verify(liveAggregationService, times(4)).record(anyList());
+    // Workers count an element after its handler returns; join them before reading the meters
+    pipeline.stopStages();
+    assertEquals(
+        6,
+        meterRegistry
+            .get("ingestion.pipeline.stage.items")
+            .tag("stage", "persist")
+            .counter()
+            .count());
+    assertEquals(
+        4,
+        meterRegistry.get("ingestion.pipeline.stage.duration").tag("stage", "map").timer().count());
+  }
+
+  @Test
+  void testIngest_watermarkFiltersBeforePersist() {
+    stubBody("http://example.com/api1");
+    when(ingestionWatermarkRepository.findBySource("http://example.com/api1"))
+        .thenReturn(Map.of("240708", LocalDateTime.of(2025, 3, 16, 10, 10)));
+
+    List<SourceFetchResult> results = pipeline.ingest(List.of("http://example.com/api1"));
+
+    assertEquals(1, results.get(0).storedCount());
+    verify(sensorDataBatchRepository, times(1)).insertNewReadings(argThat(r -> r.size() == 1));
+    // Moved once, after the source's last chunk committed
+    verify(ingestionWatermarkRepository, times(1))
+        .advance(
+            "http://example.com/api1", Map.of("240708", LocalDateTime.of(2025, 3, 16, 10, 20)));
+  }
+
+  @Test
+  void testIngest_failedChunkLeavesWatermarkUntouched() {
+    stubBody("http://example.com/api1");
+    // The second chunk fails after the first one committed
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0))
+        .thenThrow(new IllegalStateException("db down"));
+
+    List<SourceFetchResult> results = pipeline.ingest(List.of("http://example.com/api1"));
+
+    assertEquals(SourceFetchResult.Status.FAILED, results.get(0).status());
+    verify(ingestionWatermarkRepository, never()).advance(anyString(), anyMap());
+  }
+
+  @Test
+  void testIngest_persistFailureFailsOnlyThatSource() {
+    stubBody("http://example.com/api1");
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenThrow(new IllegalStateException("db down"));
+    when(sensorSourceClient.get(eq("http://example.com/api2"), any()))
+        .thenReturn(SourceResponse.notModified("http://example.com/api2"));
+
+    List<SourceFetchResult> results =
+        pipeline.ingest(List.of("http://example.com/api1", "http://example.com/api2"));
+
+    assertEquals(SourceFetchResult.Status.FAILED, results.get(0).status());
+    assertEquals(SourceFetchResult.Status.SUCCEEDED, results.get(1).status());
+    assertEquals(0, results.get(1).storedCount());
+    verify(sensorSourceClient, never())
+        .markIngested(argThat(r -> r.url().equals("http://example.com/api1")));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testIngest_persistsChunksWhileTheBodyIsStillDownloading() {
+    // The rest of the body only arrives once the first chunk has been persisted
+    CountDownLatch firstChunkPersisted = new CountDownLatch(1);
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(
+            invocation -> {
+              firstChunkPersisted.countDown();
+              return invocation.getArgument(0);
+            });
+    int split = PAYLOAD.indexOf("{\"station_id\"", PAYLOAD.indexOf("10:10:00"));
+    byte[] head = PAYLOAD.substring(0, split).getBytes(StandardCharsets.UTF_8);
+    byte[] tail = PAYLOAD.substring(split).getBytes(StandardCharsets.UTF_8);
+    InputStream slowBody =
+        new SequenceInputStream(
+            new ByteArrayInputStream(head),
+            new InputStream() {
+              private InputStream rest;
+
+              @Override
+              public int read() throws IOException {
+                return rest().read();
+              }
+
+              @Override
+              public int read(byte[] b, int off, int len) throws IOException {
+                return rest().read(b, off, len);
+              }
+
+              private InputStream rest() throws IOException {
+                if (rest == null) {
+                  try {
+                    if (!firstChunkPersisted.await(5, TimeUnit.SECONDS)) {
+                      throw new IOException("first chunk was not persisted before the body ended");
+                    }
+                  } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                  }
+                  rest = new ByteArrayInputStream(tail);
+                }
+                return rest;
+              }
+            });
+    when(sensorSourceClient.get(eq("http://example.com/api1"), any()))
+        .thenAnswer(
+            invocation -> {
+              BodyReader<Integer> reader = invocation.getArgument(1);
+              return new SourceResponse<>(
+                  "http://example.com/api1", false, reader.read(slowBody), null);
+            });
+
+    List<SourceFetchResult> results = pipeline.ingest(List.of("http://example.com/api1"));
+
+    assertEquals(SourceFetchResult.Status.SUCCEEDED, results.get(0).status());
+    assertEquals(3, results.get(0).storedCount());
+  }
+
+  @SuppressWarnings("unchecked")
+  private void stubBody(String url) {
+    when(sensorSourceClient.get(eq(url), any()))
+        .thenAnswer(
+            invocation -> {
+              BodyReader<Integer> reader = invocation.getArgument(1);
+              Integer read =
+                  reader.read(new ByteArrayInputStream(PAYLOAD.getBytes(StandardCharsets.UTF_8)));
+              return new SourceResponse<>(url, false, read, null);
+            });
+  }
+}
@@ -0,0 +1,85 @@
+package com.jack.aquark.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.dto.RawDataItemDto;
+import com.jack.aquark.service.SensorDataService;
+import java.util.List;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class KafkaConsumerServiceImplTest {
+
+  @Mock private SensorDataService sensorDataService;
+
+  @Mock private PlatformTransactionManager transactionManager;
+
+  @Mock private Acknowledgment ack;
+
+  @Captor private ArgumentCaptor<List<RawDataItemDto>> itemsCaptor;
+
+  private KafkaConsumerServiceImpl kafkaConsumerService;
+
+  private AutoCloseable closeable;
+
+  @BeforeEach
+  void init() {
+    closeable = MockitoAnnotations.openMocks(this);
+    kafkaConsumerService =
+        new KafkaConsumerServiceImpl(
+            sensorDataService, new TransactionTemplate(transactionManager), new ObjectMapper());
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    closeable.close();
+  }
+
+  @Test
+  void testConsumeRawReadings_persistsThenAcknowledges() {
+    when(sensorDataService.saveRawItems(anyList())).thenReturn(3);
+
+    kafkaConsumerService.consumeRawReadings(
+        List.of(
+            record(0, "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:00:00\"}"),
+            record(1, "not json"),
+            record(
+                2,
+                "{\"raw\":[{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:10:00\"},"
+                    + "{\"station_id\":\"240709\",\"obs_time\":\"2025-03-16 10:10:00\"}]}")),
+        ack);
+
+    InOrder inOrder = inOrder(transactionManager, sensorDataService, ack);
+    inOrder.verify(sensorDataService).saveRawItems(itemsCaptor.capture());
+    inOrder.verify(transactionManager).commit(any());
+    inOrder.verify(ack).acknowledge();
+    assertEquals(
+        List.of("240708", "240708", "240709"),
+        itemsCaptor.getValue().stream().map(RawDataItemDto::getStationId).toList());
+  }
+
+  @Test
+  void testConsumeRawReadings_failureLeavesOffsetsUncommitted() {
+    when(sensorDataService.saveRawItems(anyList())).thenThrow(new IllegalStateException("db"));
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            kafkaConsumerService.consumeRawReadings(
+                List.of(record(0, "{\"station_id\":\"240708\"}")), ack));
+
+    verify(transactionManager).rollback(any());
+    verify(ack, never()).acknowledge();
+  }
+
+  private static ConsumerRecord<String, String> record(long offset, String value) {
+    return new ConsumerRecord<>("raw-sensor-readings", 0, offset, null, value);
+  }
+}
@@ -0,0 +1,158 @@
+package com.jack.aquark.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.dto.StationHour;
+import com.jack.aquark.entity.HourlyAggregation;
+import com.jack.aquark.entity.SensorData;
+import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.TariffCalendarFixtures;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class LiveAggregationServiceImplTest {
+
+  // Thursday, so the whole day is PEAK
+  private static final LocalDateTime HOUR = LocalDateTime.of(2025, 3, 13, 10, 0);
+
+  @Mock private AggregationService aggregationService;
+  @Mock private TariffCalendarService tariffCalendarService;
+
+  private LiveAggregationServiceImpl liveAggregationService;
+
+  private AutoCloseable closeable;
+
+  @BeforeEach
+  void init() {
+    closeable = MockitoAnnotations.openMocks(this);
+    when(tariffCalendarService.current()).thenReturn(TariffCalendarFixtures.STANDARD);
+    AggregationProperties aggregationProperties = new AggregationProperties();
+    aggregationProperties.getLive().setEnabled(true);
+    liveAggregationService =
+        new LiveAggregationServiceImpl(
+            aggregationService, aggregationProperties, tariffCalendarService);
+  }
+
+  @AfterEach
+  void close() throws Exception {
+    closeable.close();
+  }
+
+  @Test
+  void testFold_OpenWindowHoldsTheHourSoFar() {
+    liveAggregationService.fold(
+        List.of(
+            reading(HOUR.plusMinutes(5), "2.0"),
+            reading(HOUR.plusMinutes(15), "4.0"),
+            reading(HOUR.plusMinutes(25), null)),
+        HOUR.plusMinutes(30));
+
+    List<HourlyAggregation> rows =
+        liveAggregationService.openWindows(HOUR.toLocalDate(), HOUR.toLocalDate());
+
+    assertEquals(1, rows.size());
+    HourlyAggregation row = rows.get(0);
+    assertEquals(10, row.getObsHour());
+    assertEquals("PEAK", row.getTimeCategory());
+    assertEquals(2, row.getV1Count());
+    assertEquals(new BigDecimal("3.00"), row.getV1AvgValue());
+    assertEquals(0, new BigDecimal("20").compareTo(row.getV1SumSqValue()));
+    assertTrue(
+        liveAggregationService.openWindows(LocalDate.of(2025, 3, 14), LocalDate.MAX).isEmpty());
+  }
+
+  @Test
+  void testFold_SkipsHoursAlreadyClosed() {
+    // 09:xx closed at 10:02 with the default two minute grace; 10:xx is still open
+    liveAggregationService.fold(
+        List.of(reading(HOUR.minusMinutes(30), "1.0"), reading(HOUR.plusMinutes(1), "1.0")),
+        HOUR.plusMinutes(3));
+
+    List<HourlyAggregation> rows =
+        liveAggregationService.openWindows(HOUR.toLocalDate(), HOUR.toLocalDate());
+    assertEquals(1, rows.size());
+    assertEquals(10, rows.get(0).getObsHour());
+  }
+
+  @Test
+  void testFlushClosedWindows_ProcessesOnlyClosedHours() {
+    liveAggregationService.fold(
+        List.of(reading(HOUR.plusMinutes(50), "1.0"), reading(HOUR.plusMinutes(61), "1.0")),
+        HOUR.plusMinutes(61));
+
+    // Within the grace period nothing is flushed
+    assertEquals(0, liveAggregationService.flushClosedWindows(HOUR.plusMinutes(61)));
+    verifyNoInteractions(aggregationService);
+
+    assertEquals(1, liveAggregationService.flushClosedWindows(HOUR.plusMinutes(62)));
+    verify(aggregationService).processStagedHours(List.of(StationHour.of("240708", "31", HOUR)));
+    List<HourlyAggregation> rows =
+        liveAggregationService.openWindows(HOUR.toLocalDate(), HOUR.toLocalDate());
+    assertEquals(1, rows.size());
+    assertEquals(11, rows.get(0).getObsHour());
+  }
+
+  @Test
+  void testFlushClosedWindows_KeepsWindowsWhenAggregationFails() {
+    liveAggregationService.fold(List.of(reading(HOUR, "1.0")), HOUR);
+    doThrow(new IllegalStateException("db down"))
+        .when(aggregationService)
+        .processStagedHours(any());
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> liveAggregationService.flushClosedWindows(HOUR.plusHours(2)));
+
+    assertEquals(
+        1, liveAggregationService.openWindows(HOUR.toLocalDate(), HOUR.toLocalDate()).size());
+  }
+
+  @Test
+  void testRecord_FoldsOnlyAfterCommit() {
+    LocalDateTime now = LocalDateTime.now();
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      liveAggregationService.record(List.of(reading(now, "1.0")));
+      assertTrue(
+          liveAggregationService.openWindows(now.toLocalDate(), now.toLocalDate()).isEmpty());
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(TransactionSynchronization::afterCommit);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertEquals(
+        1, liveAggregationService.openWindows(now.toLocalDate(), now.toLocalDate()).size());
+  }
+
+  @Test
+  void testRecord_DisabledKeepsNoWindows() {
+    AggregationProperties disabled = new AggregationProperties();
+    LiveAggregationServiceImpl service =
+        new LiveAggregationServiceImpl(aggregationService, disabled, tariffCalendarService);
+    LocalDateTime now = LocalDateTime.now();
+
+    service.record(List.of(reading(now, "1.0")));
+
+    assertTrue(service.openWindows(now.toLocalDate(), now.toLocalDate()).isEmpty());
+  }
+
+  private static SensorData reading(LocalDateTime obsTime, String v1) {
+    SensorData data = new SensorData();
+    data.setStationId("240708");
+    data.setObsTime(obsTime);
+    data.setCsq("31");
+    data.setV1(v1 == null ? null : new BigDecimal(v1));
+    return data;
+  }
+}
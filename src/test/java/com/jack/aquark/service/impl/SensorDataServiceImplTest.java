@@ -5,22 +5,43 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.aquark.client.SensorSourceClient;
+import com.jack.aquark.client.SensorSourceClient.SourceResponse;
+import com.jack.aquark.config.AggregationProperties;
+import com.jack.aquark.config.IngestionProperties;
+import com.jack.aquark.dto.PercentileResult;
 import com.jack.aquark.dto.RawDataItemDto;
 import com.jack.aquark.dto.RawDataWrapperDto;
 import com.jack.aquark.entity.DailyAggregation;
 import com.jack.aquark.entity.HourlyAggregation;
 import com.jack.aquark.entity.SensorData;
 import com.jack.aquark.entity.TempSensorData;
+import com.jack.aquark.entity.WeeklyAggregation;
 import com.jack.aquark.repository.DailyAggregationRepository;
 import com.jack.aquark.repository.HourlyAggregationRepository;
+import com.jack.aquark.repository.IngestionWatermarkRepository;
+import com.jack.aquark.repository.MonthlyAggregationRepository;
+import com.jack.aquark.repository.QuantileSketchRepository;
+import com.jack.aquark.repository.SensorDataBatchRepository;
 import com.jack.aquark.repository.SensorDataRepository;
 import com.jack.aquark.repository.TempSensorDataRepository;
+import com.jack.aquark.repository.WeeklyAggregationRepository;
 import com.jack.aquark.service.AggregationService;
+import com.jack.aquark.service.DuplicateFilterService;
+import com.jack.aquark.service.LiveAggregationService;
+import com.jack.aquark.service.TariffCalendarService;
+import com.jack.aquark.util.QuantileSketch;
+import com.jack.aquark.util.TariffCalendarFixtures;
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import org.junit.jupiter.api.*;
 import org.mockito.*;
+import org.springframework.dao.DataIntegrityViolationException;
 
 class SensorDataServiceImplTest {
 
@@ -34,11 +55,39 @@ class SensorDataServiceImplTest {
 
   @Mock private AggregationService aggregationService;
 
+  @Mock private SensorDataBatchRepository sensorDataBatchRepository;
+
+  @Mock private SensorSourceClient sensorSourceClient;
+
+  @Mock private IngestionWatermarkRepository ingestionWatermarkRepository;
+
+  @Mock private DuplicateFilterService duplicateFilterService;
+
+  @Mock private WeeklyAggregationRepository weeklyAggregationRepository;
+
+  @Mock private MonthlyAggregationRepository monthlyAggregationRepository;
+
+  @Mock private LiveAggregationService liveAggregationService;
+
+  @Mock private QuantileSketchRepository quantileSketchRepository;
+
+  @Mock private TariffCalendarService tariffCalendarService;
+
+  private AggregationProperties aggregationProperties;
+
+  private IngestionProperties ingestionProperties;
+
   private AutoCloseable closeable;
 
   @BeforeEach
   void init() {
     closeable = MockitoAnnotations.openMocks(this);
+    ingestionProperties = new IngestionProperties();
+    aggregationProperties = new AggregationProperties();
+    when(tariffCalendarService.current()).thenReturn(TariffCalendarFixtures.STANDARD);
+    // Filter not warmed up: every key goes to the database check
+    when(duplicateFilterService.mightContain(anyString(), any(LocalDateTime.class), anyString()))
+        .thenReturn(true);
   }
 
   @AfterEach
@@ -48,6 +97,9 @@ class SensorDataServiceImplTest {
 
   @Test
   void testFetchAndSaveSensorData_withValidData() {
+    // Exercise the legacy item-by-item path
+    ingestionProperties.getBatch().setEnabled(false);
+
     // 1) Prepare test data
     RawDataItemDto item = new RawDataItemDto();
     item.setObsTime("2025-03-16 10:00:00");
@@ -98,12 +150,25 @@ class SensorDataServiceImplTest {
             hourlyAggregationRepository,
             dailyAggregationRepository,
             aggregationService,
-            new ObjectMapper());
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
 
     SensorDataServiceImpl partialMock = spy(realService);
 
     // 3) Stub fetchRawDataFromUrl to return the wrapper
-    doReturn(wrapper).when(partialMock).fetchRawDataFromUrl(anyString());
+    doReturn(new SourceResponse<>("dummyurl", false, wrapper, null))
+        .when(partialMock)
+        .fetchRawDataFromUrl(anyString());
 
     // 4) Stub duplicate-check => false
     when(sensorDataRepository.existsByStationIdAndObsTimeAndCsq(
@@ -120,6 +185,9 @@ class SensorDataServiceImplTest {
 
   @Test
   void testFetchAndSaveSensorData_withDuplicateData() {
+    // Exercise the legacy item-by-item path
+    ingestionProperties.getBatch().setEnabled(false);
+
     // 1) Prepare test data
     RawDataItemDto item = new RawDataItemDto();
     item.setObsTime("2025-03-16 11:00:00");
@@ -155,11 +223,24 @@ class SensorDataServiceImplTest {
             hourlyAggregationRepository,
             dailyAggregationRepository,
             aggregationService,
-            new ObjectMapper());
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
 
     SensorDataServiceImpl partialMock = spy(realService);
 
-    doReturn(wrapper).when(partialMock).fetchRawDataFromUrl(anyString());
+    doReturn(new SourceResponse<>("dummyurl", false, wrapper, null))
+        .when(partialMock)
+        .fetchRawDataFromUrl(anyString());
 
     // Mark as duplicate
     when(sensorDataRepository.existsByStationIdAndObsTimeAndCsq(
@@ -174,6 +255,526 @@ class SensorDataServiceImplTest {
     verify(tempSensorDataRepository, never()).save(any(TempSensorData.class));
   }
 
+  @Test
+  void testFetchAndSaveSensorData_filterMissSkipsDuplicateQuery() {
+    ingestionProperties.getBatch().setEnabled(false);
+
+    RawDataItemDto item = new RawDataItemDto();
+    item.setObsTime("2025-03-16 12:00:00");
+    item.setStationId("240708");
+    item.setCsq("31");
+    item.setSensor(new RawDataItemDto.Sensor());
+
+    RawDataWrapperDto wrapper = new RawDataWrapperDto();
+    wrapper.setRaw(Collections.singletonList(item));
+
+    SensorDataServiceImpl service =
+        spy(
+            new SensorDataServiceImpl(
+                sensorDataRepository,
+                tempSensorDataRepository,
+                hourlyAggregationRepository,
+                dailyAggregationRepository,
+                aggregationService,
+                new ObjectMapper(),
+                sensorDataBatchRepository,
+                ingestionProperties,
+                sensorSourceClient,
+                ingestionWatermarkRepository,
+                duplicateFilterService,
+                weeklyAggregationRepository,
+                monthlyAggregationRepository,
+                liveAggregationService,
+                aggregationProperties,
+                quantileSketchRepository,
+                tariffCalendarService));
+    doReturn(new SourceResponse<>("dummyurl", false, wrapper, null))
+        .when(service)
+        .fetchRawDataFromUrl(anyString());
+
+    // The filter has never seen this key, so it is certainly new
+    when(duplicateFilterService.mightContain(anyString(), any(LocalDateTime.class), anyString()))
+        .thenReturn(false);
+
+    int stored = service.fetchAndSaveSensorData("dummyurl");
+
+    assertEquals(1, stored);
+    verify(sensorDataRepository, never())
+        .existsByStationIdAndObsTimeAndCsq(anyString(), any(LocalDateTime.class), anyString());
+    verify(sensorDataRepository, times(1)).save(any(SensorData.class));
+    verify(duplicateFilterService).put("240708", LocalDateTime.of(2025, 3, 16, 12, 0), "31");
+  }
+
+  @Test
+  void testFetchAndSaveSensorData_failedItemLeavesSourceUnvalidated() {
+    ingestionProperties.getBatch().setEnabled(false);
+    SensorDataServiceImpl service = perItemService(item("2025-03-16 13:00:00"));
+
+    // The insert fails for a reason other than the row already being there
+    when(sensorDataRepository.save(any(SensorData.class)))
+        .thenThrow(new DataIntegrityViolationException("value too long"));
+    when(sensorDataRepository.existsByStationIdAndObsTimeAndCsq(
+            eq("240708"), any(LocalDateTime.class), eq("31")))
+        .thenReturn(false);
+
+    assertEquals(0, service.fetchAndSaveSensorData("dummyurl"));
+    verify(duplicateFilterService, never()).put(anyString(), any(LocalDateTime.class), anyString());
+    verify(sensorSourceClient, never()).markIngested(any());
+  }
+
+  @Test
+  void testFetchAndSaveSensorData_concurrentDuplicateStillValidatesSource() {
+    ingestionProperties.getBatch().setEnabled(false);
+    SensorDataServiceImpl service = perItemService(item("2025-03-16 13:00:00"), item("garbage"));
+
+    // Another instance stored the row between the check and the insert
+    when(sensorDataRepository.save(any(SensorData.class)))
+        .thenThrow(new DataIntegrityViolationException("duplicate key"));
+    when(sensorDataRepository.existsByStationIdAndObsTimeAndCsq(
+            eq("240708"), any(LocalDateTime.class), eq("31")))
+        .thenReturn(false, true);
+
+    assertEquals(0, service.fetchAndSaveSensorData("dummyurl"));
+    // The unparsable item cannot be stored by any later poll, so it does not hold the source back
+    verify(sensorSourceClient).markIngested(any());
+  }
+
+  private static RawDataItemDto item(String obsTime) {
+    RawDataItemDto item = new RawDataItemDto();
+    item.setObsTime(obsTime);
+    item.setStationId("240708");
+    item.setCsq("31");
+    item.setSensor(new RawDataItemDto.Sensor());
+    return item;
+  }
+
+  private SensorDataServiceImpl perItemService(RawDataItemDto... items) {
+    RawDataWrapperDto wrapper = new RawDataWrapperDto();
+    wrapper.setRaw(List.of(items));
+    SensorDataServiceImpl service =
+        spy(
+            new SensorDataServiceImpl(
+                sensorDataRepository,
+                tempSensorDataRepository,
+                hourlyAggregationRepository,
+                dailyAggregationRepository,
+                aggregationService,
+                new ObjectMapper(),
+                sensorDataBatchRepository,
+                ingestionProperties,
+                sensorSourceClient,
+                ingestionWatermarkRepository,
+                duplicateFilterService,
+                weeklyAggregationRepository,
+                monthlyAggregationRepository,
+                liveAggregationService,
+                aggregationProperties,
+                quantileSketchRepository,
+                tariffCalendarService));
+    doReturn(new SourceResponse<>("dummyurl", false, wrapper, null))
+        .when(service)
+        .fetchRawDataFromUrl(anyString());
+    return service;
+  }
+
+  @Test
+  void testFetchAndSaveSensorData_batchedInChunks() {
+    // 1) Five valid items with a chunk size of two => three multi-row inserts
+    ingestionProperties.getBatch().setSize(2);
+    List<RawDataItemDto> items = new ArrayList<>();
+    for (int minute = 0; minute < 5; minute++) {
+      RawDataItemDto item = new RawDataItemDto();
+      item.setObsTime(String.format("2025-03-16 10:%02d:00", minute));
+      item.setStationId("240708");
+      item.setCsq("31");
+      RawDataItemDto.Sensor sensor = new RawDataItemDto.Sensor();
+      RawDataItemDto.Volt volt = new RawDataItemDto.Volt();
+      volt.setV1(BigDecimal.valueOf(minute));
+      sensor.setVolt(volt);
+      item.setSensor(sensor);
+      items.add(item);
+    }
+
+    RawDataWrapperDto wrapper = new RawDataWrapperDto();
+    wrapper.setRaw(items);
+
+    SensorDataServiceImpl service =
+        spy(
+            new SensorDataServiceImpl(
+                sensorDataRepository,
+                tempSensorDataRepository,
+                hourlyAggregationRepository,
+                dailyAggregationRepository,
+                aggregationService,
+                new ObjectMapper(),
+                sensorDataBatchRepository,
+                ingestionProperties,
+                sensorSourceClient,
+                ingestionWatermarkRepository,
+                duplicateFilterService,
+                weeklyAggregationRepository,
+                monthlyAggregationRepository,
+                liveAggregationService,
+                aggregationProperties,
+                quantileSketchRepository,
+                tariffCalendarService));
+    doReturn(new SourceResponse<>("dummyurl", false, wrapper, null))
+        .when(service)
+        .fetchRawDataFromUrl(anyString());
+
+    // 2) Pretend every row in a chunk is new
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    // 3) Execute
+    service.fetchAndSaveSensorData("dummyurl");
+
+    // 4) No per-item round trips, one insert per chunk
+    verify(sensorDataBatchRepository, times(3)).insertNewReadings(anyList());
+    verify(sensorDataRepository, never())
+        .existsByStationIdAndObsTimeAndCsq(anyString(), any(LocalDateTime.class), anyString());
+    verify(sensorDataRepository, never()).save(any(SensorData.class));
+    verify(tempSensorDataRepository, never()).save(any(TempSensorData.class));
+  }
+
+  @Test
+  void testSaveRawItems_skipsUnparsableItems() {
+    RawDataItemDto good = new RawDataItemDto();
+    good.setObsTime("2025-03-16 10:00:00");
+    good.setStationId("240708");
+    good.setCsq("31");
+    good.setSensor(new RawDataItemDto.Sensor());
+
+    RawDataItemDto badTime = new RawDataItemDto();
+    badTime.setObsTime("not-a-time");
+    badTime.setStationId("240708");
+    badTime.setCsq("31");
+    badTime.setSensor(new RawDataItemDto.Sensor());
+
+    RawDataItemDto noSensor = new RawDataItemDto();
+    noSensor.setObsTime("2025-03-16 10:01:00");
+    noSensor.setStationId("240708");
+    noSensor.setCsq("31");
+
+    SensorDataServiceImpl service =
+        new SensorDataServiceImpl(
+            sensorDataRepository,
+            tempSensorDataRepository,
+            hourlyAggregationRepository,
+            dailyAggregationRepository,
+            aggregationService,
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
+
+    // Only the valid reading reaches the database, and it turns out to be a duplicate
+    when(sensorDataBatchRepository.insertNewReadings(anyList())).thenReturn(List.of());
+
+    int stored = service.saveRawItems(Arrays.asList(good, badTime, noSensor));
+
+    assertEquals(0, stored);
+    verify(sensorDataBatchRepository, times(1))
+        .insertNewReadings(argThat(readings -> readings.size() == 1));
+  }
+
+  @Test
+  void testSaveRawItemsFromStream_flushesBoundedChunks() {
+    ingestionProperties.getBatch().setSize(2);
+    String payload =
+        "{\"status\":\"ok\",\"raw\":["
+            + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:00:00\",\"CSQ\":\"31\","
+            + "\"sensor\":{\"Volt\":{\"v1\":1.5},\"StickTxRh\":{\"rh\":50,\"tx\":10}}},"
+            + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:10:00\",\"CSQ\":\"31\","
+            + "\"sensor\":{\"Volt\":{\"v1\":2.5}}},"
+            + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:20:00\",\"CSQ\":\"31\","
+            + "\"sensor\":{\"Water_speed_aquark\":{\"speed\":3}},\"rain_d\":0}"
+            + "]}";
+
+    SensorDataServiceImpl service =
+        new SensorDataServiceImpl(
+            sensorDataRepository,
+            tempSensorDataRepository,
+            hourlyAggregationRepository,
+            dailyAggregationRepository,
+            aggregationService,
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
+
+    List<Integer> chunkSizes = new ArrayList<>();
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(
+            invocation -> {
+              List<SensorData> readings = invocation.getArgument(0);
+              chunkSizes.add(readings.size());
+              return readings;
+            });
+
+    int stored =
+        service.saveRawItemsFromStream(
+            "dummyurl",
+            new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)),
+            Map.of());
+
+    assertEquals(3, stored);
+    assertEquals(List.of(2, 1), chunkSizes);
+  }
+
+  @Test
+  void testSaveRawItemsFromStream_cancelledFetchStopsBeforeNextChunk() {
+    ingestionProperties.getBatch().setSize(1);
+    String payload =
+        "{\"status\":\"ok\",\"raw\":["
+            + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:00:00\",\"CSQ\":\"31\","
+            + "\"sensor\":{\"Volt\":{\"v1\":1.5}}},"
+            + "{\"station_id\":\"240708\",\"obs_time\":\"2025-03-16 10:10:00\",\"CSQ\":\"31\","
+            + "\"sensor\":{\"Volt\":{\"v1\":2.5}}}"
+            + "]}";
+
+    SensorDataServiceImpl service =
+        new SensorDataServiceImpl(
+            sensorDataRepository,
+            tempSensorDataRepository,
+            hourlyAggregationRepository,
+            dailyAggregationRepository,
+            aggregationService,
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
+
+    // The fetch is cancelled while its first chunk is being written
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(
+            invocation -> {
+              Thread.currentThread().interrupt();
+              return invocation.getArgument(0);
+            });
+
+    try {
+      assertThrows(
+          CancellationException.class,
+          () ->
+              service.saveRawItemsFromStream(
+                  "dummyurl",
+                  new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)),
+                  Map.of()));
+    } finally {
+      Thread.interrupted();
+    }
+    verify(sensorDataBatchRepository, times(1)).insertNewReadings(anyList());
+  }
+
+  @Test
+  void testFetchAndSaveSensorData_notModifiedSkipsParsingAndPersistence() {
+    SensorDataServiceImpl service =
+        new SensorDataServiceImpl(
+            sensorDataRepository,
+            tempSensorDataRepository,
+            hourlyAggregationRepository,
+            dailyAggregationRepository,
+            aggregationService,
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
+
+    // The source answers 304, so the body reader is never invoked
+    when(sensorSourceClient.get(eq("dummyurl"), any()))
+        .thenReturn(SourceResponse.notModified("dummyurl"));
+
+    int stored = service.fetchAndSaveSensorData("dummyurl");
+
+    assertEquals(0, stored);
+    verify(sensorDataBatchRepository, never()).insertNewReadings(anyList());
+    verify(sensorSourceClient, never()).markIngested(any());
+  }
+
+  @Test
+  void testFetchAndSaveSensorData_skipsItemsAtOrBelowWatermark() {
+    LocalDateTime watermark = LocalDateTime.of(2025, 3, 16, 10, 0);
+    List<RawDataItemDto> items = new ArrayList<>();
+    for (String obsTime :
+        List.of("2025-03-16 09:50:00", "2025-03-16 10:00:00", "2025-03-16 10:10:00")) {
+      RawDataItemDto item = new RawDataItemDto();
+      item.setObsTime(obsTime);
+      item.setStationId("240708");
+      item.setCsq("31");
+      item.setSensor(new RawDataItemDto.Sensor());
+      items.add(item);
+    }
+    RawDataItemDto otherStation = new RawDataItemDto();
+    otherStation.setObsTime("2025-03-16 09:00:00");
+    otherStation.setStationId("240709");
+    otherStation.setCsq("31");
+    otherStation.setSensor(new RawDataItemDto.Sensor());
+    items.add(otherStation);
+
+    RawDataWrapperDto wrapper = new RawDataWrapperDto();
+    wrapper.setRaw(items);
+
+    SensorDataServiceImpl service =
+        spy(
+            new SensorDataServiceImpl(
+                sensorDataRepository,
+                tempSensorDataRepository,
+                hourlyAggregationRepository,
+                dailyAggregationRepository,
+                aggregationService,
+                new ObjectMapper(),
+                sensorDataBatchRepository,
+                ingestionProperties,
+                sensorSourceClient,
+                ingestionWatermarkRepository,
+                duplicateFilterService,
+                weeklyAggregationRepository,
+                monthlyAggregationRepository,
+                liveAggregationService,
+                aggregationProperties,
+                quantileSketchRepository,
+                tariffCalendarService));
+    doReturn(new SourceResponse<>("dummyurl", false, wrapper, null))
+        .when(service)
+        .fetchRawDataFromUrl(anyString());
+
+    // Station 240708 is committed up to 10:00, 240709 has never been seen from this source
+    when(ingestionWatermarkRepository.findBySource("dummyurl"))
+        .thenReturn(Map.of("240708", watermark));
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    int stored = service.fetchAndSaveSensorData("dummyurl");
+
+    // Only 240708@10:10 and 240709@09:00 are sent, tagged with the source
+    assertEquals(2, stored);
+    verify(sensorDataBatchRepository, times(1))
+        .insertNewReadings(
+            argThat(
+                readings ->
+                    readings.size() == 2
+                        && readings.stream()
+                            .allMatch(
+                                r ->
+                                    r.getStationId().equals("240709")
+                                        || r.getObsTime().isAfter(watermark))));
+    verify(ingestionWatermarkRepository)
+        .advance(
+            "dummyurl",
+            Map.of("240708", watermark.plusMinutes(10), "240709", watermark.minusHours(1)));
+  }
+
+  @Test
+  void testFetchAndSaveSensorData_failedChunkIsStoredByTheNextPoll() {
+    ingestionProperties.getBatch().setSize(1);
+    // Not sorted by obs_time: the first chunk is later than the second
+    List<RawDataItemDto> items = new ArrayList<>();
+    for (String obsTime : List.of("2025-03-16 10:20:00", "2025-03-16 10:10:00")) {
+      RawDataItemDto item = new RawDataItemDto();
+      item.setObsTime(obsTime);
+      item.setStationId("240708");
+      item.setCsq("31");
+      item.setSensor(new RawDataItemDto.Sensor());
+      items.add(item);
+    }
+    RawDataWrapperDto wrapper = new RawDataWrapperDto();
+    wrapper.setRaw(items);
+
+    SensorDataServiceImpl service =
+        spy(
+            new SensorDataServiceImpl(
+                sensorDataRepository,
+                tempSensorDataRepository,
+                hourlyAggregationRepository,
+                dailyAggregationRepository,
+                aggregationService,
+                new ObjectMapper(),
+                sensorDataBatchRepository,
+                ingestionProperties,
+                sensorSourceClient,
+                ingestionWatermarkRepository,
+                duplicateFilterService,
+                weeklyAggregationRepository,
+                monthlyAggregationRepository,
+                liveAggregationService,
+                aggregationProperties,
+                quantileSketchRepository,
+                tariffCalendarService));
+    doReturn(new SourceResponse<>("dummyurl", false, wrapper, null))
+        .when(service)
+        .fetchRawDataFromUrl(anyString());
+
+    // Watermarks as the repository would persist them
+    Map<String, LocalDateTime> persisted = new HashMap<>();
+    when(ingestionWatermarkRepository.findBySource("dummyurl"))
+        .thenAnswer(invocation -> Map.copyOf(persisted));
+    doAnswer(
+            invocation -> {
+              persisted.putAll(invocation.getArgument(1));
+              return null;
+            })
+        .when(ingestionWatermarkRepository)
+        .advance(eq("dummyurl"), anyMap());
+
+    // The second chunk of the first poll fails
+    Set<LocalDateTime> stored = new HashSet<>();
+    int[] calls = {0};
+    when(sensorDataBatchRepository.insertNewReadings(anyList()))
+        .thenAnswer(
+            invocation -> {
+              if (++calls[0] == 2) {
+                throw new IllegalStateException("connection lost");
+              }
+              List<SensorData> readings = invocation.getArgument(0);
+              readings.forEach(r -> stored.add(r.getObsTime()));
+              return readings;
+            });
+
+    assertThrows(IllegalStateException.class, () -> service.fetchAndSaveSensorData("dummyurl"));
+    assertEquals(Map.of(), persisted);
+
+    // Its 10:10 reading is not hidden below a 10:20 watermark, so the next poll stores it
+    service.fetchAndSaveSensorData("dummyurl");
+
+    assertEquals(
+        Set.of(LocalDateTime.of(2025, 3, 16, 10, 20), LocalDateTime.of(2025, 3, 16, 10, 10)),
+        stored);
+    assertEquals(Map.of("240708", LocalDateTime.of(2025, 3, 16, 10, 20)), persisted);
+  }
+
   @Test
   void testGetHourlyAverage() {
     // 1) Setup
@@ -196,7 +797,18 @@ class SensorDataServiceImplTest {
             hourlyAggregationRepository,
             dailyAggregationRepository,
             aggregationService,
-            new ObjectMapper());
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
 
     // 5) Execute
     List<HourlyAggregation> result = service.getHourlyAverage(start, end);
@@ -207,6 +819,54 @@ class SensorDataServiceImplTest {
         .findByObsDateBetween(start.toLocalDate(), end.toLocalDate());
   }
 
+  @Test
+  void testGetHourlyAverage_OpenWindowReplacesPartialStoredRow() {
+    LocalDateTime start = LocalDateTime.of(2025, 3, 10, 0, 0, 0);
+    LocalDateTime end = LocalDateTime.of(2025, 3, 10, 23, 59, 59);
+    // The job stored the first reading of 10:00; the window has seen all three since
+    HourlyAggregation stored = hourly(10, 1);
+    HourlyAggregation closedHour = hourly(9, 5);
+    HourlyAggregation window = hourly(10, 3);
+    HourlyAggregation newHour = hourly(11, 2);
+    when(hourlyAggregationRepository.findByObsDateBetween(start.toLocalDate(), end.toLocalDate()))
+        .thenReturn(List.of(closedHour, stored));
+    when(liveAggregationService.openWindows(start.toLocalDate(), end.toLocalDate()))
+        .thenReturn(List.of(window, newHour));
+
+    SensorDataServiceImpl service =
+        new SensorDataServiceImpl(
+            sensorDataRepository,
+            tempSensorDataRepository,
+            hourlyAggregationRepository,
+            dailyAggregationRepository,
+            aggregationService,
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
+
+    assertEquals(List.of(closedHour, window, newHour), service.getHourlyAverage(start, end));
+  }
+
+  private static HourlyAggregation hourly(int hour, long v1Count) {
+    HourlyAggregation row = new HourlyAggregation();
+    row.setStationId("240708");
+    row.setObsDate(LocalDate.of(2025, 3, 10));
+    row.setObsHour(hour);
+    row.setCsq("31");
+    row.setTimeCategory("PEAK");
+    row.setV1Count(v1Count);
+    return row;
+  }
+
   @Test
   void testGetDailyAverage() {
     // 1) Setup
@@ -228,7 +888,18 @@ class SensorDataServiceImplTest {
             hourlyAggregationRepository,
             dailyAggregationRepository,
             aggregationService,
-            new ObjectMapper());
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
 
     // 4) Execute
     List<DailyAggregation> result = service.getDailyAverage(start, end);
@@ -239,6 +910,96 @@ class SensorDataServiceImplTest {
         .findByObsDateBetween(start.toLocalDate(), end.toLocalDate());
   }
 
+  @Test
+  void testGetWeeklyAverage_StartsAtTheWeekContainingStart() {
+    // Wednesday to Sunday; the week of 2025-03-12 starts on Monday 2025-03-10
+    LocalDateTime start = LocalDateTime.of(2025, 3, 12, 8, 0, 0);
+    LocalDateTime end = LocalDateTime.of(2025, 3, 30, 23, 59, 59);
+    when(weeklyAggregationRepository.findByObsDateBetween(
+            LocalDate.of(2025, 3, 10), LocalDate.of(2025, 3, 30)))
+        .thenReturn(List.of(new WeeklyAggregation()));
+
+    SensorDataServiceImpl service =
+        new SensorDataServiceImpl(
+            sensorDataRepository,
+            tempSensorDataRepository,
+            hourlyAggregationRepository,
+            dailyAggregationRepository,
+            aggregationService,
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
+
+    assertEquals(1, service.getWeeklyAverage(start, end).size());
+    verify(monthlyAggregationRepository, never()).findByObsDateBetween(any(), any());
+  }
+
+  @Test
+  void testGetPercentiles_MergedSketchOfTheRange() {
+    LocalDateTime start = LocalDateTime.of(2025, 3, 10, 0, 0, 0);
+    LocalDateTime end = LocalDateTime.of(2025, 3, 17, 0, 0, 0);
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = 1; i <= 100; i++) {
+      sketch.add(BigDecimal.valueOf(i));
+    }
+    when(quantileSketchRepository.mergedSketch(
+            eq("240708"), argThat(field -> field.field().equals("echo")), eq(start), eq(end)))
+        .thenReturn(sketch.toBytes());
+
+    SensorDataServiceImpl service = percentileService();
+    PercentileResult result =
+        service.getPercentiles("240708", "echo", start, end, List.of(0.5, 0.99, 0.999));
+
+    assertEquals(100, result.count());
+    assertEquals(List.of("p50", "p99", "p99.9"), List.copyOf(result.percentiles().keySet()));
+    assertEquals(50, result.percentiles().get("p50").doubleValue(), 50 * 0.01);
+    assertEquals(99, result.percentiles().get("p99").doubleValue(), 99 * 0.01);
+  }
+
+  @Test
+  void testGetPercentiles_RejectsFieldsWithoutSketch() {
+    LocalDateTime start = LocalDateTime.of(2025, 3, 10, 0, 0, 0);
+    SensorDataServiceImpl service = percentileService();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> service.getPercentiles("240708", "v1", start, start.plusDays(1), List.of(0.5)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> service.getPercentiles("240708", "rh", start, start.plusDays(1), List.of(1.5)));
+    verifyNoInteractions(quantileSketchRepository, tariffCalendarService);
+  }
+
+  private SensorDataServiceImpl percentileService() {
+    return new SensorDataServiceImpl(
+        sensorDataRepository,
+        tempSensorDataRepository,
+        hourlyAggregationRepository,
+        dailyAggregationRepository,
+        aggregationService,
+        new ObjectMapper(),
+        sensorDataBatchRepository,
+        ingestionProperties,
+        sensorSourceClient,
+        ingestionWatermarkRepository,
+        duplicateFilterService,
+        weeklyAggregationRepository,
+        monthlyAggregationRepository,
+        liveAggregationService,
+        aggregationProperties,
+        quantileSketchRepository,
+        tariffCalendarService);
+  }
+
   @Test
   void testGetPeakTimeData() {
     // 1) Sample data
@@ -277,7 +1038,18 @@ class SensorDataServiceImplTest {
             hourlyAggregationRepository,
             dailyAggregationRepository,
             aggregationService,
-            new ObjectMapper());
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
 
     // 5) Execute
     List<SensorData> peakData = service.getPeakTimeData(rangeStart, rangeEnd);
@@ -327,7 +1099,18 @@ class SensorDataServiceImplTest {
             hourlyAggregationRepository,
             dailyAggregationRepository,
             aggregationService,
-            new ObjectMapper());
+            new ObjectMapper(),
+            sensorDataBatchRepository,
+            ingestionProperties,
+            sensorSourceClient,
+            ingestionWatermarkRepository,
+            duplicateFilterService,
+            weeklyAggregationRepository,
+            monthlyAggregationRepository,
+            liveAggregationService,
+            aggregationProperties,
+            quantileSketchRepository,
+            tariffCalendarService);
 
     // 5) Execute
     List<SensorData> offPeakData = service.getOffPeakTimeData(rangeStart, rangeEnd);
@@ -0,0 +1,50 @@
+package com.jack.aquark.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+class BloomFilterTest {
+
+  private static final int KEYS = 100_000;
+
+  @Test
+  void testNoFalseNegatives() {
+    BloomFilter filter = new BloomFilter(KEYS, 0.01);
+    for (long key = 0; key < KEYS; key++) {
+      filter.put(BloomFilter.fmix64(key));
+    }
+
+    for (long key = 0; key < KEYS; key++) {
+      assertTrue(filter.mightContain(BloomFilter.fmix64(key)), "key " + key);
+    }
+  }
+
+  @Test
+  void testFalsePositiveRateCloseToConfiguredAtExpectedKeys() {
+    for (double rate : new double[] {0.1, 0.01, 0.001}) {
+      BloomFilter filter = new BloomFilter(KEYS, rate);
+      for (long key = 0; key < KEYS; key++) {
+        filter.put(BloomFilter.fmix64(key));
+      }
+
+      // Negative keys were never put, so every hit is a false positive
+      int trials = 1_000_000;
+      int hits = 0;
+      for (long key = -1; key >= -trials; key--) {
+        if (filter.mightContain(BloomFilter.fmix64(key))) {
+          hits++;
+        }
+      }
+      double observed = (double) hits / trials;
+      assertTrue(observed > rate / 2 && observed < rate * 1.5, rate + " vs " + observed);
+    }
+  }
+
+  @Test
+  void testRejectsInvalidConfiguration() {
+    assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+    assertThrows(IllegalArgumentException.class, () -> new BloomFilter(KEYS, 0));
+    assertThrows(IllegalArgumentException.class, () -> new BloomFilter(KEYS, 1));
+  }
+}
@@ -0,0 +1,194 @@
+package com.jack.aquark.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.*;
+
+class FixedPointTest {
+
+  @Test
+  void testToScaled() {
+    assertEquals(123_456L, FixedPoint.toScaled(new BigDecimal("12.3456")));
+    assertEquals(-5_000L, FixedPoint.toScaled(new BigDecimal("-0.5")));
+    assertEquals(1_230_000L, FixedPoint.toScaled(new BigDecimal("1.23E+2")));
+    assertEquals(10_000L, FixedPoint.toScaled(new BigDecimal("1.000000")));
+    assertThrows(ArithmeticException.class, () -> FixedPoint.toScaled(new BigDecimal("0.00001")));
+  }
+
+  @Test
+  void testToScaledMatchesBigDecimalAroundTheDoubleLimit() {
+    Random random = new Random(7);
+    // Scaled magnitudes from small up to well past 2^50, where the double route hands over
+    long[] bounds = {100_000L, 1L << 40, (1L << 50) - 1_000, (1L << 50) + 1_000, 1L << 60};
+    for (long bound : bounds) {
+      for (int i = 0; i < 20_000; i++) {
+        long unscaled = random.nextLong(-bound, bound);
+        int scale = random.nextInt(-2, 5);
+        BigDecimal value = BigDecimal.valueOf(unscaled, scale);
+        long expected;
+        try {
+          expected = value.movePointRight(FixedPoint.SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+          assertThrows(ArithmeticException.class, () -> FixedPoint.toScaled(value));
+          continue;
+        }
+        assertEquals(expected, FixedPoint.toScaled(value), value::toPlainString);
+      }
+    }
+  }
+
+  @Test
+  void testAverageMatchesBigDecimalOnRandomGroups() {
+    Random random = new Random(42);
+    FixedPoint.Accumulator accumulator = new FixedPoint.Accumulator();
+    for (int round = 0; round < 10_000; round++) {
+      List<BigDecimal> values = new ArrayList<>();
+      int size = 1 + random.nextInt(60);
+      for (int i = 0; i < size; i++) {
+        values.add(BigDecimal.valueOf(random.nextLong(-2_000_000, 2_000_000), random.nextInt(5)));
+      }
+
+      accumulator.reset();
+      values.forEach(accumulator::add);
+
+      BigDecimal sum = values.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+      assertEquals(0, sum.compareTo(accumulator.sum()), values::toString);
+      assertEquals(
+          sum.divide(BigDecimal.valueOf(size), 2, RoundingMode.HALF_UP),
+          accumulator.average(2),
+          values::toString);
+    }
+  }
+
+  @Test
+  void testHalfUpTies() {
+    // 0.125 and -0.125 round away from zero
+    assertEquals(new BigDecimal("0.13"), FixedPoint.average(2_500L, 2, 2));
+    assertEquals(new BigDecimal("-0.13"), FixedPoint.average(-2_500L, 2, 2));
+    assertEquals(new BigDecimal("0.12"), FixedPoint.average(2_499L, 2, 2));
+  }
+
+  @Test
+  void testMinAndMax() {
+    FixedPoint.Accumulator accumulator = new FixedPoint.Accumulator();
+    accumulator.add(new BigDecimal("2.5"));
+    accumulator.add(new BigDecimal("-1.25"));
+    accumulator.add(null);
+    accumulator.add(new BigDecimal("7"));
+
+    assertEquals(0, new BigDecimal("-1.25").compareTo(accumulator.min()));
+    assertEquals(0, new BigDecimal("7").compareTo(accumulator.max()));
+
+    // Kept across the switch to BigDecimal
+    accumulator.add(new BigDecimal("0.00001"));
+    assertEquals(0, new BigDecimal("-1.25").compareTo(accumulator.min()));
+    assertEquals(0, new BigDecimal("7").compareTo(accumulator.max()));
+    accumulator.add(new BigDecimal("-3"));
+    assertEquals(0, new BigDecimal("-3").compareTo(accumulator.min()));
+
+    accumulator.reset();
+    assertNull(accumulator.min());
+    assertNull(accumulator.max());
+  }
+
+  @Test
+  void testAccumulatorSkipsNullsAndHandlesEmpty() {
+    FixedPoint.Accumulator accumulator = new FixedPoint.Accumulator();
+    accumulator.add(null);
+
+    assertEquals(0, accumulator.count());
+    assertEquals(BigDecimal.ZERO, accumulator.sum());
+    assertEquals(BigDecimal.ZERO, accumulator.average(2));
+  }
+
+  @Test
+  void testAccumulatorFallsBackOnOverflowAndExtraScale() {
+    FixedPoint.Accumulator accumulator = new FixedPoint.Accumulator();
+    BigDecimal big = new BigDecimal("900000000000000.0000");
+    accumulator.add(big);
+    accumulator.add(big);
+    accumulator.add(new BigDecimal("0.00005"));
+
+    BigDecimal expected = big.add(big).add(new BigDecimal("0.00005"));
+    assertEquals(0, expected.compareTo(accumulator.sum()));
+    assertEquals(
+        expected.divide(BigDecimal.valueOf(3), 2, RoundingMode.HALF_UP), accumulator.average(2));
+  }
+
+  @Test
+  void testMergedStateMatchesOneAccumulator() {
+    Random random = new Random(7);
+    FixedPoint.Accumulator whole = new FixedPoint.Accumulator();
+    FixedPoint.Accumulator part = new FixedPoint.Accumulator();
+    FixedPoint.Accumulator merged = new FixedPoint.Accumulator();
+    List<BigDecimal> values = new ArrayList<>();
+    for (int group = 0; group < 24; group++) {
+      part.reset();
+      for (int i = random.nextInt(6); i > 0; i--) {
+        BigDecimal value = BigDecimal.valueOf(random.nextLong(-2_000_000, 2_000_000), 4);
+        values.add(value);
+        whole.add(value);
+        part.add(value);
+      }
+      merged.merge(part.count(), part.sum(), part.min(), part.max(), part.sumOfSquares());
+    }
+
+    assertEquals(whole.count(), merged.count());
+    assertEquals(0, whole.sum().compareTo(merged.sum()));
+    assertEquals(whole.average(2), merged.average(2));
+    assertEquals(0, whole.min().compareTo(merged.min()));
+    assertEquals(0, whole.max().compareTo(merged.max()));
+    assertEquals(0, whole.sumOfSquares().compareTo(merged.sumOfSquares()));
+    BigDecimal squares =
+        values.stream().map(v -> v.multiply(v)).reduce(BigDecimal.ZERO, BigDecimal::add);
+    assertEquals(0, squares.compareTo(merged.sumOfSquares()));
+    assertFalse(merged.spilled());
+  }
+
+  @Test
+  void testMergeFallsBackOnOverflowAndExtraScale() {
+    BigDecimal big = new BigDecimal("900000000000000.0000");
+    FixedPoint.Accumulator overflowing = new FixedPoint.Accumulator();
+    overflowing.merge(1, big, big, big, big.multiply(big));
+    assertTrue(overflowing.spilled());
+    overflowing.merge(1, big, big, big, big.multiply(big));
+    assertEquals(0, big.add(big).compareTo(overflowing.sum()));
+    assertEquals(
+        0, big.multiply(big).multiply(BigDecimal.TWO).compareTo(overflowing.sumOfSquares()));
+
+    // A square with nine decimal places, e.g. from a state written by a different engine
+    BigDecimal oddSquares = new BigDecimal("0.250000001");
+    FixedPoint.Accumulator accumulator = new FixedPoint.Accumulator();
+    accumulator.add(new BigDecimal("1.5"));
+    accumulator.merge(2, BigDecimal.ONE, new BigDecimal("0.5"), new BigDecimal("0.5"), oddSquares);
+    assertTrue(accumulator.spilled());
+    assertEquals(3, accumulator.count());
+    assertEquals(0, new BigDecimal("2.5").compareTo(accumulator.sum()));
+    assertEquals(0, new BigDecimal("0.5").compareTo(accumulator.min()));
+    assertEquals(0, new BigDecimal("1.5").compareTo(accumulator.max()));
+    assertEquals(0, new BigDecimal("2.500000001").compareTo(accumulator.sumOfSquares()));
+  }
+
+  @Test
+  void testStandardDeviation() {
+    FixedPoint.Accumulator accumulator = new FixedPoint.Accumulator();
+    for (String value : List.of("2", "4", "4", "4", "5", "5", "7", "9")) {
+      accumulator.add(new BigDecimal(value));
+    }
+
+    // Sample variance of the classic example is 32 / 7
+    assertEquals(
+        new BigDecimal("2.1381"),
+        FixedPoint.standardDeviation(
+            accumulator.count(), accumulator.sum(), accumulator.sumOfSquares(), 4));
+    assertEquals(
+        new BigDecimal("0.0000"),
+        FixedPoint.standardDeviation(2, new BigDecimal("6"), new BigDecimal("18"), 4));
+    assertNull(FixedPoint.standardDeviation(1, BigDecimal.ONE, BigDecimal.ONE, 4));
+  }
+}
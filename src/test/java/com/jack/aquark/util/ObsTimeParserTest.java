@@ -0,0 +1,60 @@
+package com.jack.aquark.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import org.junit.jupiter.api.*;
+
+class ObsTimeParserTest {
+
+  @Test
+  void testParseWellFormed() {
+    assertEquals(
+        LocalDateTime.of(2025, 3, 16, 7, 30, 5), ObsTimeParser.parse("2025-03-16 07:30:05"));
+    assertEquals(
+        LocalDateTime.of(2024, 2, 29, 23, 59, 59), ObsTimeParser.parse("2024-02-29 23:59:59"));
+  }
+
+  @Test
+  void testMatchesFormatterOnEdgeCases() {
+    String[] inputs = {
+      "2025-02-29 10:00:00", // clamped to Feb 28 by the SMART resolver
+      "2025-04-31 10:00:00",
+      "2025-03-16 24:00:00", // rolls over to the next day
+      "1900-02-29 00:00:00",
+      "2000-02-29 00:00:00",
+      "0001-01-01 00:00:00"
+    };
+    for (String input : inputs) {
+      assertEquals(
+          LocalDateTime.parse(input, ObsTimeParser.FORMATTER), ObsTimeParser.parse(input), input);
+    }
+  }
+
+  @Test
+  void testRejectsWhatTheFormatterRejects() {
+    String[] inputs = {
+      "",
+      "2025-03-16",
+      "2025-03-16T10:00:00",
+      "2025-13-01 10:00:00",
+      "2025-03-32 10:00:00",
+      "2025-03-16 25:00:00",
+      "2025-03-16 10:60:00",
+      "2025-03-16 10:00:6a",
+      "2025-03-16 10:00:00Z",
+      "+025-03-16 10:00:00"
+    };
+    for (String input : inputs) {
+      DateTimeParseException expected =
+          assertThrows(
+              DateTimeParseException.class,
+              () -> LocalDateTime.parse(input, ObsTimeParser.FORMATTER),
+              input);
+      DateTimeParseException actual =
+          assertThrows(DateTimeParseException.class, () -> ObsTimeParser.parse(input), input);
+      assertEquals(expected.getMessage(), actual.getMessage(), input);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.jack.aquark.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.*;
+
+class QuantileSketchTest {
+
+  @Test
+  void testQuantilesWithinRelativeAccuracyOnRandomGroups() {
+    Random random = new Random(42);
+    for (int round = 0; round < 1_000; round++) {
+      List<BigDecimal> values = new ArrayList<>();
+      QuantileSketch sketch = new QuantileSketch();
+      int size = 1 + random.nextInt(500);
+      for (int i = 0; i < size; i++) {
+        // Mostly positive, with zeros and negatives, at the scale of the measurement columns
+        BigDecimal value = BigDecimal.valueOf(random.nextLong(-200_000, 2_000_000), 4);
+        values.add(value);
+        sketch.add(value);
+      }
+      sketch.add(null);
+      Collections.sort(values);
+
+      assertEquals(size, sketch.count());
+      for (double q : new double[] {0, 0.5, 0.95, 0.99, 1}) {
+        BigDecimal exact = values.get((int) (q * (size - 1)));
+        BigDecimal estimate = sketch.quantile(q);
+        double tolerance = exact.abs().doubleValue() * QuantileSketch.RELATIVE_ACCURACY + 1e-4;
+        assertEquals(exact.doubleValue(), estimate.doubleValue(), tolerance, values::toString);
+      }
+    }
+  }
+
+  @Test
+  void testMergeEqualsSketchOfAllValues() {
+    Random random = new Random(7);
+    QuantileSketch all = new QuantileSketch();
+    QuantileSketch merged = new QuantileSketch();
+    for (int part = 0; part < 24; part++) {
+      QuantileSketch hour = new QuantileSketch();
+      for (int i = 0; i < 60; i++) {
+        BigDecimal value = BigDecimal.valueOf(random.nextLong(-1_000, 1_000_000), 2);
+        hour.add(value);
+        all.add(value);
+      }
+      merged.merge(hour.toBytes());
+    }
+    merged.merge(null);
+
+    assertArrayEquals(all.toBytes(), merged.toBytes());
+    assertArrayEquals(all.toBytes(), QuantileSketch.fromBytes(all.toBytes()).toBytes());
+  }
+
+  @Test
+  void testEmptyAndCleared() {
+    QuantileSketch sketch = new QuantileSketch();
+    assertNull(sketch.toBytes());
+    assertNull(sketch.quantile(0.5));
+
+    sketch.add(BigDecimal.ZERO);
+    sketch.add(new BigDecimal("-3.5"));
+    assertEquals(0, sketch.quantile(1).signum());
+    assertEquals(-3.5, sketch.quantile(0).doubleValue(), 3.5 * QuantileSketch.RELATIVE_ACCURACY);
+
+    sketch.clear();
+    assertEquals(0, sketch.count());
+    assertNull(sketch.toBytes());
+    assertThrows(IllegalArgumentException.class, () -> sketch.quantile(1.5));
+    assertThrows(IllegalArgumentException.class, () -> sketch.merge(new byte[5]));
+  }
+}
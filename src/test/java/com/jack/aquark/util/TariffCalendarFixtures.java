@@ -0,0 +1,58 @@
+package com.jack.aquark.util;
+
+import com.jack.aquark.dto.TariffPeakWindow;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Calendars for tests that need the default tariff rules without a database. */
+public final class TariffCalendarFixtures {
+
+  private static final String SEED = "/db/migration/V7__tariff_calendar.sql";
+
+  private static final Pattern INSERT =
+      Pattern.compile("INSERT INTO tariff_peak_window[^;]*VALUES([^;]*);");
+  private static final Pattern ROW = Pattern.compile("\\((\\d+),\\s*(\\d+),\\s*(\\d+)\\)");
+
+  /**
+   * The peak windows migration V7 seeds: Monday to Wednesday 07:30 to 17:30 and Thursday and Friday
+   * all day, the rules that were built in before the calendar became configurable.
+   */
+  public static final TariffCalendar STANDARD = TariffCalendar.compile(seedWindows(), List.of());
+
+  private TariffCalendarFixtures() {}
+
+  private static List<TariffPeakWindow> seedWindows() {
+    String sql;
+    try (InputStream in = TariffCalendarFixtures.class.getResourceAsStream(SEED)) {
+      if (in == null) {
+        throw new IllegalStateException(SEED + " not found on the classpath");
+      }
+      sql = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    Matcher insert = INSERT.matcher(sql);
+    if (!insert.find()) {
+      throw new IllegalStateException(SEED + " seeds no peak windows");
+    }
+    List<TariffPeakWindow> windows = new ArrayList<>();
+    Matcher row = ROW.matcher(insert.group(1));
+    while (row.find()) {
+      windows.add(
+          new TariffPeakWindow(
+              Integer.parseInt(row.group(1)),
+              Integer.parseInt(row.group(2)),
+              Integer.parseInt(row.group(3)),
+              null,
+              null));
+    }
+    return windows;
+  }
+}
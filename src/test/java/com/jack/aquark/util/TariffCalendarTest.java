@@ -0,0 +1,90 @@
+package com.jack.aquark.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.jack.aquark.dto.TariffPeakWindow;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import org.junit.jupiter.api.*;
+
+class TariffCalendarTest {
+
+  // Monday
+  private static final LocalDate WEEK = LocalDate.of(2025, 3, 10);
+
+  @Test
+  void testV7SeedMatchesTheBuiltInRules() {
+    LocalDateTime end = WEEK.plusWeeks(1).atStartOfDay();
+    for (LocalDateTime t = WEEK.atStartOfDay(); t.isBefore(end); t = t.plusMinutes(1)) {
+      assertEquals(legacyIsPeak(t), TariffCalendarFixtures.STANDARD.isPeak(t), t::toString);
+    }
+    assertEquals(0, TariffCalendarFixtures.STANDARD.dayMasks().length);
+    assertEquals(
+        TariffCalendar.PEAK,
+        TariffCalendarFixtures.STANDARD.category(LocalDateTime.of(1900, 1, 4, 3, 0)));
+  }
+
+  @Test
+  void testHolidaysAreOffPeakAllDay() {
+    LocalDate thursday = WEEK.plusDays(3);
+    TariffCalendar calendar =
+        TariffCalendar.compile(
+            List.of(new TariffPeakWindow(4, 0, 1440, null, null)), List.of(thursday));
+
+    assertFalse(calendar.isPeak(thursday.atTime(12, 0)));
+    assertTrue(calendar.isPeak(thursday.minusWeeks(1).atTime(12, 0)));
+    assertTrue(calendar.isPeak(thursday.plusWeeks(1).atTime(12, 0)));
+  }
+
+  @Test
+  void testEffectiveDatesSwitchTheRules() {
+    // Mondays 08:00-12:00 until 2025-03-16, 09:30-10:00 from 2025-03-24
+    TariffCalendar calendar =
+        TariffCalendar.compile(
+            List.of(
+                new TariffPeakWindow(1, 480, 720, null, LocalDate.of(2025, 3, 16)),
+                new TariffPeakWindow(1, 570, 600, LocalDate.of(2025, 3, 24), null)),
+            List.of());
+
+    assertTrue(calendar.isPeak(WEEK.minusWeeks(10).atTime(8, 0)));
+    assertTrue(calendar.isPeak(WEEK.atTime(11, 59)));
+    assertFalse(calendar.isPeak(WEEK.atTime(12, 0)));
+    // No rule in force in between
+    assertFalse(calendar.isPeak(WEEK.plusWeeks(1).atTime(9, 45)));
+    assertFalse(calendar.isPeak(WEEK.plusWeeks(2).atTime(9, 29)));
+    assertTrue(calendar.isPeak(WEEK.plusWeeks(2).atTime(9, 30)));
+    assertFalse(calendar.isPeak(WEEK.plusWeeks(30).atTime(10, 0)));
+    assertTrue(calendar.isPeak(WEEK.plusWeeks(30).atTime(9, 59, 59)));
+  }
+
+  @Test
+  void testInvalidWindowsAreRejected() {
+    for (TariffPeakWindow window :
+        List.of(
+            new TariffPeakWindow(0, 0, 60, null, null),
+            new TariffPeakWindow(8, 0, 60, null, null),
+            new TariffPeakWindow(1, 60, 60, null, null),
+            new TariffPeakWindow(1, 0, 1470, null, null),
+            new TariffPeakWindow(1, 15, 60, null, null))) {
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> TariffCalendar.compile(List.of(window), List.of()),
+          window::toString);
+    }
+  }
+
+  // The rule the calendar replaced
+  private static boolean legacyIsPeak(LocalDateTime t) {
+    DayOfWeek day = t.getDayOfWeek();
+    LocalTime time = t.toLocalTime();
+    return switch (day) {
+      case MONDAY, TUESDAY, WEDNESDAY ->
+          !time.isBefore(LocalTime.of(7, 30)) && time.isBefore(LocalTime.of(17, 30));
+      case THURSDAY, FRIDAY -> true;
+      case SATURDAY, SUNDAY -> false;
+    };
+  }
+}